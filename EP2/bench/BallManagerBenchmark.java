@@ -0,0 +1,399 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+	Benchmarks dos caminhos de atualização, colisão e desenho da classe BallManager.
+	Os benchmarks checkCollisionsArena e checkCollisionsGrid comparam as colisões com a arena completa
+	(jogadores, alvos e paredes) feitas objeto a objeto e através da CollisionGrid. O benchmark ballCollisions
+	mede as colisões entre bolas (a busca dos pares pela classe SortAndSweep e o tratamento de cada par) com as
+	bolas paradas, e o benchmark ballCollisionsStep mede passos inteiros de uma partida com colisões entre bolas, com
+	as bolas em movimento e os alvos de verdade (incluindo as duplicações).
+
+	Cada benchmark é executado com 1, 100, 10.000 e 100.000 bolas na fila de bolas duplicadas. Seguindo a
+	metodologia do JMH, cada combinação (benchmark, quantidade de bolas) roda em uma JVM separada (fork),
+	com iterações de aquecimento seguidas de iterações de medição, e os resultados de cada operação são
+	consumidos por um "sumidouro" para que o JIT não elimine o trabalho medido.
+
+	As classes do jogo estão no pacote padrão, que o JMH não aceita para classes de benchmark, por isso
+	este módulo usa um harness próprio. Para compilar e executar (a partir do diretório EP2):
+
+	<pre>
+	javac -cp pong2 -d bench/out pong2/*.java bench/*.java
+	java -cp bench/out:pong2 BallManagerBenchmark &gt; bench/baseline.txt
+	</pre>
+
+	Também é possível executar um único benchmark: java -cp bench/out:pong2 BallManagerBenchmark update 10000
+
+	Ao acrescentar um benchmark, o arquivo baseline.txt deve ser gerado de novo, para que todos os benchmarks tenham
+	números de referência com que comparar.
+*/
+
+public class BallManagerBenchmark {
+
+	/**
+		Constante que define os nomes dos benchmarks disponíveis.
+	*/
+
+	private static final String [] BENCHMARKS = {
+		"update", "checkCollisionWall", "checkCollisionPlayer", "checkCollisionTarget", "checkCollisionsArena", "checkCollisionsGrid",
+		"ballCollisions", "ballCollisionsStep", "draw", "fxBallDraw", "diamondBallDraw", "duplicate", "duplicateFx"
+	};
+
+	/**
+		Constante que define as quantidades de bolas duplicadas usadas em cada benchmark.
+	*/
+
+	private static final int [] BALL_COUNTS = { 1, 100, 10000, 100000 };
+
+	/**
+		Constante que define a quantidade de iterações de aquecimento.
+	*/
+
+	private static final int WARMUP_ITERATIONS = 5;
+
+	/**
+		Constante que define a quantidade de iterações de medição.
+	*/
+
+	private static final int MEASUREMENT_ITERATIONS = 5;
+
+	/**
+		Constante que define a duração mínima (em nanosegundos) de cada iteração.
+	*/
+
+	private static final long ITERATION_NANOS = 500000000L;
+
+	/**
+		Atributo que acumula os resultados das operações medidas, impedindo que o JIT as elimine.
+	*/
+
+	static volatile long sink;
+
+	/**
+		Interface que representa uma operação medida.
+	*/
+
+	private interface Operation {
+
+		long run();
+	}
+
+	/**
+		Monta um BallManager com a bola principal e a quantidade pedida de bolas duplicadas, espalhadas
+		de forma determinística pelo campo.
+
+		@param className nome da classe das bolas.
+		@param balls quantidade de bolas duplicadas.
+		@return o BallManager montado, com o contador de imunidade das bolas já zerado.
+	*/
+
+	private static BallManager createManager(String className, int balls){
+
+		Random random = new Random(42);
+		BallManager manager = new BallManager(className);
+
+		manager.initMainBall(Pong.FIELD_WIDTH/2, 100 + (Pong.FIELD_HEIGHT - 100)/2, 20, 20, Color.YELLOW, 0.65, 0.9, 0.4);
+
+		for(int i = 0; i < balls; i++){
+
+			double cx = 30 + random.nextDouble() * (Pong.FIELD_WIDTH - 60);
+			double cy = 130 + random.nextDouble() * (Pong.FIELD_HEIGHT - 160);
+
+			manager.addDuplicateBall(cx, cy, random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+		}
+
+		//Bolas recém criadas ignoram colisões durante os primeiros 150 ms
+		manager.update(150);
+
+		return manager;
+	}
+
+	/**
+		Cria a operação correspondente a um benchmark.
+
+		@param name nome do benchmark.
+		@param balls quantidade de bolas duplicadas.
+		@return a operação que será medida.
+	*/
+
+	private static Operation createOperation(String name, final int balls) throws Exception {
+
+		final Wall wall = new Wall(10, (Pong.FIELD_HEIGHT - 100)/2 + 100, 20, Pong.FIELD_HEIGHT - 100, Color.WHITE, Pong.LEFT);
+		final double [] v_limit = { 120, Pong.FIELD_HEIGHT - 20 };
+		final Player player = new Player(Pong.FIELD_WIDTH * 0.1, 100 + (Pong.FIELD_HEIGHT - 100)/2, 20, 100, Color.GREEN, Pong.PLAYER1, v_limit, 0.5);
+
+		//Um alvo sem efeito, para medir apenas o percurso das bolas e o teste de colisão
+		final Target target = new Target(Pong.FIELD_WIDTH/2, 100 + (Pong.FIELD_HEIGHT - 100) * 0.50, 50, 50, Color.GRAY, "Target");
+
+		if(name.equals("update")){
+
+			final BallManager manager = createManager("Ball", balls);
+
+			return new Operation(){ public long run(){ manager.update(3); return manager.getBallCount(); } };
+		}
+		if(name.equals("checkCollisionWall")){
+
+			final BallManager manager = createManager("Ball", balls);
+
+			return new Operation(){ public long run(){ return manager.checkCollision(wall); } };
+		}
+		if(name.equals("checkCollisionPlayer")){
+
+			final BallManager manager = createManager("Ball", balls);
+
+			return new Operation(){ public long run(){ manager.checkCollision(player); return manager.getBallCount(); } };
+		}
+		if(name.equals("checkCollisionTarget")){
+
+			final BallManager manager = createManager("Ball", balls);
+
+			return new Operation(){ public long run(){ manager.checkCollision(target); return manager.getBallCount(); } };
+		}
+		if(name.equals("checkCollisionsArena") || name.equals("checkCollisionsGrid")){
+
+			//A arena completa: 2 jogadores, 3 alvos (sem efeito) e 4 paredes
+			final BallManager manager = createManager("Ball", balls);
+			final Player opponent = new Player(Pong.FIELD_WIDTH * 0.9, 100 + (Pong.FIELD_HEIGHT - 100)/2, 20, 100, Color.BLUE, Pong.PLAYER2, v_limit, 0.5);
+			final Player [] players = { player, opponent };
+			final Target [] targets = new Target[3];
+			final Wall [] walls = {
+				wall,
+				new Wall(Pong.FIELD_WIDTH - 10, (Pong.FIELD_HEIGHT - 100)/2 + 100, 20, Pong.FIELD_HEIGHT - 100, Color.WHITE, Pong.RIGHT),
+				new Wall(Pong.FIELD_WIDTH/2, 110, Pong.FIELD_WIDTH, 20, Color.WHITE, Pong.TOP),
+				new Wall(Pong.FIELD_WIDTH/2, Pong.FIELD_HEIGHT - 10, Pong.FIELD_WIDTH, 20, Color.WHITE, Pong.BOTTOM)
+			};
+
+			for(int k = 0; k < targets.length; k++){
+
+				double cy = 100 + (Pong.FIELD_HEIGHT - 100) * (0.2 + 0.3 * k);
+
+				targets[k] = new Target(Pong.FIELD_WIDTH/2, cy, 50, 50, Color.GRAY, "Target");
+			}
+
+			if(name.equals("checkCollisionsArena")){
+
+				//Uma passada por objeto, como o laço do Pong fazia antes da grade de colisão
+				return new Operation(){
+					public long run(){
+						long hits = 0;
+						for(Player p : players) manager.checkCollision(p);
+						for(Target t : targets) manager.checkCollision(t);
+						for(Wall w : walls) hits += manager.checkCollision(w);
+						return hits;
+					}
+				};
+			}
+
+			final CollisionGrid grid = new CollisionGrid(Pong.FIELD_WIDTH, Pong.FIELD_HEIGHT, 50);
+			final int [] hits = new int[players.length + targets.length + walls.length];
+
+			for(Player p : players) grid.add(p);
+			for(Target t : targets) grid.add(t);
+			for(Wall w : walls) grid.add(w);
+
+			//As colisões com a grade testam o trecho percorrido no último passo, que deve ter a duração de um passo comum
+			manager.update(3);
+
+			return new Operation(){
+				public long run(){
+					grid.update();
+					manager.checkCollisions(grid, hits);
+					return hits[0];
+				}
+			};
+		}
+		if(name.equals("ballCollisions")){
+
+			final BallManager manager = createManager("Ball", balls);
+
+			//As bolas não se movem entre as operações (senão elas deixariam o campo): mede a verificação da ordem
+			//do passo anterior e a varredura, com todas as bolas espalhadas pelo campo
+			return new Operation(){ public long run(){ return manager.checkBallCollisions(); } };
+		}
+		if(name.equals("ballCollisionsStep")){
+
+			//Uma partida completa, com os alvos de verdade (boost e duplicador) e colisões entre bolas, em que as bolas
+			//se movem: mede os passos inteiros com a ordem mudando de um passo para o outro e com as duplicações
+			//provocadas pelas colisões. A quantidade de bolas deve se manter estável (as bolas duplicadas expiram)
+			final BallManager manager = createManager("Ball", balls);
+			final Player opponent = new Player(Pong.FIELD_WIDTH * 0.9, 100 + (Pong.FIELD_HEIGHT - 100)/2, 20, 100, Color.BLUE, Pong.PLAYER2, v_limit, 0.5);
+			final Player [] players = { player, opponent };
+			final Target [] targets = {
+				new BoostTarget(Pong.FIELD_WIDTH/2, 100 + (Pong.FIELD_HEIGHT - 100) * 0.20, 50, 50),
+				new DuplicatorTarget(Pong.FIELD_WIDTH/2, 100 + (Pong.FIELD_HEIGHT - 100) * 0.50, 50, 50),
+				new BoostTarget(Pong.FIELD_WIDTH/2, 100 + (Pong.FIELD_HEIGHT - 100) * 0.80, 50, 50)
+			};
+			final Wall [] walls = {
+				wall,
+				new Wall(Pong.FIELD_WIDTH - 10, (Pong.FIELD_HEIGHT - 100)/2 + 100, 20, Pong.FIELD_HEIGHT - 100, Color.WHITE, Pong.RIGHT),
+				new Wall(Pong.FIELD_WIDTH/2, 110, Pong.FIELD_WIDTH, 20, Color.WHITE, Pong.TOP),
+				new Wall(Pong.FIELD_WIDTH/2, Pong.FIELD_HEIGHT - 10, Pong.FIELD_WIDTH, 20, Color.WHITE, Pong.BOTTOM)
+			};
+			final CollisionGrid grid = new CollisionGrid(Pong.FIELD_WIDTH, Pong.FIELD_HEIGHT, 50);
+
+			for(Player p : players) grid.add(p);
+			for(Target t : targets) grid.add(t);
+			for(Wall w : walls) grid.add(w);
+
+			manager.setBallCollisions(true);
+
+			final Score [] scores = { new Score(Pong.PLAYER1), new Score(Pong.PLAYER2) };
+			final Match match = new Match(manager, walls, targets, players, scores, grid, new int [] { 1, 0, -1, -1 });
+
+			match.start();
+
+			return new Operation(){ public long run(){ match.step(3, Input.NONE); return match.getBallCount(); } };
+		}
+		if(name.equals("draw")){
+
+			final BallManager manager = createManager("Ball", balls);
+			final Renderer renderer = new NullRenderer();
+
+			return new Operation(){ public long run(){ manager.draw(renderer); return manager.getBallCount(); } };
+		}
+		if(name.equals("fxBallDraw") || name.equals("diamondBallDraw")){
+
+			//Desenha em uma imagem fora da tela, no lugar da janela da GameLib
+			BufferedImage image = new BufferedImage(Pong.FIELD_WIDTH, Pong.FIELD_HEIGHT, BufferedImage.TYPE_INT_RGB);
+			Field graphics = GameLib.class.getDeclaredField("g");
+
+			graphics.setAccessible(true);
+			graphics.set(null, image.createGraphics());
+
+			final BallManager manager = createManager(name.equals("fxBallDraw") ? "FxBall" : "DiamondBall", balls);
+			final Renderer renderer = new NullRenderer(){ public void drawBall(IBall ball){ ball.draw(); } };
+
+			//As formas acumuladas pelo DrawBatch só são desenhadas no flush()
+			return new Operation(){ public long run(){ manager.draw(renderer); DrawBatch.flush(); return manager.getBallCount(); } };
+		}
+		if(name.equals("duplicate")){
+
+			//Rajada de duplicações: cria todas as bolas através de createBallInstance
+			final BallManager manager = createManager("Ball", 0);
+			final Random random = new Random(7);
+
+			return new Operation(){
+				public long run(){
+					manager.clearDuplicateBalls();
+					for(int i = 0; i < balls; i++) manager.addDuplicateBall(400, 350, random.nextDouble() - 0.5, 0.5);
+					return manager.getBallCount();
+				}
+			};
+		}
+
+		if(name.equals("duplicateFx")){
+
+			//Mesma rajada, com bolas de um tipo personalizado (fábrica e reaproveitamento das instâncias)
+			final BallManager manager = createManager("FxBall", 0);
+			final Random random = new Random(7);
+
+			return new Operation(){
+				public long run(){
+					manager.clearDuplicateBalls();
+					for(int i = 0; i < balls; i++) manager.addDuplicateBall(400, 350, random.nextDouble() - 0.5, 0.5);
+					return manager.getBallCount();
+				}
+			};
+		}
+
+		throw new IllegalArgumentException("Benchmark '" + name + "' não reconhecido.");
+	}
+
+	/**
+		Executa uma iteração, repetindo a operação até completar a duração mínima.
+
+		@param op operação medida.
+		@return tempo médio por operação, em nanosegundos.
+	*/
+
+	private static double iteration(Operation op){
+
+		long ops = 0;
+		long acc = 0;
+		long start = System.nanoTime();
+		long elapsed;
+
+		do{
+			acc += op.run();
+			ops++;
+			elapsed = System.nanoTime() - start;
+		}while(elapsed < ITERATION_NANOS);
+
+		sink += acc;
+
+		return (double) elapsed / ops;
+	}
+
+	/**
+		Executa um benchmark na JVM atual e imprime uma linha de resultado.
+
+		@param name nome do benchmark.
+		@param balls quantidade de bolas duplicadas.
+	*/
+
+	private static void runSingle(String name, int balls) throws Exception {
+
+		Operation op = createOperation(name, balls);
+
+		for(int i = 0; i < WARMUP_ITERATIONS; i++) iteration(op);
+
+		double [] samples = new double[MEASUREMENT_ITERATIONS];
+		double mean = 0;
+
+		for(int i = 0; i < samples.length; i++){
+
+			samples[i] = iteration(op);
+			mean += samples[i] / samples.length;
+		}
+
+		double variance = 0;
+
+		for(double sample : samples) variance += (sample - mean) * (sample - mean) / (samples.length - 1);
+
+		System.out.println(String.format(Locale.ROOT, "%-34s %7d  avgt  %3d  %14.1f +- %12.1f  ns/op  %10.2f ns/ball",
+			"BallManager." + name, balls, samples.length, mean, Math.sqrt(variance), mean / (balls + 1)));
+	}
+
+	/**
+		Executa todos os benchmarks, cada um em uma JVM separada, ou apenas o benchmark indicado pelos argumentos.
+
+		@param args nome do benchmark e quantidade de bolas (opcionais).
+	*/
+
+	public static void main(String [] args) throws Exception {
+
+		if(args.length == 2){
+
+			runSingle(args[0], Integer.parseInt(args[1]));
+			return;
+		}
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classpath = System.getProperty("java.class.path");
+
+		System.out.println("# JVM: " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+		System.out.println("# CPUs: " + Runtime.getRuntime().availableProcessors());
+		System.out.print("# Warmup: " + WARMUP_ITERATIONS + " x " + (ITERATION_NANOS / 1000000) + " ms, ");
+		System.out.println("Measurement: " + MEASUREMENT_ITERATIONS + " x " + (ITERATION_NANOS / 1000000) + " ms, 1 fork");
+		System.out.println();
+
+		String header = "%-34s %7s  %4s  %3s  %14s    %12s  %5s  %10s";
+
+		System.out.println(String.format(Locale.ROOT, header, "Benchmark", "(balls)", "Mode", "Cnt", "Score", "StdDev", "Units", "Per ball"));
+
+		for(String name : BENCHMARKS){
+
+			for(int balls : BALL_COUNTS){
+
+				ProcessBuilder builder = new ProcessBuilder(java, "-Djava.awt.headless=true", "-Xmx2g", "-cp", classpath, "BallManagerBenchmark", name, String.valueOf(balls));
+
+				builder.redirectErrorStream(true);
+				builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+				builder.start().waitFor();
+			}
+		}
+	}
+}
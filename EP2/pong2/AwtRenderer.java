@@ -0,0 +1,117 @@
+import java.awt.Color;
+
+/**
+	Implementação de Renderer que desenha em uma janela AWT através da classe GameLib.
+	Cada entidade é desenhada pelo seu próprio método draw(), mantendo o comportamento original do jogo, com
+	exceção dos textos e dos placares, copiados de rótulos guardados pela classe TextCache.
+
+	As bolas são acumuladas em um DrawBatch (tanto as do tipo padrão quanto as de tipos que usam o DrawBatch no
+	seu método draw()). O lote é desenhado antes de qualquer outro desenho, de modo que a sobreposição entre as
+	bolas e os demais objetos continua a mesma. As bolas de tipos que implementam SpriteSkin são copiadas de uma
+	imagem do SpriteCache.
+*/
+
+public class AwtRenderer implements Renderer {
+
+	/**
+		Atributo privado que representa a cor usada pelos próximos textos.
+	*/
+
+	private Color textColor = Color.WHITE;
+
+	/**
+		Atributo privado que indica se o frame é mostrado na janela da GameLib.
+	*/
+
+	private final boolean window;
+
+	/**
+		Construtor da classe AwtRenderer. Abre a janela do jogo.
+
+		@param title título da janela.
+		@param width largura da janela.
+		@param height altura da janela.
+		@param safeMode indica se a janela deve ser inicializada no modo seguro da GameLib.
+	*/
+
+	public AwtRenderer(String title, int width, int height, boolean safeMode){
+
+		if(safeMode) GameLib.initGraphics_SAFE_MODE(title, width, height);
+		else GameLib.initGraphics(title, width, height);
+
+		this.window = true;
+	}
+
+	/**
+		Construtor da classe AwtRenderer que não abre uma janela: os desenhos são feitos no Graphics atual da
+		GameLib (veja GameLibAccess.setGraphics()), e display() não mostra nem apaga o frame.
+	*/
+
+	AwtRenderer(){
+
+		this.window = false;
+	}
+
+	public void drawBall(IBall ball){
+
+		//Bolas que implementam SpriteSkin são desenhadas a partir da imagem guardada no SpriteCache
+		if(ball instanceof SpriteSkin) SpriteCache.shared().draw(ball);
+		else ball.draw();
+	}
+
+	public void drawBall(double cx, double cy, double width, double height, Color color){
+
+		DrawBatch.fillRect(cx, cy, width, height, color);
+	}
+
+	public void drawWall(Wall wall){
+
+		DrawBatch.flush();
+		wall.draw();
+	}
+
+	public void drawTarget(Target target){
+
+		DrawBatch.flush();
+		target.draw();
+	}
+
+	public void drawPlayer(Player player){
+
+		DrawBatch.flush();
+		player.draw();
+	}
+
+	public void drawPlayer(double cx, double cy, double width, double height, Color color){
+
+		DrawBatch.flush();
+		GameLib.setColor(color);
+		GameLib.fillRect(cx, cy, width, height);
+	}
+
+	public void drawScore(Score score){
+
+		DrawBatch.flush();
+		TextCache.shared().drawScore(GameLibAccess.graphics(), score);
+	}
+
+	public void setColor(Color color){
+
+		DrawBatch.flush();
+		GameLib.setColor(color);
+		textColor = color;
+	}
+
+	public void drawText(String text, double y, int align){
+
+		DrawBatch.flush();
+		TextCache.shared().drawText(GameLibAccess.graphics(), text, y, align, textColor);
+	}
+
+	public void display(){
+
+		DrawBatch.flush();
+
+		if(window) GameLib.display();
+	}
+}
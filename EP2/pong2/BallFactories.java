@@ -0,0 +1,135 @@
+import java.awt.Color;
+import java.lang.invoke.*;
+import java.util.*;
+
+/**
+	Classe que associa cada tipo de bola à fábrica que cria as suas instâncias. Os tipos conhecidos (Ball, FxBall e
+	DiamondBall) têm fábricas registradas que chamam o construtor diretamente. Para outros tipos, a fábrica usa um
+	MethodHandle do construtor, obtido uma única vez, em vez de Constructor.newInstance() a cada bola criada.
+*/
+
+public final class BallFactories {
+
+	/**
+		Constante que representa os tipos dos parâmetros do construtor esperado de uma bola (os mesmos da classe Ball).
+	*/
+
+	private static final Class <?> [] CONSTRUCTOR_PARAMETERS = {
+		double.class, double.class, double.class, double.class, Color.class, double.class, double.class, double.class
+	};
+
+	/**
+		Constante que representa o tipo do construtor esperado de uma bola, devolvendo IBall.
+	*/
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(IBall.class, CONSTRUCTOR_PARAMETERS);
+
+	/**
+		Atributo privado que representa as fábricas registradas, por tipo de bola.
+	*/
+
+	private static final Map <Class<?>, BallFactory> factories = new HashMap <Class<?>, BallFactory> ();
+
+	static {
+
+		register(Ball.class, new BallFactory(){
+
+			public IBall create(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy){
+
+				return new Ball(cx, cy, width, height, color, speed, vx, vy);
+			}
+		});
+
+		register(FxBall.class, new BallFactory(){
+
+			public IBall create(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy){
+
+				return new FxBall(cx, cy, width, height, color, speed, vx, vy);
+			}
+		});
+
+		register(DiamondBall.class, new BallFactory(){
+
+			public IBall create(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy){
+
+				return new DiamondBall(cx, cy, width, height, color, speed, vx, vy);
+			}
+		});
+	}
+
+	private BallFactories(){ }
+
+	/**
+		Registra a fábrica de um tipo de bola, substituindo a fábrica anterior, se houver.
+
+		@param ballClass tipo de bola.
+		@param factory fábrica que cria as instâncias do tipo.
+	*/
+
+	public static synchronized void register(Class<?> ballClass, BallFactory factory){
+
+		factories.put(ballClass, factory);
+	}
+
+	/**
+		Obtém a fábrica de um tipo de bola. Se o tipo não foi registrado, é criada (e registrada) uma fábrica que
+		chama, através de um MethodHandle, o construtor público com os mesmos parâmetros do construtor de Ball.
+
+		@param ballClass tipo de bola.
+		@return a fábrica do tipo.
+		@throws IllegalArgumentException se o tipo não implementa IBall ou não tem o construtor esperado.
+	*/
+
+	public static synchronized BallFactory of(Class<?> ballClass){
+
+		BallFactory factory = factories.get(ballClass);
+
+		if(factory == null){
+
+			factory = constructorFactory(ballClass);
+			factories.put(ballClass, factory);
+		}
+
+		return factory;
+	}
+
+	/**
+		Cria uma fábrica que chama o construtor de um tipo de bola através de um MethodHandle.
+
+		@param ballClass tipo de bola.
+		@return a fábrica criada.
+	*/
+
+	private static BallFactory constructorFactory(Class<?> ballClass){
+
+		if(!IBall.class.isAssignableFrom(ballClass)) throw new IllegalArgumentException("A classe '" + ballClass.getName() + "' não implementa IBall.");
+
+		final MethodHandle constructor;
+
+		try{
+			constructor = MethodHandles.publicLookup().findConstructor(ballClass, CONSTRUCTOR_TYPE.changeReturnType(void.class)).asType(CONSTRUCTOR_TYPE);
+		}
+		catch(Exception e){
+
+			throw new IllegalArgumentException("A classe '" + ballClass.getName() + "' não tem um construtor público como o da classe Ball.", e);
+		}
+
+		return new BallFactory(){
+
+			public IBall create(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy){
+
+				try{
+					return (IBall) constructor.invokeExact(cx, cy, width, height, color, speed, vx, vy);
+				}
+				catch(RuntimeException e){
+
+					throw e;
+				}
+				catch(Throwable t){
+
+					throw new IllegalStateException(t);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,25 @@
+import java.awt.Color;
+
+/**
+	Interface que representa uma forma de criar instâncias de um tipo de bola. As fábricas são obtidas uma única
+	vez (através da classe BallFactories), de modo que criar uma bola não envolve reflexão.
+*/
+
+public interface BallFactory {
+
+	/**
+		Cria uma bola.
+
+		@param cx coordenada x da posição inicial da bola (centro do retangulo que a representa).
+		@param cy coordenada y da posição inicial da bola (centro do retangulo que a representa).
+		@param width largura do retangulo que representa a bola.
+		@param height altura do retangulo que representa a bola.
+		@param color cor da bola.
+		@param speed velocidade da bola (em pixels por millisegundo).
+		@param vx componente x do vetor unitário (normalizado) que representa a direção da bola.
+		@param vy componente y do vetor unitário (normalizado) que representa a direção da bola.
+		@return a bola criada.
+	*/
+
+	IBall create(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy);
+}
@@ -1,21 +1,42 @@
 import java.awt.Color;
-import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
 	Classe que gerencia uma ou mais bolas presentes em uma partida. Esta classe é a responsável por instanciar 
 	e gerenciar a bola principal do jogo (aquela que existe desde o ínicio de uma partida), assim como eventuais 
 	bolas extras que apareçam no decorrer da partida. Esta classe também deve gerenciar a interação da(s) bola(s)
 	com os alvos, bem como a aplicação dos efeitos produzidos para cada tipo de alvo atingido.
+
+	O estado de todas as bolas fica em um BallStore (arrays paralelos de tipos primitivos), no qual a bola principal
+	ocupa o índice 0. Instâncias de IBall são criadas apenas para desenhar bolas de tipos personalizados.
+
+	Quando a quantidade de bolas passa de um limite (veja setParallelism()), a atualização das posições e o
+	tratamento das colisões são divididos em partes processadas em paralelo por um ForkJoinPool. Cada parte
+	altera apenas as suas próprias bolas e guarda os demais efeitos das colisões (contagem de colisões, fim de
+	boosts e novas bolas); os efeitos são aplicados depois, na ordem das partes, de modo que o resultado é
+	exatamente o mesmo do processamento sequencial.
+
+	As colisões com os objetos de uma CollisionGrid (veja checkCollisions()) são contínuas: o trecho percorrido
+	por cada bola no passo é testado contra os objetos, a bola é levada até o primeiro ponto de impacto e percorre
+	o restante do passo na nova direção, podendo colidir com outros objetos no mesmo passo. Assim, uma bola rápida
+	(com boost, ou em um passo longo) não atravessa paredes e jogadores. Os métodos checkCollision() que tratam
+	um único objeto testam apenas a sobreposição na posição final.
 */
 
 public class BallManager {
 
 	/**
-		Atributo privado que representa a bola principal do jogo.	
+		Constante que define o índice da bola principal no BallStore.
+	*/
+
+	private static final int MAIN_BALL = 0;
+
+	/**
+		Atributo privado que representa o estado de todas as bolas (a bola principal e as bolas duplicadas).
 	*/
 
-	private IBall theBall = null;
+	private BallStore balls = new BallStore();
 
 	/**
 		Atributo privado que representa o tipo (classe) das instâncias de bola que serão criadas por esta classe.
@@ -23,6 +44,25 @@ public class BallManager {
 
 	private Class<?> ballClass = null;
 
+	/**
+		Atributo privado que representa a fábrica das instâncias de bola, obtida uma única vez no construtor.
+	*/
+
+	private BallFactory ballFactory = null;
+
+	/**
+		Constante que define a quantidade máxima de instâncias de bola guardadas para reaproveitamento.
+	*/
+
+	private static final int MAX_POOLED_VIEWS = 4096;
+
+	/**
+		Atributo privado que representa as instâncias de bola de bolas removidas, que são reaproveitadas pelas
+		próximas bolas criadas em vez de novas instâncias serem alocadas.
+	*/
+
+	private ArrayDeque <IBall> viewPool = new ArrayDeque <IBall> ();
+
 	/**
 		Atributo privado que representa a velocidade da bola antes do boost.	
 	*/
@@ -30,11 +70,135 @@ public class BallManager {
 	private double defaultSpeed;
 
 	/**
-		Atributo privado que representa uma fila de bolas duplicadas	
+		Constante que identifica o evento de fim do boost de uma bola.
+	*/
+
+	private static final int BOOST_END = 0;
+
+	/**
+		Constante que identifica o evento de expiração de uma bola duplicada.
+	*/
+
+	private static final int EXPIRE = 1;
+
+	/**
+		Constante que define a quantidade de posições da roda do agendador.
+	*/
+
+	static final int TIMER_SLOTS = 1024;
+
+	/**
+		Atributo privado que representa o agendador dos eventos de fim de boost e de expiração das bolas duplicadas.
+		Os eventos são movidos pelo relógio do jogo, avançado pelo método update().
+	*/
+
+	private TimingWheel timers = new TimingWheel(TIMER_SLOTS);
+
+	/**
+		Atributo privado que representa o objeto que trata os eventos do agendador. Os eventos guardam apenas o
+		handle da bola, e são ignorados se a bola já tiver sido removida.
+	*/
+
+	private TimingWheel.Listener timerListener = new TimingWheel.Listener(){
+
+		public void expired(int type, long handle){
+
+			int slot = balls.slotOf(handle);
+
+			if(slot < 0) return;
+
+			//Altera a velocidade da bola de volta a velocidade inicial
+			if(type == BOOST_END) balls.speed[slot] = defaultSpeed;
+
+			//Exclui a bola duplicada
+			else if(type == EXPIRE) removeBall(slot);
+		}
+	};
+
+	/**
+		Constante que define a quantidade padrão de bolas a partir da qual a atualização e as colisões são
+		processadas em paralelo.
+	*/
+
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 8192;
+
+	/**
+		Constante que define a quantidade mínima de bolas de cada parte processada em paralelo.
+	*/
+
+	private static final int MIN_CHUNK_SIZE = 1024;
+
+	/**
+		Constante que representa a quantidade de processadores disponíveis. Com um único processador o
+		processamento paralelo só acrescenta custos, e por isso não é usado.
+	*/
+
+	private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+	/**
+		Atributo privado que representa a quantidade de bolas a partir da qual o processamento é feito em paralelo.
+	*/
+
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	/**
+		Atributo privado que representa o pool que processa as partes em paralelo (ou null para processar sempre de
+		forma sequencial).
+	*/
+
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+		Atributo privado que representa os efeitos das colisões de cada parte (a posição 0 também é usada no
+		processamento sequencial).
+	*/
+
+	private CollisionEffects [] chunkEffects = new CollisionEffects[0];
+
+	/**
+		Atributo privado que representa a consulta à grade de colisão usada por cada parte.
+	*/
+
+	private CollisionGrid.Query [] chunkQueries = new CollisionGrid.Query[0];
+
+	/**
+		Atributo privado que representa a grade para a qual as consultas de chunkQueries foram criadas.
+	*/
+
+	private CollisionGrid queryGrid = null;
+
+	/**
+		Constante que define a quantidade máxima de colisões de uma bola tratadas em um passo. Depois disso, a bola
+		percorre o restante do passo sem testar colisões.
 	*/
 
-	private Queue <IBall> duplicateBalls = new LinkedList <IBall> ();
+	private static final int MAX_CONTACTS = 4;
 
+	/**
+		Atributo privado que representa a duração (em milisegundos) do último passo, usada para percorrer o restante
+		do passo depois de uma colisão.
+	*/
+
+	private long stepDelta = 0;
+
+	/**
+		Atributo privado que indica se as bolas colidem entre si.
+	*/
+
+	private boolean ballCollisions = false;
+
+	/**
+		Atributo privado que representa a busca dos pares de bolas que se sobrepõem.
+	*/
+
+	private SortAndSweep ballSweep = new SortAndSweep();
+
+	/**
+		Atributo privado que representa o gerador de números aleatórios usado para definir a direção das bolas
+		duplicadas. Com um gerador criado a partir de uma semente conhecida, a partida pode ser reproduzida.
+	*/
+
+	private CopyableRandom random = new CopyableRandom();
 
 	/**
 		Construtor da classe BallManager.
@@ -52,27 +216,37 @@ public class BallManager {
 			System.out.println("Classe '" + className + "' não reconhecida... Usando 'Ball' como classe padrão.");
 			ballClass = Ball.class;
 		}
+
+		if(ballClass == Ball.class) return;
+
+		try{
+			ballFactory = BallFactories.of(ballClass);
+		}
+		catch(IllegalArgumentException e){
+
+			System.out.println("Falha na instanciação da bola do tipo '" + ballClass.getName() + "' ... Instanciando bola do tipo 'Ball'");
+			ballClass = Ball.class;
+		}
 	}
 
 	/**
-		Recebe as componetes x e y de um vetor, e devolve as componentes x e y do vetor normalizado (isto é, com comprimento igual a 1.0).
+		Recebe as componetes x e y de um vetor, e devolve o seu comprimento, usado para normalizá-lo (isto é,
+		para obter o vetor de mesma direção com comprimento igual a 1.0) sem alocar um array.
 	
 		@param x componente x de um vetor que representa uma direção.
 		@param y componente y de um vetor que represetna uma direção.
 
-		@return array contendo dois valores double que representam as componentes x (índice 0) e y (índice 1) do vetor normalizado (unitário).
+		@return comprimento do vetor.
 	*/
-	private double [] normalize(double x, double y){
+	private static double length(double x, double y){
 
-		double length = Math.sqrt(x * x + y * y);
-
-		return new double [] { x / length, y / length };
+		return Math.sqrt(x * x + y * y);
 	}
 	
 	/**
-		Cria uma instancia de bola, a partir do tipo (classe) cujo nome foi passado ao construtor desta classe.
-		O vetor direção definido por (vx, vy) não precisa estar normalizado. A implemntação do método se encarrega
-		de fazer a normalização.
+		Cria a instancia de bola usada para desenhar uma bola de tipo personalizado, a partir do tipo (classe) cujo nome
+		foi passado ao construtor desta classe. Bolas do tipo Ball não precisam de instância, pois são desenhadas
+		diretamente a partir do BallStore.
 
 		@param cx coordenada x da posição inicial da bola (centro do retangulo que a representa).
 		@param cy coordenada y da posição inicial da bola (centro do retangulo que a representa).
@@ -80,28 +254,88 @@ public class BallManager {
 		@param height altura do retangulo que representa a bola.
 		@param color cor da bola.
 		@param speed velocidade da bola (em pixels por millisegundo).
-		@param vx componente x do vetor (não precisa ser unitário) que representa a direção da bola.
-		@param vy componente y do vetor (não precisa ser unitário) que representa a direção da bola.
+		@param vx componente x do vetor unitário que representa a direção da bola.
+		@param vy componente y do vetor unitário que representa a direção da bola.
+		@return a instância criada, ou null se a bola deve ser desenhada da forma padrão.
 	*/
 
 	private IBall createBallInstance(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy){
 
-		IBall ball = null;
-		double [] v = normalize(vx, vy);
+		if(ballClass == Ball.class) return null;
+
+		//O estado da instância é todo copiado do BallStore antes de cada desenho, por isso ela não precisa ser
+		//reinicializada
+		if(!viewPool.isEmpty()) return viewPool.pop();
 
 		try{
-			Constructor<?> constructor = ballClass.getConstructors()[0];
-			ball = (IBall) constructor.newInstance(cx, cy, width, height, color, speed, v[0], v[1]);
-			defaultSpeed = speed;
+			IBall ball = ballFactory.create(cx, cy, width, height, color, speed, vx, vy);
+
+			if(BallView.supports(ball)) return ball;
+
+			System.out.println("A classe '" + ballClass.getName() + "' não estende Ball... Usando o desenho da bola do tipo 'Ball'");
 		}
-		catch(Exception e){
+		catch(RuntimeException e){
 
 			System.out.println("Falha na instanciação da bola do tipo '" + ballClass.getName() + "' ... Instanciando bola do tipo 'Ball'");
-			ball = new Ball(cx, cy, width, height, color, speed, v[0], v[1]);
 		}
 
-		return ball;
-	} 
+		ballClass = Ball.class;
+
+		return null;
+	}
+
+	/**
+		Remove a bola de índice i, guardando a sua instância de desenho (se houver) para reaproveitamento.
+
+		@param i índice da bola removida.
+	*/
+
+	private void removeBall(int i){
+
+		IBall view = balls.view[i];
+
+		if(view != null && viewPool.size() < MAX_POOLED_VIEWS) viewPool.push(view);
+
+		balls.remove(i);
+	}
+
+	/**
+		Remove as bolas a partir do índice indicado.
+
+		@param newSize quantidade de bolas que serão mantidas.
+	*/
+
+	private void truncate(int newSize){
+
+		while(balls.size() > newSize) removeBall(balls.size() - 1);
+	}
+
+	/**
+		Adiciona uma bola ao BallStore. O vetor direção definido por (vx, vy) não precisa estar normalizado.
+		A implementação do método se encarrega de fazer a normalização.
+
+		@param cx coordenada x da posição inicial da bola (centro do retangulo que a representa).
+		@param cy coordenada y da posição inicial da bola (centro do retangulo que a representa).
+		@param width largura do retangulo que representa a bola.
+		@param height altura do retangulo que representa a bola.
+		@param color cor da bola.
+		@param speed velocidade da bola (em pixels por millisegundo).
+		@param vx componente x do vetor (não precisa ser unitário) que representa a direção da bola.
+		@param vy componente y do vetor (não precisa ser unitário) que representa a direção da bola.
+		@param expiresAt instante (no relógio do jogo) em que a bola expira, ou BallStore.NEVER.
+	*/
+
+	private void addBall(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy, long expiresAt){
+
+		double length = length(vx, vy);
+
+		vx /= length;
+		vy /= length;
+
+		long handle = balls.add(cx, cy, width, height, color, speed, vx, vy, expiresAt, createBallInstance(cx, cy, width, height, color, speed, vx, vy));
+
+		if(expiresAt != BallStore.NEVER) timers.schedule(expiresAt, EXPIRE, handle);
+	}
 
 	/**
 		Cria a bola principal do jogo. Este método é chamado pela classe Pong, que contem uma instância de BallManager.
@@ -118,53 +352,227 @@ public class BallManager {
 
 	public void initMainBall(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy){
 
-		theBall = createBallInstance(cx, cy, width, height, color, speed, vx, vy);
+		defaultSpeed = speed;
+		truncate(0);
+		timers.clear();
+		addBall(cx, cy, width, height, color, speed, vx, vy, BallStore.NEVER);
+	}
+
+	/**
+		Adiciona uma bola duplicada, sem agendar a sua expiração. Usado pelos benchmarks
+		para montar cenários com uma quantidade controlada de bolas.
+
+		@param cx coordenada x da posição inicial da bola (centro do retangulo que a representa).
+		@param cy coordenada y da posição inicial da bola (centro do retangulo que a representa).
+		@param vx componente x do vetor (não precisa ser unitário) que representa a direção da bola.
+		@param vy componente y do vetor (não precisa ser unitário) que representa a direção da bola.
+	*/
+
+	void addDuplicateBall(double cx, double cy, double vx, double vy){
+
+		addBall(cx, cy, balls.width[MAIN_BALL], balls.height[MAIN_BALL], Color.RED, defaultSpeed, vx, vy, BallStore.NEVER);
+	}
+
+	/**
+		Remove todas as bolas duplicadas, mantendo apenas a bola principal.
+	*/
+
+	void clearDuplicateBalls(){
+
+		truncate(1);
+	}
+
+	/**
+		Define a partir de quantas bolas a atualização e as colisões são processadas em paralelo.
+
+		@param threshold quantidade mínima de bolas para o processamento paralelo.
+		@param pool pool que processa as partes, ou null para processar sempre de forma sequencial.
+	*/
+
+	public void setParallelism(int threshold, ForkJoinPool pool){
+
+		this.parallelThreshold = threshold;
+		this.pool = pool;
+	}
+
+	/**
+		Define o gerador de números aleatórios usado para definir a direção das bolas duplicadas.
+
+		@param random gerador usado.
+	*/
+
+	public void setRandom(CopyableRandom random){
+
+		this.random = random;
+	}
+
+	/**
+		Copia o estado das bolas, dos eventos pendentes e do gerador de números aleatórios para um MatchState.
+
+		@param state cópia que será preenchida.
+	*/
+
+	void saveState(MatchState state){
+
+		state.balls.copyFrom(balls);
+		state.timers.copyFrom(timers);
+		state.random = random.getState();
+	}
+
+	/**
+		Restaura o estado das bolas, dos eventos pendentes e do gerador de números aleatórios a partir de um MatchState.
+
+		@param state cópia restaurada.
+	*/
+
+	void restoreState(MatchState state){
+
+		balls.copyFrom(state.balls);
+		timers.copyFrom(state.timers);
+		random.setState(state.random);
+
+		//As instâncias de desenho guardadas podem voltar a ser usadas pelas bolas restauradas
+		viewPool.clear();
+	}
+
+	/**
+		@return um resumo (hash) do estado de todas as bolas (veja BallStore.checksum()).
+	*/
+
+	public long checksum(){
+
+		return balls.checksum();
+	}
+
+	/**
+		Ativa ou desativa as colisões entre bolas, tratadas por checkCollisions() depois das colisões com os objetos
+		da grade.
+
+		@param enabled true para que as bolas colidam entre si, false para que elas se atravessem.
+	*/
+
+	public void setBallCollisions(boolean enabled){
+
+		ballCollisions = enabled;
+	}
+
+	/**
+		@return true se as bolas colidem entre si, false caso contrário.
+	*/
+
+	public boolean hasBallCollisions(){
+
+		return ballCollisions;
+	}
+
+	/**
+		@return o tempo de jogo (em milisegundos), ou seja, a soma das durações dos passos simulados.
+	*/
+
+	public long getTime(){
+
+		return timers.now();
+	}
+
+	/**
+		@return quantidade de bolas gerenciadas (a bola principal mais as bolas duplicadas).
+	*/
+
+	public int getBallCount(){
+
+		return balls.size();
 	}
 
 	/**
 		Método que desenha todas as bolas gerenciadas pela instância de BallManager.
 		Chamado sempre que a(s) bola(s) precisa ser (re)desenhada(s).
+
+		@param renderer backend de desenho que receberá as bolas.
 	*/
 
-	public void draw() throws ConcurrentModificationException{
+	public void draw(Renderer renderer){
 
-		try{
-			theBall.draw();
+		draw(renderer, 1.0);
+	}
+
+	/**
+		Método que desenha todas as bolas gerenciadas pela instância de BallManager em uma posição interpolada
+		entre a posição anterior e a posição atual de cada bola. Usado quando o desenho acontece entre dois
+		passos da simulação.
+
+		@param renderer backend de desenho que receberá as bolas.
+		@param alpha fração (entre 0 e 1) do intervalo entre a última atualização e a próxima já decorrida.
+	*/
+
+	public void draw(Renderer renderer, double alpha){
+
+		draw(renderer, balls, alpha);
+	}
+
+	/**
+		Desenha as bolas de um BallStore (por exemplo, uma cópia obtida pelo método snapshot()) em uma posição
+		interpolada entre a posição anterior e a posição atual de cada bola.
+
+		@param renderer backend de desenho que receberá as bolas.
+		@param balls bolas que serão desenhadas.
+		@param alpha fração (entre 0 e 1) do intervalo entre a última atualização e a próxima já decorrida.
+	*/
+
+	static void draw(Renderer renderer, BallStore balls, double alpha){
+
+		int n = balls.size();
+
+		//Percorre todas as bolas e as redesenha
+		for(int i = 0; i < n; i++){
+
+			IBall view = balls.view[i];
+			double x = balls.interpolatedCx(i, alpha);
+			double y = balls.interpolatedCy(i, alpha);
 
-			//Iterador da fila de bolas duplicadas
-			Iterator <IBall> iteratorBalls = duplicateBalls.iterator();
-			//Percorre todas as bolas e as redesenha
-			while (iteratorBalls.hasNext()){
-				iteratorBalls.next().draw();
+			if(view == null){
+
+				renderer.drawBall(x, y, balls.width[i], balls.height[i], balls.color[i]);
+			}
+			else{
+
+				//Bolas de tipos personalizados são desenhadas pela sua própria instância, atualizada a partir do BallStore
+				BallView.sync(view, balls, i, x, y);
+				renderer.drawBall(view);
 			}
-		}catch(Exception e){
-			System.out.println(e);
 		}
-		
+	}
+
+	/**
+		Copia o estado de todas as bolas para outro BallStore, que pode ser lido (por exemplo, por uma thread de
+		desenho) enquanto a simulação continua.
+
+		@param target BallStore que recebe a cópia.
+	*/
+
+	public void snapshot(BallStore target){
+
+		target.copyFrom(balls);
 	}
 	
 	/**
 		Método que atualiza todas as bolas gerenciadas pela instância de BallManager, em decorrência da passagem do tempo.
+		Boosts e bolas duplicadas cujo tempo de duração terminou são encerrados antes da atualização das posições.
 		
 		@param delta quantidade de millisegundos que se passou entre o ciclo anterior de atualização do jogo e o atual.
 	*/
 
-	public void update(long delta) throws ConcurrentModificationException{
-		
-		try{
-			theBall.update(delta);
+	public void update(long delta){
 
-			//Iterador da fila de bolas duplicadas
-			Iterator <IBall> iteratorBalls = duplicateBalls.iterator();
+		stepDelta = delta;
 
-			//Percorre todas as bolas e as atualiza
-			while (iteratorBalls.hasNext()){
-				iteratorBalls.next().update(delta);
-			}
-			
-		}catch(Exception e){
-			System.out.println(e);
-		}
+		//Primeiro avança o relógio do jogo, encerrando boosts e removendo as bolas que expiraram
+		timers.advance(timers.now() + delta, timerListener);
+
+		int n = balls.size();
+		int chunks = chunkCount(n);
+
+		if(chunks == 1) balls.update(delta);
+		else pool.invoke(new ChunkTask(ChunkTask.UPDATE, 0, chunks, chunks, n, delta, null));
 	}
 	
 	/**
@@ -178,15 +586,18 @@ public class BallManager {
 	public int checkCollision(Wall wall){
 
 		int hits = 0;
+		int n = balls.size();
 
-		if(theBall.checkCollision(wall)) hits++;
+		double wcx = wall.getCx();
+		double wcy = wall.getCy();
+		double wwidth = wall.getWidth();
+		double wheight = wall.getHeight();
+		CollisionEffects effects = effects(0);
 
-		//Iterador da fila de bolas duplicadas
-		Iterator <IBall> iteratorBalls = duplicateBalls.iterator();
+		//Percorre todas as bolas e trata suas colisões com a parede
+		for(int i = 0; i < n; i++){
 
-		//Percorre todas as bolas e trata suas colisões com as paredes
-		while (iteratorBalls.hasNext()){
-			if(iteratorBalls.next().checkCollision(wall)) hits++;
+			if(collide(i, wall, wcx, wcy, wwidth, wheight, effects)) hits++;
 		}
 
 		return hits;
@@ -200,16 +611,19 @@ public class BallManager {
 	
 	public void checkCollision(Player player){
 
-		theBall.checkCollision(player);
+		int n = balls.size();
 
-		//Iterador da fila de bolas duplicadas
-		Iterator <IBall> iteratorBalls = duplicateBalls.iterator();
+		double pcx = player.getCx();
+		double pcy = player.getCy();
+		double pwidth = player.getWidth();
+		double pheight = player.getHeight();
+		CollisionEffects effects = effects(0);
 
-		//Percorre todas as bolas e trata suas colisões com os jogadores
-		while (iteratorBalls.hasNext()){
-			iteratorBalls.next().checkCollision(player);
-		}
+		//Percorre todas as bolas e trata suas colisões com o jogador
+		for(int i = 0; i < n; i++){
 
+			collide(i, player, pcx, pcy, pwidth, pheight, effects);
+		}
 	}
 
 	/**
@@ -220,163 +634,548 @@ public class BallManager {
 
 	public void checkCollision(Target target){
 
-		//Se a bola principal realizou colisão com algum alvo
-		if(theBall.checkCollision(target)){
+		//Bolas criadas durante este laço não são verificadas, assim como na versão com fila temporária
+		int n = balls.size();
 
-			
-			//Se o alvo for BoostTarget
-			if(target instanceof BoostTarget){
-				
-				//Se a bola tem a velocidade padrão, ou seja, ainda não teve a velocidade aumentada
-				if(theBall.getSpeed() == defaultSpeed){
+		double tcx = target.getCx();
+		double tcy = target.getCy();
+		double twidth = target.getWidth();
+		double theight = target.getHeight();
+		CollisionEffects effects = effects(0);
 
-					//Altera a velocidade da bola de acordo com a constante BOOST_FACTOR
-					theBall.setSpeed(defaultSpeed * BoostTarget.BOOST_FACTOR);
+		//Percorre todas as bolas
+		for(int i = 0; i < n; i++){
 
-					//Inicializa o timer
-					timerBoostMainBall();
-				}
+			collide(i, target, tcx, tcy, twidth, theight, effects);
+		}
 
+		apply(effects);
+	}
 
-			//Se o alvo for DuplicatorTarget
-			}else if(target instanceof DuplicatorTarget){
+	/**
+		Método que processa, em uma única passada pelas bolas, as colisões com todos os objetos registrados em uma
+		CollisionGrid. Cada bola é testada apenas contra os objetos das células que o seu trecho percorrido no passo
+		atravessa, e colide primeiro com o objeto que atinge primeiro (em caso de empate, o primeiro registrado na grade).
 
-				//Define os eixos aleatóriamente
-				double vx = 0.85 + Math.random() * 0.15;
-				double vy = Math.sqrt(1.0 - vx * vx);
-				if(Math.random() < 0.5) vx = -vx;
+		@param grid grade com as paredes, alvos e jogadores da partida.
+		@param hits array, indexado pelo índice dos objetos na grade, no qual é somada a quantidade de bolas que
+		colidiram com cada objeto.
+	*/
+
+	public void checkCollisions(CollisionGrid grid, int [] hits){
 
-				//Cria uma instância de uma nova bola
-				IBall newBall = (IBall) createBallInstance(theBall.getCx(), theBall.getCy(), theBall.getWidth(), theBall.getHeight(), Color.RED, defaultSpeed, vx, vy);
+		//Bolas criadas durante este laço não são verificadas
+		int n = balls.size();
+		int chunks = chunkCount(n);
 
-				//Adiciona a nova bola na fila
-				duplicateBalls.add(newBall);
+		prepareChunks(chunks, grid);
 
-				//Inicia o timer
-				timerDuplicator();
+		if(chunks == 1) collideRange(0, n, grid, chunkQueries[0], chunkEffects[0]);
+		else pool.invoke(new ChunkTask(ChunkTask.COLLIDE, 0, chunks, chunks, n, 0, grid));
 
+		//Aplica os efeitos na ordem das partes, a mesma ordem do processamento sequencial
+		for(int c = 0; c < chunks; c++){
+
+			CollisionEffects effects = chunkEffects[c];
+
+			for(int id = 0; id < hits.length; id++){
+
+				hits[id] += effects.hits[id];
+				effects.hits[id] = 0;
 			}
-			
+
+			apply(effects);
 		}
 
-		//Como não podemos iterar sobre uma fila e modificá-la ao mesmo tempo usaremos uma fila temporária
-		Queue <IBall> newBalls = new LinkedList <IBall> ();
+		if(ballCollisions) checkBallCollisions();
+	}
 
-		//Percorre todas as bolas
-		for (IBall balls : duplicateBalls){
-
-			//Se alguma bola colidiu com um alvo
-			if(balls.checkCollision(target)){
-				
-				//Se o alvo for BoostTarget
-				if(target instanceof BoostTarget){
-				
-					//Se a bola tem a velocidade padrão, ou seja, ainda não teve a velocidade aumentada
-					if(balls.getSpeed() == defaultSpeed){
-
-						//Altera a velocidade da bola de acordo com a constante BOOST_FACTOR
-						balls.setSpeed(defaultSpeed * BoostTarget.BOOST_FACTOR);
-
-						//Inicializa o timer
-						timerBoostDuplicateBalls(balls);
-					}
-				
-				//Se o alvo for DuplicatorTarget
-				}else if(target instanceof DuplicatorTarget){
-					
-					//Define os eixos aleatóriamente
-					double vx = 0.85 + Math.random() * 0.15;
-					double vy = Math.sqrt(1.0 - vx * vx);
-					if(Math.random() < 0.5) vx = -vx;
+	/**
+		Processa as colisões entre as bolas (mesmo que as colisões entre bolas estejam desativadas). Os pares de
+		bolas que se sobrepõem são encontrados pela classe SortAndSweep e tratados na ordem em que são encontrados.
+
+		@return quantidade de pares de bolas que colidiram.
+	*/
+
+	public int checkBallCollisions(){
+
+		int found = ballSweep.update(balls);
+		int collided = 0;
+
+		for(int k = 0; k < found; k++){
+
+			if(collideBalls(ballSweep.first(k), ballSweep.second(k))) collided++;
+		}
+
+		return collided;
+	}
+
+	/**
+		Processa a colisão entre duas bolas que se sobrepõem. O contato ocorre no eixo em que a sobreposição é menor
+		e, se as bolas estão se aproximando nesse eixo, elas trocam as componentes das suas velocidades nesse eixo,
+		como em uma colisão elástica entre bolas de mesma massa. Cada bola mantém o módulo da sua velocidade (de modo
+		que o boost continua valendo), e bolas recém criadas não colidem, assim como com os demais objetos.
+
+		Trocar as componentes (em vez de simplesmente fazer cada bola se afastar da outra) importa quando muitas
+		bolas se acumulam junto a uma parede: depois que a parede as rebate, todas se afastam dela, e a troca mantém
+		todas se afastando; afastar cada bola da outra mandaria de volta para a parede uma bola de cada par, e as
+		bolas ficariam presas ali.
+
+		@param a índice de uma das bolas.
+		@param b índice da outra bola.
+		@return true se as bolas colidiram, false se elas já estavam se afastando.
+	*/
+
+	private boolean collideBalls(int a, int b){
+
+		if(balls.ignoreCounter[a] > 0 || balls.ignoreCounter[b] > 0) return false;
+
+		double dx = balls.cx[b] - balls.cx[a];
+		double dy = balls.cy[b] - balls.cy[a];
+		double overlapX = (balls.width[a] + balls.width[b]) / 2 - Math.abs(dx);
+		double overlapY = (balls.height[a] + balls.height[b]) / 2 - Math.abs(dy);
+
+		if(overlapX <= overlapY){
+
+			//Lado da bola b em relação à bola a, no eixo x
+			double side = (dx >= 0) ? 1 : -1;
+
+			double va = balls.vx[a] * balls.speed[a];
+			double vb = balls.vx[b] * balls.speed[b];
+
+			if((vb - va) * side >= 0) return false;
+
+			setVelocity(a, vb, balls.vy[a] * balls.speed[a]);
+			setVelocity(b, va, balls.vy[b] * balls.speed[b]);
+		}
+		else{
+
+			double side = (dy >= 0) ? 1 : -1;
+			double va = balls.vy[a] * balls.speed[a];
+			double vb = balls.vy[b] * balls.speed[b];
+
+			if((vb - va) * side >= 0) return false;
+
+			setVelocity(a, balls.vx[a] * balls.speed[a], vb);
+			setVelocity(b, balls.vx[b] * balls.speed[b], va);
+		}
+
+		//Com a nova direção, as bolas podem voltar a atingir o último objeto que as rebateu (por exemplo, a parede junto
+		//à qual colidiram). Os alvos não rebatem as bolas: uma bola ainda dentro de um alvo o atingiria de novo a cada
+		//colisão com outra bola (e um alvo duplicador criaria bolas sem parar), por isso eles continuam ignorados
+		if(bounces(balls.lastHit[a])) balls.lastHit[a] = null;
+		if(bounces(balls.lastHit[b])) balls.lastHit[b] = null;
+
+		return true;
+	}
+
+	/**
+		Muda a direção de uma bola para a direção de um vetor de velocidade, mantendo o módulo da sua velocidade. Um
+		vetor nulo não muda a direção da bola.
+
+		@param i índice da bola.
+		@param x componente x do vetor de velocidade.
+		@param y componente y do vetor de velocidade.
+	*/
+
+	private void setVelocity(int i, double x, double y){
+
+		double length = Math.sqrt(x * x + y * y);
+
+		if(length == 0) return;
+
+		balls.vx[i] = x / length;
+		balls.vy[i] = y / length;
+	}
+
+	/**
+		@return true se o objeto rebate as bolas que o atingem (paredes e jogadores), false caso contrário.
+	*/
+
+	private static boolean bounces(Object other){
+
+		return other instanceof Wall || other instanceof Player;
+	}
+
+	/**
+		Processa as colisões das bolas de índices from (inclusive) a to (exclusive) com os objetos de uma CollisionGrid,
+		guardando os efeitos que não dizem respeito apenas à própria bola.
+
+		@param from índice da primeira bola.
+		@param to índice seguinte ao da última bola.
+		@param grid grade com as paredes, alvos e jogadores da partida.
+		@param query consulta à grade usada exclusivamente por esta chamada.
+		@param effects efeitos das colisões, incluindo a contagem de colisões de cada objeto da grade.
+	*/
+
+	private void collideRange(int from, int to, CollisionGrid grid, CollisionGrid.Query query, CollisionEffects effects){
+
+		for(int i = from; i < to; i++){
+
+			double halfWidth = balls.width[i] / 2;
+			double halfHeight = balls.height[i] / 2;
+
+			//Trecho percorrido pela bola no passo: da posição anterior até a posição atual
+			double px = balls.prevCx[i];
+			double py = balls.prevCy[i];
+			double remaining = 1.0;
+
+			for(int contact = 0; contact < MAX_CONTACTS; contact++){
 
-					//Cria uma instância de uma nova bola
-					IBall newBallDuplicated = (IBall) createBallInstance(balls.getCx(), balls.getCy(), balls.getWidth(), balls.getHeight(), Color.RED, defaultSpeed, vx, vy);
+				double dx = balls.cx[i] - px;
+				double dy = balls.cy[i] - py;
+				double minX = Math.min(px, balls.cx[i]) - halfWidth;
+				double minY = Math.min(py, balls.cy[i]) - halfHeight;
+				double maxX = Math.max(px, balls.cx[i]) + halfWidth;
+				double maxY = Math.max(py, balls.cy[i]) + halfHeight;
+				int found = query.run(minX, minY, maxX, maxY);
+				int first = -1;
+				double firstTime = 1;
 
-					//Adiciona a nova bola na fila de bolas temporárias
-					newBalls.add(newBallDuplicated);
+				//Procura o primeiro objeto atingido no trecho (em caso de empate, o primeiro registrado na grade)
+				for(int k = 0; k < found; k++){
 
+					int id = query.candidate(k);
+
+					if(!balls.canHit(i, grid.collider[id])) continue;
+
+					double t = BallStore.sweep(px, py, dx, dy, halfWidth, halfHeight, grid.cx[id], grid.cy[id], grid.width[id], grid.height[id]);
+
+					if(t < firstTime){
+
+						first = id;
+						firstTime = t;
+					}
 				}
+
+				if(first < 0) break;
+
+				//Leva a bola até o ponto de impacto e aplica a colisão
+				balls.cx[i] = px + dx * firstTime;
+				balls.cy[i] = py + dy * firstTime;
+
+				hit(i, grid.collider[first], grid.cy[first], grid.height[first], effects);
+				effects.hits[first]++;
+
+				//O restante do passo é percorrido a partir do ponto de impacto, com a nova direção e velocidade
+				remaining *= 1 - firstTime;
+				px = balls.cx[i];
+				py = balls.cy[i];
+
+				double distance = balls.speed[i] * stepDelta * remaining;
+
+				balls.cx[i] = px + balls.vx[i] * distance;
+				balls.cy[i] = py + balls.vy[i] * distance;
 			}
 		}
+	}
+
+	/**
+		Calcula em quantas partes as bolas devem ser divididas.
 
-		//Percorre a fila temporária de bolas duplicadas
-		for(IBall balls: newBalls){
+		@param n quantidade de bolas.
+		@return quantidade de partes (1 para o processamento sequencial).
+	*/
+
+	private int chunkCount(int n){
+
+		if(pool == null || PROCESSORS < 2 || n < parallelThreshold) return 1;
+
+		return Math.max(1, Math.min(n / MIN_CHUNK_SIZE, pool.getParallelism() * 4));
+	}
+
+	/**
+		Garante que existam efeitos e consultas para a quantidade de partes indicada.
 
-			//Adiciona as bolas duplicadas a fila original
-			duplicateBalls.add(balls);
+		@param chunks quantidade de partes.
+		@param grid grade que será consultada.
+	*/
+
+	private void prepareChunks(int chunks, CollisionGrid grid){
 
-			//Inicia o timer
-			timerDuplicator();
+		if(grid != queryGrid){
+
+			queryGrid = grid;
+			chunkQueries = new CollisionGrid.Query[0];
 		}
+
+		if(chunkQueries.length < chunks){
+
+			int old = chunkQueries.length;
+
+			chunkQueries = Arrays.copyOf(chunkQueries, chunks);
+
+			for(int c = old; c < chunks; c++) chunkQueries[c] = grid.newQuery();
+		}
+
+		for(int c = 0; c < chunks; c++) effects(c).ensureColliders(grid.size());
 	}
 
 	/**
-		Método que inicia um timer e altera a velocidade da bola quando o timer chega a constante BOOST_DURATION
+		@param chunk índice da parte.
+		@return os efeitos das colisões da parte (criados se necessário).
 	*/
 
-	private void timerBoostMainBall(){
+	private CollisionEffects effects(int chunk){
 
-		Timer timer = new Timer();
+		if(chunkEffects.length <= chunk) chunkEffects = Arrays.copyOf(chunkEffects, chunk + 1);
+		if(chunkEffects[chunk] == null) chunkEffects[chunk] = new CollisionEffects();
 
-		TimerTask task = new TimerTask(){
+		return chunkEffects[chunk];
+	}
 
-			//Altera a velocidade da bola de volta a velocidade inicial
-			public void run(){
-				theBall.setSpeed(defaultSpeed);
+	/**
+		Aplica, na ordem em que ocorreram, os efeitos guardados durante o tratamento das colisões: agenda o fim dos
+		boosts e cria as bolas duplicadas. Depois, descarta os efeitos aplicados.
+
+		@param effects efeitos guardados.
+	*/
+
+	private void apply(CollisionEffects effects){
+
+		for(int k = 0; k < effects.count; k++){
+
+			int i = effects.ball[k];
+
+			if(effects.type[k] == CollisionEffects.BOOST){
+
+				//Agenda o fim do boost
+				timers.schedule(timers.now() + BoostTarget.BOOST_DURATION, BOOST_END, balls.handle[i]);
 			}
-		};
+			else{
 
-		//Armazena o tempo em milisegundos da constante
-		long delay = BoostTarget.BOOST_DURATION;
+				//Define os eixos aleatóriamente
+				double vx = 0.85 + random.nextDouble() * 0.15;
+				double vy = Math.sqrt(1.0 - vx * vx);
+				if(random.nextDouble() < 0.5) vx = -vx;
 
-		// Executa o timer depois de passar o tempo
-		timer.schedule(task, delay);
+				//Cria uma nova bola, que expira depois de EXTRA_BALL_DURATION millisegundos
+				addBall(balls.cx[i], balls.cy[i], balls.width[i], balls.height[i], Color.RED, defaultSpeed, vx, vy, timers.now() + DuplicatorTarget.EXTRA_BALL_DURATION);
+			}
+		}
+
+		effects.count = 0;
 	}
 
 	/**
-		Método que inicia um timer e exclui uma bola duplicada quando passado o tempo de duração dela
+		Processa a colisão de uma bola com um objeto (parede, jogador ou alvo), aplicando o efeito correspondente.
+
+		@param i índice da bola.
+		@param other objeto testado (uma instância de Wall, Player ou Target).
+		@param ocx coordenada x do centro do objeto.
+		@param ocy coordenada y do centro do objeto.
+		@param owidth largura do objeto.
+		@param oheight altura do objeto.
+		@param effects objeto que guarda os efeitos que não dizem respeito apenas à bola i (aplicados pelo método apply()).
+		@return true se a bola colidiu com o objeto, false caso contrário.
 	*/
 
-	private void timerDuplicator(){
+	private boolean collide(int i, Object other, double ocx, double ocy, double owidth, double oheight, CollisionEffects effects){
+
+		if(!balls.overlaps(i, other, ocx, ocy, owidth, oheight)) return false;
+
+		hit(i, other, ocy, oheight, effects);
+
+		return true;
+	}
+
+	/**
+		Aplica o efeito da colisão de uma bola com um objeto, com a bola na posição em que a colisão ocorreu.
+
+		@param i índice da bola.
+		@param other objeto atingido (uma instância de Wall, Player ou Target).
+		@param ocy coordenada y do centro do objeto.
+		@param oheight altura do objeto.
+		@param effects objeto que guarda os efeitos que não dizem respeito apenas à bola i (aplicados pelo método apply()).
+	*/
+
+	private void hit(int i, Object other, double ocy, double oheight, CollisionEffects effects){
+
+		balls.lastHit[i] = other;
 
-		Timer timer = new Timer();
+		if(other instanceof Wall){
 
-		TimerTask task = new TimerTask(){
+			String id = ((Wall) other).getId();
 
-			//Exclui a primeira bola criada
-			public void run(){
-				duplicateBalls.poll();
+			//Paredes laterais invertem a componente x da direção, paredes do topo e de baixo invertem a componente y
+			if(id.equals(Pong.LEFT) || id.equals(Pong.RIGHT)) balls.vx[i] = -balls.vx[i];
+			else if(id.equals(Pong.TOP) || id.equals(Pong.BOTTOM)) balls.vy[i] = -balls.vy[i];
+		}
+		else if(other instanceof Player){
+
+			//A direção vertical depende do ponto do jogador em que a bola bateu
+			double vy = (balls.cy[i] - ocy) / oheight;
+
+			if(Math.abs(vy) > 1.0) vy = Math.signum(vy);
+
+			balls.vy[i] = vy;
+			balls.vx[i] = -Math.signum(balls.vx[i]) * Math.sqrt(1.0 - vy * vy);
+		}
+		else if(other instanceof BoostTarget){
+
+			//Se a bola tem a velocidade padrão, ou seja, ainda não teve a velocidade aumentada
+			if(balls.speed[i] == defaultSpeed){
+
+				//Altera a velocidade da bola de acordo com a constante BOOST_FACTOR
+				balls.speed[i] = defaultSpeed * BoostTarget.BOOST_FACTOR;
+
+				//O fim do boost é agendado depois
+				effects.add(CollisionEffects.BOOST, i);
+			}
+		}
+		else if(other instanceof DuplicatorTarget){
+
+			//A nova bola é criada depois, a partir da posição desta bola
+			effects.add(CollisionEffects.DUPLICATE, i);
+		}
+	}
+
+	/**
+		Classe que guarda os efeitos das colisões que não dizem respeito apenas à bola que colidiu, para que sejam
+		aplicados depois (e em ordem) pelo método apply().
+	*/
+
+	private static class CollisionEffects {
+
+		/**
+			Constante que identifica o efeito de início de boost de uma bola.
+		*/
+
+		static final int BOOST = 0;
+
+		/**
+			Constante que identifica o efeito de duplicação de uma bola.
+		*/
+
+		static final int DUPLICATE = 1;
+
+		/**
+			Quantidade de colisões com cada objeto da grade de colisão.
+		*/
+
+		int [] hits = new int[0];
+
+		/**
+			Tipo de cada efeito guardado.
+		*/
+
+		int [] type = new int[16];
+
+		/**
+			Índice da bola de cada efeito guardado.
+		*/
+
+		int [] ball = new int[16];
+
+		/**
+			Quantidade de efeitos guardados.
+		*/
+
+		int count = 0;
+
+		/**
+			Guarda um efeito.
+
+			@param effectType tipo do efeito (BOOST ou DUPLICATE).
+			@param i índice da bola.
+		*/
+
+		void add(int effectType, int i){
+
+			if(count == type.length){
+
+				type = Arrays.copyOf(type, count * 2);
+				ball = Arrays.copyOf(ball, count * 2);
 			}
-		};
 
-		//Armazena o tempo em milisegundos da constante
-		long delay = DuplicatorTarget.EXTRA_BALL_DURATION;
+			type[count] = effectType;
+			ball[count] = i;
+			count++;
+		}
+
+		/**
+			Garante que a contagem de colisões tenha uma posição para cada objeto da grade.
+
+			@param colliders quantidade de objetos da grade.
+		*/
+
+		void ensureColliders(int colliders){
 
-		// Executa o timer depois de passar o tempo
-		timer.schedule(task, delay);
+			if(hits.length < colliders) hits = Arrays.copyOf(hits, colliders);
+		}
 	}
 
 	/**
-		Método que inicia um timer e altera a velocidade das bolas duplicadas quando o timer chega a constante BOOST_DURATION
-		@param ball referência para uma bola que será usada para alterar sua velocidade.
+		Classe que processa, em paralelo, um intervalo de partes das bolas. O intervalo é dividido ao meio até
+		restar uma única parte, que é processada pela thread do pool que a recebeu.
 	*/
 
-	private void timerBoostDuplicateBalls(IBall ball){
+	private class ChunkTask extends RecursiveAction {
 
-		Timer timer = new Timer();
+		private static final long serialVersionUID = 1L;
 
-		TimerTask task = new TimerTask(){
+		/**
+			Constante que identifica a fase de atualização das posições.
+		*/
 
-			//Altera a velocidade da bola de volta a velocidade inicial
-			public void run(){
-				ball.setSpeed(defaultSpeed);
+		static final int UPDATE = 0;
+
+		/**
+			Constante que identifica a fase de tratamento das colisões.
+		*/
+
+		static final int COLLIDE = 1;
+
+		/**
+			Atributos privados que representam os parâmetros da tarefa (veja o construtor).
+		*/
+
+		private final int phase;
+		private final int first;
+		private final int last;
+		private final int chunks;
+		private final int n;
+		private final long delta;
+		private final CollisionGrid grid;
+
+		/**
+			Construtor da classe ChunkTask.
+
+			@param phase fase processada (UPDATE ou COLLIDE).
+			@param first primeira parte do intervalo.
+			@param last parte seguinte à última do intervalo.
+			@param chunks quantidade total de partes.
+			@param n quantidade de bolas processadas.
+			@param delta duração da atualização (usada na fase UPDATE).
+			@param grid grade de colisão (usada na fase COLLIDE).
+		*/
+
+		ChunkTask(int phase, int first, int last, int chunks, int n, long delta, CollisionGrid grid){
+
+			this.phase = phase;
+			this.first = first;
+			this.last = last;
+			this.chunks = chunks;
+			this.n = n;
+			this.delta = delta;
+			this.grid = grid;
+		}
+
+		protected void compute(){
+
+			if(last - first > 1){
+
+				int middle = (first + last) >>> 1;
+
+				invokeAll(new ChunkTask(phase, first, middle, chunks, n, delta, grid), new ChunkTask(phase, middle, last, chunks, n, delta, grid));
+				return;
 			}
-		};
 
-		//Armazena o tempo em milisegundos da constante
-		long delay = BoostTarget.BOOST_DURATION;
+			int from = (int) ((long) n * first / chunks);
+			int to = (int) ((long) n * last / chunks);
 
-		// Executa o timer depois de passar o tempo
-		timer.schedule(task, delay);
+			if(phase == UPDATE) balls.update(delta, from, to);
+			else collideRange(from, to, grid, chunkQueries[first], chunkEffects[first]);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,630 @@
+import java.awt.Color;
+import java.util.*;
+
+/**
+	Classe que armazena o estado de todas as bolas de uma partida em arrays paralelos de tipos primitivos
+	(uma "estrutura de arrays"). A bola de índice i tem sua posição em cx[i] e cy[i], sua direção em vx[i] e vy[i],
+	e assim por diante. A bola principal ocupa sempre o índice 0 e as bolas duplicadas ocupam os índices seguintes.
+
+	Como os índices mudam quando uma bola é removida (a última bola passa a ocupar o lugar da removida), cada bola
+	também recebe um identificador estável (handle), que pode ser guardado por quem precisa se referir a uma bola
+	mais tarde. Um handle de uma bola já removida nunca é confundido com o de uma bola nova.
+
+	Os atributos são acessíveis dentro do pacote para que os laços de atualização e de colisão da classe BallManager
+	percorram os arrays diretamente.
+*/
+
+public class BallStore {
+
+	/**
+		Constante que define a capacidade inicial dos arrays.
+	*/
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+		Constante que define por quanto tempo (em milisegundos) uma bola recém criada ignora colisões.
+	*/
+
+	static final int IGNORE_TIME = 150;
+
+	/**
+		Constante usada como prazo de expiração das bolas que não expiram.
+	*/
+
+	static final long NEVER = Long.MAX_VALUE;
+
+	/**
+		Coordenadas x dos centros das bolas.
+	*/
+
+	double [] cx;
+
+	/**
+		Coordenadas y dos centros das bolas.
+	*/
+
+	double [] cy;
+
+	/**
+		Coordenadas x dos centros das bolas antes da última atualização, usadas para interpolar o desenho.
+	*/
+
+	double [] prevCx;
+
+	/**
+		Coordenadas y dos centros das bolas antes da última atualização, usadas para interpolar o desenho.
+	*/
+
+	double [] prevCy;
+
+	/**
+		Componentes x dos vetores unitários de direção das bolas.
+	*/
+
+	double [] vx;
+
+	/**
+		Componentes y dos vetores unitários de direção das bolas.
+	*/
+
+	double [] vy;
+
+	/**
+		Velocidades das bolas (em pixels por millisegundo).
+	*/
+
+	double [] speed;
+
+	/**
+		Larguras das bolas.
+	*/
+
+	double [] width;
+
+	/**
+		Alturas das bolas.
+	*/
+
+	double [] height;
+
+	/**
+		Instantes (no relógio do jogo, em milisegundos) em que as bolas expiram. A remoção das bolas expiradas
+		é agendada pela classe BallManager.
+	*/
+
+	long [] expiresAt;
+
+	/**
+		Tempo restante (em milisegundos) durante o qual cada bola ignora colisões.
+	*/
+
+	int [] ignoreCounter;
+
+	/**
+		Último objeto (parede, jogador ou alvo) atingido por cada bola.
+	*/
+
+	Object [] lastHit;
+
+	/**
+		Cores das bolas.
+	*/
+
+	Color [] color;
+
+	/**
+		Instâncias de IBall usadas apenas para desenhar as bolas de tipos personalizados (null para o tipo Ball).
+	*/
+
+	IBall [] view;
+
+	/**
+		Handle de cada bola.
+	*/
+
+	long [] handle;
+
+	/**
+		Atributo privado que representa a quantidade de bolas armazenadas.
+	*/
+
+	private int size = 0;
+
+	/**
+		Atributo privado que associa cada entrada da tabela de handles ao índice atual da bola (ou -1 se a entrada
+		está livre).
+	*/
+
+	private int [] slotOf = new int[INITIAL_CAPACITY];
+
+	/**
+		Atributo privado que representa a geração de cada entrada da tabela de handles. A geração é incrementada sempre
+		que a entrada é liberada, invalidando os handles antigos.
+	*/
+
+	private int [] generation = new int[INITIAL_CAPACITY];
+
+	/**
+		Atributo privado que representa a pilha de entradas livres da tabela de handles.
+	*/
+
+	private int [] freeEntries = new int[INITIAL_CAPACITY];
+
+	/**
+		Atributo privado que representa a quantidade de entradas livres na pilha.
+	*/
+
+	private int freeCount = 0;
+
+	/**
+		Atributo privado que representa a quantidade de entradas já usadas da tabela de handles.
+	*/
+
+	private int entries = 0;
+
+	/**
+		Construtor da classe BallStore.
+	*/
+
+	public BallStore(){
+
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+		Aloca (ou realoca, preservando o conteúdo) todos os arrays com a capacidade indicada.
+
+		@param capacity nova capacidade dos arrays.
+	*/
+
+	private void allocate(int capacity){
+
+		if(cx == null){
+
+			cx = new double[capacity];
+			cy = new double[capacity];
+			prevCx = new double[capacity];
+			prevCy = new double[capacity];
+			vx = new double[capacity];
+			vy = new double[capacity];
+			speed = new double[capacity];
+			width = new double[capacity];
+			height = new double[capacity];
+			expiresAt = new long[capacity];
+			ignoreCounter = new int[capacity];
+			lastHit = new Object[capacity];
+			color = new Color[capacity];
+			view = new IBall[capacity];
+			handle = new long[capacity];
+		}
+		else{
+
+			cx = Arrays.copyOf(cx, capacity);
+			cy = Arrays.copyOf(cy, capacity);
+			prevCx = Arrays.copyOf(prevCx, capacity);
+			prevCy = Arrays.copyOf(prevCy, capacity);
+			vx = Arrays.copyOf(vx, capacity);
+			vy = Arrays.copyOf(vy, capacity);
+			speed = Arrays.copyOf(speed, capacity);
+			width = Arrays.copyOf(width, capacity);
+			height = Arrays.copyOf(height, capacity);
+			expiresAt = Arrays.copyOf(expiresAt, capacity);
+			ignoreCounter = Arrays.copyOf(ignoreCounter, capacity);
+			lastHit = Arrays.copyOf(lastHit, capacity);
+			color = Arrays.copyOf(color, capacity);
+			view = Arrays.copyOf(view, capacity);
+			handle = Arrays.copyOf(handle, capacity);
+		}
+	}
+
+	/**
+		Adiciona uma bola.
+
+		@param cx coordenada x da posição inicial da bola (centro do retangulo que a representa).
+		@param cy coordenada y da posição inicial da bola (centro do retangulo que a representa).
+		@param width largura do retangulo que representa a bola.
+		@param height altura do retangulo que representa a bola.
+		@param color cor da bola.
+		@param speed velocidade da bola (em pixels por millisegundo).
+		@param vx componente x do vetor unitário (normalizado) que representa a direção da bola.
+		@param vy componente y do vetor unitário (normalizado) que representa a direção da bola.
+		@param expiresAt instante (no relógio do jogo) em que a bola expira, ou NEVER.
+		@param view instância de IBall usada para desenhar a bola, ou null para o desenho padrão.
+		@return handle da bola adicionada.
+	*/
+
+	public long add(double cx, double cy, double width, double height, Color color, double speed, double vx, double vy, long expiresAt, IBall view){
+
+		if(size == this.cx.length) allocate(size * 2);
+
+		int i = size++;
+
+		this.cx[i] = cx;
+		this.cy[i] = cy;
+		this.prevCx[i] = cx;
+		this.prevCy[i] = cy;
+		this.vx[i] = vx;
+		this.vy[i] = vy;
+		this.speed[i] = speed;
+		this.width[i] = width;
+		this.height[i] = height;
+		this.expiresAt[i] = expiresAt;
+		this.ignoreCounter[i] = IGNORE_TIME;
+		this.lastHit[i] = null;
+		this.color[i] = color;
+		this.view[i] = view;
+		this.handle[i] = newHandle(i);
+
+		return this.handle[i];
+	}
+
+	/**
+		Torna esta instância uma cópia de outro BallStore, incluindo a tabela de handles. Os arrays desta instância
+		são reaproveitados sempre que têm capacidade suficiente, de modo que cópias repetidas não alocam memória.
+
+		@param other BallStore copiado.
+	*/
+
+	public void copyFrom(BallStore other){
+
+		int n = other.size;
+
+		if(cx.length < n) allocate(other.cx.length);
+
+		System.arraycopy(other.cx, 0, cx, 0, n);
+		System.arraycopy(other.cy, 0, cy, 0, n);
+		System.arraycopy(other.prevCx, 0, prevCx, 0, n);
+		System.arraycopy(other.prevCy, 0, prevCy, 0, n);
+		System.arraycopy(other.vx, 0, vx, 0, n);
+		System.arraycopy(other.vy, 0, vy, 0, n);
+		System.arraycopy(other.speed, 0, speed, 0, n);
+		System.arraycopy(other.width, 0, width, 0, n);
+		System.arraycopy(other.height, 0, height, 0, n);
+		System.arraycopy(other.expiresAt, 0, expiresAt, 0, n);
+		System.arraycopy(other.ignoreCounter, 0, ignoreCounter, 0, n);
+		System.arraycopy(other.lastHit, 0, lastHit, 0, n);
+		System.arraycopy(other.color, 0, color, 0, n);
+		System.arraycopy(other.view, 0, view, 0, n);
+		System.arraycopy(other.handle, 0, handle, 0, n);
+
+		//Libera as referências das bolas que existiam apenas nesta instância
+		for(int i = n; i < size; i++){
+
+			lastHit[i] = null;
+			color[i] = null;
+			view[i] = null;
+		}
+
+		size = n;
+
+		if(slotOf.length < other.entries){
+
+			slotOf = new int[other.slotOf.length];
+			generation = new int[other.generation.length];
+			freeEntries = new int[other.freeEntries.length];
+		}
+
+		System.arraycopy(other.slotOf, 0, slotOf, 0, other.entries);
+		System.arraycopy(other.generation, 0, generation, 0, other.entries);
+		System.arraycopy(other.freeEntries, 0, freeEntries, 0, other.freeCount);
+
+		entries = other.entries;
+		freeCount = other.freeCount;
+	}
+
+	/**
+		Remove a bola de índice i. A última bola passa a ocupar o índice i.
+
+		@param i índice da bola removida.
+	*/
+
+	public void remove(int i){
+
+		releaseHandle(handle[i]);
+
+		int last = --size;
+
+		if(i != last){
+
+			cx[i] = cx[last];
+			cy[i] = cy[last];
+			prevCx[i] = prevCx[last];
+			prevCy[i] = prevCy[last];
+			vx[i] = vx[last];
+			vy[i] = vy[last];
+			speed[i] = speed[last];
+			width[i] = width[last];
+			height[i] = height[last];
+			expiresAt[i] = expiresAt[last];
+			ignoreCounter[i] = ignoreCounter[last];
+			lastHit[i] = lastHit[last];
+			color[i] = color[last];
+			view[i] = view[last];
+			handle[i] = handle[last];
+			slotOf[entry(handle[i])] = i;
+		}
+
+		lastHit[last] = null;
+		color[last] = null;
+		view[last] = null;
+	}
+
+	/**
+		Remove todas as bolas a partir do índice indicado.
+
+		@param newSize quantidade de bolas que serão mantidas.
+	*/
+
+	public void truncate(int newSize){
+
+		while(size > newSize) remove(size - 1);
+	}
+
+	/**
+		Atualiza a posição de todas as bolas em decorrência da passagem do tempo. A posição anterior de cada bola
+		é guardada em prevCx e prevCy.
+
+		@param delta quantidade de millisegundos que se passou desde a última atualização.
+	*/
+
+	public void update(long delta){
+
+		update(delta, 0, size);
+	}
+
+	/**
+		Atualiza a posição das bolas de índices from (inclusive) a to (exclusive). Intervalos disjuntos podem ser
+		atualizados ao mesmo tempo por threads diferentes.
+
+		@param delta quantidade de millisegundos que se passou desde a última atualização.
+		@param from índice da primeira bola atualizada.
+		@param to índice seguinte ao da última bola atualizada.
+	*/
+
+	public void update(long delta, int from, int to){
+
+		System.arraycopy(cx, from, prevCx, from, to - from);
+		System.arraycopy(cy, from, prevCy, from, to - from);
+
+		for(int i = from; i < to; i++){
+
+			cx[i] += vx[i] * speed[i] * delta;
+			cy[i] += vy[i] * speed[i] * delta;
+
+			if(ignoreCounter[i] > 0) ignoreCounter[i] -= delta;
+		}
+	}
+
+	/**
+		Verifica se a bola de índice i se sobrepõe a um retângulo, respeitando o tempo inicial em que a bola
+		ignora colisões e ignorando o objeto atingido por último (evitando colisões repetidas com o mesmo objeto).
+
+		@param i índice da bola.
+		@param other objeto ao qual o retângulo pertence.
+		@param ocx coordenada x do centro do retângulo.
+		@param ocy coordenada y do centro do retângulo.
+		@param owidth largura do retângulo.
+		@param oheight altura do retângulo.
+		@return true se houve colisão, false caso contrário.
+	*/
+
+	boolean overlaps(int i, Object other, double ocx, double ocy, double owidth, double oheight){
+
+		if(!canHit(i, other)) return false;
+
+		return Math.abs(cx[i] - ocx) < width[i] / 2 + owidth / 2 && Math.abs(cy[i] - ocy) < height[i] / 2 + oheight / 2;
+	}
+
+	/**
+		Verifica se a bola de índice i pode colidir com um objeto: a bola não está no tempo inicial em que ignora
+		colisões e o objeto não foi o atingido por último (evitando colisões repetidas com o mesmo objeto).
+
+		@param i índice da bola.
+		@param other objeto testado.
+		@return true se a bola pode colidir com o objeto, false caso contrário.
+	*/
+
+	boolean canHit(int i, Object other){
+
+		return ignoreCounter[i] <= 0 && lastHit[i] != other;
+	}
+
+	/**
+		Calcula o instante de impacto entre um retângulo em movimento retilíneo (uma bola) e um retângulo parado,
+		testando a sobreposição com o retângulo parado aumentado pelas metades das dimensões da bola ("swept AABB").
+		Assim como em overlaps(), retângulos que apenas se tocam não colidem.
+
+		@param px coordenada x do centro da bola no início do trecho.
+		@param py coordenada y do centro da bola no início do trecho.
+		@param dx deslocamento x da bola ao longo do trecho.
+		@param dy deslocamento y da bola ao longo do trecho.
+		@param halfWidth metade da largura da bola.
+		@param halfHeight metade da altura da bola.
+		@param ocx coordenada x do centro do retângulo parado.
+		@param ocy coordenada y do centro do retângulo parado.
+		@param owidth largura do retângulo parado.
+		@param oheight altura do retângulo parado.
+		@return a fração do trecho (entre 0 e 1, exclusive) em que a bola passa a se sobrepor ao retângulo (0 se ela
+		já começa sobreposta), ou Double.POSITIVE_INFINITY se não há sobreposição durante o trecho.
+	*/
+
+	static double sweep(double px, double py, double dx, double dy, double halfWidth, double halfHeight, double ocx, double ocy, double owidth, double oheight){
+
+		double hx = halfWidth + owidth / 2;
+		double hy = halfHeight + oheight / 2;
+		double enter = Double.NEGATIVE_INFINITY;
+		double exit = Double.POSITIVE_INFINITY;
+
+		//Intervalo do trecho em que a bola se sobrepõe ao retângulo no eixo x
+		if(dx != 0){
+
+			double t1 = (ocx - hx - px) / dx;
+			double t2 = (ocx + hx - px) / dx;
+
+			enter = Math.min(t1, t2);
+			exit = Math.max(t1, t2);
+		}
+		else if(Math.abs(px - ocx) >= hx) return Double.POSITIVE_INFINITY;
+
+		//O mesmo no eixo y: há colisão se os dois intervalos têm uma parte em comum dentro do trecho
+		if(dy != 0){
+
+			double t1 = (ocy - hy - py) / dy;
+			double t2 = (ocy + hy - py) / dy;
+
+			enter = Math.max(enter, Math.min(t1, t2));
+			exit = Math.min(exit, Math.max(t1, t2));
+		}
+		else if(Math.abs(py - ocy) >= hy) return Double.POSITIVE_INFINITY;
+
+		if(enter >= exit || enter >= 1 || exit <= 0) return Double.POSITIVE_INFINITY;
+
+		return Math.max(enter, 0);
+	}
+
+	/**
+		@param i índice da bola.
+		@param alpha fração (entre 0 e 1) do intervalo entre a posição anterior e a posição atual.
+		@return coordenada x da bola interpolada entre a posição anterior e a posição atual.
+	*/
+
+	double interpolatedCx(int i, double alpha){
+
+		return prevCx[i] + (cx[i] - prevCx[i]) * alpha;
+	}
+
+	/**
+		@param i índice da bola.
+		@param alpha fração (entre 0 e 1) do intervalo entre a posição anterior e a posição atual.
+		@return coordenada y da bola interpolada entre a posição anterior e a posição atual.
+	*/
+
+	double interpolatedCy(int i, double alpha){
+
+		return prevCy[i] + (cy[i] - prevCy[i]) * alpha;
+	}
+
+	/**
+		@return quantidade de bolas armazenadas.
+	*/
+
+	public int size(){
+
+		return size;
+	}
+
+	/**
+		Calcula um resumo (hash) do estado das bolas armazenadas: posição, direção, velocidade e expiração de cada
+		bola, na ordem dos índices. Estados iguais têm o mesmo resumo, por isso ele é usado para verificar se duas
+		simulações (como a partida gravada e a sua reprodução) continuam iguais.
+
+		@return o resumo do estado das bolas.
+	*/
+
+	public long checksum(){
+
+		long h = mix(FNV_OFFSET, size);
+
+		for(int i = 0; i < size; i++){
+
+			h = mix(h, Double.doubleToLongBits(cx[i]));
+			h = mix(h, Double.doubleToLongBits(cy[i]));
+			h = mix(h, Double.doubleToLongBits(vx[i]));
+			h = mix(h, Double.doubleToLongBits(vy[i]));
+			h = mix(h, Double.doubleToLongBits(speed[i]));
+			h = mix(h, expiresAt[i]);
+		}
+
+		return h;
+	}
+
+	/**
+		Constante que representa o valor inicial do resumo calculado por mix() (o mesmo do hash FNV-1a de 64 bits).
+	*/
+
+	static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	/**
+		Acrescenta um valor a um resumo, no estilo do hash FNV-1a (um valor de 64 bits por vez).
+
+		@param h resumo atual.
+		@param value valor acrescentado.
+		@return o novo resumo.
+	*/
+
+	static long mix(long h, long value){
+
+		return (h ^ value) * 0x100000001b3L;
+	}
+
+	/**
+		Devolve o índice atual da bola associada a um handle.
+
+		@param handle handle da bola.
+		@return índice da bola, ou -1 se a bola já foi removida.
+	*/
+
+	public int slotOf(long handle){
+
+		int entry = entry(handle);
+
+		if(entry >= entries || generation[entry] != (int) (handle >>> 32)) return -1;
+
+		return slotOf[entry];
+	}
+
+	/**
+		Obtém uma entrada livre da tabela de handles e a associa ao índice indicado.
+
+		@param slot índice da bola.
+		@return handle da bola.
+	*/
+
+	private long newHandle(int slot){
+
+		int entry;
+
+		if(freeCount > 0) entry = freeEntries[--freeCount];
+		else{
+
+			if(entries == slotOf.length){
+
+				slotOf = Arrays.copyOf(slotOf, entries * 2);
+				generation = Arrays.copyOf(generation, entries * 2);
+				freeEntries = Arrays.copyOf(freeEntries, entries * 2);
+			}
+
+			entry = entries++;
+		}
+
+		slotOf[entry] = slot;
+
+		return ((long) generation[entry] << 32) | entry;
+	}
+
+	/**
+		Libera a entrada da tabela de handles usada por um handle, invalidando-o.
+
+		@param handle handle liberado.
+	*/
+
+	private void releaseHandle(long handle){
+
+		int entry = entry(handle);
+
+		slotOf[entry] = -1;
+		generation[entry]++;
+		freeEntries[freeCount++] = entry;
+	}
+
+	/**
+		@param handle handle de uma bola.
+		@return entrada da tabela de handles usada pelo handle.
+	*/
+
+	private static int entry(long handle){
+
+		return (int) handle;
+	}
+}
@@ -0,0 +1,114 @@
+import java.awt.Color;
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
+
+/**
+	Classe auxiliar que transforma uma instância de Ball (ou de uma subclasse) em uma "visão" de uma bola
+	armazenada em um BallStore. Antes de desenhar, o estado da bola (posição, tamanho, direção, velocidade e cor)
+	é copiado dos arrays do BallStore para os atributos da instância, de modo que o método draw() redefinido
+	pela subclasse desenhe a bola na posição correta.
+
+	A classe Ball não possui métodos para alterar a posição da bola, por isso os atributos privados são
+	acessados através de MethodHandles, obtidos uma única vez.
+*/
+
+final class BallView {
+
+	/**
+		MethodHandles de escrita dos atributos privados da classe Ball.
+	*/
+
+	private static final MethodHandle CX = setter("cx");
+	private static final MethodHandle CY = setter("cy");
+	private static final MethodHandle WIDTH = setter("width");
+	private static final MethodHandle HEIGHT = setter("height");
+	private static final MethodHandle VX = setter("vx");
+	private static final MethodHandle VY = setter("vy");
+
+	private BallView(){ }
+
+	/**
+		Obtém um MethodHandle que altera um atributo privado da classe Ball.
+
+		@param name nome do atributo.
+		@return o MethodHandle de escrita do atributo.
+	*/
+
+	private static MethodHandle setter(String name){
+
+		try{
+			Field field = Ball.class.getDeclaredField(name);
+
+			field.setAccessible(true);
+
+			return MethodHandles.lookup().unreflectSetter(field);
+		}
+		catch(Exception e){
+
+			throw new IllegalStateException("Atributo '" + name + "' da classe Ball não encontrado.", e);
+		}
+	}
+
+	/**
+		Verifica se uma instância de IBall pode ser usada como visão.
+
+		@param ball instância criada para a bola.
+		@return true se a instância for uma Ball (ou subclasse), false caso contrário.
+	*/
+
+	static boolean supports(IBall ball){
+
+		return ball instanceof Ball;
+	}
+
+	/**
+		Copia o estado da bola de índice i do BallStore para a visão.
+
+		@param view visão da bola (uma instância de Ball ou de uma subclasse).
+		@param store BallStore que contém a bola.
+		@param i índice da bola.
+	*/
+
+	static void sync(IBall view, BallStore store, int i){
+
+		sync(view, store, i, store.cx[i], store.cy[i]);
+	}
+
+	/**
+		Copia o estado da bola de índice i do BallStore para a visão, usando a posição indicada (por exemplo,
+		uma posição interpolada) no lugar da posição armazenada.
+
+		@param view visão da bola (uma instância de Ball ou de uma subclasse).
+		@param store BallStore que contém a bola.
+		@param i índice da bola.
+		@param x coordenada x do centro da bola.
+		@param y coordenada y do centro da bola.
+	*/
+
+	static void sync(IBall view, BallStore store, int i, double x, double y){
+
+		Ball ball = (Ball) view;
+
+		try{
+			CX.invokeExact(ball, x);
+			CY.invokeExact(ball, y);
+			WIDTH.invokeExact(ball, store.width[i]);
+			HEIGHT.invokeExact(ball, store.height[i]);
+			VX.invokeExact(ball, store.vx[i]);
+			VY.invokeExact(ball, store.vy[i]);
+		}
+		catch(Throwable t){
+
+			throw new IllegalStateException(t);
+		}
+
+		ball.setSpeed(store.speed[i]);
+
+		//Instâncias reaproveitadas descartam o estado de desenho da bola anterior
+		if(ball instanceof Recyclable) ((Recyclable) ball).bind(store.handle[i]);
+
+		Color color = store.color[i];
+
+		if(ball.getColor() != color) ball.setColor(color);
+	}
+}
@@ -0,0 +1,475 @@
+import java.util.*;
+
+/**
+	Classe que implementa uma grade uniforme ("broadphase") para acelerar a detecção de colisões entre as bolas
+	e os objetos do campo (paredes, alvos e jogadores). O campo é dividido em células quadradas, e cada objeto
+	é registrado em todas as células que o seu retângulo toca. Assim, cada bola só precisa ser testada contra
+	os objetos registrados nas células que ela ocupa, em vez de ser testada contra todos os objetos.
+
+	Paredes e alvos não se movem, e por isso são registrados uma única vez. Jogadores são registrados novamente
+	nas células corretas (pelo método update()) sempre que se movem.
+*/
+
+public class CollisionGrid {
+
+	/**
+		Constante que identifica objetos do tipo Wall.
+	*/
+
+	public static final int WALL = 0;
+
+	/**
+		Constante que identifica objetos do tipo Player.
+	*/
+
+	public static final int PLAYER = 1;
+
+	/**
+		Constante que identifica objetos do tipo Target.
+	*/
+
+	public static final int TARGET = 2;
+
+	/**
+		Atributo privado que representa o inverso do tamanho (em pixels) do lado de cada célula.
+	*/
+
+	private double inverseCellSize;
+
+	/**
+		Atributo privado que representa a quantidade de colunas da grade.
+	*/
+
+	private int columns;
+
+	/**
+		Atributo privado que representa a quantidade de linhas da grade.
+	*/
+
+	private int rows;
+
+	/**
+		Atributo privado que representa os índices dos objetos registrados em cada célula.
+	*/
+
+	private int [][] cellItems;
+
+	/**
+		Atributo privado que representa a quantidade de objetos registrados em cada célula.
+	*/
+
+	private int [] cellCount;
+
+	/**
+		Atributo privado que representa a quantidade de objetos registrados na grade.
+	*/
+
+	private int count = 0;
+
+	/**
+		Objetos registrados na grade.
+	*/
+
+	Object [] collider = new Object[8];
+
+	/**
+		Tipos dos objetos registrados (WALL, PLAYER ou TARGET).
+	*/
+
+	int [] kind = new int[8];
+
+	/**
+		Coordenadas x dos centros dos objetos registrados.
+	*/
+
+	double [] cx = new double[8];
+
+	/**
+		Coordenadas y dos centros dos objetos registrados.
+	*/
+
+	double [] cy = new double[8];
+
+	/**
+		Larguras dos objetos registrados.
+	*/
+
+	double [] width = new double[8];
+
+	/**
+		Alturas dos objetos registrados.
+	*/
+
+	double [] height = new double[8];
+
+	/**
+		Atributo privado que representa a consulta usada pelos métodos query() e candidate() da própria grade.
+	*/
+
+	private Query defaultQuery = new Query();
+
+	/**
+		Atributos privados usados como intervalos de células temporários, evitando alocações a cada atualização.
+	*/
+
+	private int [] before = new int[4], after = new int[4];
+
+	/**
+		Construtor da classe CollisionGrid.
+
+		@param fieldWidth largura do campo.
+		@param fieldHeight altura do campo.
+		@param cellSize tamanho (em pixels) do lado de cada célula.
+	*/
+
+	public CollisionGrid(double fieldWidth, double fieldHeight, double cellSize){
+
+		this.inverseCellSize = 1.0 / cellSize;
+		this.columns = Math.max(1, (int) Math.ceil(fieldWidth / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil(fieldHeight / cellSize));
+		this.cellItems = new int[columns * rows][];
+		this.cellCount = new int[columns * rows];
+
+		for(int c = 0; c < cellItems.length; c++) cellItems[c] = new int[4];
+	}
+
+	/**
+		Registra uma parede.
+
+		@param wall parede registrada.
+		@return índice da parede na grade.
+	*/
+
+	public int add(Wall wall){
+
+		return add(wall, WALL, wall.getCx(), wall.getCy(), wall.getWidth(), wall.getHeight());
+	}
+
+	/**
+		Registra um alvo.
+
+		@param target alvo registrado.
+		@return índice do alvo na grade.
+	*/
+
+	public int add(Target target){
+
+		return add(target, TARGET, target.getCx(), target.getCy(), target.getWidth(), target.getHeight());
+	}
+
+	/**
+		Registra um jogador. A posição do jogador é atualizada na grade a cada chamada do método update().
+
+		@param player jogador registrado.
+		@return índice do jogador na grade.
+	*/
+
+	public int add(Player player){
+
+		return add(player, PLAYER, player.getCx(), player.getCy(), player.getWidth(), player.getHeight());
+	}
+
+	/**
+		Registra um objeto nas células que o seu retângulo toca.
+
+		@return índice do objeto na grade.
+	*/
+
+	private int add(Object object, int type, double ocx, double ocy, double owidth, double oheight){
+
+		if(count == collider.length){
+
+			int capacity = count * 2;
+
+			collider = Arrays.copyOf(collider, capacity);
+			kind = Arrays.copyOf(kind, capacity);
+			cx = Arrays.copyOf(cx, capacity);
+			cy = Arrays.copyOf(cy, capacity);
+			width = Arrays.copyOf(width, capacity);
+			height = Arrays.copyOf(height, capacity);
+		}
+
+		int id = count++;
+
+		collider[id] = object;
+		kind[id] = type;
+		cx[id] = ocx;
+		cy[id] = ocy;
+		width[id] = owidth;
+		height[id] = oheight;
+
+		insert(id);
+
+		return id;
+	}
+
+	/**
+		Atualiza na grade a posição dos jogadores que se moveram desde a última chamada.
+	*/
+
+	public void update(){
+
+		for(int id = 0; id < count; id++){
+
+			if(kind[id] != PLAYER) continue;
+
+			Player player = (Player) collider[id];
+
+			if(player.getCx() != cx[id] || player.getCy() != cy[id]){
+
+				cellRange(id, before);
+
+				cx[id] = player.getCx();
+				cy[id] = player.getCy();
+
+				cellRange(id, after);
+
+				//Só reposiciona o jogador se ele mudou de células
+				if(!Arrays.equals(before, after)){
+
+					forEachCell(before, id, false);
+					forEachCell(after, id, true);
+				}
+			}
+		}
+	}
+
+	/**
+		Consulta os objetos registrados nas células tocadas por um retângulo. O resultado fica disponível através
+		do método candidate(), em ordem crescente de índice (isto é, na ordem em que os objetos foram registrados).
+
+		@param minX menor coordenada x do retângulo.
+		@param minY menor coordenada y do retângulo.
+		@param maxX maior coordenada x do retângulo.
+		@param maxY maior coordenada y do retângulo.
+		@return quantidade de objetos encontrados.
+	*/
+
+	public int query(double minX, double minY, double maxX, double maxY){
+
+		return defaultQuery.run(minX, minY, maxX, maxY);
+	}
+
+	/**
+		@param k posição no resultado da última consulta.
+		@return índice do k-ésimo objeto encontrado pela última consulta.
+	*/
+
+	public int candidate(int k){
+
+		return defaultQuery.candidate(k);
+	}
+
+	/**
+		Cria uma consulta independente. Cada thread que consulta a grade ao mesmo tempo que outras deve usar a
+		sua própria consulta, já que o resultado e as marcas de repetição ficam guardados nela.
+
+		@return nova consulta.
+	*/
+
+	public Query newQuery(){
+
+		return new Query();
+	}
+
+	/**
+		Classe que guarda o estado de uma consulta à grade (o resultado e as marcas usadas para evitar repetições).
+		A grade em si só é lida durante uma consulta, de modo que várias consultas podem rodar em paralelo,
+		desde que a grade não seja alterada (pelos métodos add() e update()) ao mesmo tempo.
+	*/
+
+	public class Query {
+
+		/**
+			Atributo privado que marca os objetos já incluídos no resultado da consulta atual, evitando repetições
+			quando uma bola ocupa mais de uma célula em que o mesmo objeto está registrado.
+		*/
+
+		private int [] stamp = new int[8];
+
+		/**
+			Atributo privado que representa o número da consulta atual.
+		*/
+
+		private int queryId = 0;
+
+		/**
+			Atributo privado que representa o resultado da última consulta.
+		*/
+
+		private int [] candidates = new int[8];
+
+		private Query(){ }
+
+		/**
+			Consulta os objetos registrados nas células tocadas por um retângulo, em ordem crescente de índice.
+
+			@param minX menor coordenada x do retângulo.
+			@param minY menor coordenada y do retângulo.
+			@param maxX maior coordenada x do retângulo.
+			@param maxY maior coordenada y do retângulo.
+			@return quantidade de objetos encontrados.
+		*/
+
+		public int run(double minX, double minY, double maxX, double maxY){
+
+			//A grade pode ter recebido objetos depois da criação da consulta
+			if(stamp.length < count){
+
+				stamp = Arrays.copyOf(stamp, collider.length);
+				candidates = Arrays.copyOf(candidates, collider.length);
+			}
+
+			int c0 = column(minX), c1 = column(maxX);
+			int r0 = row(minY), r1 = row(maxY);
+			int found = 0;
+
+			queryId++;
+
+			for(int r = r0; r <= r1; r++){
+
+				for(int c = c0; c <= c1; c++){
+
+					int cell = r * columns + c;
+					int [] items = cellItems[cell];
+
+					for(int k = cellCount[cell] - 1; k >= 0; k--){
+
+						int id = items[k];
+
+						if(stamp[id] != queryId){
+
+							stamp[id] = queryId;
+
+							//Inserção ordenada: o resultado tem poucos elementos
+							int j = found++;
+
+							while(j > 0 && candidates[j - 1] > id){
+
+								candidates[j] = candidates[j - 1];
+								j--;
+							}
+
+							candidates[j] = id;
+						}
+					}
+				}
+			}
+
+			return found;
+		}
+
+		/**
+			@param k posição no resultado da última consulta.
+			@return índice do k-ésimo objeto encontrado pela última consulta.
+		*/
+
+		public int candidate(int k){
+
+			return candidates[k];
+		}
+	}
+
+	/**
+		@return quantidade de objetos registrados na grade.
+	*/
+
+	public int size(){
+
+		return count;
+	}
+
+	/**
+		Insere um objeto em todas as células que o seu retângulo toca.
+
+		@param id índice do objeto.
+	*/
+
+	private void insert(int id){
+
+		cellRange(id, after);
+		forEachCell(after, id, true);
+	}
+
+	/**
+		Insere ou remove um objeto de um intervalo de células.
+
+		@param range intervalo de células (coluna inicial, linha inicial, coluna final, linha final).
+		@param id índice do objeto.
+		@param insert true para inserir, false para remover.
+	*/
+
+	private void forEachCell(int [] range, int id, boolean insert){
+
+		for(int r = range[1]; r <= range[3]; r++){
+
+			for(int c = range[0]; c <= range[2]; c++){
+
+				int cell = r * columns + c;
+
+				if(insert){
+
+					if(cellCount[cell] == cellItems[cell].length) cellItems[cell] = Arrays.copyOf(cellItems[cell], cellCount[cell] * 2);
+
+					cellItems[cell][cellCount[cell]++] = id;
+				}
+				else{
+
+					int [] items = cellItems[cell];
+
+					for(int k = 0; k < cellCount[cell]; k++){
+
+						if(items[k] == id){
+
+							items[k] = items[--cellCount[cell]];
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+		Calcula o intervalo de células (coluna inicial, linha inicial, coluna final, linha final) tocadas pelo
+		retângulo de um objeto.
+
+		@param id índice do objeto.
+		@param range array que recebe o intervalo.
+	*/
+
+	private void cellRange(int id, int [] range){
+
+		range[0] = column(cx[id] - width[id] / 2);
+		range[1] = row(cy[id] - height[id] / 2);
+		range[2] = column(cx[id] + width[id] / 2);
+		range[3] = row(cy[id] + height[id] / 2);
+	}
+
+	/**
+		@return coluna que contém a coordenada x, limitada às colunas da grade.
+	*/
+
+	private int column(double x){
+
+		//Coordenadas fora da grade (inclusive NaN) são levadas para a coluna mais próxima
+		if(!(x > 0)) return 0;
+
+		int c = (int) (x * inverseCellSize);
+
+		return c >= columns ? columns - 1 : c;
+	}
+
+	/**
+		@return linha que contém a coordenada y, limitada às linhas da grade.
+	*/
+
+	private int row(double y){
+
+		if(!(y > 0)) return 0;
+
+		int r = (int) (y * inverseCellSize);
+
+		return r >= rows ? rows - 1 : r;
+	}
+}
@@ -0,0 +1,82 @@
+import java.util.Random;
+
+/**
+	Classe que representa um gerador de números aleatórios cujo estado pode ser lido e restaurado, usado para
+	guardar e restaurar o estado de uma partida (veja a classe MatchState). A classe Random não permite ler o
+	seu estado, por isso esta classe refaz o mesmo gerador congruente linear, com os mesmos parâmetros: a
+	sequência de números gerada a partir de uma semente é exatamente a de um Random com a mesma semente, e os
+	replays gravados com Random continuam válidos.
+
+	O valor guardado por nextGaussian() entre duas chamadas não faz parte do estado.
+*/
+
+public class CopyableRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+		Constantes do gerador congruente linear (as mesmas da classe Random).
+	*/
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	/**
+		Atributo privado que representa o estado do gerador. Não tem valor inicial declarado porque é definido pelo
+		construtor de Random (através de setSeed()) antes da inicialização dos atributos desta classe.
+	*/
+
+	private long state;
+
+	/**
+		Construtor da classe CopyableRandom, com uma semente qualquer.
+	*/
+
+	public CopyableRandom(){
+
+		this(new Random().nextLong());
+	}
+
+	/**
+		Construtor da classe CopyableRandom.
+
+		@param seed semente do gerador.
+	*/
+
+	public CopyableRandom(long seed){
+
+		super(seed);
+	}
+
+	public synchronized void setSeed(long seed){
+
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	protected int next(int bits){
+
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+
+		return (int) (state >>> (48 - bits));
+	}
+
+	/**
+		@return o estado do gerador.
+	*/
+
+	public long getState(){
+
+		return state;
+	}
+
+	/**
+		@param state estado do gerador, como devolvido por getState().
+	*/
+
+	public void setState(long state){
+
+		this.state = state;
+	}
+}
@@ -3,9 +3,12 @@ import java.awt.*;
 /**
 	Classe que ilustra a criação de um novo tipo de bola, que redefine o comportamento de desenho.
 	Use esta classe para testar a execução do jogo, especificando um tipo de bola diferente pela linha de comando.
+
+	Como o desenho depende apenas do tamanho e da cor da bola, a classe implementa SpriteSkin: os losangos são
+	desenhados uma única vez em uma imagem guardada pelo SpriteCache, que é copiada a cada frame.
 */
 
-public class DiamondBall extends Ball {
+public class DiamondBall extends Ball implements SpriteSkin {
 
 	/**
 		Construtor da classe DiamondBall. Recebe o mesmo conjunto de parâmetros que o construtor da superclasse.
@@ -31,11 +34,29 @@ public class DiamondBall extends Ball {
 
 	public void draw(){
 
-		GameLib.setColor(getColor());
+		SpriteCache.shared().draw(this);
+	}
+
+	/**
+		@return quantidade de pixels que o maior losango ultrapassa o retângulo da bola.
+	*/
+
+	public int getSkinMargin(){
+
+		return 4;
+	}
+
+	/**
+		Desenha os losangos que formam a bola.
+	*/
+
+	public void paintSkin(Graphics2D g, double cx, double cy, double width, double height, Color color){
+
+		g.setColor(color);
 
 		for(double d = 0.0; d <= 3.0; d+=0.1){
 
-			GameLib.drawDiamond(getCx(), getCy(), getWidth()/2 + d);
+			DrawBatch.paintDiamond(g, cx, cy, width/2 + d);
 		}
 	}
 }
@@ -0,0 +1,336 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.util.*;
+
+/**
+	Classe que acumula desenhos de retângulos e losangos (as mesmas formas de GameLib.fillRect() e
+	GameLib.drawDiamond()) e de imagens (como os sprites da classe SpriteCache) e os desenha de uma só vez no
+	método flush(). Na hora do desenho as formas são agrupadas por cor (e as imagens, por imagem), de modo que a
+	cor do Graphics é trocada uma única vez por cor em vez de uma vez por forma, e cada forma vira uma única
+	chamada ao Graphics (o losango é desenhado como um polígono, e não como 4 linhas).
+
+	Dentro de uma mesma cor, as formas são desenhadas na ordem em que foram submetidas. Formas de cores diferentes
+	que se sobrepõem podem ficar em uma ordem diferente da submissão, por isso objetos cuja sobreposição importa
+	devem ser desenhados depois de um flush(). A classe AwtRenderer faz um flush() antes de qualquer desenho que não
+	passa por esta classe.
+
+	Os métodos devem ser chamados sempre pela thread que desenha na GameLib.
+*/
+
+public final class DrawBatch {
+
+	/**
+		Constante que identifica um retângulo preenchido.
+	*/
+
+	private static final int RECT = 0;
+
+	/**
+		Constante que identifica o contorno de um losango.
+	*/
+
+	private static final int DIAMOND = 1;
+
+	/**
+		Constante que identifica uma imagem.
+	*/
+
+	private static final int IMAGE = 2;
+
+	/**
+		Atributos privados que representam as formas submetidas: tipo, centro (ou canto superior esquerdo, para
+		imagens), largura e altura (ou raio, para losangos) e a chave da cor (ou da imagem) de cada forma.
+	*/
+
+	private static int [] kind = new int[256];
+	private static double [] cx = new double[256];
+	private static double [] cy = new double[256];
+	private static double [] width = new double[256];
+	private static double [] height = new double[256];
+	private static int [] colorKey = new int[256];
+
+	/**
+		Atributo privado que representa a quantidade de formas submetidas desde o último flush().
+	*/
+
+	private static int count = 0;
+
+	/**
+		Atributo privado que associa cada cor (ou imagem) usada desde o último flush() à sua chave.
+	*/
+
+	private static Map <Object, Integer> keys = new HashMap <Object, Integer> ();
+
+	/**
+		Atributo privado que representa as cores (e imagens) usadas desde o último flush(), na posição da sua chave.
+	*/
+
+	private static Object [] palette = new Object[16];
+
+	/**
+		Atributos privados usados como cache da última cor consultada, já que formas consecutivas costumam ter a mesma cor.
+	*/
+
+	private static Object lastColor = null;
+	private static int lastKey = -1;
+
+	/**
+		Atributos privados usados pela ordenação das formas por cor, reaproveitados entre os frames.
+	*/
+
+	private static int [] order = new int[256];
+	private static int [] start = new int[17];
+
+	/**
+		Atributos privados usados como vértices do losango.
+	*/
+
+	private static int [] xs = new int[4], ys = new int[4];
+
+	private DrawBatch(){ }
+
+	/**
+		Submete um retângulo preenchido, com o mesmo resultado de GameLib.setColor(color) seguido de GameLib.fillRect().
+
+		@param x coordenada x do centro do retângulo.
+		@param y coordenada y do centro do retângulo.
+		@param w largura do retângulo.
+		@param h altura do retângulo.
+		@param color cor do retângulo.
+	*/
+
+	public static void fillRect(double x, double y, double w, double h, Color color){
+
+		add(RECT, x, y, w, h, color);
+	}
+
+	/**
+		Submete vários retângulos preenchidos.
+
+		@param x coordenadas x dos centros dos retângulos.
+		@param y coordenadas y dos centros dos retângulos.
+		@param w larguras dos retângulos.
+		@param h alturas dos retângulos.
+		@param color cores dos retângulos.
+		@param n quantidade de retângulos (os n primeiros elementos de cada array).
+	*/
+
+	public static void fillRects(double [] x, double [] y, double [] w, double [] h, Color [] color, int n){
+
+		for(int i = 0; i < n; i++) add(RECT, x[i], y[i], w[i], h[i], color[i]);
+	}
+
+	/**
+		Submete o contorno de um losango, com o mesmo resultado de GameLib.setColor(color) seguido de GameLib.drawDiamond().
+
+		@param x coordenada x do centro do losango.
+		@param y coordenada y do centro do losango.
+		@param radius distância do centro a cada vértice.
+		@param color cor do losango.
+	*/
+
+	public static void drawDiamond(double x, double y, double radius, Color color){
+
+		add(DIAMOND, x, y, radius, radius, color);
+	}
+
+	/**
+		Submete uma imagem.
+
+		@param image imagem desenhada.
+		@param x coordenada x do canto superior esquerdo da imagem.
+		@param y coordenada y do canto superior esquerdo da imagem.
+	*/
+
+	public static void drawImage(Image image, int x, int y){
+
+		add(IMAGE, x, y, 0, 0, image);
+	}
+
+	/**
+		@return quantidade de formas submetidas desde o último flush().
+	*/
+
+	public static int size(){
+
+		return count;
+	}
+
+	/**
+		Calcula o retângulo, em pixels, que contém uma das formas submetidas.
+
+		@param i índice da forma, na ordem de submissão (de 0 a size() - 1).
+		@param box array que recebe as coordenadas x e y do canto superior esquerdo (incluídas) e do canto inferior
+		direito (excluídas) do retângulo.
+	*/
+
+	static void bounds(int i, int [] box){
+
+		if(kind[i] == IMAGE){
+
+			Image image = (Image) palette[colorKey[i]];
+
+			box[0] = (int) cx[i];
+			box[1] = (int) cy[i];
+			box[2] = box[0] + image.getWidth(null);
+			box[3] = box[1] + image.getHeight(null);
+		}
+		else{
+
+			//Um pixel a mais em cada direção cobre o arredondamento e a linha do contorno do losango
+			double w = (kind[i] == RECT) ? width[i] / 2 : width[i];
+			double h = (kind[i] == RECT) ? height[i] / 2 : height[i];
+
+			box[0] = (int) Math.floor(cx[i] - w) - 1;
+			box[1] = (int) Math.floor(cy[i] - h) - 1;
+			box[2] = (int) Math.ceil(cx[i] + w) + 2;
+			box[3] = (int) Math.ceil(cy[i] + h) + 2;
+		}
+	}
+
+	/**
+		Guarda uma forma.
+	*/
+
+	private static void add(int type, double x, double y, double w, double h, Object color){
+
+		if(count == kind.length){
+
+			int capacity = count * 2;
+
+			kind = Arrays.copyOf(kind, capacity);
+			cx = Arrays.copyOf(cx, capacity);
+			cy = Arrays.copyOf(cy, capacity);
+			width = Arrays.copyOf(width, capacity);
+			height = Arrays.copyOf(height, capacity);
+			colorKey = Arrays.copyOf(colorKey, capacity);
+		}
+
+		kind[count] = type;
+		cx[count] = x;
+		cy[count] = y;
+		width[count] = w;
+		height[count] = h;
+		colorKey[count] = key(color);
+		count++;
+	}
+
+	/**
+		@return chave da cor (ou imagem), criada se ela ainda não foi usada desde o último flush().
+	*/
+
+	private static int key(Object color){
+
+		if(color == lastColor) return lastKey;
+
+		Integer key = keys.get(color);
+
+		if(key == null){
+
+			key = keys.size();
+			keys.put(color, key);
+
+			if(key == palette.length) palette = Arrays.copyOf(palette, key * 2);
+
+			palette[key] = color;
+		}
+
+		lastColor = color;
+		lastKey = key;
+
+		return key;
+	}
+
+	/**
+		Desenha todas as formas submetidas no Graphics da GameLib, agrupadas por cor, e esvazia o lote.
+	*/
+
+	public static void flush(){
+
+		if(count == 0) return;
+
+		Graphics g = GameLibAccess.graphics();
+		int colors = keys.size();
+
+		//Ordenação por contagem (estável): a ordem de submissão é mantida dentro de cada cor
+		if(start.length < colors + 1) start = new int[colors + 1];
+		if(order.length < count) order = new int[kind.length];
+
+		Arrays.fill(start, 0, colors + 1, 0);
+
+		for(int i = 0; i < count; i++) start[colorKey[i] + 1]++;
+		for(int c = 0; c < colors; c++) start[c + 1] += start[c];
+		for(int i = 0; i < count; i++) order[start[colorKey[i]]++] = i;
+
+		int current = -1;
+
+		for(int k = 0; k < count; k++){
+
+			int i = order[k];
+
+			if(kind[i] == IMAGE){
+
+				g.drawImage((Image) palette[colorKey[i]], (int) cx[i], (int) cy[i], null);
+				continue;
+			}
+
+			if(colorKey[i] != current){
+
+				current = colorKey[i];
+				g.setColor((Color) palette[current]);
+			}
+
+			if(kind[i] == DIAMOND){
+
+				paintDiamond(g, cx[i], cy[i], width[i]);
+				continue;
+			}
+
+			int x = (int) Math.round(cx[i] - width[i] / 2);
+			int y = (int) Math.round(cy[i] - height[i] / 2);
+
+			g.fillRect(x, y, (int) Math.round(width[i]), (int) Math.round(height[i]));
+		}
+
+		clear();
+	}
+
+	/**
+		Desenha o contorno de um losango diretamente em um Graphics, com os vértices arredondados como em
+		GameLib.drawDiamond().
+
+		@param g Graphics em que o losango é desenhado.
+		@param x coordenada x do centro do losango.
+		@param y coordenada y do centro do losango.
+		@param r distância do centro a cada vértice.
+	*/
+
+	static void paintDiamond(Graphics g, double x, double y, double r){
+
+		//Vértices de cima, da direita, de baixo e da esquerda
+		xs[0] = (int) Math.round(x);
+		ys[0] = (int) Math.round(y - r);
+		xs[1] = (int) Math.round(x + r);
+		ys[1] = (int) Math.round(y);
+		xs[2] = xs[0];
+		ys[2] = (int) Math.round(y + r);
+		xs[3] = (int) Math.round(x - r);
+		ys[3] = ys[1];
+
+		g.drawPolygon(xs, ys, 4);
+	}
+
+	/**
+		Descarta as formas submetidas sem desenhá-las.
+	*/
+
+	public static void clear(){
+
+		count = 0;
+		keys.clear();
+		Arrays.fill(palette, null);
+		lastColor = null;
+		lastKey = -1;
+	}
+}
@@ -0,0 +1,206 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+	Classe que controla o ritmo dos frames do jogo. Em vez de ocupar um núcleo do processador até o instante do
+	próximo frame, a thread é suspensa (LockSupport.parkNanos) durante a maior parte da espera, e apenas os últimos
+	microssegundos são aguardados ativamente, compensando a imprecisão do agendador do sistema operacional.
+
+	Os prazos são calculados com System.nanoTime() e encadeados (cada prazo é o anterior mais o período), de modo
+	que pequenos atrasos não se acumulam. Há dois modos: o modo normal, com o período do FPS alvo, e o modo ocioso,
+	com um período maior, usado quando nada se move na tela (por exemplo, na tela inicial).
+
+	A instância também mede quão longe dos prazos cada frame é liberado.
+*/
+
+public class FramePacer {
+
+	/**
+		Constante que define (em nanossegundos) por quanto tempo, antes do prazo, a espera deixa de suspender
+		a thread e passa a ser ativa.
+	*/
+
+	private static final long SPIN_THRESHOLD = 200000;
+
+	/**
+		Atributo privado que representa o período (em nanossegundos) entre frames no modo normal.
+	*/
+
+	private long period;
+
+	/**
+		Atributo privado que representa o período (em nanossegundos) entre frames no modo ocioso.
+	*/
+
+	private long idlePeriod;
+
+	/**
+		Atributo privado que indica se o modo ocioso está ativo.
+	*/
+
+	private boolean idle = false;
+
+	/**
+		Atributo privado que representa o prazo (em nanossegundos) do último frame.
+	*/
+
+	private long deadline;
+
+	/**
+		Atributo privado que representa a quantidade de frames aguardados.
+	*/
+
+	private long frames = 0;
+
+	/**
+		Atributo privado que representa a quantidade de frames cujo prazo já havia passado quando a espera começou.
+	*/
+
+	private long missed = 0;
+
+	/**
+		Atributo privado que representa a quantidade de frames cujo atraso foi medido.
+	*/
+
+	private long measured = 0;
+
+	/**
+		Atributo privado que representa a soma dos atrasos (em nanossegundos) em relação aos prazos.
+	*/
+
+	private long totalLateness = 0;
+
+	/**
+		Atributo privado que representa o maior atraso (em nanossegundos) em relação a um prazo.
+	*/
+
+	private long maxLateness = 0;
+
+	/**
+		Construtor da classe FramePacer.
+
+		@param fps quantidade de frames por segundo no modo normal.
+		@param idleFps quantidade de frames por segundo no modo ocioso.
+	*/
+
+	public FramePacer(double fps, double idleFps){
+
+		this.period = periodOf(fps);
+		this.idlePeriod = periodOf(idleFps);
+		this.deadline = System.nanoTime();
+	}
+
+	/**
+		@param fps quantidade de frames por segundo.
+		@return período (em nanossegundos) correspondente.
+	*/
+
+	private static long periodOf(double fps){
+
+		if(!(fps > 0)) throw new IllegalArgumentException("FPS inválido: " + fps);
+
+		return Math.round(1e9 / fps);
+	}
+
+	/**
+		Ativa ou desativa o modo ocioso.
+
+		@param idle true para usar o período do modo ocioso, false para usar o período do FPS alvo.
+	*/
+
+	public void setIdle(boolean idle){
+
+		this.idle = idle;
+	}
+
+	/**
+		Aguarda até o prazo do próximo frame. Se o prazo já passou por mais de um período (por exemplo, depois de
+		um frame muito lento), o atraso é medido e os prazos seguintes são recalculados a partir do instante atual,
+		em vez de liberar vários frames seguidos para recuperar o atraso.
+	*/
+
+	public void waitForNextFrame(){
+
+		long target = deadline + (idle ? idlePeriod : period);
+		long now = System.nanoTime();
+
+		if(now - target > period){
+
+			//Muito atrasado: o atraso entra nas medidas e a contagem recomeça a partir de agora
+			missed++;
+			frames++;
+			record(now - target);
+			deadline = now;
+			return;
+		}
+
+		if(now >= target) missed++;
+
+		long remaining;
+
+		//Suspende a thread enquanto houver tempo de sobra e espera ativamente no final
+		while((remaining = target - System.nanoTime()) > SPIN_THRESHOLD) LockSupport.parkNanos(remaining - SPIN_THRESHOLD);
+		while((now = System.nanoTime()) < target) Thread.yield();
+
+		record(now - target);
+
+		frames++;
+		deadline = target;
+	}
+
+	/**
+		Registra o atraso (em nanossegundos) de um frame em relação ao seu prazo.
+	*/
+
+	private void record(long lateness){
+
+		measured++;
+		totalLateness += lateness;
+		if(lateness > maxLateness) maxLateness = lateness;
+	}
+
+	/**
+		@return quantidade de frames aguardados.
+	*/
+
+	public long getFrames(){
+
+		return frames;
+	}
+
+	/**
+		@return quantidade de frames cujo prazo já havia passado quando a espera começou.
+	*/
+
+	public long getMissed(){
+
+		return missed;
+	}
+
+	/**
+		@return atraso médio (em microssegundos) dos frames em relação aos prazos.
+	*/
+
+	public double getMeanLateness(){
+
+		return measured > 0 ? totalLateness / 1e3 / measured : 0;
+	}
+
+	/**
+		@return maior atraso (em microssegundos) de um frame em relação ao prazo.
+	*/
+
+	public double getMaxLateness(){
+
+		return maxLateness / 1e3;
+	}
+
+	/**
+		@return resumo das medidas de precisão.
+	*/
+
+	@Override
+	public String toString(){
+
+		return frames + " frames, " + missed + " prazos perdidos, atraso médio " + Math.round(getMeanLateness()) + " us, máximo " + Math.round(getMaxLateness()) + " us";
+	}
+}
@@ -0,0 +1,212 @@
+import java.util.*;
+
+/**
+	Classe que mede a duração de cada fase de um frame do jogo, cada uma em um LatencyHistogram, para identificar
+	de onde vêm os frames lentos sem precisar de um profiler externo.
+
+	As fases UPDATE, COLLISIONS e STEP são medidas pela thread da simulação (na classe Match), e as fases DRAW,
+	DISPLAY, WAIT e FRAME pela thread que desenha. Cada histograma é alimentado por uma única thread; as consultas
+	feitas por outra thread (como o desenho das medidas na tela) são aproximadas.
+*/
+
+public class FrameProfiler {
+
+	/**
+		Constante que identifica a fase de atualização das bolas (BallManager.update()).
+	*/
+
+	public static final int UPDATE = 0;
+
+	/**
+		Constante que identifica a fase de tratamento das colisões (CollisionGrid.update() e BallManager.checkCollisions()).
+	*/
+
+	public static final int COLLISIONS = 1;
+
+	/**
+		Constante que identifica um passo inteiro da simulação (Match.step()).
+	*/
+
+	public static final int STEP = 2;
+
+	/**
+		Constante que identifica a fase de desenho de um frame (as chamadas ao Renderer).
+	*/
+
+	public static final int DRAW = 3;
+
+	/**
+		Constante que identifica a fase de apresentação de um frame (Renderer.display(), incluindo GameLib.display()
+		ou a cópia para a janela e o Toolkit.sync()).
+	*/
+
+	public static final int DISPLAY = 4;
+
+	/**
+		Constante que identifica a espera pelo próximo frame (FramePacer.waitForNextFrame()).
+	*/
+
+	public static final int WAIT = 5;
+
+	/**
+		Constante que identifica o intervalo entre o início de dois frames consecutivos.
+	*/
+
+	public static final int FRAME = 6;
+
+	/**
+		Constante que representa os nomes das fases, na ordem das constantes.
+	*/
+
+	private static final String [] NAMES = { "update", "colisões", "passo", "desenho", "display", "espera", "frame" };
+
+	/**
+		Constante que define o intervalo mínimo (em milisegundos) entre duas atualizações do texto exibido na tela.
+	*/
+
+	private static final long OVERLAY_REFRESH = 250;
+
+	/**
+		Atributo privado que representa os histogramas, um por fase.
+	*/
+
+	private final LatencyHistogram [] phases = new LatencyHistogram[NAMES.length];
+
+	/**
+		Atributo privado que representa a quantidade de bolas no último frame desenhado.
+	*/
+
+	private volatile int ballCount = 0;
+
+	/**
+		Atributo privado que representa as linhas exibidas na tela.
+	*/
+
+	private String [] overlay = new String[0];
+
+	/**
+		Atributo privado que representa o instante (em milisegundos) da última atualização das linhas exibidas na tela.
+	*/
+
+	private long overlayTime = Long.MIN_VALUE;
+
+	/**
+		Construtor da classe FrameProfiler.
+	*/
+
+	public FrameProfiler(){
+
+		for(int k = 0; k < phases.length; k++) phases[k] = new LatencyHistogram();
+	}
+
+	/**
+		Registra a duração de uma fase.
+
+		@param phase fase medida (uma das constantes da classe).
+		@param nanos duração, em nanossegundos.
+	*/
+
+	public void record(int phase, long nanos){
+
+		phases[phase].record(nanos);
+	}
+
+	/**
+		@param phase uma das constantes da classe.
+		@return o histograma da fase.
+	*/
+
+	public LatencyHistogram get(int phase){
+
+		return phases[phase];
+	}
+
+	/**
+		@param count quantidade de bolas no frame desenhado.
+	*/
+
+	public void setBallCount(int count){
+
+		ballCount = count;
+	}
+
+	/**
+		@return quantidade de bolas no último frame desenhado.
+	*/
+
+	public int getBallCount(){
+
+		return ballCount;
+	}
+
+	/**
+		Obtém as linhas com as medidas de cada fase para serem exibidas na tela. As linhas são montadas novamente
+		no máximo a cada OVERLAY_REFRESH milisegundos, para que o texto fique legível (e não seja recriado a cada frame).
+
+		@param now instante atual, em milisegundos.
+		@return as linhas: um cabeçalho, uma linha por fase (p50, p99 e máximo) e a quantidade de bolas.
+	*/
+
+	public String [] getOverlay(long now){
+
+		if(now - overlayTime >= OVERLAY_REFRESH){
+
+			String [] lines = new String[phases.length + 2];
+
+			lines[0] = String.format(Locale.ROOT, "%-9s%8s%8s%8s", "fase", "p50", "p99", "max");
+
+			for(int k = 0; k < phases.length; k++){
+
+				LatencyHistogram h = phases[k];
+
+				lines[k + 1] = String.format(Locale.ROOT, "%-9s%8s%8s%8s", NAMES[k], format(h.getPercentile(50)), format(h.getPercentile(99)), format(h.getMax()));
+			}
+
+			lines[phases.length + 1] = "bolas: " + ballCount;
+
+			overlay = lines;
+			overlayTime = now;
+		}
+
+		return overlay;
+	}
+
+	/**
+		@return um resumo das medidas de todas as fases, uma fase por linha.
+	*/
+
+	public String summary(){
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(String.format(Locale.ROOT, "%-9s %10s %10s %10s %10s %10s %10s", "fase", "n", "média", "p50", "p99", "p99.9", "max"));
+
+		for(int k = 0; k < phases.length; k++){
+
+			LatencyHistogram h = phases[k];
+
+			sb.append(System.lineSeparator());
+			sb.append(String.format(Locale.ROOT, "%-9s %10d %10s %10s %10s %10s %10s", NAMES[k], h.getCount(), format(Math.round(h.getMean())),
+				format(h.getPercentile(50)), format(h.getPercentile(99)), format(h.getPercentile(99.9)), format(h.getMax())));
+		}
+
+		sb.append(System.lineSeparator());
+		sb.append("bolas: ").append(ballCount);
+
+		return sb.toString();
+	}
+
+	/**
+		@param nanos duração, em nanossegundos.
+		@return a duração formatada com a unidade mais adequada (ns, us, ms ou s).
+	*/
+
+	static String format(long nanos){
+
+		if(nanos < 1000) return nanos + "ns";
+		if(nanos < 1000000) return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+		if(nanos < 1000000000) return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+
+		return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+	}
+}
@@ -1,25 +1,18 @@
-import java.util.*;
 import java.awt.Color;
 
-public class FxBall extends Ball implements IBall{
+public class FxBall extends Ball implements IBall, Recyclable {
 
 	/**
-		Atributo privado que representa uma fila de coordenadas x em que a bola passou
+		Atributo privado que representa o histórico de posições de onde o rastro da bola é lido
 	*/
 
-	private Queue <Double> ballCx = new LinkedList <Double> ();
+	private PositionHistory history = PositionHistory.shared();
 
 	/**
-		Atributo privado que representa uma fila de coordenadas y em que a bola passou
+		Atributo privado que representa o handle da bola desenhada por esta instância (ou -1 se ainda não foi informado)
 	*/
 
-	private Queue <Double> ballCy = new LinkedList <Double> ();
-
-	/**
-		Atributo privado que representa o início do jogo
-	*/
-
-	private boolean inicio = false;
+	private long handle = -1;
 
     /**
 		Construtor da classe FxBall. Recebe o mesmo conjunto de parâmetros que o construtor da superclasse.
@@ -38,50 +31,56 @@ public class FxBall extends Ball implements IBall{
 		super(cx, cy, width, height, color, speed, vx, vy);
     }
 
+	/**
+		Método que define o histórico de posições usado pelo rastro (por padrão, o histórico compartilhado).
+
+		@param history histórico de posições.
+	*/
+
+	public void setHistory(PositionHistory history){
+
+		this.history = history;
+	}
+
+    /**
+		Método que informa qual bola esta instância desenha. O histórico recomeça sozinho quando o handle muda.
+
+		@param handle handle da bola que será desenhada.
+	*/
+
+	public void bind(long handle){
+
+		this.handle = handle;
+	}
+
     /**
 		Método que redefine o comportamento de desenho definido na superclasse.
 	*/
 
 	public void draw(){
 
-		super.draw();
-
-		//Se é a primeira vez que o método draw é chamado, pega as 20 primeiras posições anteriores da bola
-		if(inicio == false){
-			for(int i = 0; i < 20; i++){
-				ballCx.add(super.getCx());
-				ballCy.add(super.getCy());
-			}
-		}
+		//Desenha a bola e o rastro através do DrawBatch, com a cor da bola
+		Color color = getColor();
 
-		//Depois define a variável inicio como true para o procedimento anterior não ocorrer novamente
-		inicio = true;
+		DrawBatch.fillRect(super.getCx(), super.getCy(), super.getWidth(), super.getHeight(), color);
 
-		//Elimina as duas últimas posições
-		ballCx.poll();
-		ballCy.poll();
-		//Adiciona as duas últimas posições
-		ballCx.add(super.getCx());
-		ballCy.add(super.getCy());
+		//Sem um handle não há onde guardar o rastro
+		if(handle < 0) return;
 
-		//Iterador da lista de coordenadas x
-		Iterator <Double> iteratorCx = ballCx.iterator();
+		//Registra a posição atual; na primeira vez, todo o histórico é preenchido com ela
+		history.record(handle, super.getCx(), super.getCy());
 
-		//Iterador da lista de coordenadas y
-		Iterator <Double> iteratorCy = ballCy.iterator();
-		
 		//Variável que irá alterar a altura do efeito de rastro
 		double refinador = 0.0;
 
-		//While que percorre as duas filas
-		while (iteratorCx.hasNext() && iteratorCy.hasNext()) {
+		//Percorre o histórico da posição mais antiga para a mais recente
+		for(int age = history.size(handle) - 1; age >= 0; age--){
 
 			//Desenha um retângulo para representar o efeito de rastro passando as coordenadas antigas
-			GameLib.fillRect(iteratorCx.next(), iteratorCy.next(), super.getWidth() / 2, (super.getHeight() / 4) + refinador);
+			DrawBatch.fillRect(history.getX(handle, age), history.getY(handle, age), super.getWidth() / 2, (super.getHeight() / 4) + refinador, color);
 			
 			//Atualiza o refinador para melhorar a aparência do efeito de rastro
 			refinador += 0.8;
 		}
-		
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,158 @@
+import java.awt.Graphics;
+import java.awt.Window;
+import java.awt.image.BufferedImage;
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
+
+/**
+	Classe auxiliar que dá acesso ao objeto Graphics em que a GameLib desenha. A GameLib não oferece um método
+	para obtê-lo, por isso o atributo privado é lido através de um MethodHandle, obtido uma única vez. O objeto
+	muda a cada chamada de GameLib.display() (fora do modo seguro), por isso deve ser obtido novamente a cada frame.
+*/
+
+final class GameLibAccess {
+
+	/**
+		MethodHandle de leitura do atributo privado "g" da classe GameLib.
+	*/
+
+	private static final MethodHandle GRAPHICS = getter("g");
+
+	/**
+		MethodHandle de escrita do atributo privado "g" da classe GameLib.
+	*/
+
+	private static final MethodHandle SET_GRAPHICS = setter("g");
+
+	/**
+		MethodHandles de leitura dos atributos privados "frame", "buffer" e "safe_mode" da classe GameLib.
+	*/
+
+	private static final MethodHandle FRAME = getter("frame").asType(MethodType.methodType(Window.class));
+	private static final MethodHandle BUFFER = getter("buffer");
+	private static final MethodHandle SAFE_MODE = getter("safe_mode");
+
+	private GameLibAccess(){ }
+
+	/**
+		Obtém um MethodHandle que lê um atributo estático privado da classe GameLib.
+
+		@param name nome do atributo.
+		@return o MethodHandle de leitura do atributo.
+	*/
+
+	private static MethodHandle getter(String name){
+
+		try{
+			Field field = GameLib.class.getDeclaredField(name);
+
+			field.setAccessible(true);
+
+			return MethodHandles.lookup().unreflectGetter(field);
+		}
+		catch(Exception e){
+
+			throw new IllegalStateException("Atributo '" + name + "' da classe GameLib não encontrado.", e);
+		}
+	}
+
+	/**
+		Obtém um MethodHandle que altera um atributo estático privado da classe GameLib.
+
+		@param name nome do atributo.
+		@return o MethodHandle de escrita do atributo.
+	*/
+
+	private static MethodHandle setter(String name){
+
+		try{
+			Field field = GameLib.class.getDeclaredField(name);
+
+			field.setAccessible(true);
+
+			return MethodHandles.lookup().unreflectSetter(field);
+		}
+		catch(Exception e){
+
+			throw new IllegalStateException("Atributo '" + name + "' da classe GameLib não encontrado.", e);
+		}
+	}
+
+	/**
+		@return o objeto Graphics em que a GameLib está desenhando (null se a janela não foi inicializada).
+	*/
+
+	static Graphics graphics(){
+
+		try{
+			return (Graphics) GRAPHICS.invokeExact();
+		}
+		catch(Throwable t){
+
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+		Troca o objeto Graphics em que a GameLib desenha. Todos os desenhos feitos através da GameLib (inclusive
+		os métodos draw() das paredes, alvos, jogadores e placares) passam a ser feitos no novo objeto.
+
+		@param g novo objeto Graphics.
+	*/
+
+	static void setGraphics(Graphics g){
+
+		try{
+			SET_GRAPHICS.invokeExact(g);
+		}
+		catch(Throwable t){
+
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+		@return a janela da GameLib (null se a janela não foi inicializada).
+	*/
+
+	static Window frame(){
+
+		try{
+			return (Window) FRAME.invokeExact();
+		}
+		catch(Throwable t){
+
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+		@return a imagem em que a GameLib desenha no modo seguro (null fora do modo seguro).
+	*/
+
+	static BufferedImage buffer(){
+
+		try{
+			return (BufferedImage) BUFFER.invokeExact();
+		}
+		catch(Throwable t){
+
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+		@return true se a janela foi inicializada no modo seguro.
+	*/
+
+	static boolean safeMode(){
+
+		try{
+			return (boolean) SAFE_MODE.invokeExact();
+		}
+		catch(Throwable t){
+
+			throw new IllegalStateException(t);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/**
+	Interface que representa uma fonte de entrada (teclas pressionadas) para o jogo.
+	As teclas são identificadas pelas constantes KEY_* da classe GameLib.
+*/
+
+public interface Input {
+
+	/**
+		Entrada que lê o teclado da janela aberta pela GameLib.
+	*/
+
+	Input KEYBOARD = new Input(){
+
+		public boolean isKeyPressed(int key){
+
+			return GameLib.isKeyPressed(key);
+		}
+	};
+
+	/**
+		Entrada que nunca reporta teclas pressionadas. Usada no modo headless.
+	*/
+
+	Input NONE = new Input(){
+
+		public boolean isKeyPressed(int key){
+
+			return false;
+		}
+	};
+
+	/**
+		Verifica se uma tecla está pressionada.
+
+		@param key código da tecla (uma das constantes KEY_* da classe GameLib).
+		@return true se a tecla estiver pressionada, false caso contrário.
+	*/
+
+	boolean isKeyPressed(int key);
+}
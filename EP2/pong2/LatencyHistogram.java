@@ -0,0 +1,191 @@
+/**
+	Classe que representa um histograma de durações (em nanossegundos) com memória fixa, no estilo dos histogramas
+	HDR: as durações menores que SUB_BUCKETS são guardadas exatamente, e cada potência de 2 acima disso é dividida
+	em SUB_BUCKETS faixas de mesma largura, de modo que o erro relativo de cada valor é menor que 1/SUB_BUCKETS
+	(cerca de 1,6%), de alguns nanossegundos até MAX_VALUE. Registrar uma duração não aloca memória.
+
+	Cada instância deve ser alimentada por uma única thread. Outras threads podem consultá-la, obtendo valores
+	aproximados enquanto ela é alimentada.
+*/
+
+public class LatencyHistogram {
+
+	/**
+		Constante que define a quantidade de bits de cada faixa dentro de uma potência de 2.
+	*/
+
+	private static final int SUB_BUCKET_BITS = 6;
+
+	/**
+		Constante que define a quantidade de faixas em cada potência de 2.
+	*/
+
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+		Constante que define o maior expoente guardado: durações a partir de 2^(MAX_EXPONENT + 1) nanossegundos
+		(cerca de 37 minutos) são contadas na última faixa.
+	*/
+
+	private static final int MAX_EXPONENT = 40;
+
+	/**
+		Constante que representa a maior duração guardada com a precisão do histograma.
+	*/
+
+	public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	/**
+		Atributo privado que representa a quantidade de durações em cada faixa.
+	*/
+
+	private final long [] counts = new long[(MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS];
+
+	/**
+		Atributo privado que representa a quantidade de durações registradas.
+	*/
+
+	private long count = 0;
+
+	/**
+		Atributo privado que representa a soma das durações registradas.
+	*/
+
+	private long total = 0;
+
+	/**
+		Atributo privado que representa a maior duração registrada.
+	*/
+
+	private long max = 0;
+
+	/**
+		Registra uma duração.
+
+		@param nanos duração, em nanossegundos (valores negativos são contados como zero).
+	*/
+
+	public void record(long nanos){
+
+		if(nanos < 0) nanos = 0;
+
+		counts[index(nanos)]++;
+		count++;
+		total += nanos;
+
+		if(nanos > max) max = nanos;
+	}
+
+	/**
+		@param value duração, em nanossegundos.
+		@return índice da faixa que contém a duração.
+	*/
+
+	private static int index(long value){
+
+		if(value < SUB_BUCKETS) return (int) value;
+		if(value > MAX_VALUE) value = MAX_VALUE;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+
+		//(value >>> shift) fica entre SUB_BUCKETS e 2 * SUB_BUCKETS - 1
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+		@param index índice de uma faixa.
+		@return a maior duração contida na faixa.
+	*/
+
+	private static long highestValue(int index){
+
+		if(index < SUB_BUCKETS) return index;
+
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+		@return quantidade de durações registradas.
+	*/
+
+	public long getCount(){
+
+		return count;
+	}
+
+	/**
+		@return a maior duração registrada (0 se nenhuma duração foi registrada).
+	*/
+
+	public long getMax(){
+
+		return max;
+	}
+
+	/**
+		@return a média das durações registradas (0 se nenhuma duração foi registrada).
+	*/
+
+	public double getMean(){
+
+		return (count == 0) ? 0 : (double) total / count;
+	}
+
+	/**
+		Calcula um percentil das durações registradas.
+
+		@param percentile percentil desejado (entre 0 e 100).
+		@return a menor duração (com a precisão do histograma) que é maior ou igual à porcentagem indicada das
+		durações registradas, limitada à maior duração registrada (0 se nenhuma duração foi registrada).
+	*/
+
+	public long getPercentile(double percentile){
+
+		long n = count;
+
+		if(n == 0) return 0;
+
+		long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+		long seen = 0;
+
+		for(int i = 0; i < counts.length; i++){
+
+			seen += counts[i];
+
+			if(seen >= target) return Math.min(highestValue(i), max);
+		}
+
+		return max;
+	}
+
+	/**
+		Acrescenta a este histograma todas as durações registradas em outro.
+
+		@param other histograma acrescentado.
+	*/
+
+	public void add(LatencyHistogram other){
+
+		for(int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+
+		count += other.count;
+		total += other.total;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+		Descarta todas as durações registradas.
+	*/
+
+	public void reset(){
+
+		java.util.Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+}
@@ -0,0 +1,914 @@
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.*;
+import java.util.List;
+
+/**
+	Implementação de Renderer que desenha em uma janela AWT através da classe GameLib, redesenhando a cada frame
+	apenas as regiões da tela ocupadas pelas bolas e pelos jogadores.
+
+	O frame é composto em três camadas. A camada de baixo guarda o fundo e os textos; a camada de cima guarda as
+	paredes, os alvos e os placares. As duas só são redesenhadas quando algum desses objetos muda (por exemplo,
+	quando um placar muda ou o texto inicial pisca). Entre elas ficam as bolas; os jogadores, como no desenho
+	completo, ficam por cima de tudo. A tela é dividida em blocos de TILE_SIZE pixels, e em cada frame apenas os
+	blocos ocupados pelas bolas e pelos jogadores no frame anterior ou no atual, e os blocos em que uma camada fixa
+	mudou, são restaurados a partir da camada de baixo, redesenhados e cobertos pela camada de cima (exceto os
+	jogadores, desenhados depois dela).
+
+	O frame composto fica em uma imagem que não é apagada entre os frames (no modo seguro, a própria imagem da
+	GameLib), e é copiada para a janela sem passar por GameLib.display(), que apagaria a tela inteira.
+
+	As bolas devem ser desenhadas através do DrawBatch (como as dos tipos Ball, FxBall e DiamondBall), para que a
+	região ocupada por elas seja conhecida. Para bolas de tipos que desenham diretamente na GameLib, é considerada
+	apenas a região do retângulo da bola, aumentada em VIEW_MARGIN pixels em cada direção.
+
+	O método main() verifica que os frames compostos são iguais, pixel a pixel, aos frames redesenhados por inteiro
+	pela classe AwtRenderer.
+*/
+
+public class LayeredRenderer implements Renderer {
+
+	/**
+		Constante que define o tamanho (em pixels) dos blocos em que a tela é dividida.
+	*/
+
+	public static final int TILE_SIZE = 16;
+
+	/**
+		Constante que define quantos pixels, em cada direção, o desenho de uma bola pode ultrapassar o seu retângulo.
+	*/
+
+	public static final int VIEW_MARGIN = 8;
+
+	/**
+		Constante que define a quantidade padrão de frames comparados pelo método main().
+	*/
+
+	private static final int DEFAULT_FRAMES = 1500;
+
+	/**
+		Atributos privados que representam a largura e a altura da tela.
+	*/
+
+	private final int width;
+	private final int height;
+
+	/**
+		Atributos privados que representam a quantidade de colunas e de linhas de blocos.
+	*/
+
+	private final int columns;
+	private final int rows;
+
+	/**
+		Atributo privado que representa a imagem em que o frame é composto.
+	*/
+
+	private final BufferedImage frame;
+
+	/**
+		Atributo privado que representa o Graphics da imagem do frame, usado também pela GameLib.
+	*/
+
+	private final Graphics2D frameGraphics;
+
+	/**
+		Atributos privados que representam a camada de baixo (fundo e textos) e a de cima (paredes, alvos e placares).
+	*/
+
+	private BufferedImage under;
+	private BufferedImage over;
+
+	/**
+		Atributos privados que representam as imagens em que uma camada é redesenhada, para ser comparada com a atual.
+	*/
+
+	private BufferedImage nextUnder;
+	private BufferedImage nextOver;
+
+	/**
+		Atributo privado que indica se o frame é copiado para a janela da GameLib.
+	*/
+
+	private final boolean window;
+
+	/**
+		Atributos privados que representam, para cada bloco, se ele está ocupado no frame atual, se ele estava
+		ocupado no frame anterior, se ele será redesenhado e se ele ainda precisa ser restaurado.
+	*/
+
+	private boolean [] current;
+	private boolean [] previous;
+	private final boolean [] dirty;
+	private final boolean [] pending;
+
+	/**
+		Atributos privados que representam, para cada bloco, se a camada de baixo tem algo além do fundo preto e se
+		a camada de cima tem algum pixel não transparente (nas camadas atuais e nas imagens nextUnder e nextOver).
+	*/
+
+	private boolean [] underContent;
+	private boolean [] overContent;
+	private boolean [] nextUnderContent;
+	private boolean [] nextOverContent;
+
+	/**
+		Atributo privado que indica se todos os blocos devem ser redesenhados no próximo frame.
+	*/
+
+	private boolean redrawAll = true;
+
+	/**
+		Atributos privados que representam o conteúdo das camadas fixas pedido no frame atual e no frame anterior.
+	*/
+
+	private Layers requested = new Layers();
+	private Layers painted = new Layers();
+
+	/**
+		Atributo privado que representa a cor usada pelos próximos textos.
+	*/
+
+	private Color textColor = Color.WHITE;
+
+	/**
+		Atributo privado que representa as bolas desenhadas pela sua própria instância no frame atual.
+	*/
+
+	private final ArrayList <IBall> views = new ArrayList <IBall> ();
+
+	/**
+		Atributos privados que representam os jogadores desenhados no frame atual: a instância (ou null, se o
+		jogador é desenhado a partir do seu estado), o centro, a largura, a altura e a cor.
+	*/
+
+	private Player [] playerRefs = new Player[4];
+	private double [] playerBox = new double[16];
+	private Color [] playerColors = new Color[4];
+	private int playerCount = 0;
+
+	/**
+		Atributo privado usado para obter o retângulo das formas do DrawBatch.
+	*/
+
+	private final int [] box = new int[4];
+
+	/**
+		Construtor da classe LayeredRenderer. Abre a janela do jogo.
+
+		@param title título da janela.
+		@param width largura da janela.
+		@param height altura da janela.
+		@param safeMode indica se a janela deve ser inicializada no modo seguro da GameLib.
+	*/
+
+	public LayeredRenderer(String title, int width, int height, boolean safeMode){
+
+		this(width, height, open(title, width, height, safeMode));
+	}
+
+	/**
+		Construtor da classe LayeredRenderer que não abre uma janela: o frame é apenas composto na imagem
+		devolvida por getFrame().
+
+		@param width largura da tela.
+		@param height altura da tela.
+	*/
+
+	LayeredRenderer(int width, int height){
+
+		this(width, height, false);
+	}
+
+	private LayeredRenderer(int width, int height, boolean window){
+
+		this.width = width;
+		this.height = height;
+		this.window = window;
+		this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+		current = new boolean[columns * rows];
+		previous = new boolean[columns * rows];
+		dirty = new boolean[columns * rows];
+		pending = new boolean[columns * rows];
+		underContent = new boolean[columns * rows];
+		overContent = new boolean[columns * rows];
+		nextUnderContent = new boolean[columns * rows];
+		nextOverContent = new boolean[columns * rows];
+
+		//As camadas são lidas pixel a pixel na comparação, por isso não são imagens compatíveis com a tela
+		under = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		over = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		nextUnder = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		nextOver = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+		if(window && GameLibAccess.safeMode()){
+
+			//No modo seguro a GameLib já desenha em uma imagem, que passa a guardar o frame composto
+			frame = GameLibAccess.buffer();
+			frameGraphics = (Graphics2D) GameLibAccess.graphics();
+		}
+		else{
+
+			Graphics old = GameLibAccess.graphics();
+
+			if(old != null) old.dispose();
+
+			frame = SpriteCache.createImage(width, height, Transparency.OPAQUE);
+			frameGraphics = frame.createGraphics();
+			GameLibAccess.setGraphics(frameGraphics);
+		}
+	}
+
+	/**
+		Abre a janela da GameLib.
+
+		@return true.
+	*/
+
+	private static boolean open(String title, int width, int height, boolean safeMode){
+
+		if(safeMode) GameLib.initGraphics_SAFE_MODE(title, width, height);
+		else GameLib.initGraphics(title, width, height);
+
+		return true;
+	}
+
+	/**
+		@return a imagem em que o frame é composto.
+	*/
+
+	public BufferedImage getFrame(){
+
+		return frame;
+	}
+
+	public void drawBall(IBall ball){
+
+		//O desenho é feito no display(), depois que a região ocupada pela bola é restaurada
+		views.add(ball);
+	}
+
+	public void drawBall(double cx, double cy, double width, double height, Color color){
+
+		DrawBatch.fillRect(cx, cy, width, height, color);
+	}
+
+	public void drawWall(Wall wall){
+
+		requested.add(Layers.WALL, wall, null, 0, 0, null, 0);
+	}
+
+	public void drawTarget(Target target){
+
+		requested.add(Layers.TARGET, target, null, 0, 0, null, 0);
+	}
+
+	public void drawPlayer(Player player){
+
+		addPlayer(player, player.getCx(), player.getCy(), player.getWidth(), player.getHeight(), null);
+	}
+
+	public void drawPlayer(double cx, double cy, double width, double height, Color color){
+
+		addPlayer(null, cx, cy, width, height, color);
+	}
+
+	public void drawScore(Score score){
+
+		requested.add(Layers.SCORE, score, null, 0, 0, null, score.getScore());
+	}
+
+	public void setColor(Color color){
+
+		textColor = color;
+	}
+
+	public void drawText(String text, double y, int align){
+
+		requested.add(Layers.TEXT, null, text, y, align, textColor, 0);
+	}
+
+	/**
+		Guarda um jogador desenhado no frame atual.
+	*/
+
+	private void addPlayer(Player player, double cx, double cy, double w, double h, Color color){
+
+		if(playerCount == playerRefs.length){
+
+			playerRefs = Arrays.copyOf(playerRefs, playerCount * 2);
+			playerBox = Arrays.copyOf(playerBox, playerCount * 8);
+			playerColors = Arrays.copyOf(playerColors, playerCount * 2);
+		}
+
+		playerRefs[playerCount] = player;
+		playerBox[4 * playerCount] = cx;
+		playerBox[4 * playerCount + 1] = cy;
+		playerBox[4 * playerCount + 2] = w;
+		playerBox[4 * playerCount + 3] = h;
+		playerColors[playerCount] = color;
+		playerCount++;
+	}
+
+	public void display(){
+
+		compose();
+		present();
+	}
+
+	/**
+		Compõe o frame atual na imagem do frame, redesenhando apenas os blocos ocupados pelas bolas e pelos
+		jogadores no frame anterior ou no atual e os blocos em que as camadas fixas mudaram.
+	*/
+
+	private void compose(){
+
+		//Os blocos ocupados no frame anterior sempre são redesenhados, para apagar o que estava neles
+		for(int t = 0; t < dirty.length; t++){
+
+			dirty[t] = redrawAll || previous[t];
+			pending[t] = dirty[t];
+		}
+
+		boolean underChanged = redrawAll || !requested.sameLayer(painted, true);
+		boolean overChanged = redrawAll || !requested.sameLayer(painted, false);
+
+		//Cada camada que mudou é redesenhada em uma imagem separada, comparada com a atual e trocada por ela
+		if(underChanged){
+
+			BufferedImage layer = under;
+			boolean [] content = underContent;
+
+			paintUnder();
+			compareLayer(under, nextUnder, nextUnderContent, !redrawAll);
+			under = nextUnder;
+			nextUnder = layer;
+			underContent = nextUnderContent;
+			nextUnderContent = content;
+		}
+
+		if(overChanged){
+
+			BufferedImage layer = over;
+			boolean [] content = overContent;
+
+			paintOver();
+			compareLayer(over, nextOver, nextOverContent, !redrawAll);
+			over = nextOver;
+			nextOver = layer;
+			overContent = nextOverContent;
+			nextOverContent = content;
+		}
+
+		redrawAll = false;
+
+		for(int k = 0; k < playerCount; k++){
+
+			double cx = playerBox[4 * k], cy = playerBox[4 * k + 1], w = playerBox[4 * k + 2] / 2, h = playerBox[4 * k + 3] / 2;
+
+			mark((int) Math.floor(cx - w) - 1, (int) Math.floor(cy - h) - 1, (int) Math.ceil(cx + w) + 2, (int) Math.ceil(cy + h) + 2);
+		}
+
+		for(int k = 0; k < views.size(); k++){
+
+			IBall view = views.get(k);
+			double w = view.getWidth() / 2 + VIEW_MARGIN, h = view.getHeight() / 2 + VIEW_MARGIN;
+
+			mark((int) Math.floor(view.getCx() - w), (int) Math.floor(view.getCy() - h), (int) Math.ceil(view.getCx() + w) + 1, (int) Math.ceil(view.getCy() + h) + 1);
+		}
+
+		int submitted = markBatch(0);
+
+		restoreTiles();
+
+		//Bolas desenhadas pela sua própria instância (as que usam o DrawBatch apenas acumulam as formas)
+		for(int k = 0; k < views.size(); k++){
+
+			IBall view = views.get(k);
+
+			if(view instanceof SpriteSkin) SpriteCache.shared().draw(view);
+			else view.draw();
+		}
+
+		//Formas que ultrapassam as regiões já restauradas (como o rastro da FxBall) restauram os blocos que faltam
+		markBatch(submitted);
+		restoreTiles();
+
+		DrawBatch.flush();
+
+		//Apenas os blocos em que a camada de cima tem algum desenho precisam ser cobertos por ela
+		copyTiles(dirty, overContent, true, over);
+
+		//Como no desenho completo, os jogadores cobrem as paredes e os alvos (e nunca alcançam os placares)
+		for(int k = 0; k < playerCount; k++){
+
+			if(playerRefs[k] != null) playerRefs[k].draw();
+			else{
+
+				GameLib.setColor(playerColors[k]);
+				GameLib.fillRect(playerBox[4 * k], playerBox[4 * k + 1], playerBox[4 * k + 2], playerBox[4 * k + 3]);
+			}
+		}
+
+		//Os blocos ocupados neste frame serão os "anteriores" do próximo
+		boolean [] swap = previous;
+
+		previous = current;
+		current = swap;
+		Arrays.fill(current, false);
+
+		Layers layers = painted;
+
+		painted = requested;
+		requested = layers;
+		requested.clear();
+
+		views.clear();
+		Arrays.fill(playerRefs, 0, playerCount, null);
+		playerCount = 0;
+	}
+
+	/**
+		Redesenha a camada de baixo, em nextUnder, a partir do conteúdo pedido no frame atual.
+	*/
+
+	private void paintUnder(){
+
+		clearTiles(nextUnder, nextUnderContent);
+
+		Graphics2D g = nextUnder.createGraphics();
+
+		for(int k = 0; k < requested.count; k++){
+
+			if(requested.kind[k] == Layers.TEXT) TextCache.shared().drawText(g, requested.text[k], requested.y[k], requested.align[k], requested.color[k]);
+		}
+
+		g.dispose();
+	}
+
+	/**
+		Redesenha a camada de cima, em nextOver, a partir do conteúdo pedido no frame atual.
+	*/
+
+	private void paintOver(){
+
+		clearTiles(nextOver, nextOverContent);
+
+		Graphics2D g = nextOver.createGraphics();
+
+		GameLibAccess.setGraphics(g);
+
+		for(int k = 0; k < requested.count; k++){
+
+			switch(requested.kind[k]){
+
+				case Layers.WALL: ((Wall) requested.ref[k]).draw(); break;
+				case Layers.TARGET: ((Target) requested.ref[k]).draw(); break;
+				case Layers.SCORE: TextCache.shared().drawScore(g, (Score) requested.ref[k]); break;
+			}
+		}
+
+		g.dispose();
+		GameLibAccess.setGraphics(frameGraphics);
+	}
+
+	/**
+		Compara uma camada redesenhada com a atual, marcando para serem redesenhados os blocos em que elas diferem,
+		e verifica quais blocos da camada redesenhada têm algum pixel diferente de zero (preto, na camada de baixo,
+		ou transparente, na de cima).
+
+		@param layer camada atual.
+		@param next camada redesenhada.
+		@param content array que recebe, para cada bloco, se a camada redesenhada tem algum desenho.
+		@param mark indica se os blocos que mudaram devem ser marcados.
+	*/
+
+	private void compareLayer(BufferedImage layer, BufferedImage next, boolean [] content, boolean mark){
+
+		int [] a = pixels(layer), b = pixels(next);
+
+		for(int r = 0; r < rows; r++){
+
+			int y0 = r * TILE_SIZE, y1 = Math.min(height, y0 + TILE_SIZE);
+
+			for(int c = 0; c < columns; c++){
+
+				int t = r * columns + c;
+				int x0 = c * TILE_SIZE, x1 = Math.min(width, x0 + TILE_SIZE);
+
+				//Blocos que já serão redesenhados não precisam ser comparados
+				boolean changed = !mark || dirty[t];
+				boolean drawn = false;
+
+				for(int y = y0; y < y1 && !(changed && drawn); y++){
+
+					for(int i = y * width + x0, end = y * width + x1; i < end; i++){
+
+						int p = b[i];
+
+						//Caso mais comum: o pixel é zero nas duas camadas
+						if((p | a[i]) == 0) continue;
+
+						if(p != 0) drawn = true;
+						if(a[i] != p) changed = true;
+						if(changed && drawn) break;
+					}
+				}
+
+				content[t] = drawn;
+
+				if(mark && changed && !dirty[t]){
+
+					dirty[t] = true;
+					pending[t] = true;
+				}
+			}
+		}
+	}
+
+	/**
+		Apaga (com o valor zero: preto, na camada de baixo, ou transparente, na de cima) os blocos de uma camada
+		que têm algum desenho.
+
+		@param layer camada apagada.
+		@param content blocos em que a camada tem algum desenho.
+	*/
+
+	private void clearTiles(BufferedImage layer, boolean [] content){
+
+		int [] pixels = pixels(layer);
+
+		for(int r = 0; r < rows; r++){
+
+			int y0 = r * TILE_SIZE, y1 = Math.min(height, y0 + TILE_SIZE);
+
+			for(int c = 0; c < columns; c++){
+
+				if(!content[r * columns + c]) continue;
+
+				int x0 = c * TILE_SIZE, x1 = Math.min(width, x0 + TILE_SIZE);
+
+				for(int y = y0; y < y1; y++) Arrays.fill(pixels, y * width + x0, y * width + x1, 0);
+			}
+		}
+	}
+
+	/**
+		@return os pixels de uma camada.
+	*/
+
+	private static int [] pixels(BufferedImage layer){
+
+		return ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+		Marca os blocos ocupados pelas formas do DrawBatch a partir de uma posição.
+
+		@param from posição da primeira forma.
+		@return quantidade de formas no DrawBatch.
+	*/
+
+	private int markBatch(int from){
+
+		int n = DrawBatch.size();
+
+		for(int i = from; i < n; i++){
+
+			DrawBatch.bounds(i, box);
+			mark(box[0], box[1], box[2], box[3]);
+		}
+
+		return n;
+	}
+
+	/**
+		Marca os blocos que contêm um retângulo como ocupados no frame atual. Os blocos que ainda não seriam
+		redesenhados passam também a precisar ser restaurados.
+
+		@param x0 coordenada x do canto superior esquerdo (incluída).
+		@param y0 coordenada y do canto superior esquerdo (incluída).
+		@param x1 coordenada x do canto inferior direito (excluída).
+		@param y1 coordenada y do canto inferior direito (excluída).
+	*/
+
+	private void mark(int x0, int y0, int x1, int y1){
+
+		int c0 = Math.max(0, x0 / TILE_SIZE);
+		int r0 = Math.max(0, y0 / TILE_SIZE);
+		int c1 = Math.min(columns - 1, (x1 - 1) / TILE_SIZE);
+		int r1 = Math.min(rows - 1, (y1 - 1) / TILE_SIZE);
+
+		for(int r = r0; r <= r1; r++){
+
+			for(int c = c0; c <= c1; c++){
+
+				int t = r * columns + c;
+
+				current[t] = true;
+
+				if(!dirty[t]){
+
+					dirty[t] = true;
+					pending[t] = true;
+				}
+			}
+		}
+	}
+
+	/**
+		Restaura a partir da camada de baixo os blocos de pending e os desmarca. Os blocos que têm apenas o fundo
+		preto são preenchidos, em vez de copiados.
+	*/
+
+	private void restoreTiles(){
+
+		copyTiles(pending, underContent, true, under);
+		copyTiles(pending, underContent, false, null);
+
+		Arrays.fill(pending, false);
+	}
+
+	/**
+		Copia uma camada para a imagem do frame nos blocos marcados em tiles cujo valor em content é igual a
+		hasContent, uma cópia por sequência de blocos vizinhos de uma mesma linha.
+
+		@param tiles blocos copiados.
+		@param content blocos em que a camada tem algum desenho.
+		@param hasContent valor de content dos blocos copiados.
+		@param layer camada copiada (null para preencher os blocos com o fundo preto).
+	*/
+
+	private void copyTiles(boolean [] tiles, boolean [] content, boolean hasContent, BufferedImage layer){
+
+		if(layer == null) frameGraphics.setColor(Color.BLACK);
+
+		for(int r = 0; r < rows; r++){
+
+			int c = 0;
+
+			while(c < columns){
+
+				int t = r * columns + c;
+
+				if(!tiles[t] || content[t] != hasContent){
+
+					c++;
+					continue;
+				}
+
+				int start = c;
+
+				while(c < columns && tiles[r * columns + c] && content[r * columns + c] == hasContent) c++;
+
+				int x0 = start * TILE_SIZE, y0 = r * TILE_SIZE;
+				int x1 = Math.min(width, c * TILE_SIZE), y1 = Math.min(height, y0 + TILE_SIZE);
+
+				if(layer == null) frameGraphics.fillRect(x0, y0, x1 - x0, y1 - y0);
+				else frameGraphics.drawImage(layer, x0, y0, x1, y1, x0, y0, x1, y1, null);
+			}
+		}
+	}
+
+	/**
+		Copia o frame composto para a janela.
+	*/
+
+	private void present(){
+
+		if(!window) return;
+
+		BufferStrategy strategy = GameLibAccess.frame().getBufferStrategy();
+		Graphics g = strategy.getDrawGraphics();
+
+		g.drawImage(frame, 0, 0, null);
+		g.dispose();
+		strategy.show();
+		Toolkit.getDefaultToolkit().sync();
+	}
+
+	/**
+		Classe que representa o conteúdo das camadas fixas pedido em um frame: textos, paredes, alvos e placares,
+		na ordem em que foram pedidos.
+	*/
+
+	private static class Layers {
+
+		static final int TEXT = 0;
+		static final int WALL = 1;
+		static final int TARGET = 2;
+		static final int SCORE = 3;
+
+		int [] kind = new int[16];
+		Object [] ref = new Object[16];
+		String [] text = new String[16];
+		double [] y = new double[16];
+		int [] align = new int[16];
+		Color [] color = new Color[16];
+		int [] value = new int[16];
+		int count = 0;
+
+		void add(int kind, Object ref, String text, double y, int align, Color color, int value){
+
+			if(count == this.kind.length){
+
+				int capacity = count * 2;
+
+				this.kind = Arrays.copyOf(this.kind, capacity);
+				this.ref = Arrays.copyOf(this.ref, capacity);
+				this.text = Arrays.copyOf(this.text, capacity);
+				this.y = Arrays.copyOf(this.y, capacity);
+				this.align = Arrays.copyOf(this.align, capacity);
+				this.color = Arrays.copyOf(this.color, capacity);
+				this.value = Arrays.copyOf(this.value, capacity);
+			}
+
+			this.kind[count] = kind;
+			this.ref[count] = ref;
+			this.text[count] = text;
+			this.y[count] = y;
+			this.align[count] = align;
+			this.color[count] = color;
+			this.value[count] = value;
+			count++;
+		}
+
+		void clear(){
+
+			Arrays.fill(ref, 0, count, null);
+			Arrays.fill(text, 0, count, null);
+			Arrays.fill(color, 0, count, null);
+			count = 0;
+		}
+
+		/**
+			Verifica se o conteúdo de uma das camadas é igual ao de outro frame.
+
+			@param other conteúdo do outro frame.
+			@param text true para comparar a camada de baixo (textos), false para comparar a de cima.
+			@return true se a camada tem o mesmo conteúdo, na mesma ordem.
+		*/
+
+		boolean sameLayer(Layers other, boolean text){
+
+			int j = 0;
+
+			for(int k = 0; k < count; k++){
+
+				if((kind[k] == TEXT) != text) continue;
+
+				while(j < other.count && (other.kind[j] == TEXT) != text) j++;
+
+				if(j == other.count) return false;
+				if(kind[k] != other.kind[j] || ref[k] != other.ref[j] || y[k] != other.y[j] || align[k] != other.align[j] || value[k] != other.value[j]) return false;
+				if(!Objects.equals(this.text[k], other.text[j]) || !Objects.equals(color[k], other.color[j])) return false;
+
+				j++;
+			}
+
+			while(j < other.count && (other.kind[j] == TEXT) != text) j++;
+
+			return j == other.count;
+		}
+	}
+
+	/**
+		O método principal, que verifica a composição dos frames. Uma partida sem janela é simulada com teclas que
+		mudam ao acaso, e cada frame é desenhado por um LayeredRenderer sem janela e, por inteiro, por um AwtRenderer
+		sem janela (em uma imagem apagada a cada frame). Os dois frames devem ser iguais, pixel a pixel. Os primeiros
+		frames mostram a tela inicial, com o texto piscando.
+
+		@param args o nome da classe das bolas (opcional, "Ball" por padrão). Também são aceitas as opções
+		"--frames=N", que define a quantidade de frames comparados (1500 por padrão), "--seed=N", que define a
+		semente da partida e das teclas, e "--ball-collisions", que faz as bolas colidirem entre si.
+	*/
+
+	public static void main(String [] args){
+
+		int frames = DEFAULT_FRAMES;
+		long seed = new Random().nextLong();
+		boolean ballCollisions = false;
+		List <String> params = new ArrayList <String> ();
+
+		for(String arg : args){
+
+			if(arg.startsWith("--frames=")) frames = Integer.parseInt(arg.substring("--frames=".length()));
+			else if(arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if(arg.equals("--ball-collisions")) ballCollisions = true;
+			else params.add(arg);
+		}
+
+		String ballClassName = (params.size() >= 1) ? params.get(0) : "Ball";
+		Random random = new Random(seed);
+		Match match;
+
+		try{
+			match = Pong.createMatch(ballClassName, new CopyableRandom(random.nextLong()), ballCollisions, Integer.MAX_VALUE);
+		}
+		catch(IllegalArgumentException e){
+
+			System.out.println(e.getMessage());
+			return;
+		}
+
+		int width = Pong.FIELD_WIDTH;
+		int height = Pong.FIELD_HEIGHT;
+
+		//As duas instâncias desenham através da GameLib, cada uma no seu Graphics
+		LayeredRenderer layered = new LayeredRenderer(width, height);
+		BufferedImage reference = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D referenceGraphics = reference.createGraphics();
+		AwtRenderer full = new AwtRenderer();
+
+		//O rastro da FxBall avança a cada desenho: cada instância precisa do seu próprio histórico de posições
+		PositionHistory layeredHistory = PositionHistory.shared();
+		PositionHistory fullHistory = new PositionHistory(layeredHistory.capacity());
+
+		Player [] players = match.getPlayers();
+		Score [] layeredScores = { new Score(Pong.PLAYER1), new Score(Pong.PLAYER2) };
+		Score [] fullScores = { new Score(Pong.PLAYER1), new Score(Pong.PLAYER2) };
+		WorldSnapshot world = new WorldSnapshot(players.length, match.getScores().length);
+		TickInput input = new TickInput();
+		int [] composed = new int[width * height];
+		int [] expected = new int[width * height];
+		int bits = 0;
+		int different = 0;
+		int first = -1;
+		int firstPixels = 0;
+
+		System.out.println("Comparando " + frames + " frames de '" + ballClassName + "' (semente " + seed + ")");
+
+		for(int f = 0; f < frames; f++){
+
+			if(f == 60) match.start();
+
+			if(match.isStarted()){
+
+				for(int k = 0; k < 4; k++){
+
+					if(random.nextInt(30) == 0) bits = random.nextInt(16);
+
+					input.setBits(bits);
+					match.step(4, input);
+				}
+			}
+
+			match.snapshot(world, System.nanoTime());
+
+			//Um frame a cada 100 ms de tempo simulado, para que o texto da tela inicial pisque
+			long now = f * 100L;
+			double alpha = (f % 4) / 4.0;
+
+			useHistory(world.balls, layeredHistory);
+			GameLibAccess.setGraphics(layered.frameGraphics);
+			Pong.drawFrame(layered, world, alpha, match.getWalls(), match.getTargets(), players, layeredScores, now);
+			layered.display();
+
+			useHistory(world.balls, fullHistory);
+			GameLibAccess.setGraphics(referenceGraphics);
+			referenceGraphics.setColor(Color.BLACK);
+			referenceGraphics.fillRect(0, 0, width, height);
+			Pong.drawFrame(full, world, alpha, match.getWalls(), match.getTargets(), players, fullScores, now);
+			full.display();
+
+			layered.getFrame().getRGB(0, 0, width, height, composed, 0, width);
+			reference.getRGB(0, 0, width, height, expected, 0, width);
+
+			if(Arrays.equals(composed, expected)) continue;
+
+			if(different++ == 0){
+
+				first = f;
+
+				for(int i = 0; i < composed.length; i++){
+
+					if(composed[i] != expected[i]) firstPixels++;
+				}
+			}
+		}
+
+		GameLibAccess.setGraphics(layered.frameGraphics);
+		referenceGraphics.dispose();
+
+		System.out.println("Placar final: " + match.getScores()[0].getScore() + " x " + match.getScores()[1].getScore() + ", " + match.getBallCount() + " bolas");
+
+		if(different == 0) System.out.println("Os " + frames + " frames compostos são iguais aos redesenhados por inteiro");
+		else System.out.println(different + " frames diferentes; o primeiro é o frame " + first + ", com " + firstPixels + " pixels diferentes");
+	}
+
+	/**
+		Define o histórico de posições usado pelo rastro das bolas desenhadas por instâncias de FxBall.
+	*/
+
+	private static void useHistory(BallStore balls, PositionHistory history){
+
+		for(int i = 0; i < balls.size(); i++){
+
+			if(balls.view[i] instanceof FxBall) ((FxBall) balls.view[i]).setHistory(history);
+		}
+	}
+}
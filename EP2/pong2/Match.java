@@ -0,0 +1,400 @@
+import java.util.*;
+
+/**
+	Classe que representa o estado de uma partida (bolas, jogadores, alvos, paredes e placares) e o passo da
+	simulação que o atualiza. Um passo move as bolas e os jogadores, trata as colisões e atualiza os placares,
+	sem desenhar nada, de modo que a simulação pode rodar em uma thread própria, ou sem janela.
+*/
+
+public class Match {
+
+	/**
+		Atributo privado que representa o gerenciador das bolas da partida.
+	*/
+
+	private BallManager ballManager;
+
+	/**
+		Atributo privado que representa as paredes da partida.
+	*/
+
+	private Wall [] walls;
+
+	/**
+		Atributo privado que representa os alvos da partida.
+	*/
+
+	private Target [] targets;
+
+	/**
+		Atributo privado que representa os jogadores da partida.
+	*/
+
+	private Player [] players;
+
+	/**
+		Atributo privado que representa os placares da partida.
+	*/
+
+	private Score [] scores;
+
+	/**
+		Atributo privado que representa a grade de colisão, com os jogadores, os alvos e as paredes registrados nesta ordem.
+	*/
+
+	private CollisionGrid grid;
+
+	/**
+		Atributo privado que representa, para cada parede, o índice do placar que pontua quando uma bola a atinge (ou -1).
+	*/
+
+	private int [] wallScore;
+
+	/**
+		Atributo privado usado para contar as colisões de cada objeto da grade em um passo.
+	*/
+
+	private int [] hits;
+
+	/**
+		Atributo privado que representa o índice da primeira parede na grade de colisão.
+	*/
+
+	private int firstWall;
+
+	/**
+		Atributo privado que indica se a partida já começou.
+	*/
+
+	private boolean started = false;
+
+	/**
+		Atributo privado que representa a quantidade de passos simulados.
+	*/
+
+	private long ticks = 0;
+
+	/**
+		Atributo privado que representa o profiler que mede as fases de cada passo (ou null, se os passos não são medidos).
+	*/
+
+	private FrameProfiler profiler = null;
+
+	/**
+		Atributo privado que representa o arquivo de telemetria que recebe um registro por passo (ou null).
+	*/
+
+	private TelemetryRing telemetry = null;
+
+	/**
+		Atributo privado que representa a duração (em nanossegundos) da atualização das bolas, das colisões e do
+		último passo inteiro, medidas apenas quando há um profiler ou um arquivo de telemetria.
+	*/
+
+	private final long [] phaseNanos = new long[3];
+
+	/**
+		Construtor da classe Match.
+
+		@param ballManager gerenciador das bolas da partida.
+		@param walls paredes da partida.
+		@param targets alvos da partida.
+		@param players jogadores da partida. O jogador 0 é controlado pelas teclas A/Z e o jogador 1 pelas teclas K/M.
+		@param scores placares da partida.
+		@param grid grade de colisão com os jogadores, os alvos e as paredes registrados, nesta ordem.
+		@param wallScore para cada parede, o índice do placar que pontua quando uma bola a atinge, ou -1.
+	*/
+
+	public Match(BallManager ballManager, Wall [] walls, Target [] targets, Player [] players, Score [] scores, CollisionGrid grid, int [] wallScore){
+
+		this.ballManager = ballManager;
+		this.walls = walls;
+		this.targets = targets;
+		this.players = players;
+		this.scores = scores;
+		this.grid = grid;
+		this.wallScore = wallScore;
+		this.hits = new int[grid.size()];
+		this.firstWall = players.length + targets.length;
+	}
+
+	/**
+		Executa um passo da simulação.
+
+		@param delta duração do passo (em milisegundos).
+		@param input estado do teclado durante o passo.
+	*/
+
+	public void step(long delta, Input input){
+
+		boolean timed = (profiler != null || telemetry != null);
+		long start = timed ? System.nanoTime() : 0;
+
+		ballManager.update(delta);
+
+		long updated = timed ? System.nanoTime() : 0;
+
+		if(input.isKeyPressed(GameLib.KEY_A)){
+
+			players[0].moveUp(delta);
+		}
+		if(input.isKeyPressed(GameLib.KEY_Z)){
+
+			players[0].moveDown(delta);
+		}
+		if(input.isKeyPressed(GameLib.KEY_K)){
+
+			players[1].moveUp(delta);
+		}
+		if(input.isKeyPressed(GameLib.KEY_M)){
+
+			players[1].moveDown(delta);
+		}
+
+		long collisions = timed ? System.nanoTime() : 0;
+
+		//Uma única passada pelas bolas trata as colisões com jogadores, alvos e paredes
+		grid.update();
+		Arrays.fill(hits, 0);
+		ballManager.checkCollisions(grid, hits);
+
+		if(timed){
+
+			phaseNanos[0] = updated - start;
+			phaseNanos[1] = System.nanoTime() - collisions;
+		}
+
+		for(int k = 0; k < walls.length; k++) {
+
+			int nHits = hits[firstWall + k];
+
+			if(nHits > 0 && wallScore[k] >= 0){
+
+				for(int i = 0; i < nHits; i++) scores[wallScore[k]].inc();
+			}
+		}
+
+		ticks++;
+
+		if(timed){
+
+			phaseNanos[2] = System.nanoTime() - start;
+
+			if(profiler != null){
+
+				profiler.record(FrameProfiler.UPDATE, phaseNanos[0]);
+				profiler.record(FrameProfiler.COLLISIONS, phaseNanos[1]);
+				profiler.record(FrameProfiler.STEP, phaseNanos[2]);
+			}
+
+			if(telemetry != null) telemetry.record(ticks, delta, ballManager.getBallCount(), hits, players, phaseNanos);
+		}
+	}
+
+	/**
+		Define o arquivo de telemetria que recebe um registro ao final de cada passo. Os passos devem ser
+		executados sempre pela mesma thread.
+
+		@param telemetry arquivo de telemetria, criado com as paredes, os alvos e os jogadores desta partida, ou null.
+	*/
+
+	public void setTelemetry(TelemetryRing telemetry){
+
+		this.telemetry = telemetry;
+	}
+
+	/**
+		Define o profiler que mede as fases de cada passo (atualização das bolas, colisões e o passo inteiro).
+		Os passos devem ser executados sempre pela mesma thread.
+
+		@param profiler profiler usado, ou null para não medir os passos.
+	*/
+
+	public void setProfiler(FrameProfiler profiler){
+
+		this.profiler = profiler;
+	}
+
+	/**
+		Copia o estado da partida para uma instância de WorldSnapshot.
+
+		@param snapshot cópia que será preenchida.
+		@param time instante (System.nanoTime()) em que o último passo deveria ter ocorrido.
+	*/
+
+	public void snapshot(WorldSnapshot snapshot, long time){
+
+		ballManager.snapshot(snapshot.balls);
+
+		for(int k = 0; k < players.length; k++) snapshot.playerCy[k] = players[k].getCy();
+		for(int k = 0; k < scores.length; k++) snapshot.scores[k] = scores[k].getScore();
+
+		snapshot.started = started;
+		snapshot.ticks = ticks;
+		snapshot.time = time;
+	}
+
+	/**
+		@return uma nova cópia vazia do estado desta partida, a ser preenchida por save().
+	*/
+
+	public MatchState createState(){
+
+		return new MatchState(players.length, scores.length);
+	}
+
+	/**
+		Copia o estado completo da partida para um MatchState (veja a classe Rollback).
+
+		@param state cópia que será preenchida, criada por createState().
+	*/
+
+	public void save(MatchState state){
+
+		ballManager.saveState(state);
+
+		for(int k = 0; k < players.length; k++) state.playerCy[k] = players[k].getCy();
+		for(int k = 0; k < scores.length; k++) state.scores[k] = scores[k].getScore();
+
+		state.ticks = ticks;
+		state.started = started;
+	}
+
+	/**
+		Restaura o estado completo da partida a partir de um MatchState.
+
+		@param state cópia restaurada, preenchida por save() nesta partida.
+	*/
+
+	public void restore(MatchState state){
+
+		ballManager.restoreState(state);
+
+		for(int k = 0; k < players.length; k++) PlayerAccess.setCy(players[k], state.playerCy[k]);
+		for(int k = 0; k < scores.length; k++) scores[k].counter = state.scores[k];
+
+		ticks = state.ticks;
+		started = state.started;
+	}
+
+	/**
+		Calcula um resumo (hash) do estado da partida que muda a cada passo: bolas, posição dos jogadores,
+		placares e quantidade de passos. Usado para verificar se a reprodução de uma partida gravada continua
+		igual à partida original.
+
+		@return o resumo do estado da partida.
+	*/
+
+	public long checksum(){
+
+		long h = BallStore.mix(ballManager.checksum(), ticks);
+
+		for(Player p : players) h = BallStore.mix(h, Double.doubleToLongBits(p.getCy()));
+		for(Score s : scores) h = BallStore.mix(h, s.getScore());
+
+		return h;
+	}
+
+	/**
+		Marca a partida como iniciada.
+	*/
+
+	public void start(){
+
+		started = true;
+	}
+
+	/**
+		@return true se a partida já começou, false caso contrário.
+	*/
+
+	public boolean isStarted(){
+
+		return started;
+	}
+
+	/**
+		@return quantidade de passos simulados.
+	*/
+
+	public long getTicks(){
+
+		return ticks;
+	}
+
+	/**
+		@return o tempo de jogo (em milisegundos) da partida. Cada partida tem o seu próprio relógio, que avança
+		apenas com os passos simulados, de modo que várias partidas podem ser simuladas na mesma JVM, cada uma no
+		seu ritmo (veja a classe MatchScheduler).
+	*/
+
+	public long getTime(){
+
+		return ballManager.getTime();
+	}
+
+	/**
+		@return quantidade de bolas da partida.
+	*/
+
+	public int getBallCount(){
+
+		return ballManager.getBallCount();
+	}
+
+	/**
+		@return os placares da partida.
+	*/
+
+	public Score [] getScores(){
+
+		return scores;
+	}
+
+	/**
+		@param player índice do jogador.
+		@return quantidade de colisões de bolas com o jogador no último passo.
+	*/
+
+	public int getPlayerHits(int player){
+
+		return hits[player];
+	}
+
+	/**
+		@param target índice do alvo.
+		@return quantidade de colisões de bolas com o alvo no último passo.
+	*/
+
+	public int getTargetHits(int target){
+
+		return hits[players.length + target];
+	}
+
+	/**
+		@return as paredes da partida.
+	*/
+
+	public Wall [] getWalls(){
+
+		return walls;
+	}
+
+	/**
+		@return os alvos da partida.
+	*/
+
+	public Target [] getTargets(){
+
+		return targets;
+	}
+
+	/**
+		@return os jogadores da partida.
+	*/
+
+	public Player [] getPlayers(){
+
+		return players;
+	}
+}
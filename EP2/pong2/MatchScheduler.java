@@ -0,0 +1,461 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+	Classe que simula muitas partidas ao mesmo tempo em um conjunto fixo de threads (as threads portadoras), em vez de
+	uma JVM (ou uma thread) por partida. Cada partida é entregue a uma única thread portadora, escolhida entre as que
+	têm menos partidas, e é simulada sempre por ela: o estado de uma partida nunca é compartilhado entre threads, por
+	isso a simulação não precisa de locks. Cada thread portadora simula, a cada rodada, um passo de todas as suas
+	partidas.
+
+	Com uma frequência definida, as rodadas seguem prazos encadeados (como no servidor, veja a classe PongServer) e a
+	thread fica suspensa entre uma rodada e outra; quando uma thread se atrasa, ela simula as rodadas perdidas, até um
+	limite. Sem frequência, as rodadas são executadas uma após a outra, sem esperas, o que permite simular partidas
+	inteiras no menor tempo possível.
+
+	O Java 8 não tem threads virtuais; como as partidas nunca esperam por nada durante um passo (as teclas são lidas
+	de uma fonte que não bloqueia), dividir as partidas entre poucas threads portadoras (por padrão, uma por
+	processador) tem o mesmo efeito, sem trocas de contexto entre as partidas.
+*/
+
+public class MatchScheduler {
+
+	/**
+		Interface que representa uma partida simulada pelo MatchScheduler.
+	*/
+
+	public interface Session {
+
+		/**
+			Simula um passo da partida. Chamado sempre pela mesma thread portadora.
+
+			@return false se a partida terminou (ela deixa de ser simulada).
+		*/
+
+		boolean step();
+	}
+
+	/**
+		Constante que define a quantidade máxima de rodadas atrasadas simuladas de uma vez por uma thread portadora.
+		As rodadas além do limite são descartadas.
+	*/
+
+	private static final int MAX_CATCH_UP = 25;
+
+	/**
+		Constante que define o intervalo (em nanossegundos) entre dois resumos das medidas no método principal.
+	*/
+
+	private static final long STATS_INTERVAL = 5000000000L;
+
+	/**
+		Classe que representa uma thread portadora e as suas partidas.
+	*/
+
+	private class Carrier extends Thread {
+
+		/**
+			Atributo que representa as partidas entregues à thread e ainda não recebidas por ela.
+		*/
+
+		final ConcurrentLinkedQueue <Session> incoming = new ConcurrentLinkedQueue <Session> ();
+
+		/**
+			Atributo que representa as partidas simuladas pela thread (usado apenas por ela).
+		*/
+
+		final ArrayList <Session> sessions = new ArrayList <Session> ();
+
+		/**
+			Atributo que representa a quantidade de partidas da thread, incluindo as ainda não recebidas.
+		*/
+
+		final AtomicInteger load = new AtomicInteger();
+
+		/**
+			Atributos que medem o atraso do início de cada rodada em relação ao seu prazo e a duração de cada rodada
+			(protegidos por lock, já que são lidos pelo método stats()).
+		*/
+
+		final LatencyHistogram lateness = new LatencyHistogram();
+		final LatencyHistogram rounds = new LatencyHistogram();
+
+		/**
+			Atributos que contam os passos simulados e as rodadas descartadas (protegidos por lock).
+		*/
+
+		long steps = 0;
+		long skipped = 0;
+
+		/**
+			Atributo que representa o lock que protege as medidas da thread. A própria instância não é usada como
+			lock porque Thread.join() também a usa.
+		*/
+
+		final Object lock = new Object();
+
+		Carrier(int index){
+
+			super("MatchScheduler-" + index);
+			setDaemon(true);
+		}
+
+		public void run(){
+
+			long next = System.nanoTime() + tickNanos;
+
+			while(!isInterrupted()){
+
+				receive();
+
+				if(sessions.isEmpty()){
+
+					//Sem partidas, a thread espera por novas partidas (submit() a acorda)
+					LockSupport.parkNanos(this, (tickNanos > 0) ? tickNanos : STATS_INTERVAL);
+					next = System.nanoTime() + tickNanos;
+					continue;
+				}
+
+				if(tickNanos == 0){
+
+					long start = System.nanoTime();
+					int n = round();
+
+					synchronized(lock){
+
+						rounds.record(System.nanoTime() - start);
+						steps += n;
+					}
+
+					continue;
+				}
+
+				long wait = next - System.nanoTime();
+
+				if(wait > 0){
+
+					LockSupport.parkNanos(this, wait);
+					continue;
+				}
+
+				long now = System.nanoTime();
+				int count = 0;
+
+				while(now >= next){
+
+					if(count == MAX_CATCH_UP){
+
+						synchronized(lock){
+
+							skipped += (now - next) / tickNanos + 1;
+						}
+
+						next = now + tickNanos;
+						break;
+					}
+
+					int n = round();
+					long end = System.nanoTime();
+
+					synchronized(lock){
+
+						lateness.record(now - next);
+						rounds.record(end - now);
+						steps += n;
+					}
+
+					next += tickNanos;
+					count++;
+					now = end;
+				}
+			}
+		}
+
+		/**
+			Recebe as partidas entregues à thread.
+		*/
+
+		private void receive(){
+
+			Session session;
+
+			while((session = incoming.poll()) != null) sessions.add(session);
+		}
+
+		/**
+			Simula um passo de todas as partidas da thread, retirando as partidas que terminaram.
+
+			@return a quantidade de passos simulados.
+		*/
+
+		private int round(){
+
+			int n = 0;
+
+			for(int k = 0; k < sessions.size(); ){
+
+				Session session = sessions.get(k);
+				boolean running;
+
+				try{
+					running = session.step();
+					n++;
+				}
+				catch(RuntimeException e){
+
+					//Um erro em uma partida não interrompe as demais partidas da thread
+					System.out.println("Erro em uma partida: " + e);
+					running = false;
+				}
+
+				if(running){
+
+					k++;
+					continue;
+				}
+
+				//A última partida ocupa o lugar da partida retirada
+				sessions.set(k, sessions.get(sessions.size() - 1));
+				sessions.remove(sessions.size() - 1);
+				load.decrementAndGet();
+				finished();
+			}
+
+			return n;
+		}
+	}
+
+	/**
+		Atributo privado que representa o período (em nanossegundos) entre duas rodadas, ou 0 se as rodadas não
+		seguem uma frequência.
+	*/
+
+	private final long tickNanos;
+
+	/**
+		Atributo privado que representa as threads portadoras.
+	*/
+
+	private final Carrier [] carriers;
+
+	/**
+		Atributo privado que representa a quantidade de partidas que ainda não terminaram (protegido pelo lock da
+		instância).
+	*/
+
+	private int active = 0;
+
+	/**
+		Construtor da classe MatchScheduler. As threads portadoras começam a executar imediatamente.
+
+		@param threads quantidade de threads portadoras.
+		@param tickRate quantidade de rodadas por segundo, ou 0 para executar as rodadas sem esperas.
+	*/
+
+	public MatchScheduler(int threads, int tickRate){
+
+		if(threads < 1) throw new IllegalArgumentException("Quantidade de threads inválida: " + threads);
+
+		this.tickNanos = (tickRate > 0) ? Math.max(1, 1000000000L / tickRate) : 0;
+		this.carriers = new Carrier[threads];
+
+		for(int k = 0; k < threads; k++) carriers[k] = new Carrier(k);
+		for(Carrier carrier : carriers) carrier.start();
+	}
+
+	/**
+		Entrega uma partida à thread portadora com menos partidas. A partida passa a ser simulada a partir da próxima
+		rodada dessa thread, e não deve mais ser usada por outras threads até terminar.
+
+		@param session partida entregue.
+	*/
+
+	public void submit(Session session){
+
+		Carrier best = carriers[0];
+
+		for(Carrier carrier : carriers){
+
+			if(carrier.load.get() < best.load.get()) best = carrier;
+		}
+
+		synchronized(this){
+
+			active++;
+		}
+
+		best.load.incrementAndGet();
+		best.incoming.add(session);
+		LockSupport.unpark(best);
+	}
+
+	/**
+		Registra o fim de uma partida.
+	*/
+
+	private synchronized void finished(){
+
+		if(--active == 0) notifyAll();
+	}
+
+	/**
+		@return a quantidade de partidas que ainda não terminaram.
+	*/
+
+	public synchronized int getActive(){
+
+		return active;
+	}
+
+	/**
+		Aguarda até que todas as partidas entregues terminem.
+
+		@throws InterruptedException se a thread for interrompida durante a espera.
+	*/
+
+	public synchronized void awaitIdle() throws InterruptedException {
+
+		while(active > 0) wait();
+	}
+
+	/**
+		Interrompe as threads portadoras e aguarda o seu fim. As partidas que ainda não terminaram deixam de ser
+		simuladas.
+
+		@throws InterruptedException se a thread for interrompida durante a espera.
+	*/
+
+	public void shutdown() throws InterruptedException {
+
+		for(Carrier carrier : carriers) carrier.interrupt();
+		for(Carrier carrier : carriers) carrier.join();
+	}
+
+	/**
+		Calcula um resumo das medidas de todas as threads portadoras desde o último resumo.
+
+		@param nanos duração (em nanossegundos) do período medido.
+		@return o resumo.
+	*/
+
+	public String stats(long nanos){
+
+		LatencyHistogram lateness = new LatencyHistogram();
+		LatencyHistogram rounds = new LatencyHistogram();
+		long steps = 0;
+		long skipped = 0;
+
+		for(Carrier carrier : carriers){
+
+			synchronized(carrier.lock){
+
+				lateness.add(carrier.lateness);
+				rounds.add(carrier.rounds);
+				steps += carrier.steps;
+				skipped += carrier.skipped;
+				carrier.lateness.reset();
+				carrier.rounds.reset();
+				carrier.steps = 0;
+				carrier.skipped = 0;
+			}
+		}
+
+		String summary = String.format(Locale.ROOT, "partidas: %d, threads: %d, passos/s: %.0f, rodada p50 %s p99 %s max %s",
+			getActive(), carriers.length, steps / (nanos / 1e9),
+			FrameProfiler.format(rounds.getPercentile(50)), FrameProfiler.format(rounds.getPercentile(99)), FrameProfiler.format(rounds.getMax()));
+
+		if(tickNanos == 0) return summary;
+
+		return summary + String.format(Locale.ROOT, ", atraso p99 %s max %s, rodadas descartadas: %d",
+			FrameProfiler.format(lateness.getPercentile(99)), FrameProfiler.format(lateness.getMax()), skipped);
+	}
+
+	/**
+		O método principal, que simula várias partidas sem jogadores (apenas as bolas se movem), para medir quantas
+		partidas a máquina suporta.
+
+		@param args a quantidade de partidas (opcional, 1000 por padrão) e o nome da classe das bolas (opcional, "Ball"
+		por padrão). Também são aceitas as opções "--threads=N", que define a quantidade de threads portadoras (por
+		padrão, uma por processador), "--tickrate=N", que define quantos passos as partidas executam por segundo (0
+		para simular sem esperas), "--seconds=N", que define por quanto tempo as partidas são simuladas (30 segundos
+		por padrão), "--seed=N", que define a semente das sementes das partidas, e "--ball-collisions", que faz as
+		bolas colidirem entre si.
+	*/
+
+	public static void main(String [] args){
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		int tickRate = Pong.DEFAULT_TICK_RATE;
+		double seconds = 30;
+		long seed = new Random().nextLong();
+		boolean ballCollisions = false;
+		List <String> params = new ArrayList <String> ();
+
+		for(String arg : args){
+
+			if(arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring("--threads=".length()));
+			else if(arg.startsWith("--tickrate=")) tickRate = Integer.parseInt(arg.substring("--tickrate=".length()));
+			else if(arg.startsWith("--seconds=")) seconds = Double.parseDouble(arg.substring("--seconds=".length()));
+			else if(arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if(arg.equals("--ball-collisions")) ballCollisions = true;
+			else params.add(arg);
+		}
+
+		int count = (params.size() >= 1) ? Integer.parseInt(params.get(0)) : 1000;
+		String ballClassName = (params.size() >= 2) ? params.get(1) : "Ball";
+		final long tick = Math.max(1, Math.round(1000.0 / ((tickRate > 0) ? tickRate : Pong.DEFAULT_TICK_RATE)));
+		Random seeds = new Random(seed);
+		MatchScheduler scheduler = new MatchScheduler(threads, tickRate);
+
+		System.out.println("Simulando " + count + " partidas em " + threads + " threads (semente " + seed + ")");
+
+		for(int k = 0; k < count; k++){
+
+			//Cada partida usa várias threads apenas a partir de uma quantidade de bolas que ela não atinge
+			final Match match = Pong.createMatch(ballClassName, new CopyableRandom(seeds.nextLong()), ballCollisions, Integer.MAX_VALUE);
+
+			match.start();
+
+			scheduler.submit(new Session(){
+
+				public boolean step(){
+
+					match.step(tick, Input.NONE);
+
+					return true;
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		long end = start + (long) (seconds * 1e9);
+		long last = start;
+
+		try{
+			while(true){
+
+				long now = System.nanoTime();
+
+				if(now >= end) break;
+
+				Thread.sleep(Math.max(1, Math.min(end - now, last + STATS_INTERVAL - now) / 1000000));
+
+				now = System.nanoTime();
+
+				if(now >= last + STATS_INTERVAL || now >= end){
+
+					System.out.println(scheduler.stats(now - last));
+					last = now;
+				}
+			}
+
+			scheduler.shutdown();
+		}
+		catch(InterruptedException e){
+
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/**
+	Classe que guarda uma cópia completa do estado de uma partida: as bolas, os eventos pendentes de fim de boost e
+	de expiração das bolas duplicadas (com o relógio do jogo), o estado do gerador de números aleatórios, a posição
+	dos jogadores, os placares e a quantidade de passos. Restaurar a cópia (Match.restore()) faz a partida voltar
+	exatamente ao estado copiado, de modo que os mesmos passos produzem os mesmos resultados.
+
+	Todo o estado fica em arrays de tipos primitivos, por isso copiar e restaurar custam algumas cópias de arrays
+	(System.arraycopy). As instâncias são reaproveitadas: os arrays só são alocados quando a partida passa da maior
+	quantidade de bolas ou de eventos já copiada.
+*/
+
+public class MatchState {
+
+	/**
+		Cópia das bolas da partida.
+	*/
+
+	final BallStore balls = new BallStore();
+
+	/**
+		Cópia dos eventos pendentes e do relógio do jogo.
+	*/
+
+	final TimingWheel timers;
+
+	/**
+		Estado do gerador de números aleatórios da partida.
+	*/
+
+	long random;
+
+	/**
+		Coordenadas y dos centros dos jogadores.
+	*/
+
+	final double [] playerCy;
+
+	/**
+		Pontuação de cada placar.
+	*/
+
+	final int [] scores;
+
+	/**
+		Quantidade de passos simulados até a cópia.
+	*/
+
+	long ticks;
+
+	/**
+		Indica se a partida já começou.
+	*/
+
+	boolean started;
+
+	/**
+		Construtor da classe MatchState.
+
+		@param players quantidade de jogadores da partida.
+		@param scoreCount quantidade de placares da partida.
+	*/
+
+	public MatchState(int players, int scoreCount){
+
+		this.timers = new TimingWheel(BallManager.TIMER_SLOTS);
+		this.playerCy = new double[players];
+		this.scores = new int[scoreCount];
+	}
+
+	/**
+		@return quantidade de passos simulados até a cópia.
+	*/
+
+	public long getTicks(){
+
+		return ticks;
+	}
+}
@@ -0,0 +1,123 @@
+import java.nio.*;
+
+/**
+	Classe que define o protocolo usado entre o servidor (veja a classe PongServer) e os clientes, sobre TCP.
+
+	Cada mensagem é formada por um short sem sinal com o tamanho do restante da mensagem (em bytes), um byte com o
+	tipo da mensagem e os dados da mensagem. Todos os valores são big-endian (a ordem padrão de ByteBuffer).
+
+	Mensagens do cliente para o servidor:
+
+	- INPUT: um byte com as teclas pressionadas pelo jogador do cliente (UP e DOWN). O servidor usa o último
+	  estado recebido em todos os passos seguintes, até receber outro; por isso o cliente só precisa enviar a
+	  mensagem quando o estado muda;
+	- ACK: o número do último estado recebido (int), usado como base para codificar os estados seguintes.
+
+	Mensagens do servidor para o cliente:
+
+	- WELCOME: enviada logo depois da conexão, com o número da partida (int), o jogador controlado pelo cliente
+	  (byte, 0 para o jogador da esquerda e 1 para o da direita) e a duração dos passos em milisegundos (int);
+	- STATE: o estado da partida, enviado periodicamente e codificado em relação ao último estado confirmado pelo
+	  cliente com uma mensagem ACK (veja a classe SnapshotCodec).
+
+	Quando o adversário se desconecta, a partida termina e o servidor fecha a conexão do outro jogador.
+*/
+
+public class NetProtocol {
+
+	/**
+		Constante que define a porta padrão do servidor.
+	*/
+
+	public static final int DEFAULT_PORT = 7777;
+
+	/**
+		Constantes que identificam os tipos de mensagem.
+	*/
+
+	public static final byte INPUT = 1;
+	public static final byte WELCOME = 2;
+	public static final byte STATE = 3;
+	public static final byte ACK = 4;
+
+	/**
+		Constantes que representam as teclas de uma mensagem INPUT (move o jogador para cima e para baixo).
+	*/
+
+	public static final int UP = 1;
+	public static final int DOWN = 2;
+
+	/**
+		Constante que define o tamanho do campo com o tamanho da mensagem.
+	*/
+
+	public static final int LENGTH_SIZE = 2;
+
+	/**
+		Constante que define o maior tamanho possível de uma mensagem, incluindo o campo com o tamanho.
+	*/
+
+	public static final int MAX_MESSAGE = LENGTH_SIZE + 0xFFFF;
+
+	/**
+		Grava uma mensagem INPUT.
+
+		@param out buffer que recebe a mensagem (em modo de escrita).
+		@param keys teclas pressionadas (UP e DOWN, combinadas com "|").
+	*/
+
+	public static void writeInput(ByteBuffer out, int keys){
+
+		out.putShort((short) 2);
+		out.put(INPUT);
+		out.put((byte) keys);
+	}
+
+	/**
+		Grava uma mensagem WELCOME.
+
+		@param out buffer que recebe a mensagem (em modo de escrita).
+		@param room número da partida.
+		@param slot jogador controlado pelo cliente (0 ou 1).
+		@param tick duração dos passos (em milisegundos).
+	*/
+
+	public static void writeWelcome(ByteBuffer out, int room, int slot, int tick){
+
+		out.putShort((short) 10);
+		out.put(WELCOME);
+		out.putInt(room);
+		out.put((byte) slot);
+		out.putInt(tick);
+	}
+
+	/**
+		Grava uma mensagem ACK.
+
+		@param out buffer que recebe a mensagem (em modo de escrita).
+		@param sequence número do último estado recebido.
+	*/
+
+	public static void writeAck(ByteBuffer out, int sequence){
+
+		out.putShort((short) 5);
+		out.put(ACK);
+		out.putInt(sequence);
+	}
+
+	/**
+		Verifica se o buffer contém uma mensagem completa a partir da posição atual.
+
+		@param in buffer com os dados recebidos (em modo de leitura).
+		@return o tamanho da mensagem, sem o campo com o tamanho, ou -1 se a mensagem ainda não chegou inteira.
+	*/
+
+	public static int available(ByteBuffer in){
+
+		if(in.remaining() < LENGTH_SIZE) return -1;
+
+		int length = in.getShort(in.position()) & 0xFFFF;
+
+		return (in.remaining() >= LENGTH_SIZE + length) ? length : -1;
+	}
+}
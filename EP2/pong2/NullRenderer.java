@@ -0,0 +1,29 @@
+import java.awt.Color;
+
+/**
+	Implementação de Renderer que não desenha nada. Usada no modo headless, em que a simulação
+	roda sem janela e o mais rápido possível.
+*/
+
+public class NullRenderer implements Renderer {
+
+	public void drawBall(IBall ball){ }
+
+	public void drawBall(double cx, double cy, double width, double height, Color color){ }
+
+	public void drawWall(Wall wall){ }
+
+	public void drawTarget(Target target){ }
+
+	public void drawPlayer(Player player){ }
+
+	public void drawPlayer(double cx, double cy, double width, double height, Color color){ }
+
+	public void drawScore(Score score){ }
+
+	public void setColor(Color color){ }
+
+	public void drawText(String text, double y, int align){ }
+
+	public void display(){ }
+}
@@ -0,0 +1,59 @@
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
+
+/**
+	Classe auxiliar que permite alterar a posição de um jogador. A classe Player só move o jogador através de
+	moveUp() e moveDown(), por isso o atributo privado é alterado através de um MethodHandle, obtido uma única vez.
+	Usada para restaurar o estado de uma partida (veja a classe MatchState).
+*/
+
+final class PlayerAccess {
+
+	/**
+		MethodHandle de escrita do atributo privado "cy" da classe Player.
+	*/
+
+	private static final MethodHandle SET_CY = setter("cy");
+
+	private PlayerAccess(){ }
+
+	/**
+		Obtém um MethodHandle que altera um atributo privado da classe Player.
+
+		@param name nome do atributo.
+		@return o MethodHandle de escrita do atributo.
+	*/
+
+	private static MethodHandle setter(String name){
+
+		try{
+			Field field = Player.class.getDeclaredField(name);
+
+			field.setAccessible(true);
+
+			return MethodHandles.lookup().unreflectSetter(field);
+		}
+		catch(Exception e){
+
+			throw new IllegalStateException("Atributo '" + name + "' da classe Player não encontrado.", e);
+		}
+	}
+
+	/**
+		Altera a coordenada y do centro de um jogador.
+
+		@param player jogador alterado.
+		@param cy nova coordenada y do centro do jogador.
+	*/
+
+	static void setCy(Player player, double cy){
+
+		try{
+			SET_CY.invokeExact(player, cy);
+		}
+		catch(Throwable t){
+
+			throw new IllegalStateException(t);
+		}
+	}
+}
@@ -1,4 +1,7 @@
 import java.awt.Color;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
 	Classe principal do jogo.
@@ -66,20 +69,27 @@ public class Pong {
 	*/
 
 	private static final int PLAYER2_SCORE = 1;
-	
-	private static void busyWait(long time){
-		
-		while(System.currentTimeMillis() < time) Thread.yield();
-	}
 
-	private static BallManager initBallManager(String ballClassName){
+	/**
+		Constante usada para definir as cores dos jogadores (a classe Player não permite consultar a cor de um jogador).
+	*/
+
+	private static final Color [] PLAYER_COLORS = { Color.GREEN, Color.BLUE };
+
+	/**
+		Cria o gerenciador das bolas. Todos os números aleatórios da partida (a direção da bola principal e a das
+		bolas duplicadas) vêm do gerador indicado, de modo que a partida pode ser reproduzida a partir da sua semente.
+	*/
 
-		double vx = 0.85 + Math.random() * 0.15;
+	private static BallManager initBallManager(String ballClassName, CopyableRandom random){
+
+		double vx = 0.85 + random.nextDouble() * 0.15;
 		double vy = Math.sqrt(1.0 - vx * vx);
 
-		if(Math.random() < 0.5) vx = -vx;
+		if(random.nextDouble() < 0.5) vx = -vx;
 
 		BallManager ballManager = new BallManager(ballClassName);
+		ballManager.setRandom(random);
 		ballManager.initMainBall(FIELD_WIDTH/2, 100 + (FIELD_HEIGHT - 100)/2, 20, 20, Color.YELLOW, 0.65, vx, vy);
 
 		return ballManager;
@@ -116,8 +126,8 @@ public class Pong {
 		v_limit[0] = 110 + 10;
 		v_limit[1] = FIELD_HEIGHT - 10 - 10;
 
-		players[0] = new Player(FIELD_WIDTH * 0.1, 100 + (FIELD_HEIGHT - 100)/2, 20, 100, Color.GREEN, PLAYER1, v_limit, 0.5); 
-		players[1] = new Player(FIELD_WIDTH * 0.9, 100 + (FIELD_HEIGHT - 100)/2, 20, 100, Color.BLUE, PLAYER2, v_limit, 0.5);
+		players[0] = new Player(FIELD_WIDTH * 0.1, 100 + (FIELD_HEIGHT - 100)/2, 20, 100, PLAYER_COLORS[0], PLAYER1, v_limit, 0.5); 
+		players[1] = new Player(FIELD_WIDTH * 0.9, 100 + (FIELD_HEIGHT - 100)/2, 20, 100, PLAYER_COLORS[1], PLAYER2, v_limit, 0.5);
 
 		return players;
 	}
@@ -132,113 +142,604 @@ public class Pong {
 		return scores;
 	}
 
+	/**
+		Constante usada para definir o tamanho (em pixels) das células da grade de colisão.
+	*/
+
+	private static final double GRID_CELL_SIZE = 50;
+
+	/**
+		Cria a grade de colisão da partida, registrando os jogadores, os alvos e as paredes, nesta ordem
+		(a mesma ordem em que as colisões eram tratadas objeto a objeto).
+
+		@return a grade de colisão; o índice de cada parede na grade é a posição da parede no array walls somada a
+		players.length + targets.length.
+	*/
+
+	private static CollisionGrid initGrid(Player [] players, Target [] targets, Wall [] walls){
+
+		CollisionGrid grid = new CollisionGrid(FIELD_WIDTH, FIELD_HEIGHT, GRID_CELL_SIZE);
+
+		for(Player p : players) grid.add(p);
+		for(Target t : targets) grid.add(t);
+		for(Wall w : walls) grid.add(w);
+
+		return grid;
+	}
+
+	/**
+		Constante usada para definir a quantidade padrão de ciclos simulados no modo headless.
+	*/
+
+	private static final long HEADLESS_TICKS = 20000;
+
+	/**
+		Constante usada para definir a frequência padrão da simulação (em ciclos por segundo).
+	*/
+
+	static final int DEFAULT_TICK_RATE = 250;
+
+	/**
+		Constante usada para definir o tempo máximo (em milisegundos) de um frame considerado pela simulação. Frames mais
+		longos (por exemplo, quando a janela é arrastada) não fazem a simulação tentar recuperar todo o tempo perdido.
+	*/
+
+	private static final double MAX_FRAME_TIME = 250;
+
+	/**
+		Constante usada para definir a quantidade de frames por segundo desenhados enquanto o jogo não começou.
+	*/
+
+	private static final double IDLE_FPS = 20;
+
+	/**
+		Associa cada parede ao placar que pontua quando uma bola a atinge.
+
+		@return para cada parede, o índice do placar correspondente, ou -1 se a parede não vale pontos.
+	*/
+
+	private static int [] initWallScores(Wall [] walls){
+
+		int [] wallScore = new int[walls.length];
+
+		for(int k = 0; k < walls.length; k++){
+
+			if(walls[k].getId().equals(LEFT)) wallScore[k] = PLAYER2_SCORE;
+			else if(walls[k].getId().equals(RIGHT)) wallScore[k] = PLAYER1_SCORE;
+			else wallScore[k] = -1;
+		}
+
+		return wallScore;
+	}
+
+	/**
+		Cria uma partida completa (bolas, paredes, alvos, jogadores e placares). A partida não depende de nenhum estado
+		global (o seu relógio e o seu gerador de números aleatórios são próprios), por isso a mesma JVM pode simular
+		várias partidas ao mesmo tempo, como no servidor (veja as classes PongServer e MatchScheduler).
+
+		@param ballClassName nome da classe das bolas.
+		@param random gerador de todos os números aleatórios da partida.
+		@param ballCollisions true se as bolas colidem entre si.
+		@param parallelThreshold quantidade de bolas a partir da qual a simulação usa várias threads.
+		@return a partida criada, ainda não iniciada.
+	*/
+
+	static Match createMatch(String ballClassName, CopyableRandom random, boolean ballCollisions, int parallelThreshold){
+
+		BallManager ballManager = initBallManager(ballClassName, random);
+		ballManager.setParallelism(parallelThreshold, ForkJoinPool.commonPool());
+		ballManager.setBallCollisions(ballCollisions);
+		Wall [] walls = initWalls();
+		Target [] targets = initTargets();
+		Player [] players = initPlayers();
+		Score [] scores = initScores();
+		CollisionGrid grid = initGrid(players, targets, walls);
+
+		return new Match(ballManager, walls, targets, players, scores, grid, initWallScores(walls));
+	}
+
+	/**
+		Constante usada para definir a linha da tela em que começam as medidas do profiler.
+	*/
+
+	private static final double PROFILER_LINE = 150;
+
+	/**
+		Constante usada para definir a distância (em pixels) entre duas linhas das medidas do profiler.
+	*/
+
+	private static final double PROFILER_LINE_HEIGHT = 30;
+
+	/**
+		Reproduz, sem janela e sem esperas, uma partida gravada em um arquivo de replay, verificando os resumos do
+		estado da partida gravados no arquivo. A reprodução para no primeiro resumo diferente do gravado.
+
+		@param file arquivo de replay.
+		@param parallelThreshold quantidade de bolas a partir da qual a simulação usa várias threads.
+	*/
+
+	private static void replay(File file, int parallelThreshold){
+
+		ReplayFile.Reader reader;
+
+		try{
+			reader = new ReplayFile.Reader(file);
+		}
+		catch(IOException e){
+
+			System.out.println("Não foi possível abrir o replay: " + e.getMessage());
+			return;
+		}
+
+		long tick = reader.getTick();
+		boolean ballCollisions = (reader.getOptions() & ReplayFile.BALL_COLLISIONS) != 0;
+		Match match = createMatch(reader.getBallClassName(), new CopyableRandom(reader.getSeed()), ballCollisions, parallelThreshold);
+		Score [] scores = match.getScores();
+		TickInput input = new TickInput();
+		long checked = 0;
+		long divergedAt = -1;
+		long startTime = System.nanoTime();
+
+		if(match.checksum() != reader.getInitialChecksum()) divergedAt = 0;
+
+		match.start();
+
+		try{
+			while(divergedAt < 0 && reader.next(input)){
+
+				match.step(tick, input);
+
+				if(reader.hasChecksum()){
+
+					long expected;
+
+					try{
+						expected = reader.readChecksum();
+					}
+					catch(EOFException e){
+
+						//Arquivo interrompido antes do resumo: o último passo já foi reproduzido
+						break;
+					}
+
+					checked++;
+
+					if(expected != match.checksum()) divergedAt = match.getTicks();
+				}
+			}
+		}
+		catch(IOException e){
+
+			System.out.println("Erro ao ler o replay: " + e.getMessage());
+		}
+		finally{
+
+			try{
+				reader.close();
+			}
+			catch(IOException e){}
+		}
+
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		long ticks = match.getTicks();
+
+		System.out.println(PLAYER1 + ": " + scores[PLAYER1_SCORE].getScore());
+		System.out.println(PLAYER2 + ": " + scores[PLAYER2_SCORE].getScore());
+		System.out.println(ticks + " ciclos (" + (ticks * tick) + " ms de jogo) reproduzidos em " + seconds + " s, " + checked + " resumos verificados");
+
+		if(divergedAt >= 0) System.out.println("A reprodução diverge da partida gravada no ciclo " + divergedAt);
+		else System.out.println("A reprodução é igual à partida gravada");
+	}
+
+	/**
+		Desenha as medidas do profiler (p50, p99 e máximo de cada fase e a quantidade de bolas) sobre o frame.
+
+		@param renderer backend de desenho.
+		@param profiler profiler cujas medidas são desenhadas.
+		@param now instante atual (em milisegundos).
+	*/
+
+	private static void drawProfiler(Renderer renderer, FrameProfiler profiler, long now){
+
+		String [] lines = profiler.getOverlay(now);
+
+		renderer.setColor(Color.WHITE);
+
+		for(int k = 0; k < lines.length; k++){
+
+			renderer.drawText(lines[k], PROFILER_LINE + k * PROFILER_LINE_HEIGHT, GameLib.ALIGN_LEFT);
+		}
+	}
+
+	/**
+		Desenha um frame a partir de uma cópia do estado da partida.
+
+		@param renderer backend de desenho.
+		@param frame cópia do estado da partida.
+		@param alpha fração do passo seguinte já decorrida, usada para interpolar a posição das bolas.
+		@param walls paredes da partida.
+		@param targets alvos da partida.
+		@param players jogadores da partida (apenas a posição x e o tamanho são lidos, a posição y vem da cópia).
+		@param shownScores placares usados apenas para o desenho, atualizados a partir da cópia.
+		@param now instante atual (em milisegundos), usado para piscar a mensagem da tela inicial.
+	*/
+
+	static void drawFrame(Renderer renderer, WorldSnapshot frame, double alpha, Wall [] walls, Target [] targets, Player [] players, Score [] shownScores, long now){
+
+		if(!frame.started){
+
+			if( (now/500) % 2 == 0){
+
+				renderer.setColor(Color.YELLOW);
+				renderer.drawText("Pressione <ESPAÇO> para começar", 440, GameLib.ALIGN_CENTER);
+			}
+
+			renderer.setColor(Color.GREEN);
+			renderer.drawText("A/Z: move o jogador da esquerda", 260, GameLib.ALIGN_CENTER);
+
+			renderer.setColor(Color.BLUE);
+			renderer.drawText("K/M: move o jogador da direita", 300, GameLib.ALIGN_CENTER);
+		}
+		
+		renderer.setColor(Color.YELLOW);
+		renderer.drawText("Pong! 2.0", 70, GameLib.ALIGN_CENTER);
+
+		BallManager.draw(renderer, frame.balls, alpha);
+		for(Wall w : walls) renderer.drawWall(w);
+		for(Target t : targets) renderer.drawTarget(t);
+
+		for(int k = 0; k < players.length; k++){
+
+			Player p = players[k];
+
+			renderer.drawPlayer(p.getCx(), frame.playerCy[k], p.getWidth(), p.getHeight(), PLAYER_COLORS[k]);
+		}
+
+		for(int k = 0; k < shownScores.length; k++){
+
+			shownScores[k].counter = frame.scores[k];
+			renderer.drawScore(shownScores[k]);
+		}
+	}
+
+	/**
+		Grava um passo da partida no arquivo de replay. Se o arquivo não puder ser gravado, a gravação é encerrada.
+
+		@param recorder arquivo de replay (ou null, se a partida não é gravada).
+		@param input estado das teclas lidas no passo.
+		@param match partida gravada.
+	*/
+
+	private static void record(ReplayFile.Writer recorder, TickInput input, Match match){
+
+		if(recorder == null) return;
+
+		try{
+			recorder.record(input, match);
+		}
+		catch(IOException e){
+
+			System.out.println("Erro ao gravar o replay: " + e.getMessage());
+			closeRecorder(recorder);
+		}
+	}
+
+	/**
+		Fecha o arquivo de replay, se a partida é gravada.
+
+		@param recorder arquivo de replay (ou null).
+	*/
+
+	private static void closeRecorder(ReplayFile.Writer recorder){
+
+		if(recorder == null) return;
+
+		try{
+			recorder.close();
+		}
+		catch(IOException e){
+
+			System.out.println("Erro ao gravar o replay: " + e.getMessage());
+		}
+	}
+
 	/**
 		O método principal do jogo. Este método cria os objetos participantes do jogo
 		(paredes, players, placares e bola) e gerencia a interação entre estes objetos.
 		Quando eventos relevantes são identificados, métodos destes objetos são invocados
 		para atualizar o estado interno de cada um deles.
 
+		A simulação avança em passos de duração fixa, independentes da taxa de frames, em uma thread própria.
+		A cada passo (ou conjunto de passos) ela publica uma cópia do estado da partida, e a thread principal
+		desenha sempre a cópia mais recente, com as bolas em uma posição interpolada entre os dois últimos passos.
+		Assim, uma apresentação lenta da janela não atrasa a simulação.
+
 		@param args argumentos passados ao jogo através da linha de comando. Ao executar o 
 		jogo é possível especificar um parâmetro opcional que determina o intervalo mínimo
 		de tempo que se passa entre o processamento de dois frames consecutivos.
+		Também são aceitas as opções "--headless", que executa a simulação sem janela e sem
+		esperas (um passo da simulação por frame, em uma única thread), "--ticks=N", que define quantos passos são
+		simulados no modo headless, "--tickrate=N", que define quantos passos a simulação
+		executa por segundo de jogo (a duração de cada passo é arredondada para milisegundos inteiros),
+		"--fps=N", que define a quantidade de frames por segundo no lugar do intervalo mínimo,
+		"--parallel-threshold=N", que define a partir de quantas bolas a simulação usa várias threads,
+		"--ball-collisions", que faz as bolas colidirem entre si, e
+		"--full-redraw", que redesenha a tela inteira a cada frame em vez de usar a classe LayeredRenderer.
+
+		A duração de cada fase dos passos e dos frames é medida por um FrameProfiler. No jogo em janela, a tecla
+		<CTRL> mostra ou esconde as medidas na tela, e um resumo das medidas é exibido na saída quando o jogo termina.
+
+		Para reproduzir partidas, "--seed=N" define a semente dos números aleatórios da partida, "--record=ARQUIVO"
+		grava a partida (a semente e as teclas lidas em cada passo) em um arquivo de replay, e "--replay=ARQUIVO"
+		reproduz uma partida gravada sem janela e o mais rápido possível, verificando se ela continua igual à
+		original (veja a classe ReplayFile). A opção "--telemetry=ARQUIVO" grava um registro de cada passo em um
+		arquivo mapeado na memória, que pode ser acompanhado por outros processos (veja a classe TelemetryRing).
 	*/
 
 	public static void main(String [] args){
 
-		String ballClassName = (args.length >= 1) ? args[0] : "Ball"; 
+		boolean headless = false;
+		long maxTicks = HEADLESS_TICKS;
+		final int tickRate;
+		int rate = DEFAULT_TICK_RATE;
+		double fps = 0;
+		int parallelThreshold = BallManager.DEFAULT_PARALLEL_THRESHOLD;
+		boolean fullRedraw = false;
+		long seed = new Random().nextLong();
+		String recordPath = null;
+		String replayPath = null;
+		String telemetryPath = null;
+		boolean ballCollisions = false;
+		List <String> params = new ArrayList <String> ();
+
+		for(String arg : args){
+
+			if(arg.equals("--headless")) headless = true;
+			else if(arg.startsWith("--ticks=")) maxTicks = Long.parseLong(arg.substring("--ticks=".length()));
+			else if(arg.startsWith("--tickrate=")) rate = Integer.parseInt(arg.substring("--tickrate=".length()));
+			else if(arg.startsWith("--fps=")) fps = Double.parseDouble(arg.substring("--fps=".length()));
+			else if(arg.startsWith("--parallel-threshold=")) parallelThreshold = Integer.parseInt(arg.substring("--parallel-threshold=".length()));
+			else if(arg.equals("--full-redraw")) fullRedraw = true;
+			else if(arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if(arg.startsWith("--record=")) recordPath = arg.substring("--record=".length());
+			else if(arg.startsWith("--replay=")) replayPath = arg.substring("--replay=".length());
+			else if(arg.startsWith("--telemetry=")) telemetryPath = arg.substring("--telemetry=".length());
+			else if(arg.equals("--ball-collisions")) ballCollisions = true;
+			else params.add(arg);
+		}
 
-		long delay = (args.length >= 2) ? Long.parseLong(args[1]) : 3;
-		boolean safe_mode = (args.length >= 3) ? Boolean.parseBoolean(args[2]) : false;
+		tickRate = rate;
 
-		boolean running = true;
-		boolean started = false;
+		if(replayPath != null){
 
-		System.out.println("safe_mode = " + safe_mode);
-		if(safe_mode) GameLib.initGraphics_SAFE_MODE("Pong!", 800, 600);
-		else GameLib.initGraphics("Pong!", 800, 600);
+			replay(new File(replayPath), parallelThreshold);
+			return;
+		}
 
-		BallManager ballManager = initBallManager(ballClassName);
-		Wall [] walls = initWalls();
-		Target [] targets = initTargets();
-		Player [] players = initPlayers();
-		Score [] scores = initScores();
+		String ballClassName = (params.size() >= 1) ? params.get(0) : "Ball"; 
 
-		long t0 = System.currentTimeMillis();
+		long delay = (params.size() >= 2) ? Long.parseLong(params.get(1)) : 3;
+		boolean safe_mode = (params.size() >= 3) ? Boolean.parseBoolean(params.get(2)) : false;
 
-		while(running){
+		//Duração (em milisegundos) de cada passo da simulação
+		final long tick = Math.max(1, Math.round(1000.0 / tickRate));
 
-			long now = System.currentTimeMillis();
+		//Sem --fps, o intervalo mínimo entre frames define o FPS alvo
+		if(fps <= 0) fps = 1000.0 / Math.max(1, delay);
 
-			if(GameLib.isKeyPressed(GameLib.KEY_SPACE)) started = true;
+		Renderer renderer;
+		final Input input;
 
-			if(started){
+		if(headless){
 
-				ballManager.update(now - t0);
+			//Sem janela: nada é desenhado e nenhuma tecla é lida
+			renderer = new NullRenderer();
+			input = Input.NONE;
+		}
+		else{
 
-				if(GameLib.isKeyPressed(GameLib.KEY_A)){
+			System.out.println("safe_mode = " + safe_mode);
 
-					players[0].moveUp(now - t0);
-				}
-				if(GameLib.isKeyPressed(GameLib.KEY_Z)){
+			//Por padrão, apenas as regiões da tela ocupadas pelas bolas e pelos jogadores são redesenhadas a cada frame
+			if(fullRedraw) renderer = new AwtRenderer("Pong!", 800, 600, safe_mode);
+			else renderer = new LayeredRenderer("Pong!", 800, 600, safe_mode);
 
-					players[0].moveDown(now - t0);
-				}
-				if(GameLib.isKeyPressed(GameLib.KEY_K)){
+			input = Input.KEYBOARD;
+		}
 
-					players[1].moveUp(now - t0);
-				}
-				if(GameLib.isKeyPressed(GameLib.KEY_M)){
+		final Match match = createMatch(ballClassName, new CopyableRandom(seed), ballCollisions, parallelThreshold);
+		Wall [] walls = match.getWalls();
+		Target [] targets = match.getTargets();
+		Player [] players = match.getPlayers();
+		Score [] scores = match.getScores();
+		final FrameProfiler profiler = new FrameProfiler();
 
-					players[1].moveDown(now - t0);
-				}
+		match.setProfiler(profiler);
 
-				for(Player p : players) ballManager.checkCollision(p);
-				for(Target t : targets) ballManager.checkCollision(t);
-	
-				for(Wall w : walls) {
+		if(telemetryPath != null){
 
-					int nHits = ballManager.checkCollision(w);
+			try{
+				match.setTelemetry(new TelemetryRing(new File(telemetryPath), TelemetryRing.DEFAULT_CAPACITY, walls, targets, players));
+			}
+			catch(IOException e){
 
-					if(nHits > 0){
+				System.out.println("Não foi possível criar o arquivo de telemetria: " + e.getMessage());
+			}
+		}
 
-						if(w.getId().equals(LEFT)){
-						
-							for(int i = 0; i < nHits; i++) scores[PLAYER2_SCORE].inc();
-						}
+		//Passos já simulados não podem ser gravados, por isso o arquivo é criado antes do primeiro passo
+		ReplayFile.Writer writer = null;
+
+		if(recordPath != null){
 
-						if(w.getId().equals(RIGHT)){
+			int flags = ballCollisions ? ReplayFile.BALL_COLLISIONS : 0;
 
-							for(int i = 0; i < nHits; i++) scores[PLAYER1_SCORE].inc();
+			try{
+				writer = new ReplayFile.Writer(new File(recordPath), seed, tick, ballClassName, flags, ReplayFile.DEFAULT_CHECKSUM_INTERVAL, match);
+				System.out.println("Gravando a partida em '" + recordPath + "' (semente " + seed + ")");
+			}
+			catch(IOException e){
+
+				System.out.println("Não foi possível criar o replay: " + e.getMessage());
+			}
+		}
+
+		final ReplayFile.Writer recorder = writer;
+		final TickInput tickInput = new TickInput();
+
+		//Placares usados apenas pelo desenho, para que a thread de desenho não leia os placares da simulação
+		Score [] shownScores = initScores();
+
+		if(headless){
+
+			WorldSnapshot frame = new WorldSnapshot(players.length, scores.length);
+			long startTime = System.nanoTime();
+
+			match.start();
+
+			while(match.getTicks() < maxTicks){
+
+				tickInput.sample(input);
+				match.step(tick, tickInput);
+				record(recorder, tickInput, match);
+				match.snapshot(frame, System.nanoTime());
+
+				long drawStart = System.nanoTime();
+
+				drawFrame(renderer, frame, 1.0, walls, targets, players, shownScores, System.currentTimeMillis());
+
+				long displayStart = System.nanoTime();
+
+				renderer.display();
+
+				long end = System.nanoTime();
+
+				profiler.record(FrameProfiler.DRAW, displayStart - drawStart);
+				profiler.record(FrameProfiler.DISPLAY, end - displayStart);
+				profiler.setBallCount(frame.balls.size());
+			}
+
+			//Resumo da partida simulada
+			double seconds = (System.nanoTime() - startTime) / 1e9;
+			long ticks = match.getTicks();
+
+			System.out.println(PLAYER1 + ": " + scores[PLAYER1_SCORE].getScore());
+			System.out.println(PLAYER2 + ": " + scores[PLAYER2_SCORE].getScore());
+			System.out.println(ticks + " ciclos (" + (ticks * tick) + " ms de jogo) em " + seconds + " s = " + Math.round(ticks / seconds) + " ciclos/s");
+			System.out.println(profiler.summary());
+
+			closeRecorder(recorder);
+
+			return;
+		}
+
+		final SnapshotBuffer buffer = new SnapshotBuffer(players.length, scores.length);
+		final FramePacer pacer = new FramePacer(fps, Math.min(fps, IDLE_FPS));
+		final FramePacer simulationPacer = new FramePacer(tickRate, Math.min(tickRate, IDLE_FPS));
+
+		//Publica o estado inicial antes de iniciar as threads, para que o primeiro frame já tenha o que desenhar
+		match.snapshot(buffer.back(), System.nanoTime());
+		buffer.publish();
+
+		Thread simulation = new Thread("simulation"){
+
+			public void run(){
+
+				double accumulator = 0;
+				long previous = System.nanoTime();
+
+				while(true){
+
+					long nanos = System.nanoTime();
+					double frameTime = Math.min((nanos - previous) / 1e6, MAX_FRAME_TIME);
+
+					previous = nanos;
+
+					if(input.isKeyPressed(GameLib.KEY_SPACE)) match.start();
+
+					if(match.isStarted()){
+
+						accumulator += frameTime;
+
+						while(accumulator >= tick){
+
+							//As teclas são lidas uma única vez por passo, para que o passo possa ser gravado
+							tickInput.sample(input);
+							match.step(tick, tickInput);
+							record(recorder, tickInput, match);
+							accumulator -= tick;
 						}
 					}
+
+					//O último passo deveria ter ocorrido há "accumulator" milisegundos
+					match.snapshot(buffer.back(), nanos - Math.round(accumulator * 1e6));
+					buffer.publish();
+
+					simulationPacer.setIdle(!match.isStarted());
+					simulationPacer.waitForNextFrame();
 				}
 			}
-			else{
-				if( (System.currentTimeMillis()/500) % 2 == 0){
+		};
 
-					GameLib.setColor(Color.YELLOW);
-					GameLib.drawText("Pressione <ESPAÇO> para começar", 440, GameLib.ALIGN_CENTER);
-				}
+		//O jogo em janela termina junto com a JVM, por isso as medidas dos pacers são exibidas na saída
+		Runtime.getRuntime().addShutdownHook(new Thread(){
 
-				GameLib.setColor(Color.GREEN);
-				GameLib.drawText("A/Z: move o jogador da esquerda", 260, GameLib.ALIGN_CENTER);
+			public void run(){
 
-				GameLib.setColor(Color.BLUE);
-				GameLib.drawText("K/M: move o jogador da direita", 300, GameLib.ALIGN_CENTER);
+				System.out.println("Frames: " + pacer);
+				System.out.println("Simulação: " + simulationPacer + ", " + match.getTicks() + " ciclos");
+				System.out.println(profiler.summary());
+
+				closeRecorder(recorder);
 			}
-			
-			GameLib.setColor(Color.YELLOW);
-			GameLib.drawText("Pong! 2.0", 70, GameLib.ALIGN_CENTER);
-
-			ballManager.draw();
-			for(Wall w : walls) w.draw();
-			for(Target t : targets) t.draw();
-			for(Player p : players) p.draw();
-			for(Score s : scores) s.draw();
-
-			GameLib.display();
-			busyWait(now + delay);
-			t0 = now;
+		});
+
+		simulation.setDaemon(true);
+		simulation.start();
+
+		double tickNanos = tick * 1e6;
+		boolean showProfiler = false;
+		boolean toggleHeld = false;
+		long frameStart = System.nanoTime();
+
+		while(true){
+
+			WorldSnapshot frame = buffer.latest();
+			long drawStart = System.nanoTime();
+			long now = System.currentTimeMillis();
+
+			//Fração do próximo passo já decorrida, usada para interpolar a posição das bolas
+			double alpha = Math.min(1.0, Math.max(0.0, (drawStart - frame.time) / tickNanos));
+
+			//As medidas aparecem ou somem quando a tecla é pressionada (e não enquanto ela continua pressionada)
+			boolean toggle = input.isKeyPressed(GameLib.KEY_CONTROL);
+
+			if(toggle && !toggleHeld) showProfiler = !showProfiler;
+
+			toggleHeld = toggle;
+
+			drawFrame(renderer, frame, alpha, walls, targets, players, shownScores, now);
+			profiler.setBallCount(frame.balls.size());
+
+			if(showProfiler) drawProfiler(renderer, profiler, now);
+
+			long displayStart = System.nanoTime();
+
+			renderer.display();
+
+			long waitStart = System.nanoTime();
+
+			pacer.setIdle(!frame.started);
+			pacer.waitForNextFrame();
+
+			long end = System.nanoTime();
+
+			profiler.record(FrameProfiler.DRAW, displayStart - drawStart);
+			profiler.record(FrameProfiler.DISPLAY, waitStart - displayStart);
+			profiler.record(FrameProfiler.WAIT, end - waitStart);
+			profiler.record(FrameProfiler.FRAME, end - frameStart);
+
+			frameStart = end;
 		}
 	}
 }
@@ -0,0 +1,380 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+	Classe que implementa clientes automáticos do servidor de partidas (veja a classe PongServer), usados para
+	testar o servidor com muitas partidas simultâneas. Como o servidor, todos os clientes rodam em uma única thread,
+	com um Selector.
+
+	Cada cliente move o seu jogador em direção à bola mais próxima da sua raquete, entre as que estão à frente dela e
+	se aproximam, envia as teclas ao servidor apenas quando elas mudam e confirma cada estado recebido (veja a classe
+	SnapshotCodec). Os clientes medem quantos estados recebem e o intervalo entre dois estados consecutivos, que
+	mostra se o servidor mantém o ritmo dos passos.
+*/
+
+public class PongBot {
+
+	/**
+		Constante que define a distância (em pixels) entre o jogador e a bola abaixo da qual o jogador não se move.
+	*/
+
+	private static final double DEAD_ZONE = 10;
+
+	/**
+		Constantes que definem a coordenada x do centro de cada jogador e a largura dos jogadores, como nas partidas
+		criadas pela classe Pong (o servidor não envia a posição x dos jogadores).
+	*/
+
+	private static final double [] PLAYER_CX = { Pong.FIELD_WIDTH * 0.1, Pong.FIELD_WIDTH * 0.9 };
+	private static final double PLAYER_WIDTH = 20;
+
+	/**
+		Constante que define o intervalo (em nanossegundos) entre dois resumos das medidas dos clientes.
+	*/
+
+	private static final long STATS_INTERVAL = 5000000000L;
+
+	/**
+		Classe que representa um cliente.
+	*/
+
+	private static class Bot {
+
+		/**
+			Atributo que representa o canal da conexão.
+		*/
+
+		final SocketChannel channel;
+
+		/**
+			Atributo que representa os dados recebidos e ainda não tratados (em modo de escrita).
+		*/
+
+		final ByteBuffer in = ByteBuffer.allocateDirect(NetProtocol.MAX_MESSAGE);
+
+		/**
+			Atributo que representa as mensagens ainda não enviadas (em modo de escrita).
+		*/
+
+		final ByteBuffer out = ByteBuffer.allocateDirect(64);
+
+		/**
+			Atributo que representa o jogador controlado pelo cliente (-1 antes da mensagem WELCOME).
+		*/
+
+		int slot = -1;
+
+		/**
+			Atributo que decodifica os estados recebidos (null antes da mensagem WELCOME).
+		*/
+
+		SnapshotCodec.Decoder decoder = null;
+
+		/**
+			Atributo que representa as teclas enviadas por último ao servidor.
+		*/
+
+		int keys = 0;
+
+		/**
+			Atributo que representa o instante (System.nanoTime()) em que o último estado foi recebido (0 antes do
+			primeiro).
+		*/
+
+		long lastState = 0;
+
+		Bot(SocketChannel channel){
+
+			this.channel = channel;
+		}
+	}
+
+	/**
+		Atributo privado que representa o Selector que trata todas as conexões.
+	*/
+
+	private final Selector selector;
+
+	/**
+		Atributo privado que representa a quantidade de conexões abertas.
+	*/
+
+	private int open = 0;
+
+	/**
+		Atributo privado que mede o intervalo entre dois estados consecutivos recebidos por um cliente.
+	*/
+
+	private final LatencyHistogram intervals = new LatencyHistogram();
+
+	/**
+		Atributos privados que contam os estados e os bytes recebidos e as mensagens enviadas.
+	*/
+
+	private long states = 0;
+	private long bytes = 0;
+	private long inputs = 0;
+
+	/**
+		Construtor da classe PongBot. Abre as conexões com o servidor.
+
+		@param address endereço do servidor.
+		@param count quantidade de clientes.
+		@throws IOException se as conexões não puderem ser abertas.
+	*/
+
+	public PongBot(InetSocketAddress address, int count) throws IOException {
+
+		selector = Selector.open();
+
+		for(int k = 0; k < count; k++){
+
+			SocketChannel channel = SocketChannel.open();
+
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.connect(address);
+			channel.register(selector, SelectionKey.OP_CONNECT, new Bot(channel));
+			open++;
+		}
+	}
+
+	/**
+		Executa os clientes durante o tempo indicado, ou até que o servidor feche todas as conexões.
+
+		@param seconds duração (em segundos).
+		@throws IOException se o Selector falhar.
+	*/
+
+	public void run(double seconds) throws IOException {
+
+		long end = System.nanoTime() + (long) (seconds * 1e9);
+		long start = System.nanoTime();
+		long nextStats = start + STATS_INTERVAL;
+		long lastStats = start;
+
+		try{
+			while(open > 0 && System.nanoTime() < end){
+
+				selector.select(100);
+
+				Iterator <SelectionKey> it = selector.selectedKeys().iterator();
+
+				while(it.hasNext()){
+
+					SelectionKey key = it.next();
+
+					it.remove();
+
+					if(!key.isValid()) continue;
+
+					Bot bot = (Bot) key.attachment();
+
+					try{
+						if(key.isConnectable()){
+
+							bot.channel.finishConnect();
+							key.interestOps(SelectionKey.OP_READ);
+						}
+						else if(key.isReadable()){
+
+							read(bot);
+						}
+					}
+					catch(IOException e){
+
+						key.cancel();
+						bot.channel.close();
+						open--;
+					}
+				}
+
+				long now = System.nanoTime();
+
+				if(now >= nextStats){
+
+					System.out.println(stats(now - lastStats));
+					intervals.reset();
+					states = bytes = inputs = 0;
+					lastStats = now;
+					nextStats = now + STATS_INTERVAL;
+				}
+			}
+
+			System.out.println(stats(System.nanoTime() - lastStats));
+		}
+		finally{
+
+			for(SelectionKey key : selector.keys()) key.channel().close();
+
+			selector.close();
+		}
+	}
+
+	/**
+		Lê e trata as mensagens recebidas por um cliente.
+	*/
+
+	private void read(Bot bot) throws IOException {
+
+		int n = bot.channel.read(bot.in);
+
+		if(n < 0) throw new EOFException();
+
+		bytes += n;
+		bot.in.flip();
+
+		int length;
+
+		while((length = NetProtocol.available(bot.in)) >= 0){
+
+			int end = bot.in.position() + NetProtocol.LENGTH_SIZE + length;
+
+			bot.in.position(bot.in.position() + NetProtocol.LENGTH_SIZE);
+
+			byte type = bot.in.get();
+
+			if(type == NetProtocol.WELCOME){
+
+				bot.in.getInt();
+				bot.slot = bot.in.get();
+				bot.decoder = new SnapshotCodec.Decoder(bot.in.getInt());
+			}
+			else if(type == NetProtocol.STATE && bot.decoder != null){
+
+				state(bot);
+			}
+
+			bot.in.position(end);
+		}
+
+		bot.in.compact();
+	}
+
+	/**
+		Trata uma mensagem STATE, escolhendo as teclas do jogador do cliente.
+	*/
+
+	private void state(Bot bot) throws IOException {
+
+		long now = System.nanoTime();
+
+		if(bot.lastState != 0) intervals.record(now - bot.lastState);
+
+		bot.lastState = now;
+		states++;
+
+		SnapshotCodec.Frame frame;
+
+		try{
+			frame = bot.decoder.decode(bot.in);
+		}
+		catch(IllegalStateException e){
+
+			throw new IOException(e.getMessage());
+		}
+
+		double cy = frame.getPlayerCy(bot.slot);
+
+		//A bola mais próxima da face do jogador, entre as que estão à frente dela e se aproximam (as bolas que
+		//já passaram pela raquete não podem mais ser defendidas, e segui-las as empurraria para o próprio gol)
+		boolean left = (bot.slot == 0);
+		double face = PLAYER_CX[bot.slot] + (left ? 1 : -1) * PLAYER_WIDTH / 2;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		double target = cy;
+
+		for(int e = 0; e < frame.getEntries(); e++){
+
+			if(!frame.hasBall(e)) continue;
+
+			double vx = frame.getVx(e);
+
+			if(left ? (vx >= 0) : (vx <= 0)) continue;
+
+			double distance = left ? (frame.getCx(e) - face) : (face - frame.getCx(e));
+
+			if(distance < 0 || distance >= bestDistance) continue;
+
+			bestDistance = distance;
+			target = frame.getCy(e);
+		}
+
+		bot.out.clear();
+
+		//Cada estado recebido é confirmado, para servir de base aos próximos
+		NetProtocol.writeAck(bot.out, frame.getSequence());
+
+		int keys = 0;
+
+		if(target < cy - DEAD_ZONE) keys = NetProtocol.UP;
+		else if(target > cy + DEAD_ZONE) keys = NetProtocol.DOWN;
+
+		if(keys != bot.keys){
+
+			bot.keys = keys;
+			NetProtocol.writeInput(bot.out, keys);
+			inputs++;
+		}
+
+		bot.out.flip();
+
+		//As mensagens são pequenas e o buffer de envio do socket só enche se o servidor parar de ler
+		bot.channel.write(bot.out);
+	}
+
+	/**
+		@param nanos duração (em nanossegundos) do período medido.
+		@return um resumo das medidas dos clientes no período.
+	*/
+
+	private String stats(long nanos){
+
+		double seconds = nanos / 1e9;
+		double perConnection = seconds * Math.max(1, open);
+		String received = String.format(Locale.ROOT, "estados/s por conexão: %.1f", states / perConnection);
+		String traffic = String.format(Locale.ROOT, "KB/s por conexão: %.1f", bytes / 1024.0 / perConnection);
+		String sent = String.format(Locale.ROOT, "mensagens enviadas/s: %.0f", inputs / seconds);
+		String p50 = FrameProfiler.format(intervals.getPercentile(50));
+		String p99 = FrameProfiler.format(intervals.getPercentile(99));
+		String max = FrameProfiler.format(intervals.getMax());
+		String gaps = "intervalo entre estados p50 " + p50 + " p99 " + p99 + " max " + max;
+
+		return "conexões: " + open + ", " + received + ", " + traffic + ", " + sent + ", " + gaps;
+	}
+
+	/**
+		O método principal dos clientes.
+
+		@param args o endereço do servidor (opcional, "localhost" por padrão), a porta (opcional,
+		NetProtocol.DEFAULT_PORT por padrão) e a quantidade de clientes (opcional, 2 por padrão; cada par de
+		clientes joga uma partida). Também é aceita a opção "--seconds=N", que define por quanto tempo os clientes
+		jogam (30 segundos por padrão).
+	*/
+
+	public static void main(String [] args){
+
+		double seconds = 30;
+		List <String> params = new ArrayList <String> ();
+
+		for(String arg : args){
+
+			if(arg.startsWith("--seconds=")) seconds = Double.parseDouble(arg.substring("--seconds=".length()));
+			else params.add(arg);
+		}
+
+		String host = (params.size() >= 1) ? params.get(0) : "localhost";
+		int port = (params.size() >= 2) ? Integer.parseInt(params.get(1)) : NetProtocol.DEFAULT_PORT;
+		int count = (params.size() >= 3) ? Integer.parseInt(params.get(2)) : 2;
+
+		try{
+			new PongBot(new InetSocketAddress(host, port), count).run(seconds);
+		}
+		catch(IOException e){
+
+			System.out.println("Erro nos clientes: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,711 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+	Classe que implementa um servidor de partidas. O servidor simula as partidas (ele é a autoridade sobre o estado
+	de cada partida), recebe dos clientes as teclas pressionadas pelos jogadores e envia a eles o estado das partidas
+	(veja a classe NetProtocol).
+
+	Todo o servidor roda em uma única thread: um Selector trata as conexões (sem uma thread por conexão) e, entre
+	uma espera e outra, a mesma thread simula um passo de todas as partidas no instante de cada passo. Os prazos dos
+	passos são encadeados (como na classe FramePacer), e quando o servidor se atrasa ele simula os passos perdidos,
+	até um limite. Como nenhum estado é compartilhado entre threads, a simulação não precisa de locks.
+
+	Cada nova conexão entra na partida que espera um segundo jogador, ou cria uma nova partida. A partida começa
+	quando os dois jogadores estão conectados e termina quando um deles se desconecta.
+
+	Nada é alocado a cada passo: cada conexão tem buffers próprios, reaproveitados. O estado de cada partida é
+	quantizado uma única vez por envio e codificado para cada conexão em relação ao último estado confirmado por
+	ela (veja a classe SnapshotCodec), diretamente no buffer de saída da conexão. Um cliente que não lê o que recebe
+	não atrasa os demais: quando o buffer de saída da conexão está cheio, os estados seguintes não são enviados a ele
+	até que o buffer se esvazie.
+*/
+
+public class PongServer {
+
+	/**
+		Constante que define a quantidade padrão de estados enviados por segundo a cada cliente.
+	*/
+
+	public static final int DEFAULT_SEND_RATE = 50;
+
+	/**
+		Constante que define a quantidade máxima de passos simulados de uma vez quando o servidor se atrasa. Passos
+		além desse limite são descartados, e as partidas passam a andar mais devagar que o relógio.
+	*/
+
+	private static final int MAX_CATCH_UP = 25;
+
+	/**
+		Constante que define quantas conexões podem esperar para ser aceitas. Com o valor padrão (50), parte dos
+		clientes que se conectam ao mesmo tempo fica sem resposta.
+	*/
+
+	private static final int BACKLOG = 1024;
+
+	/**
+		Constante que define o tamanho do buffer de entrada de cada conexão.
+	*/
+
+	private static final int IN_CAPACITY = 256;
+
+	/**
+		Constante que define quantas mensagens STATE do maior tamanho possível cabem no buffer de saída de cada conexão.
+	*/
+
+	private static final int OUT_MESSAGES = 8;
+
+	/**
+		Constante que define o intervalo (em nanossegundos) entre dois resumos das medidas do servidor.
+	*/
+
+	private static final long STATS_INTERVAL = 5000000000L;
+
+	/**
+		Classe que representa uma partida hospedada pelo servidor.
+	*/
+
+	private static class Room {
+
+		/**
+			Atributo que representa o número da partida.
+		*/
+
+		final int id;
+
+		/**
+			Atributo que representa a partida simulada.
+		*/
+
+		final Match match;
+
+		/**
+			Atributo que representa as conexões dos dois jogadores (null enquanto o jogador não se conectou).
+		*/
+
+		final Connection [] players = new Connection[2];
+
+		/**
+			Atributo que representa as teclas lidas pela partida em cada passo, montadas a partir das teclas dos dois
+			jogadores.
+		*/
+
+		final TickInput input = new TickInput();
+
+		/**
+			Atributo que representa o último estado quantizado da partida.
+		*/
+
+		final SnapshotCodec.Frame state = new SnapshotCodec.Frame();
+
+		/**
+			Atributo que indica se a partida terminou (um dos jogadores se desconectou).
+		*/
+
+		boolean closed = false;
+
+		Room(int id, Match match){
+
+			this.id = id;
+			this.match = match;
+		}
+	}
+
+	/**
+		Classe que representa a conexão de um cliente.
+	*/
+
+	private static class Connection {
+
+		/**
+			Atributo que representa o canal da conexão.
+		*/
+
+		final SocketChannel channel;
+
+		/**
+			Atributo que representa os dados recebidos e ainda não tratados (em modo de escrita).
+		*/
+
+		final ByteBuffer in = ByteBuffer.allocate(IN_CAPACITY);
+
+		/**
+			Atributo que representa os dados ainda não enviados (em modo de escrita).
+		*/
+
+		final ByteBuffer out;
+
+		/**
+			Atributo que codifica os estados enviados ao cliente.
+		*/
+
+		final SnapshotCodec.Encoder encoder;
+
+		/**
+			Atributos que representam a partida do cliente e o jogador controlado por ele.
+		*/
+
+		Room room;
+		int slot;
+
+		/**
+			Atributo que representa as teclas pressionadas pelo jogador (NetProtocol.UP e NetProtocol.DOWN).
+		*/
+
+		int keys = 0;
+
+		Connection(SocketChannel channel, int outCapacity, long tick){
+
+			this.channel = channel;
+			this.out = ByteBuffer.allocateDirect(outCapacity);
+			this.encoder = new SnapshotCodec.Encoder(tick);
+		}
+	}
+
+	/**
+		Atributo privado que representa o Selector que trata todas as conexões.
+	*/
+
+	private final Selector selector;
+
+	/**
+		Atributo privado que representa o canal que aceita novas conexões.
+	*/
+
+	private final ServerSocketChannel server;
+
+	/**
+		Atributo privado que representa o nome da classe das bolas das partidas.
+	*/
+
+	private final String ballClassName;
+
+	/**
+		Atributo privado que indica se as bolas das partidas colidem entre si.
+	*/
+
+	private final boolean ballCollisions;
+
+	/**
+		Atributo privado que representa o gerador das sementes das partidas.
+	*/
+
+	private final Random seeds;
+
+	/**
+		Atributo privado que representa a duração (em milisegundos) de cada passo.
+	*/
+
+	private final long tick;
+
+	/**
+		Atributo privado que representa a quantidade de passos entre dois envios do estado das partidas.
+	*/
+
+	private final int sendInterval;
+
+	/**
+		Atributo privado que representa as partidas em andamento.
+	*/
+
+	private final List <Room> rooms = new ArrayList <Room> ();
+
+	/**
+		Atributo privado que representa a partida que espera um segundo jogador (ou null).
+	*/
+
+	private Room waiting = null;
+
+	/**
+		Atributo privado que representa o número da próxima partida criada.
+	*/
+
+	private int nextRoom = 1;
+
+	/**
+		Atributo privado que representa a quantidade de conexões abertas.
+	*/
+
+	private int connections = 0;
+
+	/**
+		Atributo privado que representa o limite (em bytes) de cada mensagem STATE.
+	*/
+
+	private final int budget;
+
+	/**
+		Atributo privado usado para copiar o estado das partidas antes de quantizá-lo.
+	*/
+
+	private final WorldSnapshot snapshot;
+
+	/**
+		Atributo privado que mede quanto tempo cada passo (de todas as partidas, incluindo o envio dos estados) leva.
+	*/
+
+	private final LatencyHistogram tickTimes = new LatencyHistogram();
+
+	/**
+		Atributo privado que mede o atraso de cada passo em relação ao seu prazo.
+	*/
+
+	private final LatencyHistogram lateness = new LatencyHistogram();
+
+	/**
+		Atributos privados que contam os passos descartados e os estados não enviados a clientes lentos.
+	*/
+
+	private long skippedTicks = 0;
+	private long droppedStates = 0;
+
+	/**
+		Construtor da classe PongServer. Abre a porta indicada.
+
+		@param port porta em que o servidor aceita conexões (0 para uma porta livre qualquer).
+		@param ballClassName nome da classe das bolas das partidas.
+		@param ballCollisions true se as bolas das partidas colidem entre si.
+		@param seed semente do gerador das sementes das partidas.
+		@param tickRate quantidade de passos simulados por segundo.
+		@param sendRate quantidade de estados enviados por segundo a cada cliente.
+		@param budget limite (em bytes) de cada mensagem STATE (veja SnapshotCodec.Encoder.encode()).
+		@throws IOException se a porta não puder ser aberta.
+		@throws IllegalArgumentException se a quantidade de passos ou de estados por segundo não for positiva.
+	*/
+
+	public PongServer(int port, String ballClassName, boolean ballCollisions, long seed, int tickRate, int sendRate, int budget) throws IOException {
+
+		if(tickRate <= 0) throw new IllegalArgumentException("Quantidade de passos por segundo inválida: " + tickRate);
+		if(sendRate <= 0) throw new IllegalArgumentException("Quantidade de estados por segundo inválida: " + sendRate);
+
+		this.ballClassName = ballClassName;
+		this.ballCollisions = ballCollisions;
+		this.seeds = new Random(seed);
+		this.tick = Math.max(1, Math.round(1000.0 / tickRate));
+		this.sendInterval = (int) Math.max(1, Math.round(1000.0 / (sendRate * tick)));
+		this.budget = Math.max(1, Math.min(budget, NetProtocol.MAX_MESSAGE / 2));
+		this.snapshot = new WorldSnapshot(2, 2);
+
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.configureBlocking(false);
+		server.socket().setReuseAddress(true);
+		server.socket().bind(new InetSocketAddress(port), BACKLOG);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+		@return a porta em que o servidor aceita conexões.
+	*/
+
+	public int getPort(){
+
+		return server.socket().getLocalPort();
+	}
+
+	/**
+		Executa o servidor até que a thread seja interrompida.
+
+		@throws IOException se o Selector falhar.
+	*/
+
+	public void run() throws IOException {
+
+		long tickNanos = tick * 1000000L;
+		long next = System.nanoTime() + tickNanos;
+		long nextStats = System.nanoTime() + STATS_INTERVAL;
+		long ticks = 0;
+
+		try{
+			while(!Thread.currentThread().isInterrupted()){
+
+				long wait = next - System.nanoTime();
+
+				//O último milissegundo antes do prazo não é esperado no Selector, que só tem resolução de milissegundos
+				if(wait >= 1000000) selector.select(wait / 1000000);
+				else selector.selectNow();
+
+				handleKeys();
+
+				long now = System.nanoTime();
+				int steps = 0;
+
+				while(now >= next){
+
+					if(steps == MAX_CATCH_UP){
+
+						skippedTicks += (now - next) / tickNanos + 1;
+						next = now + tickNanos;
+						break;
+					}
+
+					lateness.record(now - next);
+					step(++ticks % sendInterval == 0);
+					tickTimes.record(System.nanoTime() - now);
+
+					next += tickNanos;
+					steps++;
+					now = System.nanoTime();
+				}
+
+				if(now >= nextStats){
+
+					System.out.println(stats());
+					tickTimes.reset();
+					lateness.reset();
+					nextStats = now + STATS_INTERVAL;
+				}
+			}
+		}
+		finally{
+
+			for(SelectionKey key : selector.keys()) key.channel().close();
+
+			selector.close();
+		}
+	}
+
+	/**
+		Trata os eventos de todas as conexões prontas.
+	*/
+
+	private void handleKeys(){
+
+		Iterator <SelectionKey> it = selector.selectedKeys().iterator();
+
+		while(it.hasNext()){
+
+			SelectionKey key = it.next();
+
+			it.remove();
+
+			if(!key.isValid()) continue;
+
+			if(key.isAcceptable()){
+
+				accept();
+				continue;
+			}
+
+			Connection c = (Connection) key.attachment();
+
+			try{
+				if(key.isReadable()) read(c);
+				if(key.isValid() && key.isWritable()) flush(c);
+			}
+			catch(IOException e){
+
+				disconnect(c);
+			}
+		}
+	}
+
+	/**
+		Aceita as conexões pendentes, colocando cada cliente em uma partida.
+	*/
+
+	private void accept(){
+
+		while(true){
+
+			SocketChannel channel;
+
+			try{
+				channel = server.accept();
+
+				if(channel == null) return;
+
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+			}
+			catch(IOException e){
+
+				System.out.println("Erro ao aceitar uma conexão: " + e.getMessage());
+				return;
+			}
+
+			Connection c = new Connection(channel, OUT_MESSAGES * SnapshotCodec.Encoder.maxSize(budget), tick);
+
+			try{
+				channel.register(selector, SelectionKey.OP_READ, c);
+			}
+			catch(ClosedChannelException e){
+
+				continue;
+			}
+
+			connections++;
+
+			if(waiting == null){
+
+				Match match = Pong.createMatch(ballClassName, new CopyableRandom(seeds.nextLong()), ballCollisions, Integer.MAX_VALUE);
+
+				waiting = new Room(nextRoom++, match);
+				rooms.add(waiting);
+			}
+
+			Room room = waiting;
+			int slot = (room.players[0] == null) ? 0 : 1;
+
+			room.players[slot] = c;
+			c.room = room;
+			c.slot = slot;
+
+			if(room.players[1 - slot] != null){
+
+				room.match.start();
+				waiting = null;
+			}
+
+			NetProtocol.writeWelcome(c.out, room.id, slot, (int) tick);
+
+			try{
+				flush(c);
+			}
+			catch(IOException e){
+
+				disconnect(c);
+			}
+		}
+	}
+
+	/**
+		Lê e trata as mensagens recebidas de um cliente.
+	*/
+
+	private void read(Connection c) throws IOException {
+
+		if(c.channel.read(c.in) < 0) throw new EOFException();
+
+		c.in.flip();
+
+		int length;
+
+		while((length = NetProtocol.available(c.in)) >= 0){
+
+			int end = c.in.position() + NetProtocol.LENGTH_SIZE + length;
+
+			c.in.position(c.in.position() + NetProtocol.LENGTH_SIZE);
+
+			if(length < 1) throw new IOException("Mensagem vazia");
+
+			byte type = c.in.get();
+
+			if(type == NetProtocol.INPUT && length == 2) c.keys = c.in.get() & (NetProtocol.UP | NetProtocol.DOWN);
+			else if(type == NetProtocol.ACK && length == 5) c.encoder.ack(c.in.getInt());
+			else throw new IOException("Mensagem inválida: tipo " + type + ", " + length + " bytes");
+
+			c.in.position(end);
+		}
+
+		c.in.compact();
+
+		//Nenhuma mensagem válida de um cliente ocupa o buffer inteiro
+		if(!c.in.hasRemaining()) throw new IOException("Mensagem muito grande");
+	}
+
+	/**
+		Envia os dados pendentes de uma conexão, registrando interesse em escrita se nem tudo pôde ser enviado.
+	*/
+
+	private void flush(Connection c) throws IOException {
+
+		c.out.flip();
+		c.channel.write(c.out);
+		c.out.compact();
+
+		SelectionKey key = c.channel.keyFor(selector);
+
+		if(key == null || !key.isValid()) return;
+
+		int ops = (c.out.position() > 0) ? (SelectionKey.OP_READ | SelectionKey.OP_WRITE) : SelectionKey.OP_READ;
+
+		if(key.interestOps() != ops) key.interestOps(ops);
+	}
+
+	/**
+		Fecha a conexão de um cliente e termina a sua partida.
+	*/
+
+	private void disconnect(Connection c){
+
+		try{
+			c.channel.close();
+		}
+		catch(IOException e){}
+
+		connections--;
+
+		Room room = c.room;
+
+		if(room == null || room.closed) return;
+
+		room.closed = true;
+		room.players[c.slot] = null;
+
+		if(waiting == room) waiting = null;
+
+		Connection other = room.players[1 - c.slot];
+
+		if(other != null){
+
+			room.players[1 - c.slot] = null;
+			disconnect(other);
+		}
+	}
+
+	/**
+		Simula um passo de todas as partidas e, se for o caso, envia o estado de cada partida aos seus jogadores.
+	*/
+
+	private void step(boolean send){
+
+		for(int r = 0; r < rooms.size(); r++){
+
+			Room room = rooms.get(r);
+
+			if(room.closed){
+
+				//Remove a partida trocando-a pela última, como em BallStore.remove()
+				Room last = rooms.remove(rooms.size() - 1);
+
+				if(last != room) rooms.set(r--, last);
+
+				continue;
+			}
+
+			Match match = room.match;
+
+			if(match.isStarted()){
+
+				room.input.setBits(keys(room.players[0], 0) | keys(room.players[1], 2));
+				match.step(tick, room.input);
+			}
+
+			if(send) send(room);
+		}
+	}
+
+	/**
+		Converte as teclas de um jogador para os bits de TickInput (A e Z para o jogador 0, K e M para o jogador 1).
+
+		@param c conexão do jogador (ou null).
+		@param shift posição dos bits do jogador em TickInput.
+	*/
+
+	private static int keys(Connection c, int shift){
+
+		if(c == null) return 0;
+
+		int bits = 0;
+
+		if((c.keys & NetProtocol.UP) != 0) bits |= 1;
+		if((c.keys & NetProtocol.DOWN) != 0) bits |= 2;
+
+		return bits << shift;
+	}
+
+	/**
+		Quantiza o estado de uma partida e o envia aos seus jogadores.
+	*/
+
+	private void send(Room room){
+
+		room.match.snapshot(snapshot, 0);
+		SnapshotCodec.quantize(snapshot, room.state);
+
+		int size = SnapshotCodec.Encoder.maxSize(budget);
+
+		for(Connection c : room.players){
+
+			if(c == null) continue;
+
+			if(c.out.remaining() < size){
+
+				droppedStates++;
+				continue;
+			}
+
+			c.encoder.encode(room.state, c.out, budget);
+
+			try{
+				flush(c);
+			}
+			catch(IOException e){
+
+				disconnect(c);
+			}
+		}
+	}
+
+	/**
+		@return um resumo das medidas do servidor desde o último resumo.
+	*/
+
+	private String stats(){
+
+		int balls = 0;
+
+		for(Room room : rooms) balls += room.match.getBallCount();
+
+		String p50 = FrameProfiler.format(tickTimes.getPercentile(50));
+		String p99 = FrameProfiler.format(tickTimes.getPercentile(99));
+		String ticks = "passo p50 " + p50 + " p99 " + p99 + " max " + FrameProfiler.format(tickTimes.getMax());
+		String late = "atraso p99 " + FrameProfiler.format(lateness.getPercentile(99)) + " max " + FrameProfiler.format(lateness.getMax());
+		String lost = "passos descartados: " + skippedTicks + ", estados não enviados: " + droppedStates;
+
+		return "partidas: " + rooms.size() + ", conexões: " + connections + ", bolas: " + balls + ", " + ticks + ", " + late + ", " + lost;
+	}
+
+	/**
+		O método principal do servidor.
+
+		@param args a porta (opcional, NetProtocol.DEFAULT_PORT por padrão) e o nome da classe das bolas (opcional,
+		"Ball" por padrão). Também são aceitas as opções "--tickrate=N", que define quantos passos as partidas executam
+		por segundo, "--send-rate=N", que define quantos estados são enviados por segundo a cada cliente,
+		"--budget=N", que define o limite (em bytes) de cada estado enviado, "--seed=N", que define a semente das
+		sementes das partidas, e "--ball-collisions", que faz as bolas colidirem entre si.
+	*/
+
+	public static void main(String [] args){
+
+		int tickRate = Pong.DEFAULT_TICK_RATE;
+		int sendRate = DEFAULT_SEND_RATE;
+		int budget = SnapshotCodec.DEFAULT_BUDGET;
+		long seed = new Random().nextLong();
+		boolean ballCollisions = false;
+		List <String> params = new ArrayList <String> ();
+
+		for(String arg : args){
+
+			if(arg.startsWith("--tickrate=")) tickRate = Integer.parseInt(arg.substring("--tickrate=".length()));
+			else if(arg.startsWith("--send-rate=")) sendRate = Integer.parseInt(arg.substring("--send-rate=".length()));
+			else if(arg.startsWith("--budget=")) budget = Integer.parseInt(arg.substring("--budget=".length()));
+			else if(arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if(arg.equals("--ball-collisions")) ballCollisions = true;
+			else params.add(arg);
+		}
+
+		int port = (params.size() >= 1) ? Integer.parseInt(params.get(0)) : NetProtocol.DEFAULT_PORT;
+		String ballClassName = (params.size() >= 2) ? params.get(1) : "Ball";
+
+		try{
+			PongServer pongServer = new PongServer(port, ballClassName, ballCollisions, seed, tickRate, sendRate, budget);
+
+			System.out.println("Servidor aguardando conexões na porta " + pongServer.getPort() + " (semente " + seed + ")");
+
+			pongServer.run();
+		}
+		catch(IOException e){
+
+			System.out.println("Erro no servidor: " + e.getMessage());
+		}
+		catch(IllegalArgumentException e){
+
+			System.out.println(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,217 @@
+import java.util.*;
+
+/**
+	Classe que guarda as últimas posições de cada bola em buffers circulares de tamanho fixo, usando um array de
+	double por eixo, sem alocar memória a cada posição registrada. Cada bola ocupa uma posição ("slot") dos arrays,
+	escolhida a partir da entrada do seu handle (veja BallStore); como a entrada de uma bola removida é reaproveitada
+	por outra bola, o histórico guarda o handle completo e recomeça quando a bola muda.
+
+	Usada pela FxBall para desenhar o rastro, e disponível para outros usos que precisem das posições recentes de
+	uma bola (por exemplo, estimar a sua velocidade). As posições são registradas e lidas pela thread de desenho.
+*/
+
+public class PositionHistory {
+
+	/**
+		Constante que define a quantidade de posições guardadas pelo histórico compartilhado.
+	*/
+
+	public static final int SHARED_CAPACITY = 20;
+
+	/**
+		Atributo privado que representa o histórico compartilhado (criado no primeiro uso).
+	*/
+
+	private static PositionHistory shared = null;
+
+	/**
+		Atributo privado que representa a quantidade de posições guardadas por bola.
+	*/
+
+	private final int capacity;
+
+	/**
+		Atributo privado que representa as coordenadas x guardadas (capacity posições consecutivas por slot).
+	*/
+
+	private double [] xs;
+
+	/**
+		Atributo privado que representa as coordenadas y guardadas (capacity posições consecutivas por slot).
+	*/
+
+	private double [] ys;
+
+	/**
+		Atributo privado que representa, para cada slot, a posição do buffer com a posição mais recente.
+	*/
+
+	private int [] newest;
+
+	/**
+		Atributo privado que representa, para cada slot, a quantidade de posições guardadas.
+	*/
+
+	private int [] count;
+
+	/**
+		Atributo privado que representa, para cada slot, o handle da bola cujo histórico está guardado (ou -1).
+	*/
+
+	private long [] owner;
+
+	/**
+		Construtor da classe PositionHistory.
+
+		@param capacity quantidade de posições guardadas por bola.
+	*/
+
+	public PositionHistory(int capacity){
+
+		if(capacity < 1) throw new IllegalArgumentException("Capacidade inválida: " + capacity);
+
+		this.capacity = capacity;
+
+		allocate(16);
+	}
+
+	/**
+		@return o histórico compartilhado, com capacidade SHARED_CAPACITY.
+	*/
+
+	public static synchronized PositionHistory shared(){
+
+		if(shared == null) shared = new PositionHistory(SHARED_CAPACITY);
+
+		return shared;
+	}
+
+	/**
+		Aloca (ou realoca, preservando o conteúdo) os arrays com a quantidade de slots indicada.
+
+		@param slots nova quantidade de slots.
+	*/
+
+	private void allocate(int slots){
+
+		int old = (owner == null) ? 0 : owner.length;
+
+		xs = (xs == null) ? new double[slots * capacity] : Arrays.copyOf(xs, slots * capacity);
+		ys = (ys == null) ? new double[slots * capacity] : Arrays.copyOf(ys, slots * capacity);
+		newest = (newest == null) ? new int[slots] : Arrays.copyOf(newest, slots);
+		count = (count == null) ? new int[slots] : Arrays.copyOf(count, slots);
+		owner = (owner == null) ? new long[slots] : Arrays.copyOf(owner, slots);
+
+		Arrays.fill(owner, old, slots, -1);
+	}
+
+	/**
+		@param handle handle de uma bola.
+		@return slot usado pela bola.
+	*/
+
+	private int slot(long handle){
+
+		int slot = (int) handle;
+
+		if(slot >= owner.length) allocate(Math.max(slot + 1, owner.length * 2));
+
+		return slot;
+	}
+
+	/**
+		@return quantidade de posições guardadas por bola.
+	*/
+
+	public int capacity(){
+
+		return capacity;
+	}
+
+	/**
+		Registra a posição atual de uma bola, descartando a mais antiga se o histórico estiver cheio. A primeira
+		posição registrada de uma bola preenche todo o histórico, de modo que o rastro começa parado na bola.
+
+		@param handle handle da bola.
+		@param x coordenada x do centro da bola.
+		@param y coordenada y do centro da bola.
+	*/
+
+	public void record(long handle, double x, double y){
+
+		int slot = slot(handle);
+		int base = slot * capacity;
+
+		if(owner[slot] != handle){
+
+			owner[slot] = handle;
+			newest[slot] = 0;
+			count[slot] = capacity;
+
+			Arrays.fill(xs, base, base + capacity, x);
+			Arrays.fill(ys, base, base + capacity, y);
+
+			return;
+		}
+
+		int next = newest[slot] + 1;
+
+		if(next == capacity) next = 0;
+
+		xs[base + next] = x;
+		ys[base + next] = y;
+		newest[slot] = next;
+
+		if(count[slot] < capacity) count[slot]++;
+	}
+
+	/**
+		@param handle handle da bola.
+		@return quantidade de posições guardadas para a bola (0 se nenhuma posição foi registrada).
+	*/
+
+	public int size(long handle){
+
+		int slot = (int) handle;
+
+		return (slot < owner.length && owner[slot] == handle) ? count[slot] : 0;
+	}
+
+	/**
+		@param handle handle da bola.
+		@param age idade da posição (0 para a mais recente, size(handle) - 1 para a mais antiga).
+		@return coordenada x da posição.
+	*/
+
+	public double getX(long handle, int age){
+
+		return xs[index(handle, age)];
+	}
+
+	/**
+		@param handle handle da bola.
+		@param age idade da posição (0 para a mais recente, size(handle) - 1 para a mais antiga).
+		@return coordenada y da posição.
+	*/
+
+	public double getY(long handle, int age){
+
+		return ys[index(handle, age)];
+	}
+
+	/**
+		@return posição dos arrays que guarda a posição de uma bola com a idade indicada.
+	*/
+
+	private int index(long handle, int age){
+
+		if(age < 0 || age >= size(handle)) throw new IndexOutOfBoundsException("Idade " + age + " fora do histórico da bola.");
+
+		int slot = (int) handle;
+		int k = newest[slot] - age;
+
+		if(k < 0) k += capacity;
+
+		return slot * capacity + k;
+	}
+}
@@ -0,0 +1,374 @@
+import java.awt.Color;
+import java.io.*;
+import java.util.*;
+
+/**
+	Implementação de Renderer que não desenha nada, mas registra cada comando de desenho recebido.
+	Útil para testes de regressão de partidas simuladas: ao final de cada frame (chamada a display())
+	a lista de comandos do frame fica disponível através do método getLastFrame().
+
+	O método main() é esse teste de regressão: ele grava o traço dos comandos de desenho de uma partida com uma
+	semente fixa (um resumo por frame) e, depois de uma mudança no jogo, compara o traço da mesma partida com o
+	traço gravado, indicando o primeiro frame desenhado de forma diferente.
+*/
+
+public class RecordingRenderer implements Renderer {
+
+	/**
+		Constantes que definem os valores padrão do método main(): a quantidade de frames e a semente da partida.
+	*/
+
+	private static final int DEFAULT_FRAMES = 1500;
+	private static final long DEFAULT_SEED = 1;
+
+	/**
+		Classe que representa um comando de desenho registrado.
+	*/
+
+	public static class Command {
+
+		/**
+			Tipo do comando ("ball", "wall", "target", "player", "score" ou "text").
+		*/
+
+		public final String type;
+
+		/**
+			Coordenada x do centro do elemento desenhado.
+		*/
+
+		public final double cx;
+
+		/**
+			Coordenada y do centro do elemento desenhado (ou da linha, no caso de textos).
+		*/
+
+		public final double cy;
+
+		/**
+			Largura do elemento desenhado.
+		*/
+
+		public final double width;
+
+		/**
+			Altura do elemento desenhado.
+		*/
+
+		public final double height;
+
+		/**
+			Cor ativa no momento do comando (pode ser null quando desconhecida).
+		*/
+
+		public final Color color;
+
+		/**
+			Texto desenhado (apenas para os comandos "score" e "text").
+		*/
+
+		public final String text;
+
+		Command(String type, double cx, double cy, double width, double height, Color color, String text){
+
+			this.type = type;
+			this.cx = cx;
+			this.cy = cy;
+			this.width = width;
+			this.height = height;
+			this.color = color;
+			this.text = text;
+		}
+
+		public String toString(){
+
+			return type + "(" + cx + ", " + cy + ", " + width + ", " + height + ")" + (text != null ? " \"" + text + "\"" : "");
+		}
+	}
+
+	/**
+		Atributo privado que representa os comandos do frame que está sendo desenhado.
+	*/
+
+	private List <Command> currentFrame = new ArrayList <Command> ();
+
+	/**
+		Atributo privado que representa os comandos do último frame finalizado.
+	*/
+
+	private List <Command> lastFrame = new ArrayList <Command> ();
+
+	/**
+		Atributo privado que representa a quantidade de frames finalizados.
+	*/
+
+	private long frames = 0;
+
+	/**
+		Atributo privado que representa a cor ativa.
+	*/
+
+	private Color color = null;
+
+	public void drawBall(IBall ball){
+
+		currentFrame.add(new Command("ball", ball.getCx(), ball.getCy(), ball.getWidth(), ball.getHeight(), ball.getColor(), null));
+	}
+
+	public void drawBall(double cx, double cy, double width, double height, Color color){
+
+		currentFrame.add(new Command("ball", cx, cy, width, height, color, null));
+	}
+
+	public void drawWall(Wall wall){
+
+		currentFrame.add(new Command("wall", wall.getCx(), wall.getCy(), wall.getWidth(), wall.getHeight(), null, wall.getId()));
+	}
+
+	public void drawTarget(Target target){
+
+		currentFrame.add(new Command("target", target.getCx(), target.getCy(), target.getWidth(), target.getHeight(), null, null));
+	}
+
+	public void drawPlayer(Player player){
+
+		currentFrame.add(new Command("player", player.getCx(), player.getCy(), player.getWidth(), player.getHeight(), null, player.getId()));
+	}
+
+	public void drawPlayer(double cx, double cy, double width, double height, Color color){
+
+		currentFrame.add(new Command("player", cx, cy, width, height, color, null));
+	}
+
+	public void drawScore(Score score){
+
+		currentFrame.add(new Command("score", 0, 70, 0, 0, null, score.playerId + ": " + score.getScore()));
+	}
+
+	public void setColor(Color color){
+
+		this.color = color;
+	}
+
+	public void drawText(String text, double y, int align){
+
+		currentFrame.add(new Command("text", align, y, 0, 0, color, text));
+	}
+
+	public void display(){
+
+		List <Command> finished = currentFrame;
+
+		currentFrame = lastFrame;
+		currentFrame.clear();
+		lastFrame = finished;
+		frames++;
+	}
+
+	/**
+		@return lista (somente leitura) dos comandos registrados no último frame finalizado.
+	*/
+
+	public List <Command> getLastFrame(){
+
+		return Collections.unmodifiableList(lastFrame);
+	}
+
+	/**
+		@return quantidade de frames finalizados desde a criação do renderer.
+	*/
+
+	public long getFrameCount(){
+
+		return frames;
+	}
+
+	/**
+		@return um resumo dos comandos de um frame (o tipo, a posição, o tamanho, a cor e o texto de cada comando).
+	*/
+
+	static long checksum(List <Command> commands){
+
+		long h = 1125899906842597L;
+
+		for(Command c : commands){
+
+			h = 31 * h + c.type.hashCode();
+			h = 31 * h + Double.doubleToLongBits(c.cx);
+			h = 31 * h + Double.doubleToLongBits(c.cy);
+			h = 31 * h + Double.doubleToLongBits(c.width);
+			h = 31 * h + Double.doubleToLongBits(c.height);
+			h = 31 * h + ((c.color == null) ? 0 : c.color.getRGB());
+			h = 31 * h + ((c.text == null) ? 0 : c.text.hashCode());
+		}
+
+		return h;
+	}
+
+	/**
+		O método principal, um teste de regressão do desenho. Uma partida sem janela é simulada com teclas que mudam
+		ao acaso (a partir da semente) e cada frame é desenhado por um RecordingRenderer; o traço tem uma linha por
+		frame, com a quantidade de comandos e o seu resumo (veja checksum()). Os primeiros frames mostram a tela
+		inicial, com o texto piscando.
+
+		@param args o nome da classe das bolas (opcional, "Ball" por padrão). Também são aceitas as opções
+		"--frames=N", que define a quantidade de frames (1500 por padrão), "--seed=N", que define a semente da
+		partida e das teclas (1 por padrão), "--ball-collisions", que faz as bolas colidirem entre si,
+		"--record=ARQUIVO", que grava o traço em um arquivo, e "--check=ARQUIVO", que compara o traço com o traço
+		gravado em um arquivo. Sem essas duas opções, apenas o resumo do traço inteiro é exibido.
+	*/
+
+	public static void main(String [] args){
+
+		int frames = DEFAULT_FRAMES;
+		long seed = DEFAULT_SEED;
+		boolean ballCollisions = false;
+		String recordPath = null;
+		String checkPath = null;
+		List <String> params = new ArrayList <String> ();
+
+		for(String arg : args){
+
+			if(arg.startsWith("--frames=")) frames = Integer.parseInt(arg.substring("--frames=".length()));
+			else if(arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if(arg.equals("--ball-collisions")) ballCollisions = true;
+			else if(arg.startsWith("--record=")) recordPath = arg.substring("--record=".length());
+			else if(arg.startsWith("--check=")) checkPath = arg.substring("--check=".length());
+			else params.add(arg);
+		}
+
+		String ballClassName = (params.size() >= 1) ? params.get(0) : "Ball";
+		Random random = new Random(seed);
+		Match match;
+
+		try{
+			match = Pong.createMatch(ballClassName, new CopyableRandom(random.nextLong()), ballCollisions, Integer.MAX_VALUE);
+		}
+		catch(IllegalArgumentException e){
+
+			System.out.println(e.getMessage());
+			return;
+		}
+
+		//O cabeçalho identifica a partida; um traço só é comparado com o de uma partida igual
+		List <String> trace = new ArrayList <String> ();
+
+		trace.add("# " + ballClassName + " frames=" + frames + " seed=" + seed + " ball-collisions=" + ballCollisions);
+
+		RecordingRenderer renderer = new RecordingRenderer();
+		Player [] players = match.getPlayers();
+		Score [] shownScores = { new Score(Pong.PLAYER1), new Score(Pong.PLAYER2) };
+		WorldSnapshot world = new WorldSnapshot(players.length, match.getScores().length);
+		TickInput input = new TickInput();
+		long total = 1;
+		int bits = 0;
+
+		for(int f = 0; f < frames; f++){
+
+			if(f == 60) match.start();
+
+			if(match.isStarted()){
+
+				for(int k = 0; k < 4; k++){
+
+					if(random.nextInt(30) == 0) bits = random.nextInt(16);
+
+					input.setBits(bits);
+					match.step(4, input);
+				}
+			}
+
+			match.snapshot(world, 0);
+
+			//Um frame a cada 100 ms de tempo simulado, para que o texto da tela inicial pisque
+			Pong.drawFrame(renderer, world, 1.0, match.getWalls(), match.getTargets(), players, shownScores, f * 100L);
+			renderer.display();
+
+			long h = checksum(renderer.getLastFrame());
+
+			total = 31 * total + h;
+			trace.add(f + " " + renderer.getLastFrame().size() + " " + Long.toHexString(h));
+		}
+
+		System.out.println(trace.get(0).substring(2) + ": resumo " + Long.toHexString(total));
+
+		try{
+			if(recordPath != null){
+
+				writeTrace(recordPath, trace);
+				System.out.println("Traço gravado em '" + recordPath + "'");
+			}
+
+			if(checkPath != null) System.out.println(compare(readTrace(checkPath), trace));
+		}
+		catch(IOException e){
+
+			System.out.println("Erro no arquivo do traço: " + e.getMessage());
+		}
+	}
+
+	/**
+		Compara um traço gravado com o traço atual.
+
+		@return a conclusão da comparação.
+	*/
+
+	private static String compare(List <String> expected, List <String> actual){
+
+		if(expected.isEmpty()) return "O traço gravado está vazio";
+		if(!expected.get(0).equals(actual.get(0))) return "O traço gravado é de outra partida: " + expected.get(0);
+
+		for(int k = 1; k < Math.min(expected.size(), actual.size()); k++){
+
+			if(expected.get(k).equals(actual.get(k))) continue;
+
+			return "O frame " + (k - 1) + " é diferente do traço gravado (gravado: " + expected.get(k) + ", atual: " + actual.get(k) + ")";
+		}
+
+		if(expected.size() != actual.size()) return "O traço gravado tem " + (expected.size() - 1) + " frames";
+
+		return "Os " + (actual.size() - 1) + " frames são iguais ao traço gravado";
+	}
+
+	/**
+		Grava um traço em um arquivo, uma linha por frame.
+	*/
+
+	private static void writeTrace(String path, List <String> trace) throws IOException {
+
+		PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), "UTF-8")));
+
+		try{
+			for(String line : trace) out.println(line);
+		}
+		finally{
+
+			out.close();
+		}
+
+		//PrintWriter não lança exceções: os erros de escrita são verificados ao final
+		if(out.checkError()) throw new IOException("não foi possível gravar '" + path + "'");
+	}
+
+	/**
+		@return as linhas de um traço gravado.
+	*/
+
+	private static List <String> readTrace(String path) throws IOException {
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+		List <String> trace = new ArrayList <String> ();
+
+		try{
+			String line;
+
+			while((line = in.readLine()) != null) trace.add(line);
+		}
+		finally{
+
+			in.close();
+		}
+
+		return trace;
+	}
+}
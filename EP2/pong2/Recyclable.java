@@ -0,0 +1,19 @@
+/**
+	Interface implementada pelas bolas que guardam algum estado próprio de desenho (como o rastro da FxBall).
+	As instâncias usadas para desenhar as bolas são reaproveitadas quando uma bola é removida, por isso, antes de
+	cada desenho, a instância é informada do handle da bola que vai representar e deve descartar o estado
+	guardado sempre que esse handle mudar.
+
+	O método bind() é chamado pela mesma thread que desenha a bola.
+*/
+
+public interface Recyclable {
+
+	/**
+		Informa o handle da bola que a instância vai desenhar.
+
+		@param handle handle da bola (veja BallStore).
+	*/
+
+	void bind(long handle);
+}
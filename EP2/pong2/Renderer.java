@@ -0,0 +1,98 @@
+import java.awt.Color;
+
+/**
+	Interface que representa um backend de desenho do jogo. Todo o desenho feito pela classe Pong e pela
+	classe BallManager passa por uma instância desta interface, o que permite trocar a janela AWT (GameLib)
+	por implementações que não desenham nada (modo headless) ou que apenas registram o que seria desenhado.
+*/
+
+public interface Renderer {
+
+	/**
+		Desenha uma bola.
+
+		@param ball referência para a bola que será desenhada.
+	*/
+
+	void drawBall(IBall ball);
+
+	/**
+		Desenha uma bola do tipo padrão (um retângulo preenchido), a partir do seu estado.
+
+		@param cx coordenada x do centro da bola.
+		@param cy coordenada y do centro da bola.
+		@param width largura da bola.
+		@param height altura da bola.
+		@param color cor da bola.
+	*/
+
+	void drawBall(double cx, double cy, double width, double height, Color color);
+
+	/**
+		Desenha uma parede.
+
+		@param wall referência para a parede que será desenhada.
+	*/
+
+	void drawWall(Wall wall);
+
+	/**
+		Desenha um alvo.
+
+		@param target referência para o alvo que será desenhado.
+	*/
+
+	void drawTarget(Target target);
+
+	/**
+		Desenha um jogador.
+
+		@param player referência para o jogador que será desenhado.
+	*/
+
+	void drawPlayer(Player player);
+
+	/**
+		Desenha um jogador a partir do seu estado (um retângulo preenchido).
+
+		@param cx coordenada x do centro do jogador.
+		@param cy coordenada y do centro do jogador.
+		@param width largura do jogador.
+		@param height altura do jogador.
+		@param color cor do jogador.
+	*/
+
+	void drawPlayer(double cx, double cy, double width, double height, Color color);
+
+	/**
+		Desenha um placar.
+
+		@param score referência para o placar que será desenhado.
+	*/
+
+	void drawScore(Score score);
+
+	/**
+		Define a cor usada pelos próximos desenhos de texto.
+
+		@param color cor que será usada.
+	*/
+
+	void setColor(Color color);
+
+	/**
+		Desenha um texto em uma linha da tela.
+
+		@param text texto que será desenhado.
+		@param y coordenada y da linha do texto.
+		@param align alinhamento horizontal (GameLib.ALIGN_LEFT, GameLib.ALIGN_RIGHT ou GameLib.ALIGN_CENTER).
+	*/
+
+	void drawText(String text, double y, int align);
+
+	/**
+		Finaliza o frame atual, tornando visível tudo o que foi desenhado desde a última chamada.
+	*/
+
+	void display();
+}
@@ -0,0 +1,325 @@
+import java.io.*;
+
+/**
+	Classe que define o formato dos arquivos de replay, que permitem reproduzir uma partida passo a passo.
+
+	Como a simulação é determinística (a duração dos passos é fixa e os números aleatórios vêm de um gerador
+	criado a partir de uma semente), basta gravar a semente, a duração dos passos, a classe das bolas e o estado
+	das teclas em cada passo. O arquivo é formado por:
+
+	- um cabeçalho com MAGIC, VERSION, a semente (long), a duração dos passos em milisegundos (long), o nome da
+	  classe das bolas (UTF), as opções da simulação (int, veja BALL_COLLISIONS), o intervalo entre os resumos (int)
+	  e o resumo do estado inicial da partida (long);
+	- um byte por passo, com o estado das teclas lidas no passo (veja TickInput);
+	- depois de cada grupo de "intervalo" passos, o resumo (Match.checksum()) do estado da partida após o
+	  último passo do grupo (long), usado para detectar quando a reprodução deixa de ser igual à partida gravada.
+
+	Uma hora de partida a 250 passos por segundo ocupa menos de 1 MB. Um arquivo interrompido (por exemplo,
+	quando o jogo termina de forma abrupta) pode ser reproduzido até o último passo gravado.
+*/
+
+public class ReplayFile {
+
+	/**
+		Constante que identifica um arquivo de replay ("PRPL").
+	*/
+
+	public static final int MAGIC = 0x5052504C;
+
+	/**
+		Constante que define a versão do formato. A versão muda também quando a simulação muda de um modo que altera
+		as partidas gravadas (a versão 3 mudou as colisões entre bolas), já que os arquivos antigos deixariam de ser
+		reproduzidos da mesma forma.
+	*/
+
+	public static final int VERSION = 3;
+
+	/**
+		Constante que identifica, nas opções da simulação, que as bolas colidem entre si.
+	*/
+
+	public static final int BALL_COLLISIONS = 1;
+
+	/**
+		Constante que define o intervalo padrão (em passos) entre dois resumos do estado da partida.
+	*/
+
+	public static final int DEFAULT_CHECKSUM_INTERVAL = 250;
+
+	/**
+		Classe que grava uma partida em um arquivo de replay. Os métodos são sincronizados para que o arquivo possa
+		ser fechado por outra thread (como a que trata o término da JVM) enquanto a simulação ainda grava passos;
+		depois de fechado, os passos gravados são ignorados.
+	*/
+
+	public static class Writer {
+
+		/**
+			Atributo privado que representa o arquivo gravado (null depois que ele é fechado).
+		*/
+
+		private DataOutputStream out;
+
+		/**
+			Atributo privado que representa o intervalo (em passos) entre dois resumos do estado da partida.
+		*/
+
+		private final int checksumInterval;
+
+		/**
+			Atributo privado que representa a quantidade de passos gravados.
+		*/
+
+		private long ticks = 0;
+
+		/**
+			Construtor da classe Writer. Cria o arquivo e grava o cabeçalho.
+
+			@param file arquivo criado.
+			@param seed semente do gerador de números aleatórios da partida.
+			@param tick duração de cada passo (em milisegundos).
+			@param ballClassName nome da classe das bolas.
+			@param options opções da simulação (como BALL_COLLISIONS), combinadas com "|".
+			@param checksumInterval intervalo (em passos) entre dois resumos do estado da partida.
+			@param match partida gravada, ainda sem nenhum passo simulado.
+			@throws IOException se o arquivo não puder ser criado.
+		*/
+
+		public Writer(File file, long seed, long tick, String ballClassName, int options, int checksumInterval, Match match) throws IOException {
+
+			if(checksumInterval < 1) throw new IllegalArgumentException("Intervalo inválido: " + checksumInterval);
+
+			this.checksumInterval = checksumInterval;
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(seed);
+			out.writeLong(tick);
+			out.writeUTF(ballClassName);
+			out.writeInt(options);
+			out.writeInt(checksumInterval);
+			out.writeLong(match.checksum());
+		}
+
+		/**
+			Grava um passo. Deve ser chamado logo depois de cada passo da partida.
+
+			@param input estado das teclas lidas no passo.
+			@param match partida gravada.
+			@throws IOException se o arquivo não puder ser gravado.
+		*/
+
+		public synchronized void record(TickInput input, Match match) throws IOException {
+
+			if(out == null) return;
+
+			out.writeByte(input.getBits());
+			ticks++;
+
+			if(ticks % checksumInterval == 0) out.writeLong(match.checksum());
+		}
+
+		/**
+			@return quantidade de passos gravados.
+		*/
+
+		public synchronized long getTicks(){
+
+			return ticks;
+		}
+
+		/**
+			Fecha o arquivo, gravando o que ainda estiver no buffer.
+
+			@throws IOException se o arquivo não puder ser gravado.
+		*/
+
+		public synchronized void close() throws IOException {
+
+			if(out == null) return;
+
+			try{
+				out.close();
+			}
+			finally{
+				out = null;
+			}
+		}
+	}
+
+	/**
+		Classe que lê um arquivo de replay.
+	*/
+
+	public static class Reader {
+
+		/**
+			Atributo privado que representa o arquivo lido.
+		*/
+
+		private final DataInputStream in;
+
+		/**
+			Atributos privados que representam os dados do cabeçalho.
+		*/
+
+		private final long seed;
+		private final long tick;
+		private final String ballClassName;
+		private final int options;
+		private final int checksumInterval;
+		private final long initialChecksum;
+
+		/**
+			Atributo privado que representa a quantidade de passos lidos.
+		*/
+
+		private long ticks = 0;
+
+		/**
+			Construtor da classe Reader. Abre o arquivo e lê o cabeçalho.
+
+			@param file arquivo lido.
+			@throws IOException se o arquivo não puder ser lido ou não for um arquivo de replay.
+		*/
+
+		public Reader(File file) throws IOException {
+
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			try{
+				if(in.readInt() != MAGIC) throw new IOException("'" + file + "' não é um arquivo de replay");
+
+				int version = in.readInt();
+
+				if(version != VERSION){
+
+					//Um replay antigo foi gravado com outra simulação e divergiria da partida gravada
+					String reason = (version < VERSION) ? " (gravado por uma versão anterior do jogo)" : "";
+
+					throw new IOException("Versão de replay não suportada: " + version + reason);
+				}
+
+				seed = in.readLong();
+				tick = in.readLong();
+				ballClassName = in.readUTF();
+				options = in.readInt();
+				checksumInterval = in.readInt();
+				initialChecksum = in.readLong();
+			}
+			catch(IOException e){
+
+				in.close();
+				throw e;
+			}
+		}
+
+		/**
+			Lê o estado das teclas do próximo passo.
+
+			@param input objeto que recebe o estado das teclas.
+			@return true se o passo foi lido, false se o arquivo terminou.
+			@throws IOException se o arquivo não puder ser lido.
+		*/
+
+		public boolean next(TickInput input) throws IOException {
+
+			int bits = in.read();
+
+			if(bits < 0) return false;
+
+			input.setBits(bits);
+			ticks++;
+
+			return true;
+		}
+
+		/**
+			@return true se o arquivo guarda um resumo do estado da partida depois do último passo lido.
+		*/
+
+		public boolean hasChecksum(){
+
+			return ticks > 0 && ticks % checksumInterval == 0;
+		}
+
+		/**
+			Lê o resumo do estado da partida depois do último passo lido (apenas quando hasChecksum() é true).
+
+			@return o resumo gravado.
+			@throws EOFException se o arquivo terminou antes do resumo.
+			@throws IOException se o arquivo não puder ser lido.
+		*/
+
+		public long readChecksum() throws IOException {
+
+			return in.readLong();
+		}
+
+		/**
+			@return semente do gerador de números aleatórios da partida.
+		*/
+
+		public long getSeed(){
+
+			return seed;
+		}
+
+		/**
+			@return duração de cada passo (em milisegundos).
+		*/
+
+		public long getTick(){
+
+			return tick;
+		}
+
+		/**
+			@return nome da classe das bolas.
+		*/
+
+		public String getBallClassName(){
+
+			return ballClassName;
+		}
+
+		/**
+			@return opções da simulação (como BALL_COLLISIONS), combinadas com "|".
+		*/
+
+		public int getOptions(){
+
+			return options;
+		}
+
+		/**
+			@return o resumo do estado da partida antes do primeiro passo.
+		*/
+
+		public long getInitialChecksum(){
+
+			return initialChecksum;
+		}
+
+		/**
+			@return quantidade de passos lidos.
+		*/
+
+		public long getTicks(){
+
+			return ticks;
+		}
+
+		/**
+			Fecha o arquivo.
+
+			@throws IOException se o arquivo não puder ser fechado.
+		*/
+
+		public void close() throws IOException {
+
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,475 @@
+import java.util.*;
+
+/**
+	Classe que implementa a simulação com previsão e correção (rollback) de uma partida entre dois jogadores cujas
+	teclas chegam pela rede com atraso. A partida não espera pelas teclas do outro jogador: cada passo é simulado
+	assim que chega o seu instante, prevendo que as teclas ainda não recebidas de um jogador são as últimas teclas
+	recebidas dele. Quando chegam teclas diferentes das previstas, a partida volta ao estado copiado antes do passo
+	em que elas começaram a valer e os passos seguintes são simulados de novo, com as teclas corretas.
+
+	Antes de cada passo o estado da partida é copiado (veja a classe MatchState) para um anel com as cópias dos
+	últimos passos. Como as cópias são reaproveitadas e todo o estado fica em arrays de tipos primitivos, copiar o
+	estado a cada passo custa algumas cópias de arrays e não aloca memória. A partida só avança enquanto as teclas
+	de todos os jogadores estão confirmadas até um passo que ainda está no anel; as medidas das correções
+	(getRollbackLatency()) mostram se a re-simulação cabe no tempo de um quadro.
+
+	As teclas de cada jogador usam os bits de NetProtocol (UP e DOWN); o jogador 0 usa as teclas A e Z da partida e
+	o jogador 1 as teclas K e M, como no servidor (veja a classe PongServer). Os passos simulados de novo também são
+	registrados pelo FrameProfiler e pela telemetria da partida, se houver.
+
+	O método main() verifica as correções: dois jogadores simulam a mesma partida recebendo as teclas do outro com
+	atraso, e as duas partidas devem terminar iguais a uma partida simulada sem atraso.
+*/
+
+public class Rollback {
+
+	/**
+		Constante que define a quantidade padrão de passos guardados para as correções.
+	*/
+
+	public static final int DEFAULT_HISTORY = 64;
+
+	/**
+		Constante que define a quantidade de jogadores.
+	*/
+
+	private static final int PLAYERS = 2;
+
+	/**
+		Constantes que definem os valores padrão do método main(): a quantidade de passos simulados e o atraso (em
+		passos) das teclas do outro jogador.
+	*/
+
+	private static final long DEFAULT_TICKS = 20000;
+	private static final int DEFAULT_DELAY = 8;
+
+	/**
+		Atributo privado que representa a partida simulada.
+	*/
+
+	private final Match match;
+
+	/**
+		Atributo privado que representa a duração (em milisegundos) de cada passo.
+	*/
+
+	private final long delta;
+
+	/**
+		Atributo privado que representa as cópias do estado da partida: a cópia feita antes do passo t fica na posição
+		t % states.length.
+	*/
+
+	private final MatchState [] states;
+
+	/**
+		Atributo privado que representa as teclas confirmadas de cada jogador: as teclas do passo t ficam na posição
+		t % keys[p].length. O anel tem o dobro do tamanho do anel de cópias, porque um jogador pode confirmar teclas
+		de passos que ainda não foram simulados.
+	*/
+
+	private final int [][] keys;
+
+	/**
+		Atributo privado que representa, para cada jogador, o último passo cujas teclas foram confirmadas.
+	*/
+
+	private final long [] confirmed;
+
+	/**
+		Atributo privado que representa, para cada jogador, as teclas do último passo confirmado, usadas como
+		previsão para os passos seguintes.
+	*/
+
+	private final int [] lastKeys;
+
+	/**
+		Atributo privado que representa o próximo passo a ser simulado.
+	*/
+
+	private long current;
+
+	/**
+		Atributo privado que representa o primeiro passo simulado com teclas diferentes das confirmadas
+		(Long.MAX_VALUE se nenhum).
+	*/
+
+	private long rollbackFrom = Long.MAX_VALUE;
+
+	/**
+		Atributo privado que representa as teclas de um passo, reaproveitado a cada passo.
+	*/
+
+	private final TickInput input = new TickInput();
+
+	/**
+		Atributos privados que contam as correções e os passos simulados de novo.
+	*/
+
+	private long rollbacks = 0;
+	private long resimulated = 0;
+
+	/**
+		Atributo privado que mede a duração de cada correção (a cópia restaurada e os passos simulados de novo).
+	*/
+
+	private final LatencyHistogram rollbackLatency = new LatencyHistogram();
+
+	/**
+		Construtor da classe Rollback, com DEFAULT_HISTORY passos guardados.
+
+		@param match partida simulada.
+		@param delta duração (em milisegundos) de cada passo.
+	*/
+
+	public Rollback(Match match, long delta){
+
+		this(match, delta, DEFAULT_HISTORY);
+	}
+
+	/**
+		Construtor da classe Rollback. As teclas de todos os jogadores são consideradas confirmadas (nenhuma tecla
+		pressionada) até o passo atual da partida.
+
+		@param match partida simulada.
+		@param delta duração (em milisegundos) de cada passo.
+		@param history quantidade de passos guardados, ou seja, o maior atraso (em passos) das teclas de um jogador.
+	*/
+
+	public Rollback(Match match, long delta, int history){
+
+		if(history < 1) throw new IllegalArgumentException("Quantidade de passos inválida: " + history);
+
+		this.match = match;
+		this.delta = delta;
+		this.states = new MatchState[history];
+		this.keys = new int[PLAYERS][2 * history];
+		this.confirmed = new long[PLAYERS];
+		this.lastKeys = new int[PLAYERS];
+		this.current = match.getTicks();
+
+		for(int k = 0; k < history; k++) states[k] = match.createState();
+
+		Arrays.fill(confirmed, current - 1);
+	}
+
+	/**
+		Confirma as teclas de um jogador a partir de um passo. Os passos entre o último passo confirmado do jogador e
+		o passo indicado mantêm as teclas anteriores. Se as teclas confirmadas forem diferentes das previstas para um
+		passo já simulado, a partida é corrigida no próximo advance().
+
+		@param player jogador (0 ou 1).
+		@param tick passo a partir do qual as teclas valem.
+		@param keys teclas do jogador (bits NetProtocol.UP e NetProtocol.DOWN).
+		@return false se o passo já estava confirmado (uma confirmação repetida ou fora de ordem, ignorada).
+		@throws IllegalArgumentException se o jogador não existir ou se o passo estiver além dos passos guardados.
+	*/
+
+	public boolean confirm(int player, long tick, int keys){
+
+		if(player < 0 || player >= PLAYERS) throw new IllegalArgumentException("Jogador inválido: " + player);
+		if(tick >= current + states.length) throw new IllegalArgumentException("Passo " + tick + " além dos passos guardados (passo atual: " + current + ")");
+
+		if(tick <= confirmed[player]) return false;
+
+		int [] ring = this.keys[player];
+
+		for(long t = confirmed[player] + 1; t < tick; t++) ring[(int) (t % ring.length)] = lastKeys[player];
+
+		ring[(int) (tick % ring.length)] = keys;
+
+		//Os passos já simulados a partir deste usaram a previsão (as teclas anteriores)
+		if(keys != lastKeys[player] && tick < current) rollbackFrom = Math.min(rollbackFrom, tick);
+
+		lastKeys[player] = keys;
+		confirmed[player] = tick;
+
+		return true;
+	}
+
+	/**
+		@return true se a partida pode avançar um passo, ou seja, se as teclas de todos os jogadores estão
+		confirmadas até um passo cuja cópia ainda estará guardada depois do próximo passo.
+	*/
+
+	public boolean canAdvance(){
+
+		long oldest = Long.MAX_VALUE;
+
+		for(int p = 0; p < PLAYERS; p++) oldest = Math.min(oldest, confirmed[p]);
+
+		return current - oldest <= states.length;
+	}
+
+	/**
+		Simula o próximo passo da partida, corrigindo antes os passos simulados com teclas diferentes das confirmadas.
+
+		@return false se a partida não pode avançar (veja canAdvance()).
+	*/
+
+	public boolean advance(){
+
+		if(!canAdvance()) return false;
+
+		if(rollbackFrom < current){
+
+			long start = System.nanoTime();
+
+			match.restore(states[(int) (rollbackFrom % states.length)]);
+
+			for(long t = rollbackFrom; t < current; t++) simulate(t);
+
+			rollbackLatency.record(System.nanoTime() - start);
+			rollbacks++;
+			resimulated += current - rollbackFrom;
+		}
+
+		rollbackFrom = Long.MAX_VALUE;
+
+		simulate(current++);
+
+		return true;
+	}
+
+	/**
+		Copia o estado da partida e simula um passo com as teclas confirmadas ou previstas.
+	*/
+
+	private void simulate(long tick){
+
+		match.save(states[(int) (tick % states.length)]);
+
+		int bits = 0;
+
+		for(int p = 0; p < PLAYERS; p++) bits |= inputBits(p, (tick <= confirmed[p]) ? keys[p][(int) (tick % keys[p].length)] : lastKeys[p]);
+
+		input.setBits(bits);
+		match.step(delta, input);
+	}
+
+	/**
+		@param player jogador (0 ou 1).
+		@param keys teclas do jogador (bits NetProtocol.UP e NetProtocol.DOWN).
+		@return os bits das teclas do jogador na partida (veja a classe TickInput).
+	*/
+
+	private static int inputBits(int player, int keys){
+
+		int bits = 0;
+
+		if((keys & NetProtocol.UP) != 0) bits |= 1 << (2 * player);
+		if((keys & NetProtocol.DOWN) != 0) bits |= 2 << (2 * player);
+
+		return bits;
+	}
+
+	/**
+		@return a partida simulada.
+	*/
+
+	public Match getMatch(){
+
+		return match;
+	}
+
+	/**
+		@return o próximo passo a ser simulado.
+	*/
+
+	public long getTick(){
+
+		return current;
+	}
+
+	/**
+		@param player jogador (0 ou 1).
+		@return o último passo cujas teclas foram confirmadas pelo jogador.
+	*/
+
+	public long getConfirmedTick(int player){
+
+		return confirmed[player];
+	}
+
+	/**
+		@return a quantidade de correções.
+	*/
+
+	public long getRollbacks(){
+
+		return rollbacks;
+	}
+
+	/**
+		@return a quantidade de passos simulados de novo pelas correções.
+	*/
+
+	public long getResimulatedTicks(){
+
+		return resimulated;
+	}
+
+	/**
+		@return as medidas da duração de cada correção.
+	*/
+
+	public LatencyHistogram getRollbackLatency(){
+
+		return rollbackLatency;
+	}
+
+	/**
+		O método principal, que verifica as correções. Uma partida de referência é simulada com as teclas de dois
+		jogadores (que mudam ao acaso) sem atraso; em seguida, cada jogador simula a mesma partida com um Rollback,
+		confirmando as suas teclas no próprio passo e as do outro jogador com atraso. Ao final, com todas as teclas
+		confirmadas, as três partidas devem ter o mesmo resumo (veja Match.checksum()).
+
+		@param args o nome da classe das bolas (opcional, "Ball" por padrão). Também são aceitas as opções
+		"--ticks=N", que define a quantidade de passos simulados (20000 por padrão), "--delay=N", que define o atraso
+		(em passos) das teclas do outro jogador (8 por padrão), "--history=N", que define a quantidade de passos
+		guardados (DEFAULT_HISTORY por padrão), "--tickrate=N", que define quantos passos a partida executa por
+		segundo de jogo, "--seed=N", que define a semente da partida e das teclas, e "--ball-collisions", que faz as
+		bolas colidirem entre si.
+	*/
+
+	public static void main(String [] args){
+
+		long ticks = DEFAULT_TICKS;
+		int delay = DEFAULT_DELAY;
+		int history = DEFAULT_HISTORY;
+		int tickRate = Pong.DEFAULT_TICK_RATE;
+		long seed = new Random().nextLong();
+		boolean ballCollisions = false;
+		List <String> params = new ArrayList <String> ();
+
+		for(String arg : args){
+
+			if(arg.startsWith("--ticks=")) ticks = Long.parseLong(arg.substring("--ticks=".length()));
+			else if(arg.startsWith("--delay=")) delay = Integer.parseInt(arg.substring("--delay=".length()));
+			else if(arg.startsWith("--history=")) history = Integer.parseInt(arg.substring("--history=".length()));
+			else if(arg.startsWith("--tickrate=")) tickRate = Integer.parseInt(arg.substring("--tickrate=".length()));
+			else if(arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if(arg.equals("--ball-collisions")) ballCollisions = true;
+			else params.add(arg);
+		}
+
+		String ballClassName = (params.size() >= 1) ? params.get(0) : "Ball";
+
+		//Com um atraso maior que os passos guardados, a partida pararia esperando as teclas do outro jogador
+		if(delay < 0 || delay > history){
+
+			System.out.println("O atraso deve estar entre 0 e a quantidade de passos guardados (" + history + ")");
+			return;
+		}
+
+		long tick = Math.max(1, Math.round(1000.0 / ((tickRate > 0) ? tickRate : Pong.DEFAULT_TICK_RATE)));
+		Random random = new Random(seed);
+		long matchSeed = random.nextLong();
+		int [] choices = { 0, NetProtocol.UP, NetProtocol.DOWN };
+		int [][] keys = new int[PLAYERS][(int) ticks];
+
+		for(int p = 0; p < PLAYERS; p++){
+
+			int k = 0;
+
+			for(int t = 0; t < ticks; t++){
+
+				if(random.nextInt(30) == 0) k = choices[random.nextInt(choices.length)];
+
+				keys[p][t] = k;
+			}
+		}
+
+		Match reference;
+		Rollback [] peers = new Rollback[PLAYERS];
+
+		try{
+			reference = Pong.createMatch(ballClassName, new CopyableRandom(matchSeed), ballCollisions, Integer.MAX_VALUE);
+
+			for(int p = 0; p < PLAYERS; p++){
+
+				Match match = Pong.createMatch(ballClassName, new CopyableRandom(matchSeed), ballCollisions, Integer.MAX_VALUE);
+
+				peers[p] = new Rollback(match, tick, history);
+			}
+		}
+		catch(IllegalArgumentException e){
+
+			System.out.println(e.getMessage());
+			return;
+		}
+
+		System.out.print("Verificando " + ticks + " passos de '" + ballClassName + "' com atraso de " + delay + " passos");
+		System.out.println(" e " + history + " passos guardados (semente " + seed + ")");
+
+		reference.start();
+
+		for(Rollback peer : peers) peer.getMatch().start();
+
+		TickInput input = new TickInput();
+
+		for(long t = 0; t < ticks; t++){
+
+			int bits = 0;
+
+			for(int p = 0; p < PLAYERS; p++) bits |= inputBits(p, keys[p][(int) t]);
+
+			input.setBits(bits);
+			reference.step(tick, input);
+		}
+
+		long start = System.nanoTime();
+
+		for(long t = 0; t < ticks + delay; t++){
+
+			for(int p = 0; p < PLAYERS; p++){
+
+				int other = 1 - p;
+				long late = t - delay;
+
+				if(t < ticks) peers[p].confirm(p, t, keys[p][(int) t]);
+				if(late >= 0 && late < ticks) peers[p].confirm(other, late, keys[other][(int) late]);
+
+				if(t < ticks && !peers[p].advance()){
+
+					System.out.println("O jogador " + p + " parou no passo " + t);
+					return;
+				}
+			}
+		}
+
+		//As últimas teclas do outro jogador chegaram depois do último passo: um passo a mais (com as últimas teclas
+		//de cada jogador) aplica a correção pendente
+		if(ticks > 0){
+
+			input.setBits(inputBits(0, keys[0][(int) ticks - 1]) | inputBits(1, keys[1][(int) ticks - 1]));
+			reference.step(tick, input);
+		}
+
+		for(Rollback peer : peers) peer.advance();
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		boolean equal = true;
+
+		System.out.println("Referência: resumo " + Long.toHexString(reference.checksum()) + ", " + reference.getBallCount() + " bolas");
+
+		for(int p = 0; p < PLAYERS; p++){
+
+			Rollback peer = peers[p];
+			LatencyHistogram latency = peer.getRollbackLatency();
+
+			equal &= peer.getMatch().checksum() == reference.checksum();
+
+			String p50 = FrameProfiler.format(latency.getPercentile(50));
+			String p99 = FrameProfiler.format(latency.getPercentile(99));
+			String max = FrameProfiler.format(latency.getMax());
+
+			System.out.print("Jogador " + p + ": resumo " + Long.toHexString(peer.getMatch().checksum()) + ", ");
+			System.out.print(peer.getRollbacks() + " correções, " + peer.getResimulatedTicks() + " passos simulados de novo, ");
+			System.out.println("correção p50 " + p50 + ", p99 " + p99 + ", máx " + max);
+		}
+
+		System.out.println(String.format(Locale.ROOT, "%d passos de cada jogador em %.2f s", ticks, seconds));
+		System.out.println(equal ? "As partidas dos jogadores são iguais à referência" : "As partidas dos jogadores divergiram da referência");
+	}
+}
@@ -0,0 +1,86 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+	Classe que troca cópias do estado da partida entre a thread da simulação e a thread de desenho, sem locks
+	("triple buffering"). Há três instâncias de WorldSnapshot: uma sendo preenchida pela simulação, uma sendo
+	desenhada e uma publicada, à espera da thread de desenho. As trocas são feitas com AtomicReference.getAndSet(),
+	de modo que nenhuma das threads espera pela outra: a simulação sempre tem uma cópia livre para preencher e a
+	thread de desenho sempre desenha a cópia publicada mais recente.
+
+	Cada método deve ser chamado sempre pela mesma thread: back() e publish() pela simulação, latest() pela
+	thread de desenho.
+*/
+
+public class SnapshotBuffer {
+
+	/**
+		Atributo privado que representa a cópia publicada mais recentemente (ou a cópia devolvida pela thread de desenho).
+	*/
+
+	private final AtomicReference <WorldSnapshot> ready;
+
+	/**
+		Atributo privado que representa a cópia sendo preenchida pela simulação.
+	*/
+
+	private WorldSnapshot back;
+
+	/**
+		Atributo privado que representa a cópia sendo desenhada.
+	*/
+
+	private WorldSnapshot front;
+
+	/**
+		Atributo privado que representa o número da última publicação.
+	*/
+
+	private long published = 0;
+
+	/**
+		Construtor da classe SnapshotBuffer.
+
+		@param players quantidade de jogadores da partida.
+		@param scores quantidade de placares da partida.
+	*/
+
+	public SnapshotBuffer(int players, int scores){
+
+		this.back = new WorldSnapshot(players, scores);
+		this.front = new WorldSnapshot(players, scores);
+		this.ready = new AtomicReference <WorldSnapshot> (new WorldSnapshot(players, scores));
+	}
+
+	/**
+		@return a cópia que a simulação deve preencher antes de chamar publish().
+	*/
+
+	public WorldSnapshot back(){
+
+		return back;
+	}
+
+	/**
+		Publica a cópia preenchida pela simulação e obtém outra cópia livre para o próximo preenchimento.
+	*/
+
+	public void publish(){
+
+		back.sequence = ++published;
+		back = ready.getAndSet(back);
+	}
+
+	/**
+		Obtém a cópia publicada mais recente. Se nada foi publicado desde a última chamada, a mesma cópia é devolvida.
+
+		@return a cópia que deve ser desenhada (com sequence igual a 0 se nada foi publicado ainda).
+	*/
+
+	public WorldSnapshot latest(){
+
+		//A troca só acontece se há uma publicação mais nova do que a cópia atual
+		if(ready.get().sequence > front.sequence) front = ready.getAndSet(front);
+
+		return front;
+	}
+}
@@ -0,0 +1,754 @@
+import java.nio.*;
+import java.util.*;
+
+/**
+	Classe que codifica o estado das partidas enviado pelo servidor aos clientes (mensagem STATE, veja a classe
+	NetProtocol) de forma compacta, para que a banda usada por cliente não cresça com a quantidade de bolas.
+
+	- As posições são quantizadas para o campo de 800x600 pixels: cada coordenada é enviada como um inteiro em
+	  1/POSITION_SCALE de pixel, que cabe em 16 bits. A velocidade de cada bola também é quantizada.
+	- Cada estado é codificado em relação ao último estado que o cliente confirmou ter recebido (mensagem ACK). O
+	  servidor guarda os últimos HISTORY estados enviados a cada cliente, e o cliente guarda os últimos HISTORY
+	  estados recebidos. Quando o estado confirmado já saiu do histórico, o estado é enviado completo.
+	- A posição de cada bola é prevista a partir do estado confirmado, já que as bolas se movem em linha reta entre
+	  duas colisões. Apenas as bolas cuja posição difere da prevista (as que colidiram com alguma coisa), as bolas
+	  novas e as bolas removidas são enviadas, com as diferenças gravadas em inteiros de tamanho variável.
+	- Cada mensagem tem um limite de bytes. As bolas que não cabem ficam para os estados seguintes, e o cliente
+	  continua prevendo a sua posição. Para que todas as bolas sejam atualizadas, cada mensagem começa pela bola
+	  seguinte à última que coube na mensagem anterior.
+
+	As bolas são identificadas pela entrada da tabela de handles do BallStore (os 32 bits menos significativos do
+	handle), que é pequena e é reaproveitada quando a bola é removida; a geração (os 32 bits mais significativos)
+	distingue uma bola nova que reaproveitou a entrada de uma bola removida.
+
+	A mensagem STATE contém, depois do tipo: o número do estado (int), o número do estado usado como base (int, -1
+	para um estado completo), o número do passo (long), se a partida começou (byte), a coordenada y do centro de
+	cada jogador (byte com a quantidade e um short sem sinal por jogador), os placares (byte com a quantidade e um
+	inteiro de tamanho variável por placar), a quantidade de entradas do estado (inteiro de tamanho variável) e as
+	bolas alteradas. Cada bola alterada é gravada como a sua entrada mais 1 (inteiro de tamanho variável), um byte com
+	as alterações (REMOVED, NEW, POSITION e VELOCITY) e os dados de cada alteração; a entrada 0 encerra a lista.
+
+	Os estados são gravados e lidos diretamente em ByteBuffers, e os arrays dos estados guardados são reaproveitados,
+	de modo que nenhuma memória é alocada por mensagem (apenas quando a quantidade de bolas passa do maior valor já visto).
+*/
+
+public class SnapshotCodec {
+
+	/**
+		Constante que define a quantidade de posições quantizadas por pixel.
+	*/
+
+	public static final int POSITION_SCALE = 16;
+
+	/**
+		Constante que define quantos bits de fração as posições das bolas têm nos estados guardados. As velocidades são
+		guardadas na mesma unidade (por milissegundo), de modo que a previsão da posição de uma bola é exata e não
+		acumula erros de arredondamento de um estado para o outro; apenas a parte inteira das posições é enviada.
+	*/
+
+	private static final int FRACTION_BITS = 8;
+
+	/**
+		Constante que define quantos estados são guardados pelo servidor (para cada cliente) e pelo cliente.
+	*/
+
+	public static final int HISTORY = 16;
+
+	/**
+		Constante que define a maior diferença (em posições quantizadas, com a fração) entre a posição prevista e a
+		posição real de uma bola para que a bola não precise ser enviada.
+	*/
+
+	private static final int TOLERANCE = 1 << FRACTION_BITS;
+
+	/**
+		Constante que define o limite padrão (em bytes) de cada mensagem, que cabe em um único pacote IP.
+	*/
+
+	public static final int DEFAULT_BUDGET = 1200;
+
+	/**
+		Constante que define o maior tamanho (em bytes) de uma bola alterada.
+	*/
+
+	private static final int MAX_RECORD = 5 + 1 + 5 + 2 + 2 + 5 + 5;
+
+	/**
+		Constante que define o maior tamanho (em bytes) de uma mensagem STATE sem nenhuma bola (2 jogadores e 2 placares),
+		incluindo o campo com o tamanho, o tipo e o fim da lista de bolas.
+	*/
+
+	private static final int MAX_HEADER = NetProtocol.LENGTH_SIZE + 1 + 4 + 4 + 8 + 1 + 1 + 2 * 2 + 1 + 2 * 5 + 5 + 1;
+
+	/**
+		Constantes que identificam as alterações de uma bola.
+	*/
+
+	private static final int REMOVED = 1;
+	private static final int NEW = 2;
+	private static final int POSITION = 4;
+	private static final int VELOCITY = 8;
+
+	/**
+		Constante que representa a geração de uma entrada sem bola.
+	*/
+
+	private static final int ABSENT = -1;
+
+	/**
+		Classe que guarda um estado quantizado. Os arrays das bolas são indexados pela entrada de cada bola na tabela
+		de handles do BallStore; as entradas sem bola têm geração ABSENT.
+	*/
+
+	public static class Frame {
+
+		/**
+			Atributos que representam o número do estado e o número do passo.
+		*/
+
+		int sequence = -1;
+		long tick;
+
+		/**
+			Atributo que indica se a partida começou.
+		*/
+
+		boolean started;
+
+		/**
+			Atributos que representam a coordenada y quantizada de cada jogador e os placares.
+		*/
+
+		int [] playerCy = new int[0];
+		int [] scores = new int[0];
+
+		/**
+			Atributo que representa a quantidade de entradas usadas nos arrays das bolas.
+		*/
+
+		int entries = 0;
+
+		/**
+			Atributos que representam, para cada entrada, a geração da bola (ou ABSENT), a sua posição e a sua velocidade
+			quantizadas (com FRACTION_BITS bits de fração).
+		*/
+
+		int [] generation = new int[16];
+		int [] qx = new int[16];
+		int [] qy = new int[16];
+		int [] qvx = new int[16];
+		int [] qvy = new int[16];
+
+		/**
+			Garante que os arrays tenham espaço para as entradas indicadas e que os arrays dos jogadores e dos placares
+			tenham os tamanhos indicados.
+		*/
+
+		void ensure(int entries, int players, int scoreCount){
+
+			if(generation.length < entries){
+
+				int capacity = Math.max(entries, 2 * generation.length);
+
+				generation = Arrays.copyOf(generation, capacity);
+				qx = Arrays.copyOf(qx, capacity);
+				qy = Arrays.copyOf(qy, capacity);
+				qvx = Arrays.copyOf(qvx, capacity);
+				qvy = Arrays.copyOf(qvy, capacity);
+			}
+
+			if(playerCy.length != players) playerCy = new int[players];
+			if(scores.length != scoreCount) scores = new int[scoreCount];
+		}
+
+		/**
+			@return o número do estado.
+		*/
+
+		public int getSequence(){
+
+			return sequence;
+		}
+
+		/**
+			@return o número do passo do estado.
+		*/
+
+		public long getTick(){
+
+			return tick;
+		}
+
+		/**
+			@return true se a partida começou.
+		*/
+
+		public boolean isStarted(){
+
+			return started;
+		}
+
+		/**
+			@param k índice do jogador.
+			@return a coordenada y do centro do jogador (em pixels).
+		*/
+
+		public double getPlayerCy(int k){
+
+			return playerCy[k] / (double) POSITION_SCALE;
+		}
+
+		/**
+			@return quantidade de jogadores.
+		*/
+
+		public int getPlayerCount(){
+
+			return playerCy.length;
+		}
+
+		/**
+			@param k índice do placar.
+			@return a pontuação do placar.
+		*/
+
+		public int getScore(int k){
+
+			return scores[k];
+		}
+
+		/**
+			@return quantidade de entradas (as bolas ocupam entradas entre 0 e este valor, exclusive).
+		*/
+
+		public int getEntries(){
+
+			return entries;
+		}
+
+		/**
+			@param e entrada.
+			@return true se há uma bola na entrada.
+		*/
+
+		public boolean hasBall(int e){
+
+			return generation[e] != ABSENT;
+		}
+
+		/**
+			@param e entrada de uma bola.
+			@return a coordenada x do centro da bola (em pixels).
+		*/
+
+		public double getCx(int e){
+
+			return qx[e] / (double) (POSITION_SCALE << FRACTION_BITS);
+		}
+
+		/**
+			@param e entrada de uma bola.
+			@return a coordenada y do centro da bola (em pixels).
+		*/
+
+		public double getCy(int e){
+
+			return qy[e] / (double) (POSITION_SCALE << FRACTION_BITS);
+		}
+
+		/**
+			@param e entrada de uma bola.
+			@return a componente x da velocidade da bola (em pixels por milissegundo).
+		*/
+
+		public double getVx(int e){
+
+			return qvx[e] / (double) (POSITION_SCALE << FRACTION_BITS);
+		}
+	}
+
+	/**
+		Quantiza uma cópia do estado da partida. O estado quantizado é calculado uma única vez por envio e codificado
+		para cada cliente (veja Encoder.encode()).
+
+		@param snapshot cópia do estado da partida.
+		@param frame estado que recebe os valores quantizados.
+	*/
+
+	public static void quantize(WorldSnapshot snapshot, Frame frame){
+
+		BallStore balls = snapshot.balls;
+		int n = balls.size();
+		int entries = 0;
+
+		for(int i = 0; i < n; i++) entries = Math.max(entries, (int) balls.handle[i] + 1);
+
+		frame.ensure(entries, snapshot.playerCy.length, snapshot.scores.length);
+		Arrays.fill(frame.generation, 0, entries, ABSENT);
+
+		frame.entries = entries;
+		frame.tick = snapshot.ticks;
+		frame.started = snapshot.started;
+
+		for(int k = 0; k < snapshot.playerCy.length; k++) frame.playerCy[k] = position(snapshot.playerCy[k]);
+		for(int k = 0; k < snapshot.scores.length; k++) frame.scores[k] = snapshot.scores[k];
+
+		for(int i = 0; i < n; i++){
+
+			int e = (int) balls.handle[i];
+
+			frame.generation[e] = (int) (balls.handle[i] >>> 32);
+			frame.qx[e] = position(balls.cx[i]) << FRACTION_BITS;
+			frame.qy[e] = position(balls.cy[i]) << FRACTION_BITS;
+			frame.qvx[e] = velocity(balls.vx[i] * balls.speed[i]);
+			frame.qvy[e] = velocity(balls.vy[i] * balls.speed[i]);
+		}
+	}
+
+	/**
+		@return a coordenada quantizada (limitada a 16 bits sem sinal).
+	*/
+
+	private static int position(double value){
+
+		return (int) Math.max(0, Math.min(0xFFFF, Math.round(value * POSITION_SCALE)));
+	}
+
+	/**
+		@return a velocidade (em pixels por milissegundo) quantizada.
+	*/
+
+	private static int velocity(double value){
+
+		return (int) Math.round(value * (POSITION_SCALE << FRACTION_BITS));
+	}
+
+	/**
+		@return a posição quantizada prevista depois de elapsed milissegundos, a partir de uma posição e de uma
+		velocidade quantizadas.
+	*/
+
+	private static int predict(int q, int qv, long elapsed){
+
+		return q + (int) (qv * elapsed);
+	}
+
+	/**
+		@return a diferença entre duas posições com fração, arredondada para posições quantizadas inteiras.
+	*/
+
+	private static int units(int difference){
+
+		return (difference + (1 << (FRACTION_BITS - 1))) >> FRACTION_BITS;
+	}
+
+	/**
+		Classe que codifica os estados enviados a um cliente.
+	*/
+
+	public static class Encoder {
+
+		/**
+			Atributo privado que representa os últimos estados enviados, indexados pelo número do estado módulo HISTORY.
+		*/
+
+		private final Frame [] history = new Frame[HISTORY];
+
+		/**
+			Atributo privado que representa a duração de cada passo (em milisegundos).
+		*/
+
+		private final long tick;
+
+		/**
+			Atributo privado que representa o número do próximo estado.
+		*/
+
+		private int sequence = 0;
+
+		/**
+			Atributo privado que representa o número do último estado confirmado pelo cliente (ou -1).
+		*/
+
+		private int acked = -1;
+
+		/**
+			Atributo privado que representa a entrada pela qual a próxima mensagem começa.
+		*/
+
+		private int cursor = 0;
+
+		/**
+			Construtor da classe Encoder.
+
+			@param tick duração de cada passo (em milisegundos).
+		*/
+
+		public Encoder(long tick){
+
+			this.tick = tick;
+
+			for(int k = 0; k < HISTORY; k++) history[k] = new Frame();
+		}
+
+		/**
+			Registra a confirmação de um estado pelo cliente.
+
+			@param sequence número do estado confirmado.
+		*/
+
+		public void ack(int sequence){
+
+			//Confirmações de estados que ainda não foram enviados são ignoradas
+			if(sequence > acked && sequence < this.sequence) acked = sequence;
+		}
+
+		/**
+			@param budget limite (em bytes) da mensagem.
+			@return o maior tamanho (em bytes) de uma mensagem gravada por encode() com o limite indicado.
+		*/
+
+		public static int maxSize(int budget){
+
+			return Math.max(budget, MAX_HEADER) + MAX_RECORD;
+		}
+
+		/**
+			Grava uma mensagem STATE com um estado da partida, codificado em relação ao último estado confirmado.
+
+			@param actual estado quantizado da partida (veja quantize()).
+			@param out buffer que recebe a mensagem (em modo de escrita), com pelo menos maxSize(budget) bytes livres.
+			@param budget limite (em bytes) da mensagem. As bolas que não cabem ficam para as mensagens seguintes.
+		*/
+
+		public void encode(Frame actual, ByteBuffer out, int budget){
+
+			Frame base = (acked >= 0 && sequence - acked < HISTORY) ? history[acked % HISTORY] : null;
+			Frame frame = history[sequence % HISTORY];
+			int baseEntries = (base != null) ? base.entries : 0;
+			int entries = Math.max(actual.entries, baseEntries);
+			long elapsed = (base != null) ? (actual.tick - base.tick) * tick : 0;
+
+			frame.ensure(entries, actual.playerCy.length, actual.scores.length);
+			frame.sequence = sequence;
+			frame.tick = actual.tick;
+			frame.started = actual.started;
+			frame.entries = entries;
+
+			int start = out.position();
+
+			out.putShort((short) 0);
+			out.put(NetProtocol.STATE);
+			out.putInt(sequence);
+			out.putInt((base != null) ? base.sequence : -1);
+			out.putLong(actual.tick);
+			out.put((byte) (actual.started ? 1 : 0));
+
+			out.put((byte) actual.playerCy.length);
+
+			for(int k = 0; k < actual.playerCy.length; k++){
+
+				frame.playerCy[k] = actual.playerCy[k];
+				out.putShort((short) actual.playerCy[k]);
+			}
+
+			out.put((byte) actual.scores.length);
+
+			for(int k = 0; k < actual.scores.length; k++){
+
+				frame.scores[k] = actual.scores[k];
+				putVarint(out, actual.scores[k]);
+			}
+
+			putVarint(out, entries);
+
+			//Sem alterações, cada entrada fica como o cliente a prevê a partir da base
+			predictFrom(base, frame, elapsed);
+
+			int limit = start + Math.max(budget, MAX_HEADER) - 1;
+			int first = (cursor < entries) ? cursor : 0;
+			boolean full = false;
+
+			cursor = 0;
+
+			for(int k = 0; k < entries; k++){
+
+				int e = (first + k) % entries;
+
+				int was = (e < baseEntries) ? base.generation[e] : ABSENT;
+				int is = (e < actual.entries) ? actual.generation[e] : ABSENT;
+
+				int changes = 0;
+
+				if(is == ABSENT){
+
+					if(was != ABSENT) changes = REMOVED;
+				}
+				else if(was != is){
+
+					changes = NEW;
+				}
+				else{
+
+					if(Math.abs(actual.qx[e] - frame.qx[e]) > TOLERANCE || Math.abs(actual.qy[e] - frame.qy[e]) > TOLERANCE) changes |= POSITION;
+					if(actual.qvx[e] != frame.qvx[e] || actual.qvy[e] != frame.qvy[e]) changes |= VELOCITY;
+				}
+
+				if(changes == 0) continue;
+
+				if(out.position() + MAX_RECORD > limit){
+
+					//As bolas seguintes ficam para a próxima mensagem, que começa por esta
+					if(!full) cursor = e;
+
+					full = true;
+					continue;
+				}
+
+				putVarint(out, e + 1);
+				out.put((byte) changes);
+
+				if(changes == REMOVED){
+
+					frame.generation[e] = ABSENT;
+				}
+				else if(changes == NEW){
+
+					frame.generation[e] = is;
+					frame.qx[e] = actual.qx[e];
+					frame.qy[e] = actual.qy[e];
+					frame.qvx[e] = actual.qvx[e];
+					frame.qvy[e] = actual.qvy[e];
+
+					putVarint(out, is);
+					out.putShort((short) (actual.qx[e] >> FRACTION_BITS));
+					out.putShort((short) (actual.qy[e] >> FRACTION_BITS));
+					putVarint(out, zigzag(actual.qvx[e]));
+					putVarint(out, zigzag(actual.qvy[e]));
+				}
+				else{
+
+					if((changes & POSITION) != 0){
+
+						int dx = units(actual.qx[e] - frame.qx[e]);
+						int dy = units(actual.qy[e] - frame.qy[e]);
+
+						putVarint(out, zigzag(dx));
+						putVarint(out, zigzag(dy));
+
+						frame.qx[e] += dx << FRACTION_BITS;
+						frame.qy[e] += dy << FRACTION_BITS;
+					}
+
+					if((changes & VELOCITY) != 0){
+
+						putVarint(out, zigzag(actual.qvx[e] - frame.qvx[e]));
+						putVarint(out, zigzag(actual.qvy[e] - frame.qvy[e]));
+
+						frame.qvx[e] = actual.qvx[e];
+						frame.qvy[e] = actual.qvy[e];
+					}
+				}
+			}
+
+			putVarint(out, 0);
+			out.putShort(start, (short) (out.position() - start - NetProtocol.LENGTH_SIZE));
+
+			sequence++;
+		}
+	}
+
+	/**
+		Classe que decodifica os estados recebidos por um cliente.
+	*/
+
+	public static class Decoder {
+
+		/**
+			Atributo privado que representa os últimos estados recebidos, indexados pelo número do estado módulo HISTORY.
+		*/
+
+		private final Frame [] history = new Frame[HISTORY];
+
+		/**
+			Atributo privado que representa a duração de cada passo (em milisegundos).
+		*/
+
+		private final long tick;
+
+		/**
+			Construtor da classe Decoder.
+
+			@param tick duração de cada passo (em milisegundos), recebida na mensagem WELCOME.
+		*/
+
+		public Decoder(long tick){
+
+			this.tick = tick;
+
+			for(int k = 0; k < HISTORY; k++) history[k] = new Frame();
+		}
+
+		/**
+			Lê uma mensagem STATE.
+
+			@param in buffer posicionado logo depois do tipo da mensagem.
+			@return o estado lido, que deve ser confirmado ao servidor (mensagem ACK) e que continua válido até
+			que outros HISTORY estados sejam lidos.
+			@throws IllegalStateException se o estado usado como base não foi recebido.
+		*/
+
+		public Frame decode(ByteBuffer in){
+
+			int sequence = in.getInt();
+			int baseSequence = in.getInt();
+			Frame base = null;
+
+			if(baseSequence >= 0){
+
+				base = history[baseSequence % HISTORY];
+
+				if(base.sequence != baseSequence) throw new IllegalStateException("Estado " + baseSequence + " não recebido");
+			}
+
+			Frame frame = history[sequence % HISTORY];
+			long tick = in.getLong();
+			boolean started = in.get() != 0;
+			int players = in.get();
+
+			frame.ensure(0, players, frame.scores.length);
+
+			for(int k = 0; k < players; k++) frame.playerCy[k] = in.getShort() & 0xFFFF;
+
+			int scores = in.get();
+
+			frame.ensure(0, players, scores);
+
+			for(int k = 0; k < scores; k++) frame.scores[k] = getVarint(in);
+
+			int entries = getVarint(in);
+			long elapsed = (base != null) ? (tick - base.tick) * this.tick : 0;
+
+			frame.ensure(entries, players, scores);
+			frame.sequence = sequence;
+			frame.tick = tick;
+			frame.started = started;
+			frame.entries = entries;
+
+			predictFrom(base, frame, elapsed);
+
+			int e;
+
+			while((e = getVarint(in) - 1) >= 0){
+
+				int changes = in.get();
+
+				if(changes == REMOVED){
+
+					frame.generation[e] = ABSENT;
+				}
+				else if(changes == NEW){
+
+					frame.generation[e] = getVarint(in);
+					frame.qx[e] = (in.getShort() & 0xFFFF) << FRACTION_BITS;
+					frame.qy[e] = (in.getShort() & 0xFFFF) << FRACTION_BITS;
+					frame.qvx[e] = unzigzag(getVarint(in));
+					frame.qvy[e] = unzigzag(getVarint(in));
+				}
+				else{
+
+					if((changes & POSITION) != 0){
+
+						frame.qx[e] += unzigzag(getVarint(in)) << FRACTION_BITS;
+						frame.qy[e] += unzigzag(getVarint(in)) << FRACTION_BITS;
+					}
+
+					if((changes & VELOCITY) != 0){
+
+						frame.qvx[e] += unzigzag(getVarint(in));
+						frame.qvy[e] += unzigzag(getVarint(in));
+					}
+				}
+			}
+
+			return frame;
+		}
+	}
+
+	/**
+		Preenche as bolas de um estado com as posições previstas a partir de um estado base (ou sem nenhuma bola, se
+		não há base). As entradas do estado que não existem na base ficam sem bola.
+	*/
+
+	private static void predictFrom(Frame base, Frame frame, long elapsed){
+
+		int copied = (base != null) ? Math.min(base.entries, frame.entries) : 0;
+
+		for(int e = 0; e < copied; e++){
+
+			frame.generation[e] = base.generation[e];
+
+			if(base.generation[e] == ABSENT) continue;
+
+			frame.qx[e] = predict(base.qx[e], base.qvx[e], elapsed);
+			frame.qy[e] = predict(base.qy[e], base.qvy[e], elapsed);
+			frame.qvx[e] = base.qvx[e];
+			frame.qvy[e] = base.qvy[e];
+		}
+
+		Arrays.fill(frame.generation, copied, frame.entries, ABSENT);
+	}
+
+	/**
+		Grava um inteiro sem sinal com 7 bits por byte (o bit mais significativo de cada byte indica que há mais bytes).
+	*/
+
+	private static void putVarint(ByteBuffer out, int value){
+
+		while((value & ~0x7F) != 0){
+
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.put((byte) value);
+	}
+
+	/**
+		Lê um inteiro gravado por putVarint().
+	*/
+
+	private static int getVarint(ByteBuffer in){
+
+		int value = 0;
+		int shift = 0;
+		int b;
+
+		do{
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while((b & 0x80) != 0);
+
+		return value;
+	}
+
+	/**
+		@return o inteiro com sinal codificado de modo que valores próximos de zero sejam pequenos (0, -1, 1, -2, ...).
+	*/
+
+	private static int zigzag(int value){
+
+		return (value << 1) ^ (value >> 31);
+	}
+
+	/**
+		@return o inteiro com sinal codificado por zigzag().
+	*/
+
+	private static int unzigzag(int value){
+
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
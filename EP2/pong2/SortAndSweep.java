@@ -0,0 +1,272 @@
+import java.util.*;
+
+/**
+	Classe que encontra os pares de bolas que se sobrepõem ("broadphase" do tipo sort and sweep). As bolas são
+	mantidas ordenadas pela menor coordenada x do seu retângulo; percorrendo a ordem, cada bola só é comparada às
+	seguintes que começam antes do fim do seu retângulo no eixo x.
+
+	A ordem é guardada de um passo para o outro. Como as bolas se movem pouco a cada passo, ela continua quase
+	ordenada, e é corrigida por uma ordenação por inserção em tempo praticamente linear.
+
+	Com muitas bolas no campo, a maioria dos pares se sobrepõe no eixo x, por isso o campo também é dividido em
+	faixas horizontais com o dobro da altura das bolas. A ordem é distribuída pelas faixas (cada faixa recebe as
+	bolas que a tocam, ainda em ordem), e a varredura é feita em cada faixa. Um par que aparece em duas faixas só
+	é guardado na faixa em que começa a sobreposição das duas bolas no eixo y. Assim, o custo de cada passo é
+	proporcional à quantidade de bolas mais a quantidade de pares próximos, em vez de proporcional à quantidade
+	de pares de bolas.
+
+	Bolas removidas e adicionadas entre dois passos (que mudam os índices do BallStore) são tratadas
+	automaticamente: os índices que deixaram de existir saem da ordem e os novos índices entram no fim dela.
+
+	Bolas recém criadas (com ignoreCounter positivo) não colidem com nada, por isso ficam fora das faixas: as
+	cópias criadas por um duplicador nascem todas no mesmo lugar, e varrê-las produziria pares que seriam
+	descartados (da ordem de k²/2 pares para k cópias). Elas continuam na ordem, que assim segue quase ordenada.
+*/
+
+public class SortAndSweep {
+
+	/**
+		Atributo privado que representa os índices das bolas, ordenados pela menor coordenada x.
+	*/
+
+	private int [] order = new int[16];
+
+	/**
+		Atributo privado que representa a quantidade de índices em order.
+	*/
+
+	private int count = 0;
+
+	/**
+		Atributo privado que representa a menor coordenada x do retângulo de cada bola, indexada pelo índice da bola.
+	*/
+
+	private double [] minX = new double[16];
+
+	/**
+		Atributo privado que representa a menor coordenada y do retângulo de cada bola, indexada pelo índice da bola.
+	*/
+
+	private double [] minY = new double[16];
+
+	/**
+		Atributo privado que representa, para cada faixa, a posição em bandItems da sua primeira bola (a posição
+		seguinte à última faixa marca o fim de bandItems).
+	*/
+
+	private int [] bandStart = new int[16];
+
+	/**
+		Atributo privado que representa os índices das bolas de cada faixa, em ordem, uma faixa após a outra.
+	*/
+
+	private int [] bandItems = new int[32];
+
+	/**
+		Atributos privados que representam os pares encontrados pela última chamada a update().
+	*/
+
+	private int [] first = new int[16];
+	private int [] second = new int[16];
+
+	/**
+		Atributo privado que representa a quantidade de pares encontrados pela última chamada a update().
+	*/
+
+	private int pairs = 0;
+
+	/**
+		Atualiza a ordem das bolas e encontra os pares de bolas cujos retângulos se sobrepõem, exceto os pares com
+		bolas recém criadas.
+
+		@param balls bolas da partida.
+		@return quantidade de pares encontrados (veja first() e second()).
+	*/
+
+	public int update(BallStore balls){
+
+		int n = balls.size();
+
+		if(minX.length < n){
+
+			minX = new double[Math.max(n, 2 * minX.length)];
+			minY = new double[minX.length];
+		}
+
+		if(order.length < n) order = Arrays.copyOf(order, Math.max(n, 2 * order.length));
+
+		double top = Double.POSITIVE_INFINITY;
+		double maxHeight = 0;
+
+		for(int i = 0; i < n; i++){
+
+			minX[i] = balls.cx[i] - balls.width[i] / 2;
+			minY[i] = balls.cy[i] - balls.height[i] / 2;
+
+			top = Math.min(top, minY[i]);
+			maxHeight = Math.max(maxHeight, balls.height[i]);
+		}
+
+		//Descarta os índices que deixaram de existir (mantendo a ordem dos demais) e acrescenta os novos
+		int kept = 0;
+
+		for(int k = 0; k < count; k++){
+
+			if(order[k] < n) order[kept++] = order[k];
+		}
+
+		for(int i = kept; i < n; i++) order[i] = i;
+
+		count = n;
+
+		//Ordenação por inserção: quase linear, já que a ordem do passo anterior está quase correta. Bolas com a mesma
+		//coordenada ficam na ordem dos índices, para que a ordem dependa apenas do estado atual das bolas (e não da
+		//ordem dos passos anteriores), como exige a restauração de um estado salvo (veja a classe Rollback)
+		for(int k = 1; k < n; k++){
+
+			int i = order[k];
+			double key = minX[i];
+			int j = k - 1;
+
+			while(j >= 0 && (minX[order[j]] > key || (minX[order[j]] == key && order[j] > i))){
+
+				order[j + 1] = order[j];
+				j--;
+			}
+
+			order[j + 1] = i;
+		}
+
+		pairs = 0;
+
+		if(n < 2) return 0;
+
+		//Cada bola toca no máximo duas faixas; não há mais faixas que bolas
+		double bandHeight = Math.max(2 * maxHeight, Double.MIN_NORMAL);
+		double bottom = Double.NEGATIVE_INFINITY;
+
+		for(int i = 0; i < n; i++) bottom = Math.max(bottom, minY[i] + balls.height[i]);
+
+		int bands = (int) Math.min(n, (bottom - top) / bandHeight + 1);
+
+		distribute(balls, n, bands, top, bandHeight);
+
+		for(int band = 0; band < bands; band++){
+
+			int end = bandStart[band + 1];
+
+			for(int k = bandStart[band]; k < end; k++){
+
+				int a = bandItems[k];
+				double maxX = minX[a] + balls.width[a];
+				double maxY = minY[a] + balls.height[a];
+
+				for(int m = k + 1; m < end; m++){
+
+					int b = bandItems[m];
+
+					//As bolas seguintes começam ainda mais à direita
+					if(minX[b] >= maxX) break;
+
+					if(minY[b] >= maxY || minY[a] >= minY[b] + balls.height[b]) continue;
+
+					//O par só é guardado na faixa em que começa a sobreposição no eixo y
+					if(band(Math.max(minY[a], minY[b]), top, bandHeight, bands) == band) addPair(a, b);
+				}
+			}
+		}
+
+		return pairs;
+	}
+
+	/**
+		Distribui a ordem das bolas pelas faixas, mantendo as bolas de cada faixa em ordem (ordenação por contagem).
+		As bolas recém criadas ficam de fora.
+	*/
+
+	private void distribute(BallStore balls, int n, int bands, double top, double bandHeight){
+
+		if(bandStart.length < bands + 1) bandStart = new int[Math.max(bands + 1, 2 * bandStart.length)];
+		if(bandItems.length < 2 * n) bandItems = new int[Math.max(2 * n, 2 * bandItems.length)];
+
+		Arrays.fill(bandStart, 0, bands + 1, 0);
+
+		//Conta as bolas de cada faixa (na posição seguinte, para calcular as posições iniciais em seguida)
+		for(int i = 0; i < n; i++){
+
+			if(balls.ignoreCounter[i] > 0) continue;
+
+			int first = band(minY[i], top, bandHeight, bands);
+			int last = band(minY[i] + balls.height[i], top, bandHeight, bands);
+
+			for(int band = first; band <= last; band++) bandStart[band + 1]++;
+		}
+
+		for(int band = 0; band < bands; band++) bandStart[band + 1] += bandStart[band];
+
+		//Usa bandStart como posição de inserção de cada faixa; ao final, cada posição avançou até o início da faixa
+		//seguinte
+		for(int k = 0; k < n; k++){
+
+			int i = order[k];
+
+			if(balls.ignoreCounter[i] > 0) continue;
+
+			int first = band(minY[i], top, bandHeight, bands);
+			int last = band(minY[i] + balls.height[i], top, bandHeight, bands);
+
+			for(int band = first; band <= last; band++) bandItems[bandStart[band]++] = i;
+		}
+
+		//Desfaz o avanço das posições de inserção
+		for(int band = bands; band > 0; band--) bandStart[band] = bandStart[band - 1];
+
+		bandStart[0] = 0;
+	}
+
+	/**
+		@return a faixa que contém a coordenada y indicada.
+	*/
+
+	private static int band(double y, double top, double bandHeight, int bands){
+
+		return Math.min(bands - 1, Math.max(0, (int) ((y - top) / bandHeight)));
+	}
+
+	/**
+		Guarda um par encontrado.
+	*/
+
+	private void addPair(int a, int b){
+
+		if(pairs == first.length){
+
+			first = Arrays.copyOf(first, 2 * pairs);
+			second = Arrays.copyOf(second, 2 * pairs);
+		}
+
+		first[pairs] = a;
+		second[pairs] = b;
+		pairs++;
+	}
+
+	/**
+		@param k posição do par (entre 0 e o valor devolvido por update(), exclusive).
+		@return índice da bola mais à esquerda do par.
+	*/
+
+	public int first(int k){
+
+		return first[k];
+	}
+
+	/**
+		@param k posição do par (entre 0 e o valor devolvido por update(), exclusive).
+		@return índice da outra bola do par.
+	*/
+
+	public int second(int k){
+
+		return second[k];
+	}
+}
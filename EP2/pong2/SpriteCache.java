@@ -0,0 +1,297 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+/**
+	Classe que guarda imagens ("sprites") com a aparência já desenhada das bolas que implementam SpriteSkin, uma
+	por combinação de tipo de bola, largura, altura e cor. Cada aparência é desenhada uma única vez, em uma imagem
+	compatível com a tela (que o Java2D pode manter na memória de vídeo), e depois apenas copiada através do DrawBatch.
+
+	O cache tem tamanho limitado: quando ele está cheio, a imagem usada há mais tempo é descartada.
+
+	A imagem é copiada com o centro na posição arredondada da bola, por isso o desenho pode ficar deslocado em até
+	1 pixel em relação ao desenho feito diretamente na posição da bola, quando essa posição não é inteira.
+
+	Os métodos devem ser chamados sempre pela thread que desenha na GameLib.
+*/
+
+public class SpriteCache {
+
+	/**
+		Constante que define a quantidade de imagens guardadas pelo cache compartilhado.
+	*/
+
+	public static final int SHARED_CAPACITY = 256;
+
+	/**
+		Atributo privado que representa o cache compartilhado (criado no primeiro uso).
+	*/
+
+	private static SpriteCache shared = null;
+
+	/**
+		Atributo privado que representa a quantidade máxima de imagens guardadas.
+	*/
+
+	private final int capacity;
+
+	/**
+		Atributo privado que representa as imagens guardadas, na ordem do uso mais antigo para o mais recente.
+	*/
+
+	private final LinkedHashMap <Key, Sprite> sprites;
+
+	/**
+		Atributo privado usado como chave nas consultas, para que a consulta de uma imagem já guardada não aloque memória.
+	*/
+
+	private final Key probe = new Key();
+
+	/**
+		Atributos privados que representam a quantidade de consultas que encontraram e que não encontraram a imagem.
+	*/
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+		Construtor da classe SpriteCache.
+
+		@param capacity quantidade máxima de imagens guardadas.
+	*/
+
+	public SpriteCache(final int capacity){
+
+		if(capacity < 1) throw new IllegalArgumentException("Capacidade inválida: " + capacity);
+
+		this.capacity = capacity;
+		this.sprites = new LinkedHashMap <Key, Sprite> (16, 0.75f, true){
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry <Key, Sprite> eldest){
+
+				if(size() <= capacity) return false;
+
+				eldest.getValue().image.flush();
+
+				return true;
+			}
+		};
+	}
+
+	/**
+		@return o cache compartilhado, com capacidade SHARED_CAPACITY.
+	*/
+
+	public static synchronized SpriteCache shared(){
+
+		if(shared == null) shared = new SpriteCache(SHARED_CAPACITY);
+
+		return shared;
+	}
+
+	/**
+		Submete ao DrawBatch o desenho de uma bola, desenhando a sua aparência se ela ainda não está no cache.
+
+		@param ball bola desenhada, que deve implementar SpriteSkin.
+		@param cx coordenada x do centro da bola.
+		@param cy coordenada y do centro da bola.
+	*/
+
+	public void draw(IBall ball, double cx, double cy){
+
+		Sprite sprite = get((SpriteSkin) ball, ball.getWidth(), ball.getHeight(), ball.getColor());
+
+		DrawBatch.drawImage(sprite.image, (int) Math.round(cx) - sprite.originX, (int) Math.round(cy) - sprite.originY);
+	}
+
+	/**
+		Submete ao DrawBatch o desenho de uma bola na sua posição atual.
+
+		@param ball bola desenhada, que deve implementar SpriteSkin.
+	*/
+
+	public void draw(IBall ball){
+
+		draw(ball, ball.getCx(), ball.getCy());
+	}
+
+	/**
+		Obtém a imagem com a aparência de uma bola, desenhando-a se ainda não está no cache.
+
+		@return a imagem e a posição do centro da bola na imagem.
+	*/
+
+	private Sprite get(SpriteSkin skin, double width, double height, Color color){
+
+		probe.set(skin.getClass(), width, height, color);
+
+		Sprite sprite = sprites.get(probe);
+
+		if(sprite != null){
+
+			hits++;
+			return sprite;
+		}
+
+		misses++;
+		sprite = render(skin, width, height, color);
+
+		Key key = new Key();
+
+		key.set(skin.getClass(), width, height, color);
+		sprites.put(key, sprite);
+
+		return sprite;
+	}
+
+	/**
+		Desenha a aparência de uma bola em uma nova imagem, com o centro da bola em coordenadas inteiras.
+	*/
+
+	private static Sprite render(SpriteSkin skin, double width, double height, Color color){
+
+		int margin = Math.max(0, skin.getSkinMargin()) + 1;
+		int originX = (int) Math.ceil(width / 2) + margin;
+		int originY = (int) Math.ceil(height / 2) + margin;
+		BufferedImage image = createImage(2 * originX + 1, 2 * originY + 1, Transparency.TRANSLUCENT);
+		Graphics2D g = image.createGraphics();
+
+		try{
+			skin.paintSkin(g, originX, originY, width, height, color);
+		}
+		finally{
+			g.dispose();
+		}
+
+		return new Sprite(image, originX, originY);
+	}
+
+	/**
+		Cria uma imagem compatível com a tela quando há uma tela disponível. Imagens transparentes começam
+		totalmente transparentes.
+
+		@param width largura da imagem.
+		@param height altura da imagem.
+		@param transparency Transparency.OPAQUE, Transparency.BITMASK ou Transparency.TRANSLUCENT.
+		@return a imagem criada.
+	*/
+
+	static BufferedImage createImage(int width, int height, int transparency){
+
+		if(GraphicsEnvironment.isHeadless()){
+
+			return new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		}
+
+		GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+
+		return config.createCompatibleImage(width, height, transparency);
+	}
+
+	/**
+		@return quantidade de imagens guardadas.
+	*/
+
+	public int size(){
+
+		return sprites.size();
+	}
+
+	/**
+		@return quantidade máxima de imagens guardadas.
+	*/
+
+	public int capacity(){
+
+		return capacity;
+	}
+
+	/**
+		@return quantidade de consultas que encontraram a imagem no cache.
+	*/
+
+	public long getHits(){
+
+		return hits;
+	}
+
+	/**
+		@return quantidade de consultas que precisaram desenhar a imagem.
+	*/
+
+	public long getMisses(){
+
+		return misses;
+	}
+
+	/**
+		Descarta todas as imagens guardadas.
+	*/
+
+	public void clear(){
+
+		for(Sprite sprite : sprites.values()) sprite.image.flush();
+
+		sprites.clear();
+	}
+
+	/**
+		Classe que representa uma imagem guardada e a posição do centro da bola na imagem.
+	*/
+
+	private static class Sprite {
+
+		final BufferedImage image;
+		final int originX;
+		final int originY;
+
+		Sprite(BufferedImage image, int originX, int originY){
+
+			this.image = image;
+			this.originX = originX;
+			this.originY = originY;
+		}
+	}
+
+	/**
+		Classe que representa a chave de uma imagem: tipo de bola, largura, altura e cor.
+	*/
+
+	private static class Key {
+
+		Class<?> type;
+		double width;
+		double height;
+		Color color;
+
+		void set(Class<?> type, double width, double height, Color color){
+
+			this.type = type;
+			this.width = width;
+			this.height = height;
+			this.color = color;
+		}
+
+		public boolean equals(Object o){
+
+			if(!(o instanceof Key)) return false;
+
+			Key k = (Key) o;
+
+			return type == k.type && Double.compare(width, k.width) == 0 && Double.compare(height, k.height) == 0 && color.equals(k.color);
+		}
+
+		public int hashCode(){
+
+			int h = type.hashCode();
+
+			h = 31 * h + Double.hashCode(width);
+			h = 31 * h + Double.hashCode(height);
+			h = 31 * h + color.getRGB();
+
+			return h;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+/**
+	Interface implementada pelas bolas cuja aparência depende apenas do seu tamanho e da sua cor (como a DiamondBall).
+	A aparência dessas bolas é desenhada uma única vez em uma imagem, guardada pela classe SpriteCache, e a cada frame
+	a bola é desenhada copiando essa imagem, em vez de repetir todos os desenhos que compõem a aparência.
+
+	Um tipo de bola passado pela linha de comando passa a usar o cache apenas implementando esta interface: a classe
+	AwtRenderer desenha as bolas que a implementam a partir do SpriteCache, sem chamar o método draw() da bola.
+*/
+
+public interface SpriteSkin {
+
+	/**
+		@return quantidade de pixels que o desenho da bola pode ultrapassar, em cada direção, o retângulo que a representa.
+	*/
+
+	int getSkinMargin();
+
+	/**
+		Desenha a aparência de uma bola. Deve produzir sempre o mesmo desenho para o mesmo tamanho e a mesma cor.
+
+		@param g Graphics em que a bola é desenhada.
+		@param cx coordenada x do centro da bola.
+		@param cy coordenada y do centro da bola.
+		@param width largura da bola.
+		@param height altura da bola.
+		@param color cor da bola.
+	*/
+
+	void paintSkin(Graphics2D g, double cx, double cy, double width, double height, Color color);
+}
@@ -0,0 +1,326 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+	Classe que grava, a cada passo da simulação, um registro de telemetria em um arquivo mapeado na memória, usado
+	como um buffer circular. Outros processos podem mapear o mesmo arquivo e acompanhar os registros enquanto o
+	jogo roda, sem nenhuma comunicação com a JVM do jogo.
+
+	Os registros são gravados diretamente no arquivo mapeado, com escritas absolutas, sem cópias intermediárias e
+	sem alocar memória, de modo que a telemetria não altera a duração dos passos.
+
+	Todos os valores são little-endian. O arquivo começa com um cabeçalho de HEADER_SIZE bytes:
+
+	- int MAGIC, int VERSION, int tamanho de cada registro (em bytes), int capacidade (em registros);
+	- long quantidade de registros já gravados (atualizado depois de cada registro);
+	- int tamanho do esquema e o esquema: os nomes das colunas do registro, separados por vírgulas, em ASCII.
+
+	O registro de número n (a partir de 0) fica na posição HEADER_SIZE + (n % capacidade) * tamanho, e contém:
+
+	- long número do passo (Match.getTicks());
+	- int duração do passo (em milisegundos), int quantidade de bolas;
+	- um int por parede, com a quantidade de colisões com a parede (colunas "wall:ID");
+	- um int por tipo de alvo, com a quantidade de colisões com os alvos do tipo (colunas "target:CLASSE");
+	- (preenchimento até um múltiplo de 8 bytes) um double por jogador, com a coordenada y do centro (colunas "player:ID");
+	- um long por fase medida (atualização, colisões e passo inteiro, em nanossegundos);
+	- o número do passo novamente (long).
+
+	Como o registro é sobrescrito enquanto o leitor pode estar lendo, o gravador grava o número do passo do início,
+	depois os dados e por último o número do passo do fim, e o leitor deve ler na ordem inversa: primeiro o número
+	do passo do fim, depois os dados e por último o número do passo do início. O registro só é válido se os dois
+	números lidos forem iguais; caso contrário, o gravador começou a sobrescrever o registro durante a leitura
+	(ler os dois números na mesma ordem em que são gravados não detecta essa situação).
+
+	Os registros devem ser gravados sempre pela mesma thread.
+*/
+
+public class TelemetryRing {
+
+	/**
+		Constante que identifica um arquivo de telemetria ("PTLM").
+	*/
+
+	public static final int MAGIC = 0x50544C4D;
+
+	/**
+		Constante que define a versão do formato.
+	*/
+
+	public static final int VERSION = 1;
+
+	/**
+		Constante que define o tamanho (em bytes) do cabeçalho do arquivo.
+	*/
+
+	public static final int HEADER_SIZE = 4096;
+
+	/**
+		Constante que define a capacidade padrão (em registros) do arquivo: cerca de 4 minutos de partida a 250
+		passos por segundo.
+	*/
+
+	public static final int DEFAULT_CAPACITY = 65536;
+
+	/**
+		Constante que define a posição, no cabeçalho, da quantidade de registros gravados.
+	*/
+
+	private static final int WRITTEN_OFFSET = 16;
+
+	/**
+		Constante que define a posição, no cabeçalho, do tamanho do esquema.
+	*/
+
+	private static final int SCHEMA_OFFSET = 24;
+
+	/**
+		Constante que representa os nomes das fases gravadas em cada registro.
+	*/
+
+	private static final String [] PHASES = { "nanos:update", "nanos:collisions", "nanos:step" };
+
+	/**
+		Atributo privado que representa o arquivo mapeado na memória.
+	*/
+
+	private final MappedByteBuffer buffer;
+
+	/**
+		Atributo privado que representa a capacidade (em registros) do arquivo.
+	*/
+
+	private final int capacity;
+
+	/**
+		Atributo privado que representa o tamanho (em bytes) de cada registro.
+	*/
+
+	private final int recordSize;
+
+	/**
+		Atributos privados que representam as posições, dentro do registro, de cada grupo de colunas.
+	*/
+
+	private final int wallOffset;
+	private final int targetOffset;
+	private final int playerOffset;
+	private final int phaseOffset;
+	private final int endOffset;
+
+	/**
+		Atributo privado que representa a quantidade de tipos de alvo.
+	*/
+
+	private final int targetTypes;
+
+	/**
+		Atributo privado que representa, para cada alvo, o índice do seu tipo nas colunas de alvos.
+	*/
+
+	private final int [] targetColumn;
+
+	/**
+		Atributo privado usado para somar as colisões com os alvos de cada tipo.
+	*/
+
+	private final int [] targetHits;
+
+	/**
+		Atributo privado que representa a quantidade de registros gravados.
+	*/
+
+	private long written = 0;
+
+	/**
+		Atributo privado volátil usado apenas para ordenar as escritas no arquivo mapeado (veja barrier()).
+	*/
+
+	private volatile long fence = 0;
+
+	/**
+		Construtor da classe TelemetryRing. Cria (ou sobrescreve) o arquivo e o mapeia na memória.
+
+		@param file arquivo criado.
+		@param capacity quantidade de registros guardados no arquivo (os registros mais antigos são sobrescritos).
+		@param walls paredes da partida.
+		@param targets alvos da partida.
+		@param players jogadores da partida.
+		@throws IOException se o arquivo não puder ser criado ou mapeado.
+	*/
+
+	public TelemetryRing(File file, int capacity, Wall [] walls, Target [] targets, Player [] players) throws IOException {
+
+		if(capacity < 1) throw new IllegalArgumentException("Capacidade inválida: " + capacity);
+
+		StringBuilder schema = new StringBuilder("tick,delta,balls");
+
+		for(Wall w : walls) schema.append(",wall:").append(w.getId());
+
+		//Os alvos de um mesmo tipo (classe) são somados em uma única coluna
+		List <Class<?>> types = new ArrayList <Class<?>> ();
+
+		targetColumn = new int[targets.length];
+
+		for(int k = 0; k < targets.length; k++){
+
+			Class<?> type = targets[k].getClass();
+			int column = types.indexOf(type);
+
+			if(column < 0){
+
+				column = types.size();
+				types.add(type);
+				schema.append(",target:").append(type.getSimpleName());
+			}
+
+			targetColumn[k] = column;
+		}
+
+		targetTypes = types.size();
+		targetHits = new int[targetTypes];
+
+		for(Player p : players) schema.append(",player:").append(p.getId());
+		for(String phase : PHASES) schema.append(',').append(phase);
+
+		schema.append(",tick");
+
+		byte [] schemaBytes = schema.toString().getBytes(StandardCharsets.US_ASCII);
+
+		if(SCHEMA_OFFSET + 4 + schemaBytes.length > HEADER_SIZE) throw new IllegalArgumentException("Esquema muito grande: " + schemaBytes.length + " bytes");
+
+		wallOffset = 16;
+		targetOffset = wallOffset + 4 * walls.length;
+		playerOffset = align8(targetOffset + 4 * targetTypes);
+		phaseOffset = playerOffset + 8 * players.length;
+		endOffset = phaseOffset + 8 * PHASES.length;
+		recordSize = endOffset + 8;
+
+		this.capacity = capacity;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+		try{
+			FileChannel channel = raf.getChannel();
+			long size = HEADER_SIZE + (long) capacity * recordSize;
+
+			raf.setLength(0);
+			raf.setLength(size);
+
+			//O mapeamento continua válido depois que o arquivo é fechado
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		finally{
+			raf.close();
+		}
+
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, recordSize);
+		buffer.putInt(12, capacity);
+		buffer.putLong(WRITTEN_OFFSET, 0);
+		buffer.putInt(SCHEMA_OFFSET, schemaBytes.length);
+
+		for(int k = 0; k < schemaBytes.length; k++) buffer.put(SCHEMA_OFFSET + 4 + k, schemaBytes[k]);
+	}
+
+	/**
+		@return o menor múltiplo de 8 maior ou igual a n.
+	*/
+
+	private static int align8(int n){
+
+		return (n + 7) & ~7;
+	}
+
+	/**
+		Grava o registro de um passo, sobrescrevendo o registro mais antigo quando o arquivo está cheio.
+
+		@param tick número do passo.
+		@param delta duração do passo (em milisegundos).
+		@param balls quantidade de bolas.
+		@param hits quantidade de colisões de cada objeto da grade de colisão (jogadores, alvos e paredes, nesta ordem).
+		@param players jogadores da partida.
+		@param phaseNanos duração (em nanossegundos) da atualização das bolas, das colisões e do passo inteiro.
+	*/
+
+	public void record(long tick, long delta, int balls, int [] hits, Player [] players, long [] phaseNanos){
+
+		int base = HEADER_SIZE + (int) (written % capacity) * recordSize;
+		int firstTarget = players.length;
+		int firstWall = firstTarget + targetColumn.length;
+		int walls = hits.length - firstWall;
+
+		buffer.putLong(base, tick);
+
+		//O número do passo do início é gravado antes dos dados
+		barrier();
+
+		buffer.putInt(base + 8, (int) delta);
+		buffer.putInt(base + 12, balls);
+
+		for(int k = 0; k < walls; k++) buffer.putInt(base + wallOffset + 4 * k, hits[firstWall + k]);
+
+		Arrays.fill(targetHits, 0);
+
+		for(int k = 0; k < targetColumn.length; k++) targetHits[targetColumn[k]] += hits[firstTarget + k];
+		for(int k = 0; k < targetTypes; k++) buffer.putInt(base + targetOffset + 4 * k, targetHits[k]);
+
+		for(int k = 0; k < players.length; k++) buffer.putDouble(base + playerOffset + 8 * k, players[k].getCy());
+		for(int k = 0; k < PHASES.length; k++) buffer.putLong(base + phaseOffset + 8 * k, phaseNanos[k]);
+
+		//O número do passo no fim do registro indica que o registro está completo, por isso é gravado depois dos dados
+		barrier();
+		buffer.putLong(base + endOffset, tick);
+
+		written++;
+		barrier();
+		buffer.putLong(WRITTEN_OFFSET, written);
+	}
+
+	/**
+		Impede que as escritas no arquivo mapeado anteriores a esta chamada sejam reordenadas com as posteriores. As
+		escritas em um MappedByteBuffer não são ordenadas entre si; a escrita em um atributo volátil impede que as
+		escritas anteriores passem para depois dela, e a leitura seguinte impede que as escritas posteriores passem
+		para antes dela (o Java 8 não tem VarHandle.storeStoreFence()).
+
+		@return o valor lido do atributo volátil (não usado).
+	*/
+
+	private long barrier(){
+
+		fence = written;
+
+		return fence;
+	}
+
+	/**
+		@return quantidade de registros gravados.
+	*/
+
+	public long getWritten(){
+
+		return written;
+	}
+
+	/**
+		@return tamanho (em bytes) de cada registro.
+	*/
+
+	public int getRecordSize(){
+
+		return recordSize;
+	}
+
+	/**
+		Grava no disco as alterações ainda não gravadas pelo sistema operacional.
+	*/
+
+	public void force(){
+
+		buffer.force();
+	}
+}
@@ -0,0 +1,417 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+/**
+	Classe que guarda os textos desenhados ("rótulos") com a mesma fonte e o mesmo posicionamento de
+	GameLib.drawText(). Cada rótulo guarda o texto já montado e a sua largura, de modo que a cada frame o texto é
+	desenhado sem criar a fonte, consultar as métricas ou montar o texto novamente, e sem alocar memória. Os
+	caracteres são rasterizados uma única vez pelo cache de glifos do próprio Java2D (copiar uma imagem do rótulo
+	inteiro é mais lento que desenhar os glifos já rasterizados, já que a imagem tem muito mais pixels que o texto).
+
+	Textos formados por um prefixo e um número inteiro (como os placares) são procurados pelo prefixo e pelo
+	número, sem montar o texto: um novo rótulo só é criado quando o número muda.
+
+	O cache tem tamanho limitado: quando ele está cheio, o rótulo usado há mais tempo é descartado.
+
+	Os métodos devem ser chamados sempre pela thread que desenha na GameLib.
+*/
+
+public class TextCache {
+
+	/**
+		Constante que define a quantidade de rótulos guardados pelo cache compartilhado.
+	*/
+
+	public static final int SHARED_CAPACITY = 256;
+
+	/**
+		Constante que representa a fonte usada por GameLib.drawText().
+	*/
+
+	private static final Font FONT = new Font("Monospaced", Font.PLAIN, 28);
+
+	/**
+		Constante que define a distância (em pixels) entre o texto e a borda da tela, nos alinhamentos à esquerda e
+		à direita (a mesma de GameLib.drawText()).
+	*/
+
+	private static final int BORDER = 40;
+
+	/**
+		Constante que define a linha dos placares (a mesma de Score.draw()).
+	*/
+
+	private static final double SCORE_LINE = 70;
+
+	/**
+		Atributo privado que representa o cache compartilhado (criado no primeiro uso).
+	*/
+
+	private static TextCache shared = null;
+
+	/**
+		Atributo privado que representa a quantidade máxima de rótulos guardados.
+	*/
+
+	private final int capacity;
+
+	/**
+		Atributo privado que representa os rótulos guardados, na ordem do uso mais antigo para o mais recente.
+	*/
+
+	private final LinkedHashMap <Key, Label> labels;
+
+	/**
+		Atributo privado usado como chave nas consultas, para que a consulta de um rótulo já guardado não aloque memória.
+	*/
+
+	private final Key probe = new Key();
+
+	/**
+		Atributo privado que associa a identificação de cada jogador ao prefixo do seu placar.
+	*/
+
+	private final Map <String, String> scorePrefixes = new HashMap <String, String> ();
+
+	/**
+		Atributo privado usado para montar o texto de um rótulo numérico.
+	*/
+
+	private char [] chars = new char[64];
+
+	/**
+		Atributo privado que representa as métricas da fonte (obtidas no primeiro uso).
+	*/
+
+	private FontMetrics metrics = null;
+
+	/**
+		Atributos privados que representam a quantidade de consultas que encontraram e que não encontraram o rótulo.
+	*/
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+		Construtor da classe TextCache.
+
+		@param capacity quantidade máxima de rótulos guardados.
+	*/
+
+	public TextCache(final int capacity){
+
+		if(capacity < 1) throw new IllegalArgumentException("Capacidade inválida: " + capacity);
+
+		this.capacity = capacity;
+		this.labels = new LinkedHashMap <Key, Label> (16, 0.75f, true){
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry <Key, Label> eldest){
+
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+		@return o cache compartilhado, com capacidade SHARED_CAPACITY.
+	*/
+
+	public static synchronized TextCache shared(){
+
+		if(shared == null) shared = new TextCache(SHARED_CAPACITY);
+
+		return shared;
+	}
+
+	/**
+		Desenha um texto em uma linha da tela, com o mesmo resultado de GameLib.setColor(color) seguido de
+		GameLib.drawText(text, y, align) (a cor e a fonte do Graphics também ficam alteradas).
+
+		@param g Graphics em que o texto é desenhado.
+		@param text texto desenhado.
+		@param y coordenada y da linha do texto.
+		@param align alinhamento horizontal (GameLib.ALIGN_LEFT, GameLib.ALIGN_RIGHT ou GameLib.ALIGN_CENTER).
+		@param color cor do texto.
+	*/
+
+	public void drawText(Graphics g, String text, double y, int align, Color color){
+
+		probe.set(text, false, 0, color);
+
+		Label label = labels.get(probe);
+
+		if(label == null){
+
+			misses++;
+			label = new Label(text, metrics().stringWidth(text));
+			labels.put(probe.copy(), label);
+		}
+		else hits++;
+
+		draw(g, label, y, align, color);
+	}
+
+	/**
+		Desenha um texto formado por um prefixo seguido de um número inteiro, sem montar o texto quando o rótulo
+		já está no cache.
+
+		@param g Graphics em que o texto é desenhado.
+		@param prefix prefixo do texto.
+		@param value número que segue o prefixo.
+		@param y coordenada y da linha do texto.
+		@param align alinhamento horizontal (GameLib.ALIGN_LEFT, GameLib.ALIGN_RIGHT ou GameLib.ALIGN_CENTER).
+		@param color cor do texto.
+	*/
+
+	public void drawNumber(Graphics g, String prefix, int value, double y, int align, Color color){
+
+		probe.set(prefix, true, value, color);
+
+		Label label = labels.get(probe);
+
+		if(label == null){
+
+			misses++;
+
+			int length = prefix.length();
+
+			if(chars.length < length + 11) chars = new char[length + 11];
+
+			prefix.getChars(0, length, chars, 0);
+			length = formatInt(value, chars, length);
+
+			label = new Label(new String(chars, 0, length), metrics().charsWidth(chars, 0, length));
+			labels.put(probe.copy(), label);
+		}
+		else hits++;
+
+		draw(g, label, y, align, color);
+	}
+
+	/**
+		Desenha um placar, com o mesmo resultado de Score.draw(): o placar do "Player 1" em verde, à esquerda, e o
+		do "Player 2" em azul, à direita. Placares de outros jogadores não são desenhados.
+
+		@param g Graphics em que o placar é desenhado.
+		@param score placar desenhado.
+	*/
+
+	public void drawScore(Graphics g, Score score){
+
+		int align;
+		Color color;
+
+		if(score.playerId.equals(Pong.PLAYER1)){
+
+			align = GameLib.ALIGN_LEFT;
+			color = Color.GREEN;
+		}
+		else if(score.playerId.equals(Pong.PLAYER2)){
+
+			align = GameLib.ALIGN_RIGHT;
+			color = Color.BLUE;
+		}
+		else return;
+
+		String prefix = scorePrefixes.get(score.playerId);
+
+		if(prefix == null){
+
+			prefix = score.playerId + ": ";
+			scorePrefixes.put(score.playerId, prefix);
+		}
+
+		drawNumber(g, prefix, score.getScore(), SCORE_LINE, align, color);
+	}
+
+	/**
+		Escreve um número inteiro em decimal em um array de caracteres, sem alocar memória.
+
+		@param value número escrito.
+		@param chars array que recebe os caracteres (deve ter pelo menos 11 posições livres a partir de offset).
+		@param offset posição do primeiro caractere escrito.
+		@return posição seguinte ao último caractere escrito.
+	*/
+
+	public static int formatInt(int value, char [] chars, int offset){
+
+		//Trabalha com o número negativo, que também representa Integer.MIN_VALUE
+		int n = (value < 0) ? value : -value;
+		int end = offset + stringSize(n) + ((value < 0) ? 1 : 0);
+		int i = end;
+
+		do{
+			chars[--i] = (char) ('0' - n % 10);
+			n /= 10;
+		}
+		while(n != 0);
+
+		if(value < 0) chars[--i] = '-';
+
+		return end;
+	}
+
+	/**
+		@param n número negativo ou zero.
+		@return quantidade de dígitos de n.
+	*/
+
+	private static int stringSize(int n){
+
+		int digits = 1;
+
+		while(n <= -10){
+
+			n /= 10;
+			digits++;
+		}
+
+		return digits;
+	}
+
+	/**
+		Desenha um rótulo na posição em que GameLib.drawText() desenharia o texto.
+	*/
+
+	private static void draw(Graphics g, Label label, double y, int align, Color color){
+
+		int x = 0;
+
+		if(align == GameLib.ALIGN_LEFT) x = BORDER;
+		else if(align == GameLib.ALIGN_RIGHT) x = GameLib.WIDTH - label.width - BORDER;
+		else if(align == GameLib.ALIGN_CENTER) x = GameLib.WIDTH / 2 - label.width / 2;
+
+		g.setColor(color);
+		g.setFont(FONT);
+		g.drawString(label.text, x, (int) Math.round(y));
+	}
+
+	/**
+		@return as métricas da fonte, obtidas no primeiro uso.
+	*/
+
+	private FontMetrics metrics(){
+
+		if(metrics == null){
+
+			Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+
+			metrics = g.getFontMetrics(FONT);
+			g.dispose();
+		}
+
+		return metrics;
+	}
+
+	/**
+		@return quantidade de rótulos guardados.
+	*/
+
+	public int size(){
+
+		return labels.size();
+	}
+
+	/**
+		@return quantidade máxima de rótulos guardados.
+	*/
+
+	public int capacity(){
+
+		return capacity;
+	}
+
+	/**
+		@return quantidade de consultas que encontraram o rótulo no cache.
+	*/
+
+	public long getHits(){
+
+		return hits;
+	}
+
+	/**
+		@return quantidade de consultas que precisaram desenhar o rótulo.
+	*/
+
+	public long getMisses(){
+
+		return misses;
+	}
+
+	/**
+		Descarta todos os rótulos guardados.
+	*/
+
+	public void clear(){
+
+		labels.clear();
+	}
+
+	/**
+		Classe que representa um rótulo: o texto e a sua largura.
+	*/
+
+	private static class Label {
+
+		final String text;
+		final int width;
+
+		Label(String text, int width){
+
+			this.text = text;
+			this.width = width;
+		}
+	}
+
+	/**
+		Classe que representa a chave de um rótulo: o texto (ou o prefixo e o número) e a cor.
+	*/
+
+	private static class Key {
+
+		String text;
+		boolean numeric;
+		int value;
+		Color color;
+
+		void set(String text, boolean numeric, int value, Color color){
+
+			this.text = text;
+			this.numeric = numeric;
+			this.value = value;
+			this.color = color;
+		}
+
+		Key copy(){
+
+			Key key = new Key();
+
+			key.set(text, numeric, value, color);
+
+			return key;
+		}
+
+		public boolean equals(Object o){
+
+			if(!(o instanceof Key)) return false;
+
+			Key k = (Key) o;
+
+			return numeric == k.numeric && value == k.value && text.equals(k.text) && color.equals(k.color);
+		}
+
+		public int hashCode(){
+
+			int h = text.hashCode();
+
+			h = 31 * h + (numeric ? value : -1);
+			h = 31 * h + color.getRGB();
+
+			return h;
+		}
+	}
+}
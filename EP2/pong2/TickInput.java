@@ -0,0 +1,66 @@
+/**
+	Classe que representa o estado das teclas usadas pela simulação (A, Z, K, M e ESPAÇO) em um passo, guardado
+	em um único byte (um bit por tecla). A simulação lê o teclado uma única vez por passo através desta classe,
+	de modo que o estado lido pode ser gravado e depois reproduzido exatamente (veja a classe ReplayFile).
+*/
+
+public class TickInput implements Input {
+
+	/**
+		Constante que representa as teclas guardadas, na ordem dos bits (o bit k corresponde a KEYS[k]).
+	*/
+
+	private static final int [] KEYS = { GameLib.KEY_A, GameLib.KEY_Z, GameLib.KEY_K, GameLib.KEY_M, GameLib.KEY_SPACE };
+
+	/**
+		Atributo privado que representa o estado das teclas, um bit por tecla.
+	*/
+
+	private int bits = 0;
+
+	/**
+		Lê o estado das teclas em uma fonte de entrada.
+
+		@param input fonte de entrada lida.
+	*/
+
+	public void sample(Input input){
+
+		int b = 0;
+
+		for(int k = 0; k < KEYS.length; k++){
+
+			if(input.isKeyPressed(KEYS[k])) b |= 1 << k;
+		}
+
+		bits = b;
+	}
+
+	/**
+		@return o estado das teclas, um bit por tecla.
+	*/
+
+	public int getBits(){
+
+		return bits;
+	}
+
+	/**
+		@param bits estado das teclas, um bit por tecla (como devolvido por getBits()).
+	*/
+
+	public void setBits(int bits){
+
+		this.bits = bits;
+	}
+
+	public boolean isKeyPressed(int key){
+
+		for(int k = 0; k < KEYS.length; k++){
+
+			if(KEYS[k] == key) return (bits & (1 << k)) != 0;
+		}
+
+		return false;
+	}
+}
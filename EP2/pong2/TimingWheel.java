@@ -0,0 +1,359 @@
+import java.util.*;
+
+/**
+	Classe que implementa uma "timing wheel" com hash: um agendador de eventos movido pelo relógio do jogo (e não
+	pelo relógio do sistema), sem threads. O tempo é dividido em intervalos de 1 ms, e cada intervalo é associado a
+	uma das posições de uma roda circular. Um evento é guardado na posição correspondente ao seu prazo, e a cada
+	avanço do relógio apenas as posições pelas quais o relógio passou são visitadas. Eventos cujo prazo está mais
+	de uma volta à frente continuam na sua posição até que o relógio os alcance.
+
+	Os eventos guardam apenas valores primitivos (um tipo e um valor inteiro, como o handle de uma bola), de modo
+	que a roda nunca mantém referências para objetos que já foram removidos do jogo. Agendar e cancelar um evento
+	custam O(1).
+*/
+
+public class TimingWheel {
+
+	/**
+		Interface que recebe os eventos cujo prazo foi atingido.
+	*/
+
+	public interface Listener {
+
+		/**
+			Chamado quando o prazo de um evento é atingido.
+
+			@param type tipo do evento, conforme informado no agendamento.
+			@param payload valor associado ao evento, conforme informado no agendamento.
+		*/
+
+		void expired(int type, long payload);
+	}
+
+	/**
+		Constante usada para marcar o fim de uma lista de eventos.
+	*/
+
+	private static final int NONE = -1;
+
+	/**
+		Atributo privado que representa a máscara usada para obter a posição da roda a partir de um instante.
+	*/
+
+	private int mask;
+
+	/**
+		Atributo privado que representa o primeiro evento de cada posição da roda.
+	*/
+
+	private int [] head;
+
+	/**
+		Atributo privado que representa o último evento de cada posição da roda.
+	*/
+
+	private int [] tail;
+
+	/**
+		Atributo privado que representa o prazo de cada evento.
+	*/
+
+	private long [] deadline = new long[16];
+
+	/**
+		Atributo privado que representa o tipo de cada evento.
+	*/
+
+	private int [] type = new int[16];
+
+	/**
+		Atributo privado que representa o valor associado a cada evento.
+	*/
+
+	private long [] payload = new long[16];
+
+	/**
+		Atributo privado que representa o próximo evento na mesma posição da roda (ou na lista de entradas livres).
+	*/
+
+	private int [] next = new int[16];
+
+	/**
+		Atributo privado que representa o evento anterior na mesma posição da roda (ou -2 para entradas livres).
+	*/
+
+	private int [] prev = new int[16];
+
+	/**
+		Atributo privado que representa a geração de cada entrada, usada para invalidar identificadores de eventos antigos.
+	*/
+
+	private int [] generation = new int[16];
+
+	/**
+		Atributo privado que representa a primeira entrada livre.
+	*/
+
+	private int free = NONE;
+
+	/**
+		Atributo privado que representa a quantidade de entradas já usadas.
+	*/
+
+	private int used = 0;
+
+	/**
+		Atributo privado que representa a quantidade de eventos pendentes.
+	*/
+
+	private int pending = 0;
+
+	/**
+		Atributo privado que representa o instante atual do relógio do jogo (em milisegundos).
+	*/
+
+	private long now = 0;
+
+	/**
+		Construtor da classe TimingWheel.
+
+		@param slots quantidade de posições da roda (arredondada para a próxima potência de 2). Eventos com prazo
+		dentro de slots milisegundos são encontrados na primeira volta.
+	*/
+
+	public TimingWheel(int slots){
+
+		int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+
+		mask = size - 1;
+		head = new int[size];
+		tail = new int[size];
+
+		Arrays.fill(head, NONE);
+		Arrays.fill(tail, NONE);
+	}
+
+	/**
+		@return o instante atual do relógio do jogo (em milisegundos).
+	*/
+
+	public long now(){
+
+		return now;
+	}
+
+	/**
+		@return quantidade de eventos pendentes.
+	*/
+
+	public int size(){
+
+		return pending;
+	}
+
+	/**
+		Agenda um evento.
+
+		@param when instante (no relógio do jogo) em que o evento deve ocorrer.
+		@param eventType tipo do evento.
+		@param eventPayload valor associado ao evento.
+		@return identificador do evento, que pode ser usado para cancelá-lo.
+	*/
+
+	public long schedule(long when, int eventType, long eventPayload){
+
+		int e = allocate();
+
+		//Eventos com prazo já vencido ocorrem no próximo avanço do relógio
+		deadline[e] = Math.max(when, now + 1);
+		type[e] = eventType;
+		payload[e] = eventPayload;
+
+		int slot = (int) (deadline[e] & mask);
+
+		next[e] = NONE;
+		prev[e] = tail[slot];
+
+		if(tail[slot] == NONE) head[slot] = e;
+		else next[tail[slot]] = e;
+
+		tail[slot] = e;
+		pending++;
+
+		return ((long) generation[e] << 32) | e;
+	}
+
+	/**
+		Cancela um evento pendente.
+
+		@param id identificador do evento, devolvido pelo método schedule().
+		@return true se o evento estava pendente e foi cancelado, false se ele já ocorreu ou já foi cancelado.
+	*/
+
+	public boolean cancel(long id){
+
+		int e = (int) id;
+
+		if(e < 0 || e >= used || generation[e] != (int) (id >>> 32) || prev[e] == -2) return false;
+
+		unlink(e, (int) (deadline[e] & mask));
+		release(e);
+
+		return true;
+	}
+
+	/**
+		Remove todos os eventos pendentes.
+	*/
+
+	public void clear(){
+
+		for(int slot = 0; slot <= mask; slot++){
+
+			while(head[slot] != NONE){
+
+				int e = head[slot];
+
+				unlink(e, slot);
+				release(e);
+			}
+		}
+	}
+
+	/**
+		Torna esta instância uma cópia de outra TimingWheel com a mesma quantidade de posições, incluindo o relógio
+		e todos os eventos pendentes (com os seus identificadores). Os arrays desta instância são reaproveitados
+		sempre que têm capacidade suficiente, de modo que cópias repetidas não alocam memória.
+
+		@param other TimingWheel copiada.
+	*/
+
+	public void copyFrom(TimingWheel other){
+
+		if(other.mask != mask) throw new IllegalArgumentException("Quantidade de posições diferente: " + (other.mask + 1) + " e " + (mask + 1));
+
+		if(deadline.length < other.used){
+
+			int capacity = other.deadline.length;
+
+			deadline = new long[capacity];
+			type = new int[capacity];
+			payload = new long[capacity];
+			next = new int[capacity];
+			prev = new int[capacity];
+			generation = new int[capacity];
+		}
+
+		System.arraycopy(other.head, 0, head, 0, head.length);
+		System.arraycopy(other.tail, 0, tail, 0, tail.length);
+		System.arraycopy(other.deadline, 0, deadline, 0, other.used);
+		System.arraycopy(other.type, 0, type, 0, other.used);
+		System.arraycopy(other.payload, 0, payload, 0, other.used);
+		System.arraycopy(other.next, 0, next, 0, other.used);
+		System.arraycopy(other.prev, 0, prev, 0, other.used);
+		System.arraycopy(other.generation, 0, generation, 0, other.used);
+
+		free = other.free;
+		used = other.used;
+		pending = other.pending;
+		now = other.now;
+	}
+
+	/**
+		Avança o relógio do jogo até o instante indicado, notificando (em ordem de posição da roda) todos os
+		eventos cujo prazo foi atingido. O listener pode agendar novos eventos, mas não deve cancelar eventos
+		durante o avanço.
+
+		@param time novo instante do relógio do jogo.
+		@param listener objeto que recebe os eventos.
+	*/
+
+	public void advance(long time, Listener listener){
+
+		if(time <= now) return;
+
+		//Se o relógio avançou mais de uma volta, basta visitar cada posição uma vez
+		long from = Math.max(now + 1, time - mask);
+
+		now = time;
+
+		for(long t = from; t <= time; t++){
+
+			int slot = (int) (t & mask);
+			int e = head[slot];
+
+			while(e != NONE){
+
+				int following = next[e];
+
+				if(deadline[e] <= time){
+
+					int eventType = type[e];
+					long eventPayload = payload[e];
+
+					unlink(e, slot);
+					release(e);
+					listener.expired(eventType, eventPayload);
+				}
+
+				e = following;
+			}
+		}
+	}
+
+	/**
+		Remove um evento da lista de uma posição da roda.
+	*/
+
+	private void unlink(int e, int slot){
+
+		if(prev[e] == NONE) head[slot] = next[e];
+		else next[prev[e]] = next[e];
+
+		if(next[e] == NONE) tail[slot] = prev[e];
+		else prev[next[e]] = prev[e];
+	}
+
+	/**
+		Obtém uma entrada livre.
+	*/
+
+	private int allocate(){
+
+		if(free != NONE){
+
+			int e = free;
+
+			free = next[e];
+
+			return e;
+		}
+
+		if(used == deadline.length){
+
+			int capacity = used * 2;
+
+			deadline = Arrays.copyOf(deadline, capacity);
+			type = Arrays.copyOf(type, capacity);
+			payload = Arrays.copyOf(payload, capacity);
+			next = Arrays.copyOf(next, capacity);
+			prev = Arrays.copyOf(prev, capacity);
+			generation = Arrays.copyOf(generation, capacity);
+		}
+
+		return used++;
+	}
+
+	/**
+		Devolve uma entrada para a lista de entradas livres, invalidando o identificador do evento.
+	*/
+
+	private void release(int e){
+
+		generation[e]++;
+		prev[e] = -2;
+		next[e] = free;
+		free = e;
+		pending--;
+	}
+}
@@ -0,0 +1,713 @@
+import java.io.*;
+import java.util.*;
+
+/**
+	Classe que executa um torneio: várias partidas sem janela, disputadas por jogadores automáticos e simuladas em
+	paralelo, sem esperas, em todos os processadores (veja a classe MatchScheduler). Ao final, as medidas de cada
+	partida (placares, duração das disputas de cada ponto, colisões com os alvos e a maior quantidade de bolas) são
+	gravadas em um relatório CSV ou JSON, junto com a quantidade de partidas simuladas por segundo. O torneio é usado
+	para ajustar o equilíbrio do jogo e para estimar quantas partidas uma máquina suporta. Uma partida interrompida
+	por um erro aparece no relatório com o erro e fica fora das vitórias e das partidas por segundo.
+
+	Os jogadores automáticos veem a partida como um jogador humano veria a janela: eles decidem quais teclas
+	pressionar uma vez por frame, ou seja, a cada intervalo mínimo entre frames (o mesmo parâmetro "delay" do jogo,
+	veja Pong.main()), e mantêm as teclas até o frame seguinte.
+*/
+
+public class Tournament {
+
+	/**
+		Constante que define a quantidade padrão de partidas.
+	*/
+
+	private static final int DEFAULT_MATCHES = 100;
+
+	/**
+		Constante que define a quantidade padrão de passos de cada partida.
+	*/
+
+	private static final long DEFAULT_TICKS = 20000;
+
+	/**
+		Constante que define a distância (em pixels) entre o jogador e o ponto desejado abaixo da qual o jogador não
+		se move.
+	*/
+
+	private static final double DEAD_ZONE = 10;
+
+	/**
+		Constante que define os nomes das estratégias dos jogadores automáticos (veja createBot()).
+	*/
+
+	static final String [] STRATEGIES = { "idle", "chase", "intercept", "random" };
+
+	/**
+		Interface que representa um jogador automático.
+	*/
+
+	interface Bot {
+
+		/**
+			Escolhe as teclas do jogador em um frame.
+
+			@param world estado da partida no frame.
+			@param match partida (usada apenas para consultar as paredes e os jogadores).
+			@param player índice do jogador controlado.
+			@return as teclas do jogador (bits NetProtocol.UP e NetProtocol.DOWN).
+		*/
+
+		int keys(WorldSnapshot world, Match match, int player);
+	}
+
+	/**
+		Classe que representa as medidas de uma partida.
+	*/
+
+	static class Result {
+
+		/**
+			Atributo que representa o índice da partida no torneio.
+		*/
+
+		int index;
+
+		/**
+			Atributo que representa a semente da partida.
+		*/
+
+		long seed;
+
+		/**
+			Atributo que representa as estratégias dos jogadores.
+		*/
+
+		String [] bots;
+
+		/**
+			Atributo que representa a quantidade de passos simulados.
+		*/
+
+		long ticks;
+
+		/**
+			Atributo que representa a pontuação final de cada placar.
+		*/
+
+		int [] scores;
+
+		/**
+			Atributos que representam a quantidade de disputas de pontos, a soma e a maior quantidade de rebatidas
+			dos jogadores em uma disputa (as rebatidas desde o ponto anterior).
+		*/
+
+		long rallies;
+		long rallyHits;
+		long maxRally;
+
+		/**
+			Atributos que representam as colisões com os alvos de boost e com o alvo duplicador.
+		*/
+
+		long boostHits;
+		long duplicatorHits;
+
+		/**
+			Atributo que representa a maior quantidade de bolas da partida.
+		*/
+
+		int peakBalls;
+
+		/**
+			Atributo que representa o erro que interrompeu a partida (null se a partida terminou normalmente). Uma
+			partida interrompida fica fora das vitórias e das medidas de desempenho do torneio.
+		*/
+
+		String error;
+
+		/**
+			@return a média de rebatidas por disputa (0 se nenhum ponto foi marcado).
+		*/
+
+		double getMeanRally(){
+
+			return (rallies == 0) ? 0 : (double) rallyHits / rallies;
+		}
+	}
+
+	/**
+		Classe que simula uma partida do torneio, executada por uma thread portadora do MatchScheduler.
+	*/
+
+	private static class Game implements MatchScheduler.Session {
+
+		/**
+			Atributo que representa a partida.
+		*/
+
+		final Match match;
+
+		/**
+			Atributo que representa os jogadores automáticos.
+		*/
+
+		final Bot [] bots;
+
+		/**
+			Atributo que representa a duração (em milisegundos) de cada passo.
+		*/
+
+		final long tick;
+
+		/**
+			Atributo que representa a quantidade de passos entre dois frames dos jogadores automáticos.
+		*/
+
+		final long frameTicks;
+
+		/**
+			Atributo que representa a quantidade máxima de passos da partida.
+		*/
+
+		final long maxTicks;
+
+		/**
+			Atributo que representa a pontuação que encerra a partida (0 se a partida termina apenas por passos).
+		*/
+
+		final int points;
+
+		/**
+			Atributo que representa as medidas da partida, preenchidas ao longo da partida.
+		*/
+
+		final Result result;
+
+		/**
+			Atributos que representam o estado visto pelos jogadores, as teclas do passo e as teclas escolhidas por
+			cada jogador no último frame.
+		*/
+
+		final WorldSnapshot world;
+		final TickInput input = new TickInput();
+		final int [] keys;
+
+		/**
+			Atributos que representam a soma das pontuações e as rebatidas desde o último ponto.
+		*/
+
+		long total = 0;
+		long rally = 0;
+
+		/**
+			Atributos que representam os índices dos alvos de boost e do alvo duplicador.
+		*/
+
+		final int [] boostTargets;
+		final int [] duplicatorTargets;
+
+		Game(Match match, Bot [] bots, long tick, long frameTicks, long maxTicks, int points, Result result){
+
+			this.match = match;
+			this.bots = bots;
+			this.tick = tick;
+			this.frameTicks = frameTicks;
+			this.maxTicks = maxTicks;
+			this.points = points;
+			this.result = result;
+			this.world = new WorldSnapshot(match.getPlayers().length, match.getScores().length);
+			this.keys = new int[bots.length];
+
+			this.boostTargets = targetsOf(match, BoostTarget.class);
+			this.duplicatorTargets = targetsOf(match, DuplicatorTarget.class);
+
+			result.scores = new int[match.getScores().length];
+			result.peakBalls = match.getBallCount();
+		}
+
+		/**
+			@return os índices dos alvos da partida que são instâncias da classe indicada.
+		*/
+
+		private static int [] targetsOf(Match match, Class <?> type){
+
+			Target [] targets = match.getTargets();
+			int [] found = new int[targets.length];
+			int n = 0;
+
+			for(int k = 0; k < targets.length; k++){
+
+				if(type.isInstance(targets[k])) found[n++] = k;
+			}
+
+			return Arrays.copyOf(found, n);
+		}
+
+		public boolean step(){
+
+			try{
+				return simulate();
+			}
+			catch(RuntimeException e){
+
+				//O erro é registrado no resultado e repassado ao MatchScheduler, que retira a partida
+				result.error = e.toString();
+				result.ticks = match.getTicks();
+
+				Score [] scores = match.getScores();
+
+				for(int k = 0; k < scores.length; k++) result.scores[k] = scores[k].getScore();
+
+				throw e;
+			}
+		}
+
+		/**
+			Simula um passo da partida, atualizando as medidas.
+
+			@return false se a partida terminou.
+		*/
+
+		private boolean simulate(){
+
+			if(match.getTicks() % frameTicks == 0){
+
+				match.snapshot(world, match.getTime());
+
+				for(int p = 0; p < bots.length; p++) keys[p] = bots[p].keys(world, match, p);
+			}
+
+			int bits = 0;
+
+			for(int p = 0; p < keys.length; p++){
+
+				if((keys[p] & NetProtocol.UP) != 0) bits |= 1 << (2 * p);
+				if((keys[p] & NetProtocol.DOWN) != 0) bits |= 2 << (2 * p);
+			}
+
+			input.setBits(bits);
+			match.step(tick, input);
+
+			for(int p = 0; p < bots.length; p++) rally += match.getPlayerHits(p);
+			for(int k : boostTargets) result.boostHits += match.getTargetHits(k);
+			for(int k : duplicatorTargets) result.duplicatorHits += match.getTargetHits(k);
+
+			result.peakBalls = Math.max(result.peakBalls, match.getBallCount());
+
+			Score [] scores = match.getScores();
+			long sum = 0;
+			int best = 0;
+
+			for(Score score : scores){
+
+				sum += score.getScore();
+				best = Math.max(best, score.getScore());
+			}
+
+			//Um passo em que vários pontos são marcados encerra uma única disputa
+			if(sum > total){
+
+				result.rallies++;
+				result.rallyHits += rally;
+				result.maxRally = Math.max(result.maxRally, rally);
+				rally = 0;
+				total = sum;
+			}
+
+			if(match.getTicks() < maxTicks && (points <= 0 || best < points)) return true;
+
+			result.ticks = match.getTicks();
+
+			for(int k = 0; k < scores.length; k++) result.scores[k] = scores[k].getScore();
+
+			return false;
+		}
+	}
+
+	/**
+		Cria um jogador automático.
+
+		@param strategy nome da estratégia: "idle" (não se move), "chase" (segue a bola mais próxima entre as que
+		estão à frente da sua raquete e se aproximam dela), "intercept" (vai até o ponto em que a primeira bola que
+		se aproxima vai chegar, considerando os rebotes nas paredes de cima e de baixo) ou "random" (muda de tecla
+		ao acaso).
+		@param seed semente do jogador "random".
+		@return o jogador automático.
+		@throws IllegalArgumentException se a estratégia não existir.
+	*/
+
+	static Bot createBot(String strategy, final long seed){
+
+		if(strategy.equals("idle")){
+
+			return new Bot(){
+
+				public int keys(WorldSnapshot world, Match match, int player){
+
+					return 0;
+				}
+			};
+		}
+
+		if(strategy.equals("chase")){
+
+			return new Bot(){
+
+				public int keys(WorldSnapshot world, Match match, int player){
+
+					//A bola mais próxima da face do jogador, entre as que estão à frente dela e se aproximam (as
+					//bolas que já passaram pela raquete não podem mais ser defendidas, e segui-las as empurraria
+					//para o próprio gol)
+					Player self = match.getPlayers()[player];
+					boolean left = self.getCx() < Pong.FIELD_WIDTH / 2;
+					double x = self.getCx() + (left ? 1 : -1) * self.getWidth() / 2;
+					BallStore balls = world.balls;
+					double bestDistance = Double.POSITIVE_INFINITY;
+					double target = world.playerCy[player];
+
+					for(int i = 0; i < balls.size(); i++){
+
+						double vx = balls.vx[i] * balls.speed[i];
+
+						if(left ? (vx >= 0) : (vx <= 0)) continue;
+
+						double distance = left ? (balls.cx[i] - x) : (x - balls.cx[i]);
+
+						if(distance < 0 || distance >= bestDistance) continue;
+
+						bestDistance = distance;
+						target = balls.cy[i];
+					}
+
+					return move(world.playerCy[player], target);
+				}
+			};
+		}
+
+		if(strategy.equals("intercept")){
+
+			return new Bot(){
+
+				public int keys(WorldSnapshot world, Match match, int player){
+
+					Player self = match.getPlayers()[player];
+					boolean left = self.getCx() < Pong.FIELD_WIDTH / 2;
+					double x = self.getCx() + (left ? 1 : -1) * self.getWidth() / 2;
+					double top = 0;
+					double bottom = Pong.FIELD_HEIGHT;
+
+					for(Wall wall : match.getWalls()){
+
+						if(wall.getId().equals(Pong.TOP)) top = wall.getCy() + wall.getHeight() / 2;
+						else if(wall.getId().equals(Pong.BOTTOM)) bottom = wall.getCy() - wall.getHeight() / 2;
+					}
+
+					BallStore balls = world.balls;
+					double firstTime = Double.POSITIVE_INFINITY;
+					double target = (top + bottom) / 2;
+
+					for(int i = 0; i < balls.size(); i++){
+
+						double vx = balls.vx[i] * balls.speed[i];
+
+						//Apenas as bolas que se aproximam do jogador
+						if(left ? (vx >= 0) : (vx <= 0)) continue;
+
+						double time = (x - balls.cx[i]) / vx;
+
+						if(time < 0 || time >= firstTime) continue;
+
+						firstTime = time;
+						target = reflect(balls.cy[i] + balls.vy[i] * balls.speed[i] * time, top + balls.height[i] / 2, bottom - balls.height[i] / 2);
+					}
+
+					return move(world.playerCy[player], target);
+				}
+			};
+		}
+
+		if(strategy.equals("random")){
+
+			final Random random = new Random(seed);
+
+			return new Bot(){
+
+				int keys = 0;
+
+				public int keys(WorldSnapshot world, Match match, int player){
+
+					if(random.nextInt(20) == 0) keys = random.nextInt(3);
+
+					return keys;
+				}
+			};
+		}
+
+		throw new IllegalArgumentException("Estratégia desconhecida: " + strategy + " (estratégias: " + String.join(", ", STRATEGIES) + ")");
+	}
+
+	/**
+		@return as teclas que levam um jogador na coordenada y indicada até o ponto desejado.
+	*/
+
+	private static int move(double cy, double target){
+
+		if(target < cy - DEAD_ZONE) return NetProtocol.UP;
+		if(target > cy + DEAD_ZONE) return NetProtocol.DOWN;
+
+		return 0;
+	}
+
+	/**
+		@return a coordenada y de uma bola que se move livremente entre dois limites, refletida nos limites.
+	*/
+
+	private static double reflect(double y, double min, double max){
+
+		double range = max - min;
+
+		if(range <= 0) return min;
+
+		double t = (y - min) % (2 * range);
+
+		if(t < 0) t += 2 * range;
+
+		return (t <= range) ? min + t : max - (t - range);
+	}
+
+	/**
+		Grava as medidas das partidas em formato CSV, uma linha por partida.
+	*/
+
+	private static void writeCsv(PrintWriter out, Result [] results){
+
+		out.println("partida,semente,jogador1,jogador2,passos,placar1,placar2,disputas,media_rebatidas,max_rebatidas,"
+			+ "colisoes_boost,colisoes_duplicador,max_bolas,erro");
+
+		for(Result r : results){
+
+			//O erro (vazio se a partida terminou normalmente) fica entre aspas, já que a mensagem pode ter vírgulas
+			String error = (r.error == null) ? "" : "\"" + r.error.replace("\"", "\"\"") + "\"";
+
+			out.println(String.format(Locale.ROOT, "%d,%d,%s,%s,%d,%d,%d,%d,%.2f,%d,%d,%d,%d,%s",
+				r.index, r.seed, r.bots[0], r.bots[1], r.ticks, r.scores[0], r.scores[1],
+				r.rallies, r.getMeanRally(), r.maxRally, r.boostHits, r.duplicatorHits, r.peakBalls, error));
+		}
+	}
+
+	/**
+		Grava as medidas das partidas e do torneio em formato JSON.
+	*/
+
+	private static void writeJson(PrintWriter out, Result [] results, String ballClassName, long delay, double seconds){
+
+		int completed = 0;
+
+		for(Result r : results){
+
+			if(r.error == null) completed++;
+		}
+
+		out.println("{");
+		out.println(String.format(Locale.ROOT, "  \"ballClass\": \"%s\",", ballClassName));
+		out.println(String.format(Locale.ROOT, "  \"delay\": %d,", delay));
+		out.println(String.format(Locale.ROOT, "  \"matches\": %d,", results.length));
+		out.println(String.format(Locale.ROOT, "  \"failed\": %d,", results.length - completed));
+		out.println(String.format(Locale.ROOT, "  \"seconds\": %.3f,", seconds));
+		out.println(String.format(Locale.ROOT, "  \"matchesPerSecond\": %.2f,", completed / seconds));
+		out.println("  \"results\": [");
+
+		for(int k = 0; k < results.length; k++){
+
+			Result r = results[k];
+
+			out.print(String.format(Locale.ROOT, "    {\"match\": %d, \"seed\": %d, \"bots\": [\"%s\", \"%s\"], \"ticks\": %d, "
+				+ "\"scores\": [%d, %d], \"rallies\": %d, \"meanRally\": %.2f, \"maxRally\": %d, \"boostHits\": %d, "
+				+ "\"duplicatorHits\": %d, \"peakBalls\": %d, \"error\": %s}",
+				r.index, r.seed, r.bots[0], r.bots[1], r.ticks, r.scores[0], r.scores[1],
+				r.rallies, r.getMeanRally(), r.maxRally, r.boostHits, r.duplicatorHits, r.peakBalls, jsonString(r.error)));
+			out.println((k < results.length - 1) ? "," : "");
+		}
+
+		out.println("  ]");
+		out.println("}");
+	}
+
+	/**
+		@return o texto como uma string JSON (entre aspas, com os caracteres especiais escapados), ou null.
+	*/
+
+	private static String jsonString(String text){
+
+		if(text == null) return "null";
+
+		StringBuilder json = new StringBuilder("\"");
+
+		for(int k = 0; k < text.length(); k++){
+
+			char c = text.charAt(k);
+
+			if(c == '"' || c == '\\') json.append('\\').append(c);
+			else if(c < 0x20) json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			else json.append(c);
+		}
+
+		return json.append('"').toString();
+	}
+
+	/**
+		O método principal do torneio.
+
+		@param args o nome da classe das bolas (opcional, "Ball" por padrão) e o intervalo mínimo (em milisegundos)
+		entre dois frames dos jogadores automáticos (opcional, 3 por padrão), como em Pong.main(). Também são aceitas
+		as opções "--matches=N", que define a quantidade de partidas (100 por padrão), "--ticks=N", que define a
+		quantidade máxima de passos de cada partida (20000 por padrão), "--points=N", que encerra uma partida quando
+		um placar atinge N pontos, "--bots=A,B", que define as estratégias dos dois jogadores ("chase,intercept" por
+		padrão; veja createBot()), "--threads=N", que define a quantidade de threads (por padrão, uma por
+		processador), "--tickrate=N", que define quantos passos as partidas executam por segundo de jogo,
+		"--seed=N", que define a semente das sementes das partidas, "--ball-collisions", que faz as bolas colidirem
+		entre si, e "--output=ARQUIVO", que grava o relatório em um arquivo (em JSON se o nome terminar em ".json",
+		em CSV caso contrário) em vez de exibi-lo em CSV na saída.
+	*/
+
+	public static void main(String [] args){
+
+		int matches = DEFAULT_MATCHES;
+		long maxTicks = DEFAULT_TICKS;
+		int points = 0;
+		String [] strategies = { "chase", "intercept" };
+		int threads = Runtime.getRuntime().availableProcessors();
+		int tickRate = Pong.DEFAULT_TICK_RATE;
+		long seed = new Random().nextLong();
+		boolean ballCollisions = false;
+		String outputPath = null;
+		List <String> params = new ArrayList <String> ();
+
+		for(String arg : args){
+
+			if(arg.startsWith("--matches=")) matches = Integer.parseInt(arg.substring("--matches=".length()));
+			else if(arg.startsWith("--ticks=")) maxTicks = Long.parseLong(arg.substring("--ticks=".length()));
+			else if(arg.startsWith("--points=")) points = Integer.parseInt(arg.substring("--points=".length()));
+			else if(arg.startsWith("--bots=")) strategies = arg.substring("--bots=".length()).split(",");
+			else if(arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring("--threads=".length()));
+			else if(arg.startsWith("--tickrate=")) tickRate = Integer.parseInt(arg.substring("--tickrate=".length()));
+			else if(arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if(arg.equals("--ball-collisions")) ballCollisions = true;
+			else if(arg.startsWith("--output=")) outputPath = arg.substring("--output=".length());
+			else params.add(arg);
+		}
+
+		String ballClassName = (params.size() >= 1) ? params.get(0) : "Ball";
+		long delay = (params.size() >= 2) ? Long.parseLong(params.get(1)) : 3;
+
+		if(tickRate <= 0){
+
+			System.out.println("Frequência inválida: " + tickRate + " (--tickrate deve ser maior que 0)");
+			return;
+		}
+
+		if(strategies.length != 2){
+
+			System.out.println("São necessárias duas estratégias em --bots (por exemplo, --bots=chase,intercept)");
+			return;
+		}
+
+		long tick = Math.max(1, Math.round(1000.0 / tickRate));
+		long frameTicks = Math.max(1, Math.round((double) Math.max(1, delay) / tick));
+		Random seeds = new Random(seed);
+		Result [] results = new Result[matches];
+		Game [] games = new Game[matches];
+
+		try{
+			//As partidas são criadas antes da medida, que inclui apenas a simulação
+			for(int k = 0; k < matches; k++){
+
+				Result result = new Result();
+
+				result.index = k;
+				result.seed = seeds.nextLong();
+				result.bots = strategies;
+
+				Match match = Pong.createMatch(ballClassName, new CopyableRandom(result.seed), ballCollisions, Integer.MAX_VALUE);
+				Bot [] bots = { createBot(strategies[0], result.seed + 1), createBot(strategies[1], result.seed + 2) };
+
+				match.start();
+				results[k] = result;
+				games[k] = new Game(match, bots, tick, frameTicks, maxTicks, points, result);
+			}
+		}
+		catch(IllegalArgumentException e){
+
+			System.out.println(e.getMessage());
+			return;
+		}
+
+		System.out.print("Torneio: " + matches + " partidas de '" + ballClassName + "' (" + strategies[0] + " x " + strategies[1] + ")");
+		System.out.println(" em " + threads + " threads (semente " + seed + ")");
+
+		MatchScheduler scheduler = new MatchScheduler(threads, 0);
+		long start = System.nanoTime();
+
+		try{
+			for(Game game : games) scheduler.submit(game);
+
+			scheduler.awaitIdle();
+			scheduler.shutdown();
+		}
+		catch(InterruptedException e){
+
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long ticks = 0;
+		int completed = 0;
+		int [] wins = new int[3];
+
+		//As partidas interrompidas por um erro não são vitórias nem empates
+		for(Result r : results){
+
+			if(r.error != null) continue;
+
+			completed++;
+			ticks += r.ticks;
+			wins[(r.scores[0] > r.scores[1]) ? 0 : (r.scores[1] > r.scores[0]) ? 1 : 2]++;
+		}
+
+		System.out.println(String.format(Locale.ROOT, "%d partidas em %.2f s: %.1f partidas/s, %.0f passos/s",
+			completed, seconds, completed / seconds, ticks / seconds));
+
+		if(completed < matches) System.out.println("Partidas interrompidas por erro: " + (matches - completed));
+
+		System.out.println("Vitórias: " + strategies[0] + " " + wins[0] + ", " + strategies[1] + " " + wins[1] + ", empates " + wins[2]);
+
+		if(outputPath == null){
+
+			PrintWriter out = new PrintWriter(System.out);
+
+			writeCsv(out, results);
+			out.flush();
+			return;
+		}
+
+		PrintWriter out;
+
+		try{
+			out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputPath), "UTF-8")));
+		}
+		catch(IOException e){
+
+			System.out.println("Não foi possível gravar o relatório: " + e.getMessage());
+			return;
+		}
+
+		if(outputPath.endsWith(".json")) writeJson(out, results, ballClassName, delay, seconds);
+		else writeCsv(out, results);
+
+		out.close();
+
+		//PrintWriter não lança exceções: os erros de escrita são verificados ao final
+		if(out.checkError()) System.out.println("Erro ao gravar o relatório '" + outputPath + "'");
+		else System.out.println("Relatório gravado em '" + outputPath + "'");
+	}
+}
@@ -0,0 +1,67 @@
+/**
+	Classe que guarda uma cópia do estado de uma partida que muda a cada passo da simulação (bolas, posição dos
+	jogadores e placares), suficiente para desenhar um frame. Paredes e alvos não mudam durante a partida e por
+	isso não são copiados.
+
+	As instâncias são reaproveitadas: a simulação preenche uma cópia (Match.snapshot()) e a publica através de um
+	SnapshotBuffer, e a thread de desenho só lê cópias publicadas.
+*/
+
+public class WorldSnapshot {
+
+	/**
+		Cópia das bolas da partida.
+	*/
+
+	final BallStore balls = new BallStore();
+
+	/**
+		Coordenadas y dos centros dos jogadores (os jogadores só se movem verticalmente).
+	*/
+
+	double [] playerCy;
+
+	/**
+		Pontuação de cada placar.
+	*/
+
+	int [] scores;
+
+	/**
+		Indica se a partida já começou.
+	*/
+
+	boolean started;
+
+	/**
+		Quantidade de passos simulados até a cópia.
+	*/
+
+	long ticks;
+
+	/**
+		Instante (System.nanoTime()) em que o último passo copiado deveria ter ocorrido, usado para interpolar o desenho.
+	*/
+
+	long time;
+
+	/**
+		Número de publicação da cópia, atribuído pelo SnapshotBuffer (0 para uma cópia nunca publicada). É lido pela
+		thread de desenho enquanto a simulação pode estar reaproveitando a cópia, por isso é volatile.
+	*/
+
+	volatile long sequence = 0;
+
+	/**
+		Construtor da classe WorldSnapshot.
+
+		@param players quantidade de jogadores da partida.
+		@param scoreCount quantidade de placares da partida.
+	*/
+
+	public WorldSnapshot(int players, int scoreCount){
+
+		this.playerCy = new double[players];
+		this.scores = new int[scoreCount];
+	}
+}